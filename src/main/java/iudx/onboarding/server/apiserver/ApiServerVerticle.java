@@ -1,10 +1,12 @@
 package iudx.onboarding.server.apiserver;
 
 import static iudx.onboarding.server.apiserver.util.Constants.*;
+import static iudx.onboarding.server.apiserver.util.Util.endWithDetail;
 import static iudx.onboarding.server.apiserver.util.Util.errorResponse;
 import static iudx.onboarding.server.common.Constants.*;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
@@ -21,9 +23,14 @@ import io.vertx.ext.web.handler.CorsHandler;
 import io.vertx.ext.web.handler.TimeoutHandler;
 import iudx.onboarding.server.apiserver.util.ExceptionHandler;
 import iudx.onboarding.server.apiserver.util.RespBuilder;
+import iudx.onboarding.server.catalogue.CatalogueCache;
 import iudx.onboarding.server.catalogue.CatalogueUtilService;
+import iudx.onboarding.server.catalogue.CentralReplicator;
+import iudx.onboarding.server.catalogue.LocalCatalogueReader;
 import iudx.onboarding.server.common.Api;
 import iudx.onboarding.server.common.CatalogueType;
+import iudx.onboarding.server.common.Deadline;
+import iudx.onboarding.server.common.DeadlinePropagation;
 import iudx.onboarding.server.common.HttpStatusCode;
 import iudx.onboarding.server.resourceserver.ResourceServerService;
 import iudx.onboarding.server.token.TokenService;
@@ -54,6 +61,15 @@ import org.apache.logging.log4j.Logger;
 public class ApiServerVerticle extends AbstractVerticle {
 
   private static final Logger LOGGER = LogManager.getLogger(ApiServerVerticle.class);
+  private static final long READINESS_PROBE_INTERVAL_MS = 2000;
+  private static final String RETRY_AFTER_SECONDS = "5";
+  private static final long DEFAULT_REQUEST_TIMEOUT_MS = 28000;
+  /* part of the request timeout kept for the reply to reach the client */
+  private static final long DEADLINE_MARGIN_MS = 1000;
+  private static final String DEFAULT_ADMIN_ROLE = "admin";
+  private static final int DEFAULT_BULK_ONBOARDING_CONCURRENCY = 10;
+  private static final int DEFAULT_BULK_ONBOARDING_MAX_ITEMS = 10000;
+  private static final long DEFAULT_BULK_ONBOARDING_TIMEOUT_MS = 300000;
 
   private HttpServer server;
 
@@ -61,10 +77,23 @@ public class ApiServerVerticle extends AbstractVerticle {
   private int port;
   private boolean isSsl;
   private boolean isUacAvailable;
+  /* acknowledge writes once local, replicating them to the central catalogue in background */
+  private boolean isWriteBehind;
+  /* write both catalogues at once, after authorizing the caller, under ids allocated here */
+  private boolean isParallelWrites;
+  /* realm role allowed to use the administration APIs */
+  private String adminRole;
+  private int bulkOnboardingConcurrency;
+  private int bulkOnboardingMaxItems;
+  private long bulkOnboardingTimeoutMs;
   private String dxApiBasePath;
   private TokenService tokenService;
   private CatalogueUtilService catalogueService;
+  /* reads served straight from the local catalogue, bypassing the catalogue service */
+  private LocalCatalogueReader localCatalogue;
   private ResourceServerService resourceServerService;
+  /* set once the token service reports that it can mint admin tokens */
+  private boolean tokenServiceReady;
 
   /**
    * This method is used to start the Verticle. It deploys a verticle in a cluster, reads the
@@ -78,6 +107,15 @@ public class ApiServerVerticle extends AbstractVerticle {
     /* Create a reference to HazelcastClusterManager. */
 
     isUacAvailable = config().getBoolean("isUacAvailable");
+    isWriteBehind = WRITE_BEHIND.equalsIgnoreCase(config().getString("centralWriteMode"));
+    isParallelWrites = PARALLEL.equalsIgnoreCase(config().getString("centralWriteMode"));
+    adminRole = config().getString("adminRole", DEFAULT_ADMIN_ROLE);
+    bulkOnboardingConcurrency =
+        config().getInteger("bulkOnboardingConcurrency", DEFAULT_BULK_ONBOARDING_CONCURRENCY);
+    bulkOnboardingMaxItems =
+        config().getInteger("bulkOnboardingMaxItems", DEFAULT_BULK_ONBOARDING_MAX_ITEMS);
+    bulkOnboardingTimeoutMs =
+        config().getLong("bulkOnboardingTimeoutMs", DEFAULT_BULK_ONBOARDING_TIMEOUT_MS);
 
     router = Router.router(vertx);
 
@@ -94,15 +132,37 @@ public class ApiServerVerticle extends AbstractVerticle {
     // attach custom http error responses to router
     configureErrorHandlers(router);
 
+    router.route().handler(this::readinessGate);
+
     router.route().handler(BodyHandler.create());
-    router.route().handler(TimeoutHandler.create(28000, 408));
 
     Api api = Api.getInstance(dxApiBasePath);
 
+    // a bulk request is bound by its own, longer timeout, see createItems
+    long requestTimeoutMs = config().getLong("requestTimeoutMs", DEFAULT_REQUEST_TIMEOUT_MS);
+    TimeoutHandler timeoutHandler = TimeoutHandler.create(requestTimeoutMs, 408);
+    router.route().handler(routingContext -> {
+      if (api.getBulkOnboardingUrl().equals(routingContext.request().path())) {
+        routingContext.next();
+        return;
+      }
+      timeoutHandler.handle(routingContext);
+    });
+    router.route().handler(routingContext -> {
+      Deadline.after(api.getBulkOnboardingUrl().equals(routingContext.request().path())
+          ? bulkOnboardingTimeoutMs - DEADLINE_MARGIN_MS
+          : requestTimeoutMs - DEADLINE_MARGIN_MS).attach();
+      routingContext.next();
+    });
+
     ExceptionHandler exceptionHandler = new ExceptionHandler();
 
 
 
+    // bulk item API
+    router.post(api.getBulkOnboardingUrl()).failureHandler(exceptionHandler)
+        .handler(this::createItems);
+
     // item API
     router.post(api.getOnboardingUrl()).failureHandler(exceptionHandler).handler(this::createItem);
     router.get(api.getOnboardingUrl()).failureHandler(exceptionHandler).handler(this::getItem);
@@ -126,6 +186,14 @@ public class ApiServerVerticle extends AbstractVerticle {
     router.put(api.getMlayerDomainApi()).failureHandler(exceptionHandler).handler(this::updateDomain);
     router.get(api.getMlayerDomainApi()).failureHandler(exceptionHandler).handler(this::getDomain);
 
+    // replication status of write-behind central catalogue writes
+    router.get(api.getReplicationApi()).failureHandler(exceptionHandler)
+        .handler(this::getReplicationStatus);
+
+    // flushes the local catalogue cache of every node
+    router.delete(api.getCacheApi()).failureHandler(exceptionHandler)
+        .handler(this::flushCatalogueCache);
+
     // documentation apis
     router.get("/apis/spec")
         .produces("application/json")
@@ -147,9 +215,12 @@ public class ApiServerVerticle extends AbstractVerticle {
     server = vertx.createHttpServer(serverOptions);
     server.requestHandler(router).listen(port);
 
+    DeadlinePropagation.install(vertx);
     tokenService = TokenService.createProxy(vertx, TOKEN_ADDRESS);
     catalogueService = CatalogueUtilService.createProxy(vertx, CATALOGUE_ADDRESS);
+    localCatalogue = new LocalCatalogueReader(vertx, config());
     resourceServerService = ResourceServerService.createProxy(vertx, RS_SERVICE_ADDRESS);
+    probeTokenReadiness();
     /* Print the deployed endpoints */
     LOGGER.info("API server deployed on: " + port);
   }
@@ -209,6 +280,40 @@ public class ApiServerVerticle extends AbstractVerticle {
     });
   }
 
+  /**
+   * Polls the token service readiness address until it reports ready. The token verticle may be
+   * deployed after this one, so an unanswered probe simply means "not ready yet".
+   */
+  private void probeTokenReadiness() {
+    vertx.setPeriodic(0, READINESS_PROBE_INTERVAL_MS, timerId ->
+        vertx.eventBus().<JsonObject>request(TOKEN_READINESS_ADDRESS, null)
+            .onSuccess(reply -> {
+              if (!tokenServiceReady && reply.body().getBoolean("ready", false)) {
+                tokenServiceReady = true;
+                vertx.cancelTimer(timerId);
+                LOGGER.info("Token service ready, accepting onboarding requests");
+              }
+            }));
+  }
+
+  /**
+   * Rejects API calls with 503 and a Retry-After header until the token service is ready, so that
+   * requests arriving right after a restart do not fail midway through an onboarding flow. The
+   * API documentation stays available.
+   */
+  private void readinessGate(RoutingContext routingContext) {
+    String path = routingContext.request().path();
+    if (tokenServiceReady || path.startsWith("/apis")) {
+      routingContext.next();
+      return;
+    }
+    routingContext.response()
+        .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+        .putHeader(HEADER_RETRY_AFTER, RETRY_AFTER_SECONDS)
+        .setStatusCode(HttpStatusCode.SERVICE_UNAVAILABLE.getValue())
+        .end(errorResponse(HttpStatusCode.SERVICE_UNAVAILABLE));
+  }
+
   /**
    * Sets the server options based on the configuration settings. If SSL is enabled, starts an HTTPS
    * server with the specified HTTP port. If SSL is disabled, starts an HTTP server with the
@@ -232,22 +337,51 @@ public class ApiServerVerticle extends AbstractVerticle {
   private void createItem(RoutingContext routingContext) {
     MultiMap tokenHeadersMap = routingContext.request().headers();
     HttpServerResponse response = routingContext.response();
-    JsonObject requestBody;
+    // forwarded to the catalogues as it came, see CatalogueUtilService#createItemFromBody
+    String requestBody = routingContext.body().asString();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
-    requestBody = routingContext.body().asJsonObject();
+    onboardItem(requestBody, tokenHeadersMap)
+        .onComplete(completeHandler -> {
+          if (completeHandler.succeeded()) {
+            response
+                .setStatusCode(201)
+                .end(completeHandler.result().toString());
+          } else {
+            handleResponse(response, completeHandler.cause());
+          }
+        });
+  }
+
+  /**
+   * Creates an item on the catalogues, and the adapter of a resource group.
+   *
+   * @return the success response
+   */
+  private Future<JsonObject> onboardItem(String requestBody, MultiMap tokenHeadersMap) {
     ResultContainer resultContainer = new ResultContainer();
 
-    catalogueService
-        .createItem(requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
+    // with parallel writes the id is allocated up front and both catalogues written at once
+    Future<JsonObject> itemCreated = isUacAvailable && isParallelWrites
+        ? catalogueService.createItemOnBoth(requestBody, tokenHeadersMap.get(TOKEN))
+        : catalogueService
+        .createItemFromBody(requestBody, tokenHeadersMap.get(TOKEN))
         .compose(firstHandler -> {
           JsonObject itemBodyWithId = firstHandler.getJsonObject(RESULTS);
-          if (isUacAvailable) {
+          if (isUacAvailable && isWriteBehind) {
+            return catalogueService
+                .replicateToCentral(CentralReplicator.CREATE_ITEM, "", itemBodyWithId)
+                .map(status -> {
+                  resultContainer.replication = status;
+                  return itemBodyWithId;
+                });
+          } else if (isUacAvailable) {
             return catalogueService
                 .createItem(itemBodyWithId, tokenHeadersMap.get(TOKEN), CatalogueType.CENTRAL);
           } else {
             return createAdapterForResourceGroup(tokenHeadersMap, resultContainer, itemBodyWithId);
           }
-        })
+        });
+    return itemCreated
         .compose(nextHandler -> {
           if (isUacAvailable) {
             try {
@@ -272,23 +406,62 @@ public class ApiServerVerticle extends AbstractVerticle {
           }
           return Future.succeededFuture();
         })
-        .onComplete(completeHandler -> {
-          if (completeHandler.succeeded()) {
-            RespBuilder respBuilder = new RespBuilder()
-                .withType("urn:dx:cat:Success")
-                .withTitle("Success")
-                .withDetail("Success: Item has been created successfully")
-                .withResult(resultContainer.result);
-            response
-                .setStatusCode(201)
-                .end(
-                    respBuilder.getResponse());
-          } else {
-            handleResponse(response, completeHandler.cause());
+        .map(completeHandler -> {
+          RespBuilder respBuilder = new RespBuilder()
+              .withType("urn:dx:cat:Success")
+              .withTitle("Success")
+              .withDetail("Success: Item has been created successfully")
+              .withResult(resultContainer.result);
+          if (resultContainer.replication != null) {
+            respBuilder.getJsonResponse().put(REPLICATION, resultContainer.replication);
           }
+          return respBuilder.getJsonResponse();
         });
   }
 
+  /**
+   * Creates the items of a JSON array or an NDJSON body, see {@link BulkOnboarding}. Every item
+   * is answered with a line of NDJSON as soon as it is done, carrying its position in the request,
+   * its status and the response it would have got on its own; a last line sums the request up.
+   * The request is summed up after <code>bulkOnboardingTimeoutMs</code> at the latest.
+   */
+  private void createItems(RoutingContext routingContext) {
+    MultiMap tokenHeadersMap = routingContext.request().headers();
+    HttpServerResponse response = routingContext.response();
+    String contentType = routingContext.request().getHeader(CONTENT_TYPE);
+    boolean ndjson = contentType != null && contentType.startsWith(APPLICATION_NDJSON);
+    BulkOnboarding.parse(routingContext.body().asString(), ndjson, bulkOnboardingMaxItems)
+        // every central write needs the admin token, it is made ready once for all of them
+        .compose(items -> isUacAvailable
+            ? tokenService.createToken().map(adminToken -> items)
+            : Future.succeededFuture(items))
+        .onSuccess(items -> new BulkOnboarding(bulkOnboardingConcurrency)
+            .respond(vertx, items, body -> onboardItem(body, tokenHeadersMap),
+                ApiServerVerticle::bulkResult, response, bulkOnboardingTimeoutMs))
+        .onFailure(failure -> {
+          response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+          handleResponse(response, failure);
+        });
+  }
+
+  private static JsonObject bulkResult(BulkOnboarding.Item item, AsyncResult<JsonObject> result) {
+    JsonObject line = new JsonObject().put("index", item.index());
+    if (item.id() != null) {
+      line.put(ID, item.id());
+    }
+    if (result.succeeded()) {
+      return line.put(STATUS_CODE, 201).put("response", result.result());
+    }
+    String errorMessage = result.cause().getMessage();
+    Object response;
+    try {
+      response = new JsonObject(errorMessage);
+    } catch (RuntimeException e) {
+      response = errorMessage;
+    }
+    return line.put(STATUS_CODE, statusOf(errorMessage)).put("response", response);
+  }
+
   private Future<JsonObject> createAdapterForResourceGroup(MultiMap tokenHeadersMap, ResultContainer resultContainer,
                                                            JsonObject item) {
     String itemType = dxItemType(item.getJsonArray(TYPE));
@@ -313,15 +486,28 @@ public class ApiServerVerticle extends AbstractVerticle {
   private void updateItem(RoutingContext routingContext) {
     MultiMap tokenHeadersMap = routingContext.request().headers();
     HttpServerResponse response = routingContext.response();
-    JsonObject requestBody = routingContext.body().asJsonObject();
+    String requestBody = routingContext.body().asString();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .updateItemOnBoth(requestBody, tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralItem -> response.setStatusCode(200).end(centralItem.toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
-        .updateItem(requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
+        .updateItemFromBody(requestBody, tokenHeadersMap.get(TOKEN))
         .onSuccess(
             localItem -> {
               JsonObject itemBodyWithId = localItem.getJsonObject(RESULTS);
 
-              if (isUacAvailable) {
+              if (isUacAvailable && isWriteBehind) {
+                catalogueService
+                    .replicateToCentral(CentralReplicator.UPDATE_ITEM, "", itemBodyWithId)
+                    .onSuccess(status -> response.setStatusCode(200)
+                        .end(localItem.put(REPLICATION, status).toString()))
+                    .onFailure(replicationFailure -> handleResponse(response, replicationFailure));
+              } else if (isUacAvailable) {
                 catalogueService
                     .updateItem(itemBodyWithId, tokenHeadersMap.get(TOKEN), CatalogueType.CENTRAL)
                     .onSuccess(
@@ -382,6 +568,13 @@ public class ApiServerVerticle extends AbstractVerticle {
         .put(ID, request.getParam(ID));
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
     LOGGER.debug("debugging itemid:{}", itemId);
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .deleteItemOnBoth(itemId, tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralItem -> response.setStatusCode(200).end(centralItem.toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     deleteAdapterForResourceGroup(itemId, tokenHeadersMap)
         .compose(adapterDel -> {
           return catalogueService.deleteItem(requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL);
@@ -409,15 +602,11 @@ public class ApiServerVerticle extends AbstractVerticle {
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
-    catalogueService.getItem(request.getParam(ID), CatalogueType.LOCAL)
-        .onSuccess(
-            getLocalItemSuccessHandler -> {
-              response
-                  .setStatusCode(200)
-                  .end(
-                      getLocalItemSuccessHandler.toString());
-
-            })
+    localCatalogue.getItem(request.getParam(ID))
+        .onSuccess(localItem -> {
+          markSource(response, localItem);
+          response.setStatusCode(200).end(localItem.body());
+        })
         .onFailure(
             getLocalItemFailureHandler -> {
 
@@ -435,6 +624,14 @@ public class ApiServerVerticle extends AbstractVerticle {
         = path.isEmpty() ? new JsonObject().put(ID, routingContext.queryParams().get(ID)) :
             routingContext.body().asJsonObject();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .createInstanceOnBoth(path, requestBody, tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralInstance -> response.setStatusCode(201).end(centralInstance
+              .put(DETAIL, "Success: Instance has been created successfully").toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
         .createInstance(path, requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
         .onSuccess(
@@ -447,7 +644,13 @@ public class ApiServerVerticle extends AbstractVerticle {
                 requestBody.put("instanceId", instanceId);
               }
               LOGGER.info("request body" + requestBody);
-              if (isUacAvailable) {
+              if (isUacAvailable && isWriteBehind) {
+                catalogueService
+                    .replicateToCentral(CentralReplicator.CREATE_INSTANCE, path, requestBody)
+                    .onSuccess(status -> response.setStatusCode(201)
+                        .end(localInstance.put(REPLICATION, status).toString()))
+                    .onFailure(replicationFailure -> handleResponse(response, replicationFailure));
+              } else if (isUacAvailable) {
                 catalogueService
                     .createInstance(path, requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.CENTRAL)
                     .onSuccess(
@@ -481,17 +684,13 @@ public class ApiServerVerticle extends AbstractVerticle {
     HttpServerResponse response = routingContext.response();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
     String path = request.path().contains("/internal/ui") ? "/internal/ui" : "";
-    catalogueService
-        .getInstance(request.getParam(ID), path, CatalogueType.LOCAL)
-        .onSuccess(
-            getLocalItemSuccessHandler -> {
-              LOGGER.info("Response {}", getLocalItemSuccessHandler);
-              LOGGER.info(
-                  "item taken from local cat {}", getLocalItemSuccessHandler.getJsonArray(RESULTS));
-              // call only if response is 200 -success
-              getLocalItemSuccessHandler.put(DETAIL, "Success: Instance fetched successfully");
-              response.setStatusCode(200).end(getLocalItemSuccessHandler.toString());
-            })
+    localCatalogue
+        .getInstance(request.getParam(ID), path)
+        .onSuccess(localInstances -> {
+          markSource(response, localInstances);
+          response.setStatusCode(200);
+          endWithDetail(response, localInstances.body(), "Success: Instance fetched successfully");
+        })
         .onFailure(
             getLocalItemFailureHandler -> {
 
@@ -508,6 +707,14 @@ public class ApiServerVerticle extends AbstractVerticle {
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
 
     String id = routingContext.request().getParam("id");
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .updateInstanceOnBoth(id, requestBody, tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralInstance -> response.setStatusCode(200).end(centralInstance
+              .put(DETAIL, "Instance Updated Successfully").toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
         .updateInstance(id, requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
         .onSuccess(
@@ -553,6 +760,14 @@ public class ApiServerVerticle extends AbstractVerticle {
     JsonObject requestBody = new JsonObject().put(ID, request.getParam(ID));
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
     String path = request.path().contains("/internal/ui") ? "/internal/ui" : "";
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .deleteInstanceOnBoth(path, request.getParam(ID), tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralInstance -> response.setStatusCode(200).end(centralInstance
+              .put(DETAIL, "Instance deleted Successfully").toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
         .deleteInstance(path, requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
         .onSuccess(
@@ -596,6 +811,14 @@ public class ApiServerVerticle extends AbstractVerticle {
     HttpServerResponse response = routingContext.response();
     JsonObject requestBody = routingContext.body().asJsonObject();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .createDomainOnBoth(requestBody, tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralDomain -> response.setStatusCode(201)
+              .end(centralDomain.put(DETAIL, "domain Created Successfully").toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
         .createDomain(requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
         .onSuccess(
@@ -605,7 +828,13 @@ public class ApiServerVerticle extends AbstractVerticle {
               String domainId = localDomain.getJsonArray(RESULTS).getJsonObject(0).getString("id");
               requestBody.put("domainId", domainId);
               LOGGER.info("request body" + requestBody);
-              if (isUacAvailable) {
+              if (isUacAvailable && isWriteBehind) {
+                catalogueService
+                    .replicateToCentral(CentralReplicator.CREATE_DOMAIN, "", requestBody)
+                    .onSuccess(status -> response.setStatusCode(201)
+                        .end(localDomain.put(REPLICATION, status).toString()))
+                    .onFailure(replicationFailure -> handleResponse(response, replicationFailure));
+              } else if (isUacAvailable) {
                 catalogueService
                     .createDomain(requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.CENTRAL)
                     .onSuccess(
@@ -638,6 +867,14 @@ public class ApiServerVerticle extends AbstractVerticle {
     HttpServerResponse response = routingContext.response();
     JsonObject requestBody = new JsonObject().put(ID, request.getParam(ID));
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .deleteDomainOnBoth(request.getParam(ID), tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralDomain -> response.setStatusCode(200).end(centralDomain
+              .put(DETAIL, "Domain deleted Successfully").toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
         .deleteDomain(requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
         .onSuccess(
@@ -683,6 +920,14 @@ public class ApiServerVerticle extends AbstractVerticle {
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
 
     String id = routingContext.request().getParam("id");
+    if (isUacAvailable && isParallelWrites) {
+      catalogueService
+          .updateDomainOnBoth(id, requestBody, tokenHeadersMap.get(TOKEN))
+          .onSuccess(centralDomain -> response.setStatusCode(200).end(centralDomain
+              .put(DETAIL, "Domain Updated Successfully").toString()))
+          .onFailure(failure -> handleResponse(response, failure));
+      return;
+    }
     catalogueService
         .updateDomain(id, requestBody, tokenHeadersMap.get(TOKEN), CatalogueType.LOCAL)
         .onSuccess(
@@ -722,17 +967,13 @@ public class ApiServerVerticle extends AbstractVerticle {
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
-    catalogueService
-        .getDomain(request.getParam(ID), CatalogueType.LOCAL)
-        .onSuccess(
-            getLocalDomainSuccess -> {
-              getLocalDomainSuccess.put(DETAIL, "Domain fetched Successfully");
-              LOGGER.info("Response {}", getLocalDomainSuccess);
-              LOGGER.info(
-                  "item taken from local cat {}", getLocalDomainSuccess.getJsonArray(RESULTS));
-              // call only if response is 200 -success
-              response.setStatusCode(200).end(getLocalDomainSuccess.toString());
-            })
+    localCatalogue
+        .getDomain(request.getParam(ID))
+        .onSuccess(localDomains -> {
+          markSource(response, localDomains);
+          response.setStatusCode(200);
+          endWithDetail(response, localDomains.body(), "Domain fetched Successfully");
+        })
         .onFailure(
             getLocalDomainFailure -> {
               LOGGER.info("Handler Failed {}", getLocalDomainFailure.getLocalizedMessage());
@@ -740,35 +981,121 @@ public class ApiServerVerticle extends AbstractVerticle {
             });
   }
 
+  private void getReplicationStatus(RoutingContext routingContext) {
+    HttpServerResponse response = routingContext.response();
+    response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+    String id = routingContext.queryParams().get(ID);
+    if (id == null) {
+      response.setStatusCode(400).end(new RespBuilder()
+          .withType("urn:dx:cat:InvalidParamValue")
+          .withTitle("Bad Request")
+          .withDetail("Query parameter id is required")
+          .getResponse());
+      return;
+    }
+    catalogueService.getReplicationStatus(id)
+        .onSuccess(status -> response.setStatusCode(200).end(status.toString()))
+        .onFailure(failure -> handleResponse(response, failure));
+  }
+
+  private void flushCatalogueCache(RoutingContext routingContext) {
+    HttpServerResponse response = routingContext.response();
+    response.putHeader(CONTENT_TYPE, APPLICATION_JSON);
+    String token = routingContext.request().getHeader(TOKEN);
+    if (token == null) {
+      response.setStatusCode(401).end(new RespBuilder()
+          .withType("urn:dx:cat:InvalidAuthorizationToken")
+          .withTitle("Not Authorized")
+          .withDetail("Token is required")
+          .getResponse());
+      return;
+    }
+    tokenService.decodeToken(token)
+        .onSuccess(claims -> {
+          JsonArray roles = claims.getJsonObject("realm_access", new JsonObject())
+              .getJsonArray("roles", new JsonArray());
+          if (!roles.contains(adminRole)) {
+            response.setStatusCode(403).end(new RespBuilder()
+                .withType("urn:dx:cat:Forbidden")
+                .withTitle("Forbidden")
+                .withDetail("Flushing the cache needs the " + adminRole + " role")
+                .getResponse());
+            return;
+          }
+          CatalogueCache.flushAll(vertx);
+          response.setStatusCode(200).end(new RespBuilder()
+              .withType("urn:dx:cat:Success")
+              .withTitle("Success")
+              .withDetail("Catalogue cache flushed on every node")
+              .getResponse());
+        })
+        .onFailure(failure -> response.setStatusCode(401).end(new RespBuilder()
+            .withType("urn:dx:cat:InvalidAuthorizationToken")
+            .withTitle("Not Authorized")
+            .withDetail(failure.getMessage())
+            .getResponse()));
+  }
+
+  /* tells the client that the local catalogue failed and its read was served by the central one */
+  private static void markSource(HttpServerResponse response, LocalCatalogueReader.Read read) {
+    if (read.fromCentral()) {
+      response.putHeader(HEADER_CATALOGUE_SOURCE, "central");
+    }
+  }
+
   private void handleResponse(HttpServerResponse response, Throwable localInstance) {
     String errorMessage = localInstance.getMessage();
 
     LOGGER.debug(errorMessage);
 
-    if (errorMessage.contains(":InvalidSchema")) {
-      response.setStatusCode(400).end(errorMessage);
+    int statusCode = statusOf(errorMessage);
+    if (statusCode == 503) {
+      response.putHeader(HEADER_RETRY_AFTER, retryAfter(errorMessage));
+    }
+    response.setStatusCode(statusCode).end(errorMessage);
+  }
+
+  /* HTTP status of a failed request, from the error type in the message */
+  private static int statusOf(String errorMessage) {
+    if (errorMessage == null) {
+      return 500;
+    } else if (errorMessage.contains(":InvalidSchema")) {
+      return 400;
     } else if (errorMessage.contains(":InvalidAuthorizationToken")
             || errorMessage.contains(":invalidAuthorizationToken")) {
-      response.setStatusCode(401).end(errorMessage);
+      return 401;
     } else if (errorMessage.contains(":ItemNotFound")) {
-      response.setStatusCode(404).end(errorMessage);
+      return 404;
     } else if (errorMessage.contains(":InvalidSyntax")) {
-      response.setStatusCode(400).end(errorMessage);
+      return 400;
     } else if (errorMessage.contains(":OperationNotAllowed")) {
-      response.setStatusCode(400).end(errorMessage);
+      return 400;
     } else if (errorMessage.contains(":InvalidUUID")) {
-      response.setStatusCode(400).end(errorMessage);
+      return 400;
     } else if (errorMessage.contains(":LinkValidationFailed")) {
-      response.setStatusCode(400).end(errorMessage);
+      return 400;
     } else if (errorMessage.contains(":urn:dx:cat:InvalidUUID")) {
-      response.setStatusCode(400).end(errorMessage);
+      return 400;
+    } else if (errorMessage.contains(":serviceUnavailable")) {
+      return 503;
     } else {
-      response.setStatusCode(500).end(errorMessage);
+      return 500;
+    }
+  }
+
+  /* Retry-After asked for by the failing service (e.g. an open circuit breaker), or the default */
+  private static String retryAfter(String errorMessage) {
+    try {
+      Long retryAfter = new JsonObject(errorMessage).getLong("retryAfter");
+      return retryAfter != null ? retryAfter.toString() : RETRY_AFTER_SECONDS;
+    } catch (RuntimeException e) {
+      return RETRY_AFTER_SECONDS;
     }
   }
 
   final class ResultContainer {
     JsonObject result;
+    JsonObject replication;
   }
 
 }
@@ -0,0 +1,282 @@
+package iudx.onboarding.server.apiserver;
+
+import static iudx.onboarding.server.apiserver.util.Constants.APPLICATION_NDJSON;
+import static iudx.onboarding.server.apiserver.util.Constants.CONTENT_TYPE;
+import static iudx.onboarding.server.common.Constants.ID;
+import static iudx.onboarding.server.common.Constants.ITEM_TYPE_COS;
+import static iudx.onboarding.server.common.Constants.ITEM_TYPE_OWNER;
+import static iudx.onboarding.server.common.Constants.ITEM_TYPE_PROVIDER;
+import static iudx.onboarding.server.common.Constants.ITEM_TYPE_RESOURCE_GROUP;
+import static iudx.onboarding.server.common.Constants.ITEM_TYPE_RESOURCE_SERVER;
+import static iudx.onboarding.server.common.Constants.TYPE;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iudx.onboarding.server.apiserver.util.RespBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Onboarding of many items in one request. The items are created in the order their links need,
+ * owners and COS first, then resource servers, providers, resource groups and last resources,
+ * each tier only once the one before it is done. Within a tier up to {@link #concurrency} items
+ * are created at once, so the throughput is bound by what the catalogues take rather than by the
+ * round trips of the client.
+ */
+final class BulkOnboarding {
+
+  /* item types in the order they have to be created in, anything else goes last */
+  private static final List<String> TIERS = List.of(ITEM_TYPE_OWNER, ITEM_TYPE_COS,
+      ITEM_TYPE_RESOURCE_SERVER, ITEM_TYPE_PROVIDER, ITEM_TYPE_RESOURCE_GROUP);
+
+  private final int concurrency;
+
+  BulkOnboarding(int concurrency) {
+    this.concurrency = Math.max(1, concurrency);
+  }
+
+  /**
+   * Reads the items of a request, either a JSON array or one JSON object per line (NDJSON).
+   *
+   * @param maxItems the most items a request may carry
+   * @return the items in request order, or a failure with an <code>InvalidSchema</code> response
+   */
+  static Future<List<Item>> parse(String body, boolean ndjson, int maxItems) {
+    List<Item> items = new ArrayList<>();
+    try {
+      if (ndjson) {
+        for (String line : body == null ? new String[0] : body.split("\r?\n")) {
+          if (!line.isBlank()) {
+            items.add(new Item(items.size(), line, new JsonObject(line)));
+          }
+        }
+      } else {
+        JsonArray array = new JsonArray(body == null ? "" : body);
+        for (int i = 0; i < array.size(); i++) {
+          JsonObject item = array.getJsonObject(i);
+          if (item == null) {
+            return Future.failedFuture(invalid("Invalid Json payload"));
+          }
+          items.add(new Item(i, item.encode(), item));
+        }
+      }
+    } catch (DecodeException | ClassCastException e) {
+      return Future.failedFuture(invalid("Invalid Json payload"));
+    }
+    if (items.isEmpty()) {
+      return Future.failedFuture(invalid("No items to onboard"));
+    }
+    if (items.size() > maxItems) {
+      return Future.failedFuture(
+          invalid("At most " + maxItems + " items can be onboarded at once"));
+    }
+    return Future.succeededFuture(items);
+  }
+
+  /**
+   * Answers a request with a line of NDJSON for every item as soon as it is done and a last line
+   * summing the request up. Items are only started while the client keeps up with the lines sent
+   * so far, and not at all once it went away. When the timeout runs out the request is summed up
+   * right away, the items not done by then counted as failed.
+   *
+   * @param line the line answering an item
+   * @param timeoutMs time the whole request may take, in milliseconds
+   * @return completed once the response is ended
+   */
+  Future<Void> respond(Vertx vertx, List<Item> items, Function<String, Future<JsonObject>> onboard,
+                       BiFunction<Item, AsyncResult<JsonObject>, JsonObject> line,
+                       HttpServerResponse response, long timeoutMs) {
+    response.setStatusCode(200).setChunked(true).putHeader(CONTENT_TYPE, APPLICATION_NDJSON);
+    List<Promise<Void>> waiting = new ArrayList<>();
+    Runnable resume = () -> {
+      List<Promise<Void>> ready = new ArrayList<>(waiting);
+      waiting.clear();
+      ready.forEach(Promise::tryComplete);
+    };
+    response.drainHandler(drained -> resume.run());
+    response.closeHandler(closed -> resume.run());
+    Supplier<Future<Void>> writable = () -> {
+      if (!response.writeQueueFull() || response.closed() || response.ended()) {
+        return Future.succeededFuture();
+      }
+      Promise<Void> ready = Promise.promise();
+      waiting.add(ready);
+      return ready.future();
+    };
+
+    AtomicInteger created = new AtomicInteger();
+    Promise<Void> ended = Promise.promise();
+    Runnable end = () -> {
+      if (response.ended() || response.closed()) {
+        ended.tryComplete();
+        return;
+      }
+      int failed = items.size() - created.get();
+      response.end(new RespBuilder()
+          .withType(failed == 0 ? "urn:dx:cat:Success" : "urn:dx:cat:PartialSuccess")
+          .withTitle(failed == 0 ? "Success" : "Partial Success")
+          .withDetail(created.get() + " of " + items.size() + " items created")
+          .getJsonResponse()
+          .put("total", items.size())
+          .put("failed", failed)
+          .encode() + "\n")
+          .onComplete(ended);
+    };
+    long timer = vertx.setTimer(Math.max(1, timeoutMs), expired -> {
+      end.run();
+      resume.run();
+    });
+    run(items, onboard, (item, result) -> {
+      if (result.succeeded()) {
+        created.incrementAndGet();
+      }
+      if (!response.ended() && !response.closed()) {
+        response.write(line.apply(item, result).encode() + "\n");
+      }
+    }, () -> response.closed() || response.ended(), writable)
+        .onComplete(done -> {
+          vertx.cancelTimer(timer);
+          end.run();
+        });
+    return ended.future();
+  }
+
+  /**
+   * Creates the items tier by tier, each tier in request order.
+   *
+   * @param onboard creates one item, from its body
+   * @param onResult called with every item as soon as it is done
+   * @param cancelled tells when to stop starting items, e.g. once the client went away
+   * @param writable completes once the next item may be started, e.g. once the client caught up
+   * @return the number of items that were not created
+   */
+  Future<Integer> run(List<Item> items, Function<String, Future<JsonObject>> onboard,
+                      BiConsumer<Item, AsyncResult<JsonObject>> onResult,
+                      BooleanSupplier cancelled, Supplier<Future<Void>> writable) {
+    List<List<Item>> tiers = new ArrayList<>();
+    for (int i = 0; i <= TIERS.size(); i++) {
+      tiers.add(new ArrayList<>());
+    }
+    items.forEach(item -> tiers.get(tier(item.item().getValue(TYPE))).add(item));
+    AtomicInteger created = new AtomicInteger();
+    Future<Void> done = Future.succeededFuture();
+    for (List<Item> tier : tiers) {
+      done = done.compose(previous -> runTier(tier, onboard, (item, result) -> {
+        if (result.succeeded()) {
+          created.incrementAndGet();
+        }
+        onResult.accept(item, result);
+      }, cancelled, writable));
+    }
+    return done.map(finished -> items.size() - created.get());
+  }
+
+  /* position of the item type in the creation order */
+  static int tier(Object type) {
+    if (!(type instanceof JsonArray)) {
+      return TIERS.size();
+    }
+    int tier = TIERS.size();
+    for (Object name : (JsonArray) type) {
+      int index = TIERS.indexOf(name);
+      if (index >= 0) {
+        tier = Math.min(tier, index);
+      }
+    }
+    return tier;
+  }
+
+  private Future<Void> runTier(List<Item> tier, Function<String, Future<JsonObject>> onboard,
+                               BiConsumer<Item, AsyncResult<JsonObject>> onResult,
+                               BooleanSupplier cancelled, Supplier<Future<Void>> writable) {
+    if (tier.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    Promise<Void> promise = Promise.promise();
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger running = new AtomicInteger();
+    for (int i = 0; i < Math.min(concurrency, tier.size()); i++) {
+      startNext(tier, next, running, onboard, onResult, cancelled, writable, promise);
+    }
+    return promise.future();
+  }
+
+  private void startNext(List<Item> tier, AtomicInteger next, AtomicInteger running,
+                         Function<String, Future<JsonObject>> onboard,
+                         BiConsumer<Item, AsyncResult<JsonObject>> onResult,
+                         BooleanSupplier cancelled, Supplier<Future<Void>> writable,
+                         Promise<Void> promise) {
+    int index = cancelled.getAsBoolean() ? tier.size() : next.getAndIncrement();
+    if (index >= tier.size()) {
+      if (running.get() == 0) {
+        promise.tryComplete();
+      }
+      return;
+    }
+    Item item = tier.get(index);
+    running.incrementAndGet();
+    Future<JsonObject> created;
+    try {
+      created = onboard.apply(item.body());
+    } catch (RuntimeException e) {
+      created = Future.failedFuture(e);
+    }
+    created.onComplete(result -> {
+      running.decrementAndGet();
+      onResult.accept(item, result);
+      // the next item waits for the client to take the results sent so far
+      writable.get().onComplete(ready ->
+          startNext(tier, next, running, onboard, onResult, cancelled, writable, promise));
+    });
+  }
+
+  private static String invalid(String detail) {
+    return new RespBuilder()
+        .withType("urn:dx:cat:InvalidSchema")
+        .withTitle("Invalid Schema")
+        .withDetail(detail)
+        .getResponse();
+  }
+
+  /** An item of the request, with its position in it. */
+  static final class Item {
+    private final int index;
+    private final String body;
+    private final JsonObject item;
+
+    Item(int index, String body, JsonObject item) {
+      this.index = index;
+      this.body = body;
+      this.item = item;
+    }
+
+    int index() {
+      return index;
+    }
+
+    String body() {
+      return body;
+    }
+
+    JsonObject item() {
+      return item;
+    }
+
+    /** The id the item was sent with, if any. */
+    String id() {
+      return item.getString(ID);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package iudx.onboarding.server.apiserver.exceptions;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.serviceproxy.ServiceException;
+import iudx.onboarding.server.common.FailureClassifier;
+
+/**
+ * Non-success response from an upstream server (catalogue, resource server). The message is the
+ * upstream response body, so existing URN based error mapping keeps working, while the HTTP status
+ * and Retry-After are kept for retry decisions. Being a {@link ServiceException}, the status also
+ * survives the event bus when raised inside a service proxy implementation, and the Retry-After
+ * with it as debug info.
+ */
+public class UpstreamException extends ServiceException {
+  private static final long serialVersionUID = 1L;
+  private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+  private final long retryAfterSeconds;
+
+  public UpstreamException(final int statusCode, final String message,
+                           final long retryAfterSeconds) {
+    super(statusCode, message,
+        new JsonObject().put(FailureClassifier.RETRY_AFTER, retryAfterSeconds));
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * Builds the exception from an upstream response.
+   *
+   * @param response the non-success response
+   * @return exception carrying the status, body and Retry-After of the response
+   */
+  public static UpstreamException from(HttpResponse<Buffer> response) {
+    return new UpstreamException(response.statusCode(), response.bodyAsString(),
+        parseRetryAfter(response.getHeader(RETRY_AFTER_HEADER)));
+  }
+
+  public int getStatusCode() {
+    return failureCode();
+  }
+
+  /**
+   * Seconds the upstream asked us to wait before retrying, or <code>0</code> if it did not say.
+   */
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  /* only the delta-seconds form is supported, an HTTP-date is treated as absent */
+  static long parseRetryAfter(String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -20,6 +20,8 @@ public class Constants {
   public static final String HEADER_OPTIONS = "options";
   public static final String HEADER_PUBLIC_KEY = "publicKey";
   public static final String HEADER_RESPONSE_FILE_FORMAT = "format";
+  public static final String HEADER_RETRY_AFTER = "Retry-After";
+  public static final String HEADER_CATALOGUE_SOURCE = "x-dx-catalogue-source";
   public static final String MIME_APPLICATION_JSON = "application/json";
   public static final Set<String> ALLOWED_HEADERS =
           new HashSet<>(Arrays.asList(HEADER_ACCEPT, HEADER_TOKEN, HEADER_CONTENT_LENGTH,
@@ -32,16 +34,21 @@ public class Constants {
   // request/response params
   public static final String CONTENT_TYPE = "content-type";
   public static final String APPLICATION_JSON = "application/json";
+  public static final String APPLICATION_NDJSON = "application/x-ndjson";
   public static final String STATUS_CODE = "statusCode";
   public static final String RESULTS = "results";
 
   // endpoints
   public static final String ONBOARDING_API = "/item";
+  public static final String BULK_ONBOARDING_API = "/item/bulk";
   public static final String INGESTION_API = "/ingestion";
   public static final String TOKEN_API = "/token";
   public static final String INSTANCE_API = "/instance";
   public static final String DOMAIN_API = "/domain";
+  public static final String REPLICATION_API = "/replication";
+  public static final String CACHE_API = "/cache";
   public static final String DETAIL = "detail";
+  public static final String REPLICATION = "replication";
 
 
 }
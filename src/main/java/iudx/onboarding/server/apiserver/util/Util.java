@@ -1,15 +1,22 @@
 package iudx.onboarding.server.apiserver.util;
 
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import iudx.onboarding.server.common.HttpStatusCode;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.function.Function;
 
 public class Util {
 
+  private static final byte[] DETAIL_FIELD = "\"detail\"".getBytes(StandardCharsets.UTF_8);
+
   public static Function<String, URI> toUriFunction =
       (value) -> {
         URI uri = null;
@@ -36,4 +43,64 @@ public class Util {
         .put("detail", code.getDescription())
         .toString();
   }
+
+  /**
+   * Ends the response with a JSON object read from upstream, adding a <code>detail</code> field
+   * to it. The upstream bytes are written as they are, followed by the field and the closing brace,
+   * so the object is never decoded. A body that is not a JSON object, or that may already have a
+   * detail, is decoded and encoded again instead.
+   *
+   * @param response response to end
+   * @param body JSON object as the upstream sent it
+   * @param detail value of the detail field
+   */
+  public static void endWithDetail(HttpServerResponse response, Buffer body, String detail) {
+    int closingBrace = closingBrace(body);
+    if (closingBrace < 0 || contains(body, DETAIL_FIELD)) {
+      response.end(body.toJsonObject().put("detail", detail).toBuffer());
+      return;
+    }
+    Buffer tail = Buffer.buffer(isEmptyObject(body, closingBrace) ? "" : ",")
+        .appendBytes(DETAIL_FIELD)
+        .appendString(":")
+        .appendString(Json.encode(detail))
+        .appendString("}");
+    response.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(closingBrace + tail.length()));
+    response.write(body.slice(0, closingBrace));
+    response.end(tail);
+  }
+
+  /* index of the brace closing the object, -1 if the body is not an object */
+  private static int closingBrace(Buffer body) {
+    int start = 0;
+    int end = body.length() - 1;
+    while (start <= end && Character.isWhitespace(body.getByte(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(body.getByte(end))) {
+      end--;
+    }
+    return end > start && body.getByte(start) == '{' && body.getByte(end) == '}' ? end : -1;
+  }
+
+  private static boolean isEmptyObject(Buffer body, int closingBrace) {
+    int last = closingBrace - 1;
+    while (Character.isWhitespace(body.getByte(last))) {
+      last--;
+    }
+    return body.getByte(last) == '{';
+  }
+
+  private static boolean contains(Buffer body, byte[] bytes) {
+    for (int i = 0; i + bytes.length <= body.length(); i++) {
+      int matched = 0;
+      while (matched < bytes.length && body.getByte(i + matched) == bytes[matched]) {
+        matched++;
+      }
+      if (matched == bytes.length) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
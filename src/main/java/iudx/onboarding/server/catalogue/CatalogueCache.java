@@ -0,0 +1,176 @@
+package iudx.onboarding.server.catalogue;
+
+import static iudx.onboarding.server.common.Constants.CATALOGUE_CACHE_ADDRESS;
+import static iudx.onboarding.server.common.Constants.ID;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import iudx.onboarding.server.common.MetricsHelper;
+import iudx.onboarding.server.common.SingleFlight;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Size and TTL bounded cache of the local catalogue reads served by the API, kept as the response
+ * bodies the catalogue sent so they can be passed on without parsing. Every node keeps its own; a
+ * write to the local catalogue evicts the entry right away on the writing node and publishes an
+ * invalidation on the event bus for all the others. Entries changed on the local catalogue around
+ * this server are served until their TTL runs out.
+ */
+public final class CatalogueCache implements Shareable {
+
+  public static final String ITEM = "item";
+  public static final String INSTANCE = "instance";
+  public static final String DOMAIN = "domain";
+  /* fields of the invalidations published to CATALOGUE_CACHE_ADDRESS */
+  public static final String KIND = "kind";
+  public static final String FLUSH = "flush";
+
+  private static final Logger LOGGER = LogManager.getLogger(CatalogueCache.class);
+  private static final String CACHES_MAP = "iudx.onboarding.server.catalogue.cache";
+  private static final String CACHE_KEY = "local";
+  private static final long DEFAULT_MAX_ENTRIES = 10000;
+  private static final long DEFAULT_TTL_MS = 30000;
+  /* instances are read through the API path they were asked on */
+  private static final List<String> INSTANCE_PATHS = List.of("", "/internal/ui");
+
+  private final Cache<String, Buffer> entries;
+  /* bumped by every eviction, so a read started before it does not cache what it got */
+  private final AtomicLong generation = new AtomicLong();
+  private final SingleFlight<String, Buffer> loads = new SingleFlight<>();
+
+  CatalogueCache(Vertx vertx, long maxEntries, long ttlMs) {
+    this.entries = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(Duration.ofMillis(ttlMs))
+        .<String, Buffer>removalListener(removal -> {
+          if (removal.getCause() != RemovalCause.REPLACED) {
+            evictions(removal.getCause()).increment();
+          }
+        })
+        .build();
+    Gauge.builder("dx_catalogue_cache_size", entries, Cache::size)
+        .description("Entries in the local catalogue cache")
+        .register(MetricsHelper.registry());
+    vertx.eventBus().<JsonObject>consumer(CATALOGUE_CACHE_ADDRESS, message -> {
+      JsonObject body = message.body();
+      if (body.getBoolean(FLUSH, false)) {
+        flush();
+      } else {
+        evict(body.getString(KIND), body.getString(ID));
+      }
+    });
+  }
+
+  /**
+   * The cache of this Vert.x instance, created on first use.
+   */
+  public static CatalogueCache shared(Vertx vertx, JsonObject config) {
+    LocalMap<String, CatalogueCache> caches = vertx.sharedData().getLocalMap(CACHES_MAP);
+    return caches.computeIfAbsent(CACHE_KEY, key -> new CatalogueCache(vertx,
+        config.getLong("catalogueCacheMaxEntries", DEFAULT_MAX_ENTRIES),
+        config.getLong("catalogueCacheTtlMs", DEFAULT_TTL_MS)));
+  }
+
+  /**
+   * Evicts an item, instance or domain from the cache of every node.
+   *
+   * @param kind {@link #ITEM}, {@link #INSTANCE} or {@link #DOMAIN}
+   * @param id id of the changed entry, <code>null</code> to evict only the listings of its kind
+   */
+  public static void invalidate(Vertx vertx, String kind, String id) {
+    LocalMap<String, CatalogueCache> caches = vertx.sharedData().getLocalMap(CACHES_MAP);
+    CatalogueCache cache = caches.get(CACHE_KEY);
+    if (cache != null) {
+      cache.evict(kind, id);
+    }
+    vertx.eventBus().publish(CATALOGUE_CACHE_ADDRESS,
+        new JsonObject().put(KIND, kind).put(ID, id));
+  }
+
+  /**
+   * Empties the cache of every node.
+   */
+  public static void flushAll(Vertx vertx) {
+    vertx.eventBus().publish(CATALOGUE_CACHE_ADDRESS, new JsonObject().put(FLUSH, true));
+  }
+
+  /**
+   * Returns the cached response for the entry, or loads and caches it. Concurrent misses of the
+   * same entry share one load. Only successful loads are cached. Callers share the cached bytes
+   * and must not modify them.
+   *
+   * @param kind {@link #ITEM}, {@link #INSTANCE} or {@link #DOMAIN}
+   * @param path API path instances are read through, empty otherwise
+   * @param id id of the entry, <code>null</code> for a listing of all of them
+   * @param loader reads the entry from the local catalogue
+   */
+  Future<Buffer> get(String kind, String path, String id, Supplier<Future<Buffer>> loader) {
+    String key = key(kind, path, id);
+    Buffer cached = entries.getIfPresent(key);
+    if (cached != null) {
+      requests(kind, "hit").increment();
+      return Future.succeededFuture(cached);
+    }
+    requests(kind, "miss").increment();
+    long readAt = generation.get();
+    // a miss after an eviction does not join a load started before it
+    return loads.execute(key + '@' + readAt, () -> loader.get().onSuccess(response -> {
+      if (response != null && generation.get() == readAt) {
+        entries.put(key, response);
+      }
+    }));
+  }
+
+  void evict(String kind, String id) {
+    generation.incrementAndGet();
+    List<String> paths = INSTANCE.equals(kind) ? INSTANCE_PATHS : List.of("");
+    for (String path : paths) {
+      // listings contain the entry as well
+      entries.invalidate(key(kind, path, id));
+      entries.invalidate(key(kind, path, null));
+    }
+  }
+
+  void flush() {
+    generation.incrementAndGet();
+    LOGGER.info("Flushing {} entries of the local catalogue cache", entries.size());
+    entries.invalidateAll();
+  }
+
+  long size() {
+    return entries.size();
+  }
+
+  private static String key(String kind, String path, String id) {
+    return kind + ':' + path + ':' + id;
+  }
+
+  private static Counter evictions(RemovalCause cause) {
+    return Counter.builder("dx_catalogue_cache_evictions")
+        .description("Entries removed from the local catalogue cache")
+        .tag("cause", cause.name().toLowerCase())
+        .register(MetricsHelper.registry());
+  }
+
+  private static Counter requests(String kind, String result) {
+    return Counter.builder("dx_catalogue_cache_requests")
+        .description("Local catalogue reads served from the cache")
+        .tag("kind", kind)
+        .tag("result", result)
+        .register(MetricsHelper.registry());
+  }
+}
@@ -0,0 +1,537 @@
+package iudx.onboarding.server.catalogue;
+
+import static iudx.onboarding.server.common.Constants.CATALOGUE_CACHE_ADDRESS;
+import static iudx.onboarding.server.common.Constants.ID;
+import static iudx.onboarding.server.common.Constants.ITEM_TYPES;
+import static iudx.onboarding.server.common.Constants.TOKEN;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import iudx.onboarding.server.common.MetricsHelper;
+import iudx.onboarding.server.token.TokenService;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Background reconciliation of the central catalogue against the local one.
+ *
+ * <p>The local catalogue is the source of truth: every <code>reconcileIntervalMs</code> the
+ * reconciler enumerates the items, instances and domains of the local catalogue, hashes their
+ * content and spreads the ids over {@link #BUCKETS} buckets by the hash of the id. The digest of a
+ * bucket is kept once all of its ids were found to match the central catalogue. On the next sweep
+ * only buckets whose local digest changed since are compared against the central catalogue, one id
+ * at a time, and every <code>reconcileFullSweepEvery</code> sweeps all of them are, to also catch
+ * changes made on the central catalogue directly.
+ *
+ * <p>An entity missing on the central catalogue is created there, one whose content differs is
+ * updated and one that was reconciled before but is gone locally is deleted, all through the
+ * {@link CentralCatImpl} write methods with the server's token. The listings are paged by offset
+ * and shift under concurrent deletes, so a missing or extra entity is first looked up on the local
+ * catalogue directly. Entities with write-behind replication still pending are left to the
+ * {@link CentralReplicator}, and those written locally in the last <code>reconcileSettleMs</code>,
+ * as seen from the invalidations of the {@link CatalogueCache}, to the request writing them.
+ * At most <code>reconcileConcurrency</code> ids are checked at once, and each lane waits as long
+ * as its last upstream call took before the next, which keeps the reconciler from loading a
+ * catalogue that is already slow.
+ *
+ * <p>Divergence found by the last sweep is exported as <code>dx_reconciliation_divergence</code>,
+ * repairs as <code>dx_reconciliation_repairs</code> and sweep time as
+ * <code>dx_reconciliation_sweep_duration</code>.
+ */
+public final class CatalogueReconciler implements Shareable {
+
+  static final int BUCKETS = 256;
+
+  private static final Logger LOGGER = LogManager.getLogger(CatalogueReconciler.class);
+  private static final String RECONCILERS_MAP = "iudx.onboarding.server.catalogue.reconcilers";
+  private static final String UI_PATH = "/internal/ui";
+  private static final String RESULTS = "results";
+  private static final int DEFAULT_CONCURRENCY = 2;
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int DEFAULT_FULL_SWEEP_EVERY = 24;
+  private static final long DEFAULT_SETTLE_MS = 60000;
+  /* fields the catalogues fill in themselves, which may differ without the entity differing */
+  private static final List<String> SERVER_FIELDS =
+      List.of("itemCreatedAt", "itemStatus", "instanceId", "domainId");
+
+  enum Kind {
+    ITEM,
+    INSTANCE,
+    DOMAIN
+  }
+
+  enum Divergence {
+    MISSING,
+    DIFFERENT,
+    EXTRA
+  }
+
+  private final Vertx vertx;
+  private final Context context;
+  private final TokenService tokenService;
+  private final LocalCatImpl localCat;
+  private final CentralCatImpl centralCat;
+  private final CentralReplicator replicator;
+  private final int concurrency;
+  private final int pageSize;
+  private final int fullSweepEvery;
+  private final long settleMs;
+  /* when ids were last written to the local catalogue, for as long as they are settling */
+  private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+  private final Map<Kind, ReconciledTree> trees = new EnumMap<>(Kind.class);
+  private final Map<String, AtomicLong> divergence = new HashMap<>();
+  private final Timer sweepDuration;
+  private long sweeps;
+
+  CatalogueReconciler(Vertx vertx, JsonObject config, TokenService tokenService,
+                      LocalCatImpl localCat, CentralCatImpl centralCat,
+                      CentralReplicator replicator) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.tokenService = tokenService;
+    this.localCat = localCat;
+    this.centralCat = centralCat;
+    this.replicator = replicator;
+    this.concurrency = config.getInteger("reconcileConcurrency", DEFAULT_CONCURRENCY);
+    this.pageSize = config.getInteger("reconcilePageSize", DEFAULT_PAGE_SIZE);
+    this.fullSweepEvery = config.getInteger("reconcileFullSweepEvery", DEFAULT_FULL_SWEEP_EVERY);
+    this.settleMs = config.getLong("reconcileSettleMs", DEFAULT_SETTLE_MS);
+    vertx.eventBus().<JsonObject>consumer(CATALOGUE_CACHE_ADDRESS, message -> {
+      String id = message.body().getString(ID);
+      if (id != null) {
+        recentWrites.put(id, System.currentTimeMillis());
+      }
+    });
+    for (Kind kind : Kind.values()) {
+      trees.put(kind, new ReconciledTree());
+      for (Divergence type : Divergence.values()) {
+        AtomicLong count = new AtomicLong();
+        divergence.put(key(kind, type), count);
+        Gauge.builder("dx_reconciliation_divergence", count, AtomicLong::get)
+            .description("Entities the last sweep found out of sync on the central catalogue")
+            .tag("kind", name(kind))
+            .tag("divergence", type.name().toLowerCase(Locale.ROOT))
+            .register(MetricsHelper.registry());
+      }
+    }
+    this.sweepDuration = Timer.builder("dx_reconciliation_sweep_duration")
+        .description("Time taken by a reconciliation sweep")
+        .register(MetricsHelper.registry());
+  }
+
+  /**
+   * Schedules the reconciler of this Vert.x instance, unless it already runs.
+   *
+   * @param intervalMs pause between the end of a sweep and the start of the next
+   */
+  static CatalogueReconciler start(Vertx vertx, JsonObject config, long intervalMs,
+                                   TokenService tokenService, LocalCatImpl localCat,
+                                   CentralCatImpl centralCat, CentralReplicator replicator) {
+    LocalMap<String, CatalogueReconciler> reconcilers =
+        vertx.sharedData().getLocalMap(RECONCILERS_MAP);
+    return reconcilers.computeIfAbsent(RECONCILERS_MAP, name -> {
+      CatalogueReconciler reconciler = new CatalogueReconciler(vertx, config, tokenService,
+          localCat, centralCat, replicator);
+      reconciler.schedule(intervalMs);
+      LOGGER.info("Catalogue reconciliation every {} ms", intervalMs);
+      return reconciler;
+    });
+  }
+
+  private void schedule(long intervalMs) {
+    vertx.setTimer(intervalMs, id -> context.runOnContext(run -> sweep()
+        .onFailure(cause -> LOGGER.error("Reconciliation sweep failed: {}", cause.getMessage()))
+        .onComplete(ar -> schedule(intervalMs))));
+  }
+
+  /**
+   * Runs one sweep over all entity kinds. A kind whose local enumeration fails is skipped, since
+   * nothing can be concluded from a partial listing.
+   */
+  Future<Void> sweep() {
+    long started = System.nanoTime();
+    boolean full = sweeps++ % fullSweepEvery == 0;
+    long settled = System.currentTimeMillis() - settleMs;
+    recentWrites.values().removeIf(writtenAt -> writtenAt < settled);
+    Future<Void> sweep = Future.succeededFuture();
+    for (Kind kind : Kind.values()) {
+      sweep = sweep.compose(v -> sweep(kind, full).recover(cause -> {
+        LOGGER.warn("Reconciliation of {} skipped: {}", name(kind), cause.getMessage());
+        return Future.succeededFuture();
+      }));
+    }
+    return sweep.onComplete(ar ->
+        sweepDuration.record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+  }
+
+  private Future<Void> sweep(Kind kind, boolean full) {
+    return enumerate(kind).compose(local -> {
+      ReconciledTree tree = trees.get(kind);
+      Map<Integer, Map<String, String>> buckets = new TreeMap<>();
+      for (Map.Entry<String, JsonObject> entity : local.entrySet()) {
+        buckets.computeIfAbsent(bucketOf(entity.getKey()), bucket -> new TreeMap<>())
+            .put(entity.getKey(), contentHash(entity.getValue()));
+      }
+      Queue<Check> checks = new ArrayDeque<>();
+      Map<Integer, BucketSweep> examined = new HashMap<>();
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        Map<String, String> hashes = buckets.getOrDefault(bucket, Map.of());
+        byte[] digest = bucketDigest(hashes);
+        if (!full && Arrays.equals(digest, tree.digests[bucket])) {
+          continue;
+        }
+        BucketSweep bucketSweep = new BucketSweep(bucket, digest, hashes.keySet());
+        examined.put(bucket, bucketSweep);
+        Set<String> ids = new TreeSet<>(hashes.keySet());
+        ids.addAll(tree.ids.get(bucket));
+        for (String id : ids) {
+          checks.add(new Check(kind, id, local.get(id), bucketSweep));
+        }
+      }
+      Map<Divergence, Integer> found = new EnumMap<>(Divergence.class);
+      List<Future<Void>> lanes = new ArrayList<>();
+      for (int lane = 0; lane < concurrency; lane++) {
+        lanes.add(lane(checks, found));
+      }
+      return Future.join(lanes).transform(ar -> {
+        for (BucketSweep bucketSweep : examined.values()) {
+          if (bucketSweep.consistent) {
+            tree.digests[bucketSweep.bucket] = bucketSweep.digest;
+            tree.ids.set(bucketSweep.bucket, new HashSet<>(bucketSweep.ids));
+          }
+        }
+        for (Divergence type : Divergence.values()) {
+          divergence.get(key(kind, type)).set(found.getOrDefault(type, 0));
+        }
+        LOGGER.info("Reconciled {}: {} of {} buckets compared, divergence {}", name(kind),
+            examined.size(), BUCKETS, found);
+        return Future.<Void>succeededFuture();
+      });
+    });
+  }
+
+  /* checks queued ids one after the other, pausing as long as the last check took */
+  private Future<Void> lane(Queue<Check> checks, Map<Divergence, Integer> found) {
+    Check check = checks.poll();
+    if (check == null) {
+      return Future.succeededFuture();
+    }
+    long started = System.currentTimeMillis();
+    return check(check, found)
+        .recover(cause -> {
+          check.bucket.consistent = false;
+          LOGGER.warn("Reconciliation of {} {} failed: {}", name(check.kind), check.id,
+              cause.getMessage());
+          return Future.succeededFuture();
+        })
+        .compose(v -> pause(System.currentTimeMillis() - started))
+        .compose(v -> lane(checks, found));
+  }
+
+  private Future<Void> pause(long ms) {
+    return ms <= 0 ? Future.succeededFuture() : vertx.timer(ms).mapEmpty();
+  }
+
+  private Future<Void> check(Check check, Map<Divergence, Integer> found) {
+    if (settling(check)) {
+      return Future.succeededFuture();
+    }
+    return central(check.kind, check.id).compose(central -> {
+      Divergence listed = divergence(check.local, central);
+      if (listed != Divergence.MISSING && listed != Divergence.EXTRA) {
+        return repair(check, check.local, listed, found);
+      }
+      // the entity may have been shifted into or out of the listing by a concurrent delete
+      return local(check.kind, check.id).compose(local -> {
+        Divergence type = divergence(local, central);
+        if (type != listed) {
+          check.bucket.consistent = false;
+        }
+        return settling(check) ? Future.succeededFuture() : repair(check, local, type, found);
+      });
+    });
+  }
+
+  /* whether the id is still being written by someone else, comparing now would only race it */
+  private boolean settling(Check check) {
+    Long writtenAt = recentWrites.get(check.id);
+    if ((replicator != null && replicator.hasPending(check.id))
+        || (writtenAt != null && writtenAt >= System.currentTimeMillis() - settleMs)) {
+      check.bucket.consistent = false;
+      return true;
+    }
+    return false;
+  }
+
+  private static Divergence divergence(JsonObject local, JsonObject central) {
+    if (local == null) {
+      return central == null ? null : Divergence.EXTRA;
+    } else if (central == null) {
+      return Divergence.MISSING;
+    }
+    return contentHash(central).equals(contentHash(local)) ? null : Divergence.DIFFERENT;
+  }
+
+  private Future<Void> repair(Check check, JsonObject local, Divergence type,
+                              Map<Divergence, Integer> found) {
+    if (type == null) {
+      return Future.succeededFuture();
+    }
+    found.merge(type, 1, Integer::sum);
+    LOGGER.warn("INCONSISTENCY DETECTED : {} {} {} ON CENTRAL, REPAIRING", name(check.kind),
+        check.id, type);
+    return repair(check, local, type).onComplete(ar -> Counter.builder("dx_reconciliation_repairs")
+        .description("Repairs of the central catalogue made by the reconciler")
+        .tag("kind", name(check.kind))
+        .tag("divergence", type.name().toLowerCase(Locale.ROOT))
+        .tag("outcome", ar.succeeded() ? "succeeded" : "failed")
+        .register(MetricsHelper.registry())
+        .increment()).mapEmpty();
+  }
+
+  /* the entity on the central catalogue, or null if it does not exist there */
+  private Future<JsonObject> central(Kind kind, String id) {
+    switch (kind) {
+      case INSTANCE:
+        return entity(centralCat.getInstance(id, UI_PATH));
+      case DOMAIN:
+        return entity(centralCat.getDomain(id));
+      default:
+        return entity(centralCat.getItem(id));
+    }
+  }
+
+  /* the entity on the local catalogue, or null if it does not exist there */
+  private Future<JsonObject> local(Kind kind, String id) {
+    switch (kind) {
+      case INSTANCE:
+        return entity(localCat.getInstance(id, UI_PATH));
+      case DOMAIN:
+        return entity(localCat.getDomain(id));
+      default:
+        return entity(localCat.getItem(id));
+    }
+  }
+
+  private static Future<JsonObject> entity(Future<JsonObject> lookup) {
+    return lookup.map(response -> {
+      JsonArray results = response.getJsonArray(RESULTS);
+      return results == null || results.isEmpty() ? null : results.getJsonObject(0);
+    }).recover(cause -> isNotFound(cause) ? Future.succeededFuture() : Future.failedFuture(cause));
+  }
+
+  private Future<JsonObject> repair(Check check, JsonObject entity, Divergence type) {
+    return tokenService.createToken().compose(adminToken -> {
+      String token = adminToken.getString(TOKEN);
+      String id = check.id;
+      JsonObject local = entity == null ? null : entity.copy();
+      switch (check.kind) {
+        case INSTANCE:
+          if (type == Divergence.MISSING) {
+            return centralCat.createInstance(local.put("instanceId", id), UI_PATH, token);
+          }
+          return type == Divergence.DIFFERENT ? centralCat.updateInstance(id, local, token)
+              : centralCat.deleteInstance(id, UI_PATH, token);
+        case DOMAIN:
+          if (type == Divergence.MISSING) {
+            return centralCat.createDomain(local.put("domainId", id), token);
+          }
+          return type == Divergence.DIFFERENT ? centralCat.updateDomain(id, local, token)
+              : centralCat.deleteDomain(id, token);
+        default:
+          if (type == Divergence.MISSING) {
+            return centralCat.createItem(local, token);
+          }
+          return type == Divergence.DIFFERENT ? centralCat.updateItem(local, token)
+              : centralCat.deleteItem(id, token);
+      }
+    });
+  }
+
+  /* all local entities of a kind by id, one page at a time */
+  private Future<Map<String, JsonObject>> enumerate(Kind kind) {
+    Map<String, JsonObject> entities = new HashMap<>();
+    switch (kind) {
+      case INSTANCE:
+        return page(localCat::listInstances, 0, entities);
+      case DOMAIN:
+        return page(localCat::listDomains, 0, entities);
+      default:
+        Future<Map<String, JsonObject>> items = Future.succeededFuture(entities);
+        for (String itemType : ITEM_TYPES) {
+          items = items.compose(v -> page(
+              (offset, limit) -> localCat.searchItems(itemType, offset, limit), 0, entities));
+        }
+        return items;
+    }
+  }
+
+  private Future<Map<String, JsonObject>> page(
+      BiFunction<Integer, Integer, Future<JsonObject>> list, int offset,
+      Map<String, JsonObject> entities) {
+    long started = System.currentTimeMillis();
+    return list.apply(offset, pageSize).compose(response -> {
+      JsonArray results = response.getJsonArray(RESULTS, new JsonArray());
+      for (int i = 0; i < results.size(); i++) {
+        JsonObject entity = results.getJsonObject(i);
+        if (entity.getString(ID) != null) {
+          entities.put(entity.getString(ID), entity);
+        }
+      }
+      int next = offset + results.size();
+      if (results.size() < pageSize || next >= response.getInteger("totalHits", next)) {
+        return Future.succeededFuture(entities);
+      }
+      return pause(System.currentTimeMillis() - started)
+          .compose(v -> page(list, next, entities));
+    });
+  }
+
+  static int bucketOf(String id) {
+    return sha256(id.getBytes(StandardCharsets.UTF_8))[0] & 0xff;
+  }
+
+  /**
+   * Hash of the content of an entity, independent of key order and of the fields the catalogues
+   * set themselves.
+   */
+  static String contentHash(JsonObject entity) {
+    JsonObject content = entity.copy();
+    SERVER_FIELDS.forEach(content::remove);
+    return toHex(sha256(canonical(content).getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static byte[] bucketDigest(Map<String, String> hashes) {
+    StringBuilder leaves = new StringBuilder();
+    // the map is sorted, so the digest does not depend on the listing order
+    hashes.forEach((id, hash) -> leaves.append(id).append('\0').append(hash).append('\n'));
+    return sha256(leaves.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static String canonical(Object value) {
+    if (value instanceof Map) {
+      value = new JsonObject((Map<String, Object>) value);
+    } else if (value instanceof List) {
+      value = new JsonArray((List<Object>) value);
+    }
+    if (value instanceof JsonObject) {
+      StringBuilder json = new StringBuilder("{");
+      new TreeMap<>(((JsonObject) value).getMap()).forEach((key, field) -> json
+          .append(json.length() > 1 ? "," : "")
+          .append(Json.encode(key)).append(':').append(canonical(field)));
+      return json.append('}').toString();
+    }
+    if (value instanceof JsonArray) {
+      StringBuilder json = new StringBuilder("[");
+      for (Object element : (JsonArray) value) {
+        json.append(json.length() > 1 ? "," : "").append(canonical(element));
+      }
+      return json.append(']').toString();
+    }
+    return Json.encode(value);
+  }
+
+  private static byte[] sha256(byte[] input) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(input);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private static boolean isNotFound(Throwable cause) {
+    return cause instanceof UpstreamException
+        && (((UpstreamException) cause).getStatusCode() == 404
+        || String.valueOf(cause.getMessage()).toLowerCase(Locale.ROOT).contains(":itemnotfound"));
+  }
+
+  private static String key(Kind kind, Divergence type) {
+    return kind + "/" + type;
+  }
+
+  private static String name(Kind kind) {
+    return kind.name().toLowerCase(Locale.ROOT);
+  }
+
+  /* per bucket, the digest and ids of the last sweep that found it consistent */
+  private static final class ReconciledTree {
+    private final byte[][] digests = new byte[BUCKETS][];
+    private final List<Set<String>> ids = new ArrayList<>(BUCKETS);
+
+    private ReconciledTree() {
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        ids.add(Set.of());
+      }
+    }
+  }
+
+  /* a bucket being compared in the current sweep */
+  private static final class BucketSweep {
+    private final int bucket;
+    private final byte[] digest;
+    private final Set<String> ids;
+    private boolean consistent = true;
+
+    private BucketSweep(int bucket, byte[] digest, Set<String> ids) {
+      this.bucket = bucket;
+      this.digest = digest;
+      this.ids = ids;
+    }
+  }
+
+  /* one id to compare */
+  private static final class Check {
+    private final Kind kind;
+    private final String id;
+    private final JsonObject local;
+    private final BucketSweep bucket;
+
+    private Check(Kind kind, String id, JsonObject local, BucketSweep bucket) {
+      this.kind = kind;
+      this.id = id;
+      this.local = local;
+      this.bucket = bucket;
+    }
+  }
+}
@@ -12,13 +12,13 @@ import static iudx.onboarding.server.common.Constants.POLICY_USER_ID;
 import static iudx.onboarding.server.common.Constants.SUB;
 import static iudx.onboarding.server.common.Constants.TOKEN;
 import static iudx.onboarding.server.common.Constants.TYPE;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_CENTRAL_CATALOGUE;
+import static iudx.onboarding.server.common.Constants.WRITE_BEHIND;
 
-import dev.failsafe.Failsafe;
-import dev.failsafe.RetryPolicy;
-import dev.failsafe.RetryPolicyBuilder;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
@@ -27,100 +27,105 @@ import iudx.onboarding.server.catalogue.service.CentralCatImpl;
 import iudx.onboarding.server.catalogue.service.LocalCatImpl;
 import iudx.onboarding.server.common.CatalogueType;
 import iudx.onboarding.server.common.InconsistencyHandler;
+import iudx.onboarding.server.common.RetryBudget;
+import iudx.onboarding.server.common.RetryEngine;
 import iudx.onboarding.server.minio.MinioService;
+import iudx.onboarding.server.resourceserver.ResourceServerService;
 import iudx.onboarding.server.token.TokenService;
 import java.net.UnknownHostException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class CatalogueServiceImpl implements CatalogueUtilService {
 
   private static final Logger LOGGER = LogManager.getLogger(CatalogueServiceImpl.class);
+  private static final JsonArray DEFAULT_WRITE_ROLES =
+      new JsonArray().add("provider").add("delegate").add("admin").add("cos_admin");
   private final TokenService tokenService;
   private final MinioService minioService;
-  private final RetryPolicyBuilder<Object> retryPolicyBuilder;
+  private final RetryEngine retryEngine;
+  private final ResourceServerService resourceServerService;
   private CentralCatImpl centralCat;
   private LocalCatImpl localCat;
   private InconsistencyHandler inconsistencyHandler;
   private final boolean isMinIO;
+  /* set when central writes are replicated write-behind */
+  private final CentralReplicator replicator;
+  private final LocalCatalogueReader localReader;
+  /* realm roles of which a caller needs one to write both catalogues at once */
+  private final JsonArray writeRoles;
 
   CatalogueServiceImpl(Vertx vertx, TokenService tokenService, MinioService minioService,
-                       RetryPolicyBuilder<Object> retryPolicyBuilder, JsonObject config) {
+                       ResourceServerService resourceServerService, RetryEngine retryEngine,
+                       JsonObject config) {
+    this(vertx, tokenService, minioService, resourceServerService, retryEngine, config,
+        new LocalCatImpl(vertx, config), new CentralCatImpl(vertx, config));
+  }
+
+  CatalogueServiceImpl(Vertx vertx, TokenService tokenService, MinioService minioService,
+                       ResourceServerService resourceServerService, RetryEngine retryEngine,
+                       JsonObject config, LocalCatImpl localCat, CentralCatImpl centralCat) {
     this.tokenService = tokenService;
     this.minioService = minioService;
-    this.retryPolicyBuilder = retryPolicyBuilder;
-    this.centralCat = new CentralCatImpl(vertx, config);
-    this.localCat = new LocalCatImpl(vertx, config);
+    this.resourceServerService = resourceServerService;
+    // every retried operation of this service writes to the central catalogue
+    this.retryEngine =
+        retryEngine.withBudget(RetryBudget.forUpstream(UPSTREAM_CENTRAL_CATALOGUE));
+    this.centralCat = centralCat;
+    this.localCat = localCat;
     this.inconsistencyHandler =
-        new InconsistencyHandler(tokenService, localCat, centralCat, retryPolicyBuilder);
+        new InconsistencyHandler(vertx, config, tokenService, localCat, centralCat,
+            retryEngine);
+    this.inconsistencyHandler.setResourceServerService(resourceServerService);
     this.isMinIO = config.getBoolean("isMinIO", false);
+    this.writeRoles = config.getJsonArray("catalogueWriteRoles", DEFAULT_WRITE_ROLES);
+    this.localReader = new LocalCatalogueReader(localCat, centralCat,
+        LocalCatalogueReader.fallback(config), CatalogueCache.shared(vertx, config));
+    this.replicator = WRITE_BEHIND.equalsIgnoreCase(config.getString("centralWriteMode"))
+        ? CentralReplicator.shared(vertx, config, tokenService, centralCat)
+        : null;
+    // only catalogues kept in sync with the central one have anything to reconcile
+    Long reconcileIntervalMs = config.getLong("reconcileIntervalMs");
+    if (config.getBoolean("isUacAvailable", false) && reconcileIntervalMs != null) {
+      CatalogueReconciler.start(vertx, config, reconcileIntervalMs, tokenService, localCat,
+          centralCat, replicator);
+    }
   }
 
   @Override
   public Future<JsonObject> createItem(JsonObject request, String token,
                                        CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
-    String itemType = dxItemType(request.getJsonArray(TYPE));
     Future<String> keycloakTokenFuture = Future.succeededFuture();
-    if ((isMinIO && itemType.equalsIgnoreCase(ITEM_TYPE_RESOURCE_GROUP) &&
-        catalogueType.equals(CatalogueType.LOCAL)) || (catalogueType.equals(CatalogueType.CENTRAL))) {
+    if (catalogueType.equals(CatalogueType.CENTRAL)) {
       keycloakTokenFuture =
           tokenService.createToken().map(adminToken -> adminToken.getString(TOKEN));
     }
 
     keycloakTokenFuture.compose(keyCloakToken -> {
-      Future<String> bucketUrlFuture = Future.succeededFuture();
-
-      // If MinIO is enabled and the item type is ResourceGroup, create a bucket and set the policy
-      if (isMinIO && itemType.equalsIgnoreCase(ITEM_TYPE_RESOURCE_GROUP)
-          && catalogueType.equals(CatalogueType.LOCAL)) {
-        JsonObject policyRequest = new JsonObject();
-        bucketUrlFuture = tokenService.decodeToken(keyCloakToken)
-            .compose(decodedToken -> {
-              String sub = decodedToken.getString(SUB);
-              policyRequest.put(POLICY_USER_ID, sub);
-              return minioService.createBucket(sub);
-            })
-            .compose(bucketUrl -> {
-              // Add the bucket URL to the request
-              request.put(BUCKET_URL, bucketUrl);
-              // Call attach-bucket-to-user-policy API after bucket creation
-              String bucketName = policyRequest.getString(POLICY_USER_ID) + MINIO_BUCKET_SUFFIX;
-              policyRequest
-                  .put(POLICY_BUCKET, bucketName)
-                  .put(POLICY_CREATE_BUCKET, false);
-
-              return minioService.attachBucketToNamePolicy(policyRequest).map(bucketUrl);
-            });
+      Future<Void> bucketUrlFuture = Future.succeededFuture();
+      if (catalogueType.equals(CatalogueType.LOCAL)) {
+        bucketUrlFuture = attachBucket(request);
       }
 
       return bucketUrlFuture.compose(bucketUrl -> {
         // Determine the catalogue type after setting the bucket URL
         if (catalogueType.equals(CatalogueType.CENTRAL)) {
-          RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-              .onSuccess(
-                  successListener -> promise.complete((JsonObject) successListener.getResult()))
-              .onFailure(listener -> {
+          retryEngine.execute("central.createItem", () ->
+                  centralCat.createItem(request, keyCloakToken)
+                      .map(result -> result.getJsonObject(RESULTS)))
+              .onSuccess(promise::complete)
+              .onFailure(cause -> {
                 LOGGER.warn("Failed to upload item to central");
                 String id = request.getString(ID);
                 Future.future(f -> inconsistencyHandler.handleDeleteOnLocal(id, token));
-                promise.fail(listener.getException().getMessage());
-              })
-              .build();
-
-          Failsafe.with(retryPolicy)
-              .getAsyncExecution(asyncExecution -> {
-                centralCat.createItem(request, keyCloakToken)
-                    .onComplete(ar -> {
-                      if (ar.succeeded()) {
-                        asyncExecution.recordResult(ar.result().getJsonObject(RESULTS));
-                      } else {
-                        asyncExecution.recordException(
-                            new DxRuntimeException(400, ar.cause().getMessage()));
-                      }
-                    });
+                promise.fail(cause.getMessage());
               });
         } else if (catalogueType.equals(CatalogueType.LOCAL)) {
           localCat.createItem(request, token).onComplete(completeHandler -> {
@@ -136,11 +141,170 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
 
         return promise.future();
       });
-    });
+    }).onFailure(promise::tryFail);
 
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> createItemFromBody(String body, String token) {
+    return ItemBody.parse(body).compose(item -> {
+      if (!needsBucket(item.type())) {
+        return localCat.createItemFromBody(item.forwarded(), token);
+      }
+      return createItem(item.decode(), token, CatalogueType.LOCAL);
+    });
+  }
+
+  @Override
+  public Future<JsonObject> createItemOnBoth(String body, String token) {
+    return ItemBody.parse(body).compose(item -> {
+      if (item.id() != null && !needsBucket(item.type())) {
+        return createItemOnBoth(item.id(), item.forwarded(), token, Future::succeededFuture);
+      }
+      // the item has to be changed before it is forwarded
+      JsonObject decoded = item.decode();
+      decoded.remove(TOKEN);
+      if (decoded.getString(ID) == null) {
+        decoded.put(ID, UUID.randomUUID().toString());
+      }
+      if (!needsBucket(item.type())) {
+        return createItemOnBoth(decoded.getString(ID), decoded.toBuffer(), token,
+            Future::succeededFuture);
+      }
+      // the item carries the URL of its bucket, which is only made once the local catalogue
+      // accepted the item
+      return bucketOwner().compose(owner -> minioService.getBucketUrl(owner)
+          .compose(bucketUrl -> {
+            decoded.put(BUCKET_URL, bucketUrl);
+            return createItemOnBoth(decoded.getString(ID), decoded.toBuffer(), token,
+                () -> provisionBucket(owner).mapEmpty());
+          }));
+    });
+  }
+
+  private Future<JsonObject> createItemOnBoth(String id, Buffer item, String token,
+                                              Supplier<Future<Void>> afterLocal) {
+    Promise<JsonObject> localCreated = Promise.promise();
+    return onBoth("create", token,
+        () -> localCat.createItemFromBody(item, token)
+            .onComplete(localCreated)
+            .compose(created -> afterLocal.get().map(created).onFailure(cause ->
+                inconsistencyHandler.handleDeleteOnLocal(id, token))),
+        centralWrite("central.createItem",
+            adminToken -> centralCat.createItemFromBody(item, adminToken)),
+        () -> inconsistencyHandler.handleDeleteOnLocal(id, token),
+        () -> inconsistencyHandler.handleDeleteOnCentral(id))
+        .map(created -> localCreated.future().result().getJsonObject(RESULTS));
+  }
+
+  private boolean needsBucket(JsonArray type) {
+    return isMinIO && type != null
+        && dxItemType(type).equalsIgnoreCase(ITEM_TYPE_RESOURCE_GROUP);
+  }
+
+  /* with MinIO, a resource group gets a bucket; its URL is added to the item */
+  private Future<Void> attachBucket(JsonObject request) {
+    if (!needsBucket(request.getJsonArray(TYPE))) {
+      return Future.succeededFuture();
+    }
+    return bucketOwner()
+        .compose(this::provisionBucket)
+        // Add the bucket URL to the request
+        .map(bucketUrl -> request.put(BUCKET_URL, bucketUrl))
+        .mapEmpty();
+  }
+
+  /* the buckets belong to the user of the admin token */
+  private Future<String> bucketOwner() {
+    return tokenService.createToken()
+        .compose(adminToken -> tokenService.decodeToken(adminToken.getString(TOKEN)))
+        .map(decodedToken -> decodedToken.getString(SUB));
+  }
+
+  /* creates the bucket unless it exists and attaches it to the policy of its owner */
+  private Future<String> provisionBucket(String owner) {
+    return minioService.createBucket(owner).compose(bucketUrl -> {
+      // Call attach-bucket-to-user-policy API after bucket creation
+      JsonObject policyRequest = new JsonObject()
+          .put(POLICY_USER_ID, owner)
+          .put(POLICY_BUCKET, owner + MINIO_BUCKET_SUFFIX)
+          .put(POLICY_CREATE_BUCKET, false);
+      return minioService.attachBucketToNamePolicy(policyRequest).map(bucketUrl);
+    });
+  }
+
+  /*
+   * Runs the local and the central write of a parallel create, update or delete at the same time
+   * and undoes the one that succeeded if the other one failed. The central catalogue is written with
+   * the admin token, so the caller is authorized up front; the local catalogue still checks the
+   * caller on its own part, and a central write for a caller it turns away is undone from the
+   * local copy.
+   */
+  private Future<JsonObject> onBoth(String operation, String token,
+                                    Supplier<Future<JsonObject>> local,
+                                    Supplier<Future<JsonObject>> central,
+                                    Runnable undoLocal, Runnable undoCentral) {
+    return authorize(token).compose(authorized -> {
+      Future<JsonObject> localWrite = local.get();
+      Future<JsonObject> centralWrite = central.get();
+      return Future.join(localWrite, centralWrite).transform(done -> {
+        if (localWrite.succeeded() && centralWrite.succeeded()) {
+          return centralWrite;
+        }
+        if (localWrite.succeeded()) {
+          LOGGER.warn("Failed to {} on central, undoing the {} on local", operation, operation);
+          undoLocal.run();
+          return Future.failedFuture(handleFailure(centralWrite.cause()));
+        }
+        if (centralWrite.succeeded()) {
+          LOGGER.warn("Failed to {} on local, undoing the {} on central", operation, operation);
+          undoCentral.run();
+        }
+        return Future.failedFuture(localWrite.cause());
+      });
+    });
+  }
+
+  /* a valid token of the caller carrying one of the catalogueWriteRoles */
+  private Future<Void> authorize(String token) {
+    if (token == null) {
+      return Future.failedFuture(notAuthorized("Token is required"));
+    }
+    return tokenService.decodeToken(token)
+        .recover(cause -> Future.failedFuture(notAuthorized(cause.getMessage())))
+        .compose(claims -> {
+          JsonArray roles = claims.getJsonObject("realm_access", new JsonObject())
+              .getJsonArray("roles", new JsonArray());
+          for (Object role : writeRoles) {
+            if (roles.contains(role)) {
+              return Future.succeededFuture();
+            }
+          }
+          return Future.failedFuture(notAuthorized(
+              "Writing the catalogues needs one of the roles " + writeRoles.encode()));
+        });
+  }
+
+  private static String notAuthorized(String detail) {
+    return new RespBuilder()
+        .withType("urn:dx:cat:InvalidAuthorizationToken")
+        .withTitle("Not Authorized")
+        .withDetail(detail)
+        .getResponse();
+  }
+
+  /*
+   * A retried central catalogue write with the admin token. The token does not depend on the
+   * caller, so it is asked for right away and is at hand once the caller is authorized.
+   */
+  private Supplier<Future<JsonObject>> centralWrite(String operation,
+                                                    Function<String, Future<JsonObject>> write) {
+    tokenService.createToken();
+    return () -> retryEngine.execute(operation, () -> tokenService.createToken()
+        .compose(adminToken -> write.apply(adminToken.getString(TOKEN))));
+  }
+
 
   private String dxItemType(JsonArray type) {
     Set<String> types = new HashSet<String>(type.getList());
@@ -153,30 +317,16 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
   public Future<JsonObject> updateItem(JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-          .onSuccess(successListener -> {
-            promise.complete((JsonObject) successListener.getResult());
-          })
-          .onFailure(listener -> {
+      retryEngine.execute("central.updateItem", () ->
+              tokenService.createToken().compose(adminToken -> {
+                return centralCat.updateItem(request, adminToken.getString(TOKEN));
+              }))
+          .onSuccess(promise::complete)
+          .onFailure(cause -> {
             LOGGER.warn("Failed to update item to central");
             String id = request.getString(ID);
             Future.future(f -> inconsistencyHandler.handleUpdateOnLocal(id, token));
-            promise.fail(handleFailure(listener.getException()));
-            //promise.fail(new DxRuntimeException(500, listener.getException().getMessage()));
-          })
-          .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(asyncExecution -> {
-            tokenService.createToken().compose(adminToken -> {
-              return centralCat.updateItem(request, adminToken.getString(TOKEN));
-            }).onComplete(ar -> {
-              if (ar.succeeded()) {
-                asyncExecution.recordResult(ar.result());
-              } else {
-                asyncExecution.recordException(ar.cause());
-              }
-            });
+            promise.fail(handleFailure(cause));
           });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
       localCat.updateItem(request, token).onComplete(completeHandler -> {
@@ -193,55 +343,52 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> updateItemFromBody(String body, String token) {
+    return ItemBody.parse(body)
+        .compose(item -> localCat.updateItemFromBody(item.forwarded(), item.id(), token));
+  }
+
+  @Override
+  public Future<JsonObject> updateItemOnBoth(String body, String token) {
+    return ItemBody.parse(body).compose(item -> {
+      String id = item.id();
+      Buffer forwarded = item.forwarded();
+      return onBoth("update", token,
+          () -> localCat.updateItemFromBody(forwarded, id, token),
+          centralWrite("central.updateItem",
+              adminToken -> centralCat.updateItemFromBody(forwarded, adminToken)),
+          () -> inconsistencyHandler.handleUpdateOnLocal(id, token),
+          () -> inconsistencyHandler.handleUpdateOnCentral(id));
+    });
+  }
+
   @Override
   public Future<JsonObject> deleteItem(JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
     String id = request.getString(ID);
-    if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-          .onSuccess(successListener -> {
-            promise.complete((JsonObject) successListener.getResult());
-          })
-          .onFailure(listener -> {
+    if (catalogueType.equals(CatalogueType.CENTRAL) && replicator != null) {
+      // the central catalogue may not have the item yet, delete it after the queued writes
+      return enqueueCentral(CentralReplicator.DELETE_ITEM, id, "", request, "Item deleted");
+    } else if (catalogueType.equals(CatalogueType.CENTRAL)) {
+      retryEngine.execute("central.deleteItem", () ->
+              tokenService.createToken().compose(adminToken -> {
+                return centralCat.deleteItem(id, adminToken.getString(TOKEN));
+              }))
+          .onSuccess(promise::complete)
+          .onFailure(cause -> {
             LOGGER.warn("Failed to delete item from central");
             Future.future(f -> inconsistencyHandler.handleUploadToLocal(id, token));
-            promise.fail(handleFailure(listener.getException()));
-          })
-          .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(asyncExecution -> {
-            tokenService.createToken().compose(adminToken -> {
-              return centralCat.deleteItem(id, adminToken.getString(TOKEN));
-            }).onComplete(ar -> {
-              if (ar.succeeded()) {
-                asyncExecution.recordResult(ar.result());
-              } else {
-                asyncExecution.recordException(ar.cause());
-              }
-            });
+            promise.fail(handleFailure(cause));
           });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
-      RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-          .onSuccess(successListener -> {
-            promise.complete((JsonObject) successListener.getResult());
-          })
-          .onFailure(listener -> {
-            LOGGER.warn("Failed to delete item from local catalogue");
-            Future.future(f -> inconsistencyHandler.handleRecreateAdapter(id, token));
-            promise.fail(handleFailure(listener.getException()));
-          })
-          .build();
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(asyncExecution -> {
-            localCat.deleteItem(id, token)
-                .onComplete(completeHandler -> {
-                  if (completeHandler.succeeded()) {
-                    promise.complete(completeHandler.result());
-                  } else {
-                    promise.fail(completeHandler.cause());
-                  }
-                });
+      localCat.deleteItem(id, token)
+          .onComplete(completeHandler -> {
+            if (completeHandler.succeeded()) {
+              promise.complete(completeHandler.result());
+            } else {
+              promise.fail(completeHandler.cause());
+            }
           });
     } else {
       promise.fail("Invalid catalogue type");
@@ -250,6 +397,38 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> deleteItemOnBoth(String id, String token) {
+    AtomicBoolean adapterDeleted = new AtomicBoolean();
+    // the resource server looks the adapter up on the local catalogue, so it goes ahead of it
+    Supplier<Future<JsonObject>> local = () -> localReader.getItem(id)
+        .map(CatalogueServiceImpl::toJsonObject)
+        .compose(item -> {
+          JsonArray type = item.getJsonArray(RESULTS).getJsonObject(0).getJsonArray(TYPE);
+          if (!dxItemType(type).equalsIgnoreCase(ITEM_TYPE_RESOURCE_GROUP)) {
+            return Future.<Void>succeededFuture();
+          }
+          return resourceServerService.deleteAdapter(id, token)
+              .onSuccess(deleted -> adapterDeleted.set(true))
+              .<Void>mapEmpty();
+        })
+        .compose(ready -> localCat.deleteItem(id, token).onFailure(cause -> {
+          if (adapterDeleted.get()) {
+            inconsistencyHandler.handleRecreateAdapter(id, token);
+          }
+        }));
+    return onBoth("delete", token, local,
+        centralWrite("central.deleteItem", adminToken -> centralCat.deleteItem(id, adminToken)),
+        () -> {
+          if (adapterDeleted.get()) {
+            inconsistencyHandler.handleUploadResourceGroupToLocal(id, token);
+          } else {
+            inconsistencyHandler.handleUploadToLocal(id, token);
+          }
+        },
+        () -> inconsistencyHandler.handleUploadToCentral(id));
+  }
+
   @Override
   public Future<JsonObject> getItem(String id, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
@@ -257,7 +436,7 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
       getFuture = centralCat.getItem(id);
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
-      getFuture = localCat.getItem(id);
+      getFuture = localReader.getItem(id).map(CatalogueServiceImpl::toJsonObject);
     } else {
       promise.fail("Invalid catalogue type");
       return promise.future();
@@ -280,7 +459,7 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
       getFuture = centralCat.getInstance(id, path);
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
-      getFuture = localCat.getInstance(id, path);
+      getFuture = localReader.getInstance(id, path).map(CatalogueServiceImpl::toJsonObject);
     } else {
       promise.fail("Invalid catalogue type");
       return promise.future();
@@ -302,45 +481,23 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
       String path, JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy =
-          retryPolicyBuilder
-              .onSuccess(
-                  successListener -> {
-                    promise.complete((JsonObject) successListener.getResult());
-                  })
-              .onFailure(
-                  listener -> {
-                    LOGGER.warn("Failed to upload item to central");
-                    String key = path.isEmpty() ? ID : "instanceId";
-                    String id = request.getString(key);
-                    Future.future(f -> inconsistencyHandler.handleDeleteInstanceOnLocal(id, path, token));
-                    promise.fail(listener.getException().getMessage());
-                  })
-              .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(
-              asyncExecution -> {
-                tokenService
-                    .createToken()
-                    .compose(
-                        adminToken -> {
-                          return centralCat.createInstance(request, path, adminToken.getString(TOKEN));
-                        })
-                    .onComplete(
-                        ar -> {
-                          if (ar.succeeded()) {
-                            asyncExecution.recordResult(ar.result());
-                          } else {
-                            asyncExecution.recordException(new DxRuntimeException(400, ar.cause().getMessage()));
-                          }
-                        });
+      retryEngine.execute("central.createInstance", () ->
+              tokenService
+                  .createToken()
+                  .compose(
+                      adminToken -> {
+                        return centralCat.createInstance(request, path, adminToken.getString(TOKEN));
+                      }))
+          .onSuccess(promise::complete)
+          .onFailure(
+              cause -> {
+                LOGGER.warn("Failed to upload item to central");
+                String key = path.isEmpty() ? ID : "instanceId";
+                String id = request.getString(key);
+                Future.future(f -> inconsistencyHandler.handleDeleteInstanceOnLocal(id, path, token));
+                promise.fail(cause.getMessage());
               });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
-      LOGGER.error(token);
-      LOGGER.error(path);
-      LOGGER.error(request);
-      LOGGER.error(localCat);
       localCat
           .createInstance(request, path, token)
           .onComplete(
@@ -358,43 +515,54 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> createInstanceOnBoth(String path, JsonObject request, String token) {
+    JsonObject instance = request.copy();
+    // ui instances are identified by an instanceId allocated here, others by the name given in
+    // the id, which the local catalogue insists on
+    String key = path.isEmpty() ? ID : "instanceId";
+    if (!path.isEmpty() && instance.getString(key) == null) {
+      instance.put(key, UUID.randomUUID().toString());
+    }
+    String id = instance.getString(key);
+    if (id == null) {
+      return Future.failedFuture(new RespBuilder()
+          .withType("urn:dx:cat:InvalidSchema")
+          .withTitle("Invalid Schema")
+          .withDetail("Instance id is required")
+          .getResponse());
+    }
+    return onBoth("create", token,
+        () -> localCat.createInstance(instance.copy(), path, token),
+        centralWrite("central.createInstance",
+            adminToken -> centralCat.createInstance(instance.copy(), path, adminToken)),
+        () -> inconsistencyHandler.handleDeleteInstanceOnLocal(id, path, token),
+        () -> inconsistencyHandler.handleDeleteInstanceOnCentral(id, path));
+  }
+
   @Override
   public Future<JsonObject> deleteInstance(
       String path, JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
     String id = request.getString(ID);
+    if (catalogueType.equals(CatalogueType.CENTRAL) && replicator != null) {
+      return enqueueCentral(CentralReplicator.DELETE_INSTANCE, id, path, request,
+          "Instance deleted");
+    }
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy =
-          retryPolicyBuilder
-              .onSuccess(
-                  successListener -> {
-                    promise.complete((JsonObject) successListener.getResult());
-                  })
-              .onFailure(
-                  listener -> {
-                    LOGGER.warn("Failed to delete instance from central");
-                    Future.future(f -> inconsistencyHandler.handleUploadInstanceToLocal(id, path, token));
-                    promise.fail(listener.getException().getMessage());
-                  })
-              .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(
-              asyncExecution -> {
-                tokenService
-                    .createToken()
-                    .compose(
-                        adminToken -> {
-                          return centralCat.deleteInstance(id, path, adminToken.getString(TOKEN));
-                        })
-                    .onComplete(
-                        ar -> {
-                          if (ar.succeeded()) {
-                            asyncExecution.recordResult(ar.result());
-                          } else {
-                            asyncExecution.recordException(new DxRuntimeException(400, ar.cause().getMessage()));
-                          }
-                        });
+      retryEngine.execute("central.deleteInstance", () ->
+              tokenService
+                  .createToken()
+                  .compose(
+                      adminToken -> {
+                        return centralCat.deleteInstance(id, path, adminToken.getString(TOKEN));
+                      }))
+          .onSuccess(promise::complete)
+          .onFailure(
+              cause -> {
+                LOGGER.warn("Failed to delete instance from central");
+                Future.future(f -> inconsistencyHandler.handleUploadInstanceToLocal(id, path, token));
+                promise.fail(cause.getMessage());
               });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
       localCat
@@ -414,44 +582,39 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> deleteInstanceOnBoth(String path, String id, String token) {
+    return onBoth("delete", token,
+        () -> localCat.deleteInstance(id, path, token),
+        centralWrite("central.deleteInstance",
+            adminToken -> centralCat.deleteInstance(id, path, adminToken)),
+        () -> inconsistencyHandler.handleUploadInstanceToLocal(id, path, token),
+        () -> inconsistencyHandler.handleUploadInstanceToCentral(id, path));
+  }
+
   @Override
   public Future<JsonObject> updateInstance(
       String instanceId, JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
+    if (catalogueType.equals(CatalogueType.CENTRAL) && replicator != null) {
+      return enqueueCentral(CentralReplicator.UPDATE_INSTANCE, instanceId, "", request,
+          "Instance updated");
+    }
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy =
-          retryPolicyBuilder
-              .onSuccess(
-                  successListener -> {
-                    promise.complete((JsonObject) successListener.getResult());
-                  })
-              .onFailure(
-                  listener -> {
-                    LOGGER.warn("Failed to update instance to central");
-                    Future.future(
-                        f -> inconsistencyHandler.handleUpdateInstanceOnLocal(instanceId, token));
-                    promise.fail(listener.getException().getMessage());
-                  })
-              .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(
-              asyncExecution -> {
-                tokenService
-                    .createToken()
-                    .compose(
-                        adminToken -> {
-                          return centralCat.updateInstance(
-                              instanceId, request, adminToken.getString(TOKEN));
-                        })
-                    .onComplete(
-                        ar -> {
-                          if (ar.succeeded()) {
-                            asyncExecution.recordResult(ar.result());
-                          } else {
-                            asyncExecution.recordException(new DxRuntimeException(400, ar.cause().getMessage()));
-                          }
-                        });
+      retryEngine.execute("central.updateInstance", () ->
+              tokenService
+                  .createToken()
+                  .compose(
+                      adminToken -> {
+                        return centralCat.updateInstance( instanceId, request, adminToken.getString(TOKEN));
+                      }))
+          .onSuccess(promise::complete)
+          .onFailure(
+              cause -> {
+                LOGGER.warn("Failed to update instance to central");
+                Future.future(
+                    f -> inconsistencyHandler.handleUpdateInstanceOnLocal(instanceId, token));
+                promise.fail(cause.getMessage());
               });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
       localCat
@@ -471,6 +634,66 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> updateInstanceOnBoth(String instanceId, JsonObject request,
+                                                 String token) {
+    return onBoth("update", token,
+        () -> localCat.updateInstance(instanceId, request.copy(), token),
+        centralWrite("central.updateInstance",
+            adminToken -> centralCat.updateInstance(instanceId, request.copy(), adminToken)),
+        () -> inconsistencyHandler.handleUpdateInstanceOnLocal(instanceId, token),
+        () -> inconsistencyHandler.handleUpdateInstanceOnCentral(instanceId));
+  }
+
+  @Override
+  public Future<JsonObject> replicateToCentral(String operation, String path, JsonObject request) {
+    if (replicator == null) {
+      return Future.failedFuture("Write-behind replication is not enabled");
+    }
+    String idKey;
+    if (CentralReplicator.CREATE_INSTANCE.equals(operation)) {
+      idKey = path.isEmpty() ? ID : "instanceId";
+    } else if (CentralReplicator.CREATE_DOMAIN.equals(operation)) {
+      idKey = "domainId";
+    } else {
+      idKey = ID;
+    }
+    return replicator.enqueue(operation, request.getString(idKey), path, request);
+  }
+
+  @Override
+  public Future<JsonObject> getReplicationStatus(String id) {
+    JsonObject status = replicator == null ? null : replicator.status(id);
+    if (status == null) {
+      return Future.failedFuture(new RespBuilder()
+          .withType("urn:dx:cat:ItemNotFound")
+          .withTitle("Item not found")
+          .withDetail("No replication known for " + id)
+          .getResponse());
+    }
+    return Future.succeededFuture(new RespBuilder()
+        .withType("urn:dx:cat:Success")
+        .withTitle("Success")
+        .withResult(status)
+        .getJsonResponse());
+  }
+
+  /*
+   * In write-behind mode every central write is queued behind the earlier writes of its id, which
+   * may not have reached the central catalogue yet.
+   */
+  private Future<JsonObject> enqueueCentral(String operation, String id, String path,
+                                            JsonObject request, String written) {
+    return replicator.enqueue(operation, id, path, request)
+        .map(status -> new RespBuilder()
+            .withType("urn:dx:cat:Success")
+            .withTitle("Success")
+            .withDetail(written + ", central catalogue write queued")
+            .withResult(status)
+            .getJsonResponse())
+        .recover(cause -> Future.failedFuture(handleFailure(cause)));
+  }
+
   private String handleFailure(Throwable cause) {
 
     RespBuilder respBuilder;
@@ -500,7 +723,7 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
       getFuture = centralCat.getDomain(id);
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
-      getFuture = localCat.getDomain(id);
+      getFuture = localReader.getDomain(id).map(CatalogueServiceImpl::toJsonObject);
     } else {
       promise.fail("Invalid catalogue type");
       return promise.future();
@@ -522,38 +745,20 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
       JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy =
-          retryPolicyBuilder
-              .onSuccess(
-                  successListener -> {
-                    promise.complete((JsonObject) successListener.getResult());
-                  })
-              .onFailure(
-                  listener -> {
-                    LOGGER.warn("Failed to upload domain to central");
-                    String id = request.getString("domainId");
-                    Future.future(f -> inconsistencyHandler.handleDeleteDomainOnLocal(id, token));
-                    promise.fail(handleFailure(listener.getException()));
-                  })
-              .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(
-              asyncExecution -> {
-                tokenService
-                    .createToken()
-                    .compose(
-                        adminToken -> {
-                          return centralCat.createDomain(request, adminToken.getString(TOKEN));
-                        })
-                    .onComplete(
-                        ar -> {
-                          if (ar.succeeded()) {
-                            asyncExecution.recordResult(ar.result());
-                          } else {
-                            asyncExecution.recordException(ar.cause());
-                          }
-                        });
+      retryEngine.execute("central.createDomain", () ->
+              tokenService
+                  .createToken()
+                  .compose(
+                      adminToken -> {
+                        return centralCat.createDomain(request, adminToken.getString(TOKEN));
+                      }))
+          .onSuccess(promise::complete)
+          .onFailure(
+              cause -> {
+                LOGGER.warn("Failed to upload domain to central");
+                String id = request.getString("domainId");
+                Future.future(f -> inconsistencyHandler.handleDeleteDomainOnLocal(id, token));
+                promise.fail(handleFailure(cause));
               });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
       localCat
@@ -573,43 +778,43 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> createDomainOnBoth(JsonObject request, String token) {
+    JsonObject domain = request.copy();
+    if (domain.getString("domainId") == null) {
+      domain.put("domainId", UUID.randomUUID().toString());
+    }
+    String id = domain.getString("domainId");
+    return onBoth("create", token,
+        () -> localCat.createDomain(domain.copy(), token),
+        centralWrite("central.createDomain",
+            adminToken -> centralCat.createDomain(domain.copy(), adminToken)),
+        () -> inconsistencyHandler.handleDeleteDomainOnLocal(id, token),
+        () -> inconsistencyHandler.handleDeleteDomainOnCentral(id));
+  }
+
   @Override
   public Future<JsonObject> deleteDomain(
       JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
     String id = request.getString(ID);
+    if (catalogueType.equals(CatalogueType.CENTRAL) && replicator != null) {
+      return enqueueCentral(CentralReplicator.DELETE_DOMAIN, id, "", request, "Domain deleted");
+    }
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy =
-          retryPolicyBuilder
-              .onSuccess(
-                  successListener -> {
-                    promise.complete((JsonObject) successListener.getResult());
-                  })
-              .onFailure(
-                  listener -> {
-                    LOGGER.warn("Failed to delete instance from central");
-                    Future.future(f -> inconsistencyHandler.handleUploadDomainToLocal(id, token));
-                    promise.fail(handleFailure(listener.getException()));
-                  })
-              .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(
-              asyncExecution -> {
-                tokenService
-                    .createToken()
-                    .compose(
-                        adminToken -> {
-                          return centralCat.deleteDomain(id, adminToken.getString(TOKEN));
-                        })
-                    .onComplete(
-                        ar -> {
-                          if (ar.succeeded()) {
-                            asyncExecution.recordResult(ar.result());
-                          } else {
-                            asyncExecution.recordException(ar.cause());
-                          }
-                        });
+      retryEngine.execute("central.deleteDomain", () ->
+              tokenService
+                  .createToken()
+                  .compose(
+                      adminToken -> {
+                        return centralCat.deleteDomain(id, adminToken.getString(TOKEN));
+                      }))
+          .onSuccess(promise::complete)
+          .onFailure(
+              cause -> {
+                LOGGER.warn("Failed to delete instance from central");
+                Future.future(f -> inconsistencyHandler.handleUploadDomainToLocal(id, token));
+                promise.fail(handleFailure(cause));
               });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
       localCat
@@ -629,44 +834,38 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> deleteDomainOnBoth(String id, String token) {
+    return onBoth("delete", token,
+        () -> localCat.deleteDomain(id, token),
+        centralWrite("central.deleteDomain", adminToken -> centralCat.deleteDomain(id, adminToken)),
+        () -> inconsistencyHandler.handleUploadDomainToLocal(id, token),
+        () -> inconsistencyHandler.handleUploadDomainToCentral(id));
+  }
+
   @Override
   public Future<JsonObject> updateDomain(
       String domainId, JsonObject request, String token, CatalogueType catalogueType) {
     Promise<JsonObject> promise = Promise.promise();
+    if (catalogueType.equals(CatalogueType.CENTRAL) && replicator != null) {
+      return enqueueCentral(CentralReplicator.UPDATE_DOMAIN, domainId, "", request,
+          "Domain updated");
+    }
     if (catalogueType.equals(CatalogueType.CENTRAL)) {
-      RetryPolicy<Object> retryPolicy =
-          retryPolicyBuilder
-              .onSuccess(
-                  successListener -> {
-                    promise.complete((JsonObject) successListener.getResult());
-                  })
-              .onFailure(
-                  listener -> {
-                    LOGGER.warn("Failed to update instance to central");
-                    Future.future(
-                        f -> inconsistencyHandler.handleUpdateDomainOnLocal(domainId, token));
-                    promise.fail(handleFailure(listener.getException()));
-                  })
-              .build();
-
-      Failsafe.with(retryPolicy)
-          .getAsyncExecution(
-              asyncExecution -> {
-                tokenService
-                    .createToken()
-                    .compose(
-                        adminToken -> {
-                          return centralCat.updateDomain(
-                              domainId, request, adminToken.getString(TOKEN));
-                        })
-                    .onComplete(
-                        ar -> {
-                          if (ar.succeeded()) {
-                            asyncExecution.recordResult(ar.result());
-                          } else {
-                            asyncExecution.recordException(ar.cause());
-                          }
-                        });
+      retryEngine.execute("central.updateDomain", () ->
+              tokenService
+                  .createToken()
+                  .compose(
+                      adminToken -> {
+                        return centralCat.updateDomain( domainId, request, adminToken.getString(TOKEN));
+                      }))
+          .onSuccess(promise::complete)
+          .onFailure(
+              cause -> {
+                LOGGER.warn("Failed to update instance to central");
+                Future.future(
+                    f -> inconsistencyHandler.handleUpdateDomainOnLocal(domainId, token));
+                promise.fail(handleFailure(cause));
               });
     } else if (catalogueType.equals(CatalogueType.LOCAL)) {
       localCat
@@ -686,4 +885,18 @@ public class CatalogueServiceImpl implements CatalogueUtilService {
     return promise.future();
   }
 
+  @Override
+  public Future<JsonObject> updateDomainOnBoth(String domainId, JsonObject request,
+                                               String token) {
+    return onBoth("update", token,
+        () -> localCat.updateDomain(domainId, request.copy(), token),
+        centralWrite("central.updateDomain",
+            adminToken -> centralCat.updateDomain(domainId, request.copy(), adminToken)),
+        () -> inconsistencyHandler.handleUpdateDomainOnLocal(domainId, token),
+        () -> inconsistencyHandler.handleUpdateDomainOnCentral(domainId));
+  }
+
+  private static JsonObject toJsonObject(LocalCatalogueReader.Read read) {
+    return read.body() != null ? read.body().toJsonObject() : null;
+  }
 }
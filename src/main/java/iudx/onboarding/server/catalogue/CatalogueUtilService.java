@@ -22,6 +22,23 @@ public interface CatalogueUtilService {
 
   Future<JsonObject> getItem(final String request, CatalogueType catalogueType);
 
+  /**
+   * Creates an item on the local catalogue from the request body as the client sent it. The body
+   * is forwarded without being decoded unless it has to be changed, e.g. to add a bucket URL.
+   *
+   * @param body the JSON item
+   * @return the response of the local catalogue
+   */
+  Future<JsonObject> createItemFromBody(final String body, final String token);
+
+  /**
+   * Updates an item on the local catalogue from the request body as the client sent it, see
+   * {@link #createItemFromBody}.
+   *
+   * @return the response of the local catalogue
+   */
+  Future<JsonObject> updateItemFromBody(final String body, final String token);
+
   Future<JsonObject> createInstance(final String path, final JsonObject request, final String token,
                                     CatalogueType catalogueType);
 
@@ -41,6 +58,99 @@ public interface CatalogueUtilService {
 
   Future<JsonObject> getDomain(final String request, CatalogueType catalogueType);
 
+  /**
+   * Creates an item on the local and the central catalogue at the same time, under an id allocated
+   * here unless the request carries one, once the caller is authorized as for
+   * {@link #updateItemOnBoth}. A resource group stored on MinIO gets its bucket after the local
+   * create. If one of the catalogues rejects the item it is deleted from the other one again. The
+   * body is forwarded as the client sent it when it needs no change.
+   *
+   * @param body the JSON item
+   * @return the item as created, with its id
+   */
+  Future<JsonObject> createItemOnBoth(final String body, final String token);
+
+  /**
+   * Creates an instance on both catalogues at once, see {@link #createItemOnBoth}. Non-UI instances
+   * are named by the <code>id</code> of the request, UI instances get their id allocated here.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> createInstanceOnBoth(final String path, final JsonObject request,
+                                          final String token);
+
+  /**
+   * Creates a domain on both catalogues at once, see {@link #createItemOnBoth}.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> createDomainOnBoth(final JsonObject request, final String token);
+
+  /**
+   * Updates an item on the local and the central catalogue at the same time, once the caller's
+   * token is verified and found to carry one of the <code>catalogueWriteRoles</code>. If one of
+   * the catalogues rejects the update, the other one is restored from it. The body is forwarded
+   * as the client sent it when it needs no change.
+   *
+   * @param body the JSON item
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> updateItemOnBoth(final String body, final String token);
+
+  /**
+   * Deletes an item from the local and the central catalogue at the same time, see
+   * {@link #updateItemOnBoth}; a resource group loses its adapter on the resource server ahead of
+   * the local delete. If one of the catalogues keeps the item it is restored on the other one from
+   * there, on the local one followed by its adapter; an adapter deleted for an item the local
+   * catalogue kept is recreated.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> deleteItemOnBoth(final String id, final String token);
+
+  /**
+   * Updates an instance on both catalogues, see {@link #updateItemOnBoth}.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> updateInstanceOnBoth(String id, final JsonObject request,
+                                          final String token);
+
+  /**
+   * Deletes an instance from both catalogues, see {@link #deleteItemOnBoth}.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> deleteInstanceOnBoth(final String path, final String id,
+                                          final String token);
+
+  /**
+   * Updates a domain on both catalogues, see {@link #updateItemOnBoth}.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> updateDomainOnBoth(String id, final JsonObject request, final String token);
+
+  /**
+   * Deletes a domain from both catalogues, see {@link #deleteItemOnBoth}.
+   *
+   * @return the response of the central catalogue
+   */
+  Future<JsonObject> deleteDomainOnBoth(final String id, final String token);
+
+  /**
+   * Queues a central catalogue write for write-behind replication.
+   *
+   * @param operation one of the {@link CentralReplicator} operations
+   * @param path instance API path, empty for other operations
+   * @param request the request body, as it would be sent to the central catalogue
+   * @return the replication status of the queued write
+   */
+  Future<JsonObject> replicateToCentral(final String operation, final String path,
+                                        final JsonObject request);
+
+  Future<JsonObject> getReplicationStatus(final String id);
+
   @GenIgnore
   static CatalogueUtilService createProxy(Vertx vertx, String address) {
     return new CatalogueUtilServiceVertxEBProxy(vertx, address);
@@ -2,17 +2,16 @@ package iudx.onboarding.server.catalogue;
 
 import static iudx.onboarding.server.common.Constants.*;
 
-import dev.failsafe.RetryPolicy;
-import dev.failsafe.RetryPolicyBuilder;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
-import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import iudx.onboarding.server.common.DeadlinePropagation;
+import iudx.onboarding.server.common.RetryEngine;
 import iudx.onboarding.server.ingestion.IngestionService;
 import iudx.onboarding.server.minio.MinioService;
+import iudx.onboarding.server.resourceserver.ResourceServerService;
 import iudx.onboarding.server.token.TokenService;
-import java.net.UnknownHostException;
 import java.time.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,6 +24,7 @@ public class CatalogueVerticle extends AbstractVerticle {
   private CatalogueUtilService catalogueUtilService;
   private TokenService tokenService;
   private MinioService minioService;
+  private ResourceServerService resourceServerService;
 
 
   @Override
@@ -32,19 +32,20 @@ public class CatalogueVerticle extends AbstractVerticle {
 
     tokenService = TokenService.createProxy(vertx, TOKEN_ADDRESS);
     minioService = MinioService.createProxy(vertx, MINIO_ADDRESS);
+    resourceServerService = ResourceServerService.createProxy(vertx, RS_SERVICE_ADDRESS);
 
-    RetryPolicyBuilder<Object> retryPolicyBuilder = RetryPolicy.builder()
-        .handle(DxRuntimeException.class)
-        .handle(UnknownHostException.class)
-        .abortOn(e -> e instanceof UnknownHostException)
+    RetryEngine retryEngine = RetryEngine.builder(vertx)
         .withBackoff(Duration.ofSeconds(5), Duration.ofSeconds(7), 1.1)
         .withMaxAttempts(3)
-        .onRetry(retryListener -> LOGGER.error("Operation failed... retrying"));
+        .build();
 
     catalogueUtilService = new CatalogueServiceImpl(vertx, tokenService, minioService,
-        retryPolicyBuilder, config());
+        resourceServerService, retryEngine, config());
+    DeadlinePropagation.install(vertx);
     binder = new ServiceBinder(vertx);
-    consumer = binder.setAddress(CATALOGUE_ADDRESS).register(CatalogueUtilService.class, catalogueUtilService);
+    consumer = binder.setAddress(CATALOGUE_ADDRESS)
+        .addInterceptor(DeadlinePropagation.SERVICE_INTERCEPTOR)
+        .register(CatalogueUtilService.class, catalogueUtilService);
 
     LOGGER.info("Catalogue Verticle deployed.");
   }
@@ -0,0 +1,379 @@
+package iudx.onboarding.server.catalogue;
+
+import static iudx.onboarding.server.common.Constants.ID;
+import static iudx.onboarding.server.common.Constants.TOKEN;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.common.FailureClassifier;
+import iudx.onboarding.server.common.FailureClassifier.Classification;
+import iudx.onboarding.server.common.MetricsHelper;
+import iudx.onboarding.server.token.TokenService;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Write-behind replication of catalogue writes to the central catalogue.
+ *
+ * <p>With <code>centralWriteMode</code> set to <code>writeBehind</code>, the API server
+ * acknowledges a write once the local catalogue accepted it and hands the central write to this
+ * replicator. The write is appended to a durable {@link ReplicationOutbox} before it is
+ * acknowledged, and drained in the background with at most <code>replicationConcurrency</code>
+ * writes in flight. Writes for the same id are replayed strictly in order; an id whose head write
+ * is backing off holds back its later writes but not those of other ids. Creates, updates and
+ * deletes of items, instances and domains all go through here, so no write of an id reaches the
+ * central catalogue ahead of an earlier one.
+ *
+ * <p>Failures that a retry can fix are retried with exponential backoff (at most one minute, or
+ * the upstream's Retry-After) for as long as it takes. A write the central catalogue rejects is
+ * marked <code>failed</code> and logged as an inconsistency; the local write is not reverted since
+ * the client has already been told it succeeded.
+ *
+ * <p>One replicator runs per Vert.x instance and outbox file. The number of pending writes is
+ * exported as <code>dx_replication_pending</code>, outcomes as
+ * <code>dx_replication_outcomes</code>.
+ */
+public final class CentralReplicator implements Shareable {
+
+  public static final String CREATE_ITEM = "createItem";
+  public static final String UPDATE_ITEM = "updateItem";
+  public static final String DELETE_ITEM = "deleteItem";
+  public static final String CREATE_INSTANCE = "createInstance";
+  public static final String UPDATE_INSTANCE = "updateInstance";
+  public static final String DELETE_INSTANCE = "deleteInstance";
+  public static final String CREATE_DOMAIN = "createDomain";
+  public static final String UPDATE_DOMAIN = "updateDomain";
+  public static final String DELETE_DOMAIN = "deleteDomain";
+
+  public static final String PENDING = "pending";
+  public static final String REPLICATED = "replicated";
+  public static final String FAILED = "failed";
+
+  private static final Logger LOGGER = LogManager.getLogger(CentralReplicator.class);
+  private static final String REPLICATORS_MAP = "iudx.onboarding.server.catalogue.replicators";
+  private static final String DEFAULT_OUTBOX_PATH = "outbox/central-replication.log";
+  private static final int DEFAULT_CONCURRENCY = 4;
+  private static final long MAX_BACKOFF_MS = 60000;
+  private static final int COMPACT_THRESHOLD = 1000;
+  private static final int MAX_STATUSES = 10000;
+
+  private final Context context;
+  private final ReplicationOutbox outbox;
+  private final TokenService tokenService;
+  private final CentralCatImpl centralCat;
+  private final int concurrency;
+  private final Future<Void> ready;
+
+  /* entries waiting or in flight, per id in arrival order */
+  private final Map<String, Deque<Entry>> pending = new LinkedHashMap<>();
+  /* outbox records of unfinished entries, what a compaction keeps */
+  private final Map<Long, JsonObject> liveRecords = new LinkedHashMap<>();
+  private final Map<String, JsonObject> statuses = new LinkedHashMap<>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+      return size() > MAX_STATUSES;
+    }
+  };
+  private long nextSequence = 1;
+  private int running;
+  private boolean compacting;
+
+  private CentralReplicator(Vertx vertx, JsonObject config, TokenService tokenService,
+                            CentralCatImpl centralCat) {
+    this.context = vertx.getOrCreateContext();
+    this.outbox = new ReplicationOutbox(vertx,
+        Paths.get(config.getString("replicationOutboxPath", DEFAULT_OUTBOX_PATH)));
+    this.tokenService = tokenService;
+    this.centralCat = centralCat;
+    this.concurrency = config.getInteger("replicationConcurrency", DEFAULT_CONCURRENCY);
+    this.ready = outbox.open().map(this::replay).onFailure(cause ->
+        LOGGER.error("Failed to open replication outbox: {}", cause.getMessage()));
+    Gauge.builder("dx_replication_pending", this, CentralReplicator::pendingCount)
+        .description("Central catalogue writes waiting to be replicated")
+        .register(MetricsHelper.registry());
+  }
+
+  /**
+   * The replicator of this Vert.x instance, started on first use.
+   */
+  static CentralReplicator shared(Vertx vertx, JsonObject config, TokenService tokenService,
+                                  CentralCatImpl centralCat) {
+    LocalMap<String, CentralReplicator> replicators =
+        vertx.sharedData().getLocalMap(REPLICATORS_MAP);
+    return replicators.computeIfAbsent(
+        config.getString("replicationOutboxPath", DEFAULT_OUTBOX_PATH),
+        path -> new CentralReplicator(vertx, config, tokenService, centralCat));
+  }
+
+  /**
+   * Durably queues a central write.
+   *
+   * @param operation one of the operation constants of this class
+   * @param id item, instance or domain id the write is ordered by
+   * @param path instance API path, empty for other operations
+   * @param request request body for the central catalogue
+   * @return the replication status of the write, once it is on disk
+   */
+  Future<JsonObject> enqueue(String operation, String id, String path, JsonObject request) {
+    return ready.compose(v -> {
+      JsonObject body = request.copy();
+      body.remove(TOKEN);
+      JsonObject record;
+      Future<Void> written;
+      synchronized (this) {
+        record = new JsonObject()
+            .put("seq", nextSequence++)
+            .put(ID, id)
+            .put("operation", operation)
+            .put("path", path)
+            .put("request", body)
+            .put("queuedAt", Instant.now().toString());
+        liveRecords.put(record.getLong("seq"), record);
+        // submitted under the lock of the compaction snapshot, so it lands in either the
+        // snapshot or the file the snapshot replaces, never in neither
+        written = outbox.append(record);
+      }
+      return written.map(appended -> {
+        Entry entry = new Entry(record);
+        JsonObject status;
+        synchronized (this) {
+          pending.computeIfAbsent(id, key -> new ArrayDeque<>()).addLast(entry);
+          status = updateStatus(entry, PENDING, null);
+        }
+        context.runOnContext(run -> drain());
+        return status;
+      }).onFailure(cause -> {
+        synchronized (this) {
+          liveRecords.remove(record.getLong("seq"));
+        }
+      });
+    });
+  }
+
+  /**
+   * Replication status of the latest write for an id.
+   *
+   * @return the status, or <code>null</code> if no write for the id is known
+   */
+  synchronized JsonObject status(String id) {
+    JsonObject status = statuses.get(id);
+    return status == null ? null : status.copy();
+  }
+
+  /** Whether writes for the id are still waiting to be replicated. */
+  synchronized boolean hasPending(String id) {
+    return pending.containsKey(id);
+  }
+
+  private Void replay(List<JsonObject> records) {
+    Map<Long, JsonObject> entries = new LinkedHashMap<>();
+    synchronized (this) {
+      for (JsonObject record : records) {
+        long sequence = record.getLong("seq");
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        String outcome = record.getString("status");
+        if (outcome == null) {
+          entries.put(sequence, record);
+          continue;
+        }
+        JsonObject entry = entries.remove(sequence);
+        if (entry != null) {
+          updateStatus(new Entry(entry), outcome, record.getString("error"));
+        }
+      }
+      for (JsonObject record : entries.values()) {
+        Entry entry = new Entry(record);
+        pending.computeIfAbsent(entry.id, key -> new ArrayDeque<>()).addLast(entry);
+        liveRecords.put(entry.sequence, record);
+        updateStatus(entry, PENDING, null);
+      }
+    }
+    if (!entries.isEmpty()) {
+      LOGGER.info("Resuming replication of {} central catalogue writes", entries.size());
+    }
+    compactIfNeeded(true);
+    context.runOnContext(run -> drain());
+    return null;
+  }
+
+  private void drain() {
+    List<Entry> started = new ArrayList<>();
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      Iterator<Deque<Entry>> queues = pending.values().iterator();
+      while (queues.hasNext() && running < concurrency) {
+        Entry head = queues.next().peekFirst();
+        if (head != null && !head.inFlight && head.notBefore <= now) {
+          head.inFlight = true;
+          running++;
+          started.add(head);
+        }
+      }
+    }
+    started.forEach(this::replicate);
+  }
+
+  private void replicate(Entry entry) {
+    write(entry).onComplete(ar -> context.runOnContext(run -> {
+      if (ar.succeeded()) {
+        finish(entry, REPLICATED, null);
+        return;
+      }
+      Throwable cause = ar.cause();
+      Classification classification = FailureClassifier.classify(cause);
+      if (classification == Classification.NON_RETRYABLE) {
+        LOGGER.error("INCONSISTENCY DETECTED : {} OF {} REJECTED BY CENTRAL - {}",
+            entry.operation, entry.id, cause.getMessage());
+        finish(entry, FAILED, cause.getMessage());
+        return;
+      }
+      long backoff = Math.min(MAX_BACKOFF_MS, 1000L << Math.min(entry.attempts, 16));
+      long delay = Math.max(backoff, FailureClassifier.retryAfterMs(cause));
+      synchronized (this) {
+        entry.attempts++;
+        entry.inFlight = false;
+        entry.notBefore = System.currentTimeMillis() + delay;
+        running--;
+        updateStatus(entry, PENDING, cause.getMessage());
+      }
+      LOGGER.warn("Replication of {} {} failed (attempt {}), retrying in {} ms: {}",
+          entry.operation, entry.id, entry.attempts, delay, cause.getMessage());
+      context.owner().setTimer(delay, id -> drain());
+      drain();
+    }));
+  }
+
+  private Future<JsonObject> write(Entry entry) {
+    JsonObject request = entry.request.copy();
+    return tokenService.createToken().compose(adminToken -> {
+      String token = adminToken.getString(TOKEN);
+      switch (entry.operation) {
+        case CREATE_ITEM:
+          return centralCat.createItem(request, token);
+        case UPDATE_ITEM:
+          return centralCat.updateItem(request, token);
+        case DELETE_ITEM:
+          return centralCat.deleteItem(entry.id, token);
+        case CREATE_INSTANCE:
+          return centralCat.createInstance(request, entry.path, token);
+        case UPDATE_INSTANCE:
+          return centralCat.updateInstance(entry.id, request, token);
+        case DELETE_INSTANCE:
+          return centralCat.deleteInstance(entry.id, entry.path, token);
+        case CREATE_DOMAIN:
+          return centralCat.createDomain(request, token);
+        case UPDATE_DOMAIN:
+          return centralCat.updateDomain(entry.id, request, token);
+        case DELETE_DOMAIN:
+          return centralCat.deleteDomain(entry.id, token);
+        default:
+          return Future.failedFuture("Unknown replication operation " + entry.operation);
+      }
+    });
+  }
+
+  private void finish(Entry entry, String outcome, String error) {
+    synchronized (this) {
+      Deque<Entry> queue = pending.get(entry.id);
+      queue.pollFirst();
+      if (queue.isEmpty()) {
+        pending.remove(entry.id);
+      }
+      liveRecords.remove(entry.sequence);
+      running--;
+      updateStatus(entry, outcome, error);
+    }
+    Counter.builder("dx_replication_outcomes")
+        .description("Central catalogue writes replicated or rejected")
+        .tag("status", outcome)
+        .register(MetricsHelper.registry())
+        .increment();
+    JsonObject record = new JsonObject().put("seq", entry.sequence).put("status", outcome);
+    if (error != null) {
+      record.put("error", error);
+    }
+    outbox.append(record)
+        .onFailure(cause -> LOGGER.error("Failed to record replication outcome of {}: {}",
+            entry.id, cause.getMessage()))
+        .onComplete(appended -> compactIfNeeded(false));
+    drain();
+  }
+
+  private void compactIfNeeded(boolean force) {
+    Future<Void> compacted;
+    synchronized (this) {
+      long records = outbox.records();
+      if (compacting || records <= liveRecords.size()
+          || (!force && records < COMPACT_THRESHOLD)) {
+        return;
+      }
+      compacting = true;
+      compacted = outbox.compact(new ArrayList<>(liveRecords.values()));
+    }
+    compacted
+        .onFailure(cause -> LOGGER.error("Failed to compact replication outbox: {}",
+            cause.getMessage()))
+        .onComplete(ar -> {
+          synchronized (this) {
+            compacting = false;
+          }
+        });
+  }
+
+  private JsonObject updateStatus(Entry entry, String status, String error) {
+    JsonObject json = new JsonObject()
+        .put(ID, entry.id)
+        .put("operation", entry.operation)
+        .put("status", status)
+        .put("attempts", entry.attempts)
+        .put("queuedAt", entry.queuedAt);
+    if (error != null) {
+      json.put("lastError", error);
+    }
+    statuses.remove(entry.id);
+    statuses.put(entry.id, json);
+    return json.copy();
+  }
+
+  private synchronized int pendingCount() {
+    return liveRecords.size();
+  }
+
+  /* a queued central write */
+  private static final class Entry {
+    private final long sequence;
+    private final String id;
+    private final String operation;
+    private final String path;
+    private final JsonObject request;
+    private final String queuedAt;
+    private int attempts;
+    private long notBefore;
+    private boolean inFlight;
+
+    private Entry(JsonObject record) {
+      this.sequence = record.getLong("seq");
+      this.id = record.getString(ID);
+      this.operation = record.getString("operation");
+      this.path = record.getString("path", "");
+      this.request = record.getJsonObject("request");
+      this.queuedAt = record.getString("queuedAt");
+    }
+  }
+}
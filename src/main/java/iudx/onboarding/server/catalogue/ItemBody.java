@@ -0,0 +1,114 @@
+package iudx.onboarding.server.catalogue;
+
+import static iudx.onboarding.server.common.Constants.ID;
+import static iudx.onboarding.server.common.Constants.TOKEN;
+import static iudx.onboarding.server.common.Constants.TYPE;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iudx.onboarding.server.apiserver.util.RespBuilder;
+import java.io.IOException;
+
+/**
+ * Request body of an item write as the client sent it. Only the top level fields the write path
+ * looks at are read, with a streaming parser, so that the body can be forwarded to the catalogues
+ * byte for byte. It is decoded in full only when it has to be changed first.
+ */
+final class ItemBody {
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private final Buffer bytes;
+  private final String id;
+  private final JsonArray type;
+  /* clients used to send their token in the body, the catalogues reject it */
+  private final boolean hasToken;
+
+  private ItemBody(Buffer bytes, String id, JsonArray type, boolean hasToken) {
+    this.bytes = bytes;
+    this.id = id;
+    this.type = type;
+    this.hasToken = hasToken;
+  }
+
+  /**
+   * Checks that the body is a JSON object and reads its id and type.
+   *
+   * @return the body, or a failure with an <code>InvalidSchema</code> response if it is not an
+   *     object
+   */
+  static Future<ItemBody> parse(String body) {
+    if (body == null) {
+      return Future.failedFuture(invalid());
+    }
+    String id = null;
+    JsonArray type = null;
+    boolean hasToken = false;
+    try (JsonParser parser = JSON.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return Future.failedFuture(invalid());
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if (ID.equals(field) && value == JsonToken.VALUE_STRING) {
+          id = parser.getText();
+        } else if (TYPE.equals(field) && value == JsonToken.START_ARRAY) {
+          type = new JsonArray();
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            type.add(parser.getValueAsString());
+            parser.skipChildren();
+          }
+        } else {
+          hasToken |= TOKEN.equals(field);
+          parser.skipChildren();
+        }
+      }
+      if (parser.nextToken() != null) {
+        return Future.failedFuture(invalid());
+      }
+    } catch (IOException e) {
+      return Future.failedFuture(invalid());
+    }
+    return Future.succeededFuture(new ItemBody(Buffer.buffer(body), id, type, hasToken));
+  }
+
+  String id() {
+    return id;
+  }
+
+  /** The type of the item, <code>null</code> if the body has none. */
+  JsonArray type() {
+    return type;
+  }
+
+  /**
+   * The body to forward to the catalogues, which is the one received unless a token has to be
+   * removed from it.
+   */
+  Buffer forwarded() {
+    if (!hasToken) {
+      return bytes;
+    }
+    JsonObject item = decode();
+    item.remove(TOKEN);
+    return item.toBuffer();
+  }
+
+  JsonObject decode() {
+    return bytes.toJsonObject();
+  }
+
+  private static String invalid() {
+    return new RespBuilder()
+        .withType("urn:dx:cat:InvalidSchema")
+        .withTitle("Invalid Schema")
+        .withDetail("Invalid Json payload")
+        .getResponse();
+  }
+}
@@ -0,0 +1,185 @@
+package iudx.onboarding.server.catalogue;
+
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import iudx.onboarding.server.common.FailureClassifier;
+import iudx.onboarding.server.common.MetricsHelper;
+import java.util.function.Supplier;
+
+/**
+ * Cached reads of the local catalogue returning the response bodies as the catalogue sent them.
+ * The API server uses it to pass items, instances and domains on to the client without decoding
+ * and re-encoding them, and without a hop over the event bus.
+ *
+ * <p>When the local catalogue is kept in sync with the central one, reads can fall back to the
+ * central catalogue, as set by <code>catalogueReadFallback</code>: <code>failover</code> reads
+ * the central catalogue once the local read failed, <code>race</code> reads both at once unless
+ * the local read is cached and uses the first to succeed. Only failures of the local catalogue
+ * itself fall back, i.e. timeouts, transport errors, 5xx responses and an open circuit breaker;
+ * its answer that an entity does not exist is final. Reads served by the central catalogue are
+ * counted in <code>dx_catalogue_read_fallbacks</code>.
+ */
+public final class LocalCatalogueReader {
+
+  public enum Fallback {
+    NONE,
+    FAILOVER,
+    RACE
+  }
+
+  public static final String FALLBACK_CONFIG_KEY = "catalogueReadFallback";
+
+  private final LocalCatImpl localCat;
+  private final CentralCatImpl centralCat;
+  private final Fallback fallback;
+  private final CatalogueCache cache;
+
+  public LocalCatalogueReader(Vertx vertx, JsonObject config) {
+    this(new LocalCatImpl(vertx, config),
+        fallback(config) == Fallback.NONE ? null : new CentralCatImpl(vertx, config),
+        fallback(config), CatalogueCache.shared(vertx, config));
+  }
+
+  LocalCatalogueReader(LocalCatImpl localCat, CatalogueCache cache) {
+    this(localCat, null, Fallback.NONE, cache);
+  }
+
+  LocalCatalogueReader(LocalCatImpl localCat, CentralCatImpl centralCat, Fallback fallback,
+                       CatalogueCache cache) {
+    this.localCat = localCat;
+    this.centralCat = centralCat;
+    this.fallback = fallback;
+    this.cache = cache;
+  }
+
+  /**
+   * The read fallback set in the config, {@link Fallback#NONE} unless the central catalogue holds
+   * a replica of the local one.
+   */
+  static Fallback fallback(JsonObject config) {
+    if (!config.getBoolean("isUacAvailable", false)) {
+      return Fallback.NONE;
+    }
+    String fallback = config.getString(FALLBACK_CONFIG_KEY, "");
+    if ("failover".equalsIgnoreCase(fallback)) {
+      return Fallback.FAILOVER;
+    }
+    return "race".equalsIgnoreCase(fallback) ? Fallback.RACE : Fallback.NONE;
+  }
+
+  public Future<Read> getItem(String id) {
+    return read(CatalogueCache.ITEM,
+        cache.get(CatalogueCache.ITEM, "", id, () -> localCat.getItemBody(id)),
+        () -> centralCat.getItem(id));
+  }
+
+  /**
+   * Reads an instance, or all of them if <code>id</code> is null.
+   *
+   * @param path API path the instance is asked on, <code>/internal/ui</code> or empty
+   */
+  public Future<Read> getInstance(String id, String path) {
+    return read(CatalogueCache.INSTANCE,
+        cache.get(CatalogueCache.INSTANCE, path, id, () -> localCat.getInstanceBody(id, path)),
+        () -> centralCat.getInstance(id, path));
+  }
+
+  /**
+   * Reads a domain, or all of them if <code>id</code> is null.
+   */
+  public Future<Read> getDomain(String id) {
+    return read(CatalogueCache.DOMAIN,
+        cache.get(CatalogueCache.DOMAIN, "", id, () -> localCat.getDomainBody(id)),
+        () -> centralCat.getDomain(id));
+  }
+
+  private Future<Read> read(String kind, Future<Buffer> localRead,
+                            Supplier<Future<JsonObject>> centralRead) {
+    if (fallback == Fallback.NONE) {
+      return localRead.map(Read::local);
+    }
+    if (fallback == Fallback.FAILOVER || localRead.isComplete()) {
+      return localRead.map(Read::local).recover(cause -> {
+        if (!fallsBack(cause)) {
+          return Future.failedFuture(cause);
+        }
+        return centralRead.get()
+            .map(body -> served(kind, body))
+            .recover(centralFailure -> {
+              count(kind, "failed");
+              return Future.failedFuture(cause);
+            });
+      });
+    }
+    Promise<Read> promise = Promise.promise();
+    Future<JsonObject> raced = centralRead.get();
+    raced.onSuccess(body -> {
+      if (!promise.future().isComplete()) {
+        promise.tryComplete(served(kind, body));
+      }
+    });
+    localRead.onComplete(local -> {
+      if (local.succeeded()) {
+        promise.tryComplete(Read.local(local.result()));
+      } else if (!fallsBack(local.cause())) {
+        promise.tryFail(local.cause());
+      } else {
+        raced.onFailure(centralFailure -> {
+          if (promise.tryFail(local.cause())) {
+            count(kind, "failed");
+          }
+        });
+      }
+    });
+    return promise.future();
+  }
+
+  private static boolean fallsBack(Throwable cause) {
+    return FailureClassifier.classify(cause) != FailureClassifier.Classification.NON_RETRYABLE;
+  }
+
+  private static Read served(String kind, JsonObject body) {
+    count(kind, "served");
+    return new Read(body.toBuffer(), true);
+  }
+
+  private static void count(String kind, String result) {
+    Counter.builder("dx_catalogue_read_fallbacks")
+        .description("Local catalogue reads falling back to the central catalogue")
+        .tag("kind", kind)
+        .tag("result", result)
+        .register(MetricsHelper.registry())
+        .increment();
+  }
+
+  /** A response body, and the catalogue that sent it. */
+  public static final class Read {
+    private final Buffer body;
+    private final boolean fromCentral;
+
+    private Read(Buffer body, boolean fromCentral) {
+      this.body = body;
+      this.fromCentral = fromCentral;
+    }
+
+    private static Read local(Buffer body) {
+      return new Read(body, false);
+    }
+
+    /** The response body; it may be shared with other reads and must not be modified. */
+    public Buffer body() {
+      return body;
+    }
+
+    /** Whether the local catalogue failed and the body was read from the central one. */
+    public boolean fromCentral() {
+      return fromCentral;
+    }
+  }
+}
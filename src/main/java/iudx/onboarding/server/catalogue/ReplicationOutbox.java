@@ -0,0 +1,115 @@
+package iudx.onboarding.server.catalogue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only file of central catalogue writes waiting to be replicated.
+ *
+ * <p>Every record is one JSON line: entries carry a sequence number and the write to replay,
+ * outcomes carry the sequence number of their entry and its final status. A record is forced to
+ * disk before its future completes, so an acknowledged write survives a crash. All file access runs
+ * on a single worker thread in the order it was asked for, which keeps the records in the order
+ * they were appended and lets callers order an append before or after a compaction.
+ */
+final class ReplicationOutbox {
+
+  private static final Logger LOGGER = LogManager.getLogger(ReplicationOutbox.class);
+
+  private final Path file;
+  private final WorkerExecutor executor;
+  private FileChannel channel;
+  private volatile long records;
+
+  ReplicationOutbox(Vertx vertx, Path file) {
+    this.file = file;
+    this.executor = vertx.createSharedWorkerExecutor("dx-replication-outbox", 1);
+  }
+
+  /**
+   * Opens the outbox, creating it if needed.
+   *
+   * @return all records in the file, in the order they were appended
+   */
+  Future<List<JsonObject>> open() {
+    return executor.executeBlocking(() -> {
+      List<JsonObject> replayed = new ArrayList<>();
+      if (Files.exists(file)) {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+          if (line.isBlank()) {
+            continue;
+          }
+          try {
+            replayed.add(new JsonObject(line));
+          } catch (RuntimeException e) {
+            // a torn last line from a crash mid-append, it was never acknowledged
+            LOGGER.warn("Skipping unreadable outbox record in {}", file);
+          }
+        }
+      } else if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+      records = replayed.size();
+      return replayed;
+    }, false);
+  }
+
+  /**
+   * Appends a record and forces it to disk.
+   */
+  Future<Void> append(JsonObject record) {
+    byte[] line = (record.encode() + "\n").getBytes(StandardCharsets.UTF_8);
+    return executor.executeBlocking(() -> {
+      ByteBuffer buffer = ByteBuffer.wrap(line);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+      records++;
+      return null;
+    }, false);
+  }
+
+  /** Number of records in the file since it was opened or last compacted. */
+  long records() {
+    return records;
+  }
+
+  /**
+   * Replaces the file with the given records, dropping everything already replicated. The new file
+   * is written next to the old one and moved over it, so a crash leaves one of the two intact.
+   */
+  Future<Void> compact(Collection<JsonObject> live) {
+    List<String> lines = new ArrayList<>(live.size());
+    live.forEach(record -> lines.add(record.encode()));
+    return executor.executeBlocking(() -> {
+      Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+      Files.write(compacted, lines, StandardCharsets.UTF_8);
+      try (FileChannel written = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+        written.force(true);
+      }
+      channel.close();
+      Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      records = lines.size();
+      return null;
+    }, false);
+  }
+}
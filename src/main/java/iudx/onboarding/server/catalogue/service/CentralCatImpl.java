@@ -1,13 +1,20 @@
 package iudx.onboarding.server.catalogue.service;
 
 import static iudx.onboarding.server.common.Constants.ID;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_CENTRAL_CATALOGUE;
 
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.client.WebClientOptions;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.common.LoadBalancer;
+import iudx.onboarding.server.common.RequestHedging;
+import iudx.onboarding.server.common.UpstreamClients;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -15,24 +22,30 @@ import org.apache.logging.log4j.Logger;
 public class CentralCatImpl implements CatalogueService {
 
   private static final Logger LOGGER = LogManager.getLogger(CentralCatImpl.class);
-  public static WebClient catWebClient;
+  private final WebClient catWebClient;
   private String catHost;
   private int catPort;
   private String catBasePath;
   private Vertx vertx;
+  private final RequestHedging hedging;
 
   public CentralCatImpl(Vertx vertx, JsonObject config) {
+    this(vertx, config, UpstreamClients.get(vertx, config, UPSTREAM_CENTRAL_CATALOGUE,
+        LoadBalancer.endpoints(config.getJsonArray("centralCatServers"))));
+  }
+
+  public CentralCatImpl(Vertx vertx, JsonObject config, WebClient catWebClient) {
     this.vertx = vertx;
-    this.catHost = config.getString("centralCatServerHost");
-    this.catPort = config.getInteger("centralCatServerPort");
+    // with replicas listed, the client picks one of them for every request
+    List<LoadBalancer.Endpoint> endpoints =
+        LoadBalancer.endpoints(config.getJsonArray("centralCatServers"));
+    this.catHost = config.getString("centralCatServerHost",
+        endpoints.isEmpty() ? null : endpoints.get(0).host());
+    this.catPort = config.getInteger("centralCatServerPort",
+        endpoints.isEmpty() ? null : endpoints.get(0).port());
     this.catBasePath = config.getString("dxCatalogueBasePath");
-
-    WebClientOptions options =
-        new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true);
-    if (catWebClient == null) {
-      catWebClient = WebClient.create(vertx, options);
-    }
-
+    this.catWebClient = catWebClient;
+    this.hedging = RequestHedging.forUpstream(config, UPSTREAM_CENTRAL_CATALOGUE);
   }
 
   @Override
@@ -53,7 +66,7 @@ public class CentralCatImpl implements CatalogueService {
               LOGGER.debug(cause.getMessage());
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -80,7 +93,7 @@ public class CentralCatImpl implements CatalogueService {
             if (cause != null) {
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -88,6 +101,43 @@ public class CentralCatImpl implements CatalogueService {
     return promise.future();
   }
 
+  /**
+   * Creates an item from a request body that needs no change, sending it as it is.
+   */
+  public Future<JsonObject> createItemFromBody(Buffer request, String token) {
+    return sendItem(catWebClient.post(catPort, catHost, catBasePath.concat("/item")), request,
+        token, 201);
+  }
+
+  /**
+   * Updates an item from a request body that needs no change, sending it as it is.
+   */
+  public Future<JsonObject> updateItemFromBody(Buffer request, String token) {
+    return sendItem(catWebClient.put(catPort, catHost, catBasePath.concat("/item")), request,
+        token, 200);
+  }
+
+  private Future<JsonObject> sendItem(HttpRequest<Buffer> httpRequest, Buffer request,
+                                      String token, int expectedStatus) {
+    Promise<JsonObject> promise = Promise.promise();
+    httpRequest
+        .putHeader("token", token)
+        .putHeader("Content-Type", "application/json")
+        .sendBuffer(request, httpResponseAsyncResult -> {
+          if (httpResponseAsyncResult.succeeded()
+              && httpResponseAsyncResult.result().statusCode() == expectedStatus) {
+            LOGGER.info("central request successful");
+            promise.complete(httpResponseAsyncResult.result().body().toJsonObject());
+          } else if (httpResponseAsyncResult.failed()) {
+            LOGGER.debug(httpResponseAsyncResult.cause().getMessage());
+            promise.fail(httpResponseAsyncResult.cause());
+          } else {
+            promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
+          }
+        });
+    return promise.future();
+  }
+
   @Override
   public Future<JsonObject> deleteItem(String id, String token) {
     Promise<JsonObject> promise = Promise.promise();
@@ -107,7 +157,7 @@ public class CentralCatImpl implements CatalogueService {
               LOGGER.debug(cause.getMessage());
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -117,6 +167,10 @@ public class CentralCatImpl implements CatalogueService {
 
   @Override
   public Future<JsonObject> getItem(String id) {
+    return hedging.execute(vertx, () -> requestItem(id));
+  }
+
+  private Future<JsonObject> requestItem(String id) {
     Promise<JsonObject> promise = Promise.promise();
     catWebClient
         .get(catPort, catHost, catBasePath.concat("/item"))
@@ -130,7 +184,7 @@ public class CentralCatImpl implements CatalogueService {
             if (cause != null) {
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -161,7 +215,7 @@ public class CentralCatImpl implements CatalogueService {
                   promise.fail(cause);
                 } else {
                   LOGGER.error(httpResponseAsyncResult.result().body());
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -171,6 +225,10 @@ public class CentralCatImpl implements CatalogueService {
 
   @Override
   public Future<JsonObject> getInstance(String id, String path) {
+    return hedging.execute(vertx, () -> requestInstance(id, path));
+  }
+
+  private Future<JsonObject> requestInstance(String id, String path) {
     Promise<JsonObject> promise = Promise.promise();
     catWebClient
         .get(catPort, catHost, catBasePath.concat(path.concat("/instance")))
@@ -186,7 +244,7 @@ public class CentralCatImpl implements CatalogueService {
                 if (cause != null) {
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -215,7 +273,7 @@ public class CentralCatImpl implements CatalogueService {
                 if (cause != null) {
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -245,7 +303,7 @@ public class CentralCatImpl implements CatalogueService {
                   LOGGER.debug(cause.getMessage());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -273,7 +331,7 @@ public class CentralCatImpl implements CatalogueService {
                   LOGGER.debug(cause.getMessage());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -282,6 +340,10 @@ public class CentralCatImpl implements CatalogueService {
 
   @Override
   public Future<JsonObject> getDomain(String id) {
+    return hedging.execute(vertx, () -> requestDomain(id));
+  }
+
+  private Future<JsonObject> requestDomain(String id) {
     Promise<JsonObject> promise = Promise.promise();
     catWebClient
         .get(catPort, catHost, catBasePath.concat("/internal/ui/domain"))
@@ -297,7 +359,7 @@ public class CentralCatImpl implements CatalogueService {
                 if (cause != null) {
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -326,7 +388,7 @@ public class CentralCatImpl implements CatalogueService {
                 if (cause != null) {
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -356,7 +418,7 @@ public class CentralCatImpl implements CatalogueService {
                   LOGGER.debug(cause.getMessage());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
               }
             });
@@ -2,41 +2,56 @@ package iudx.onboarding.server.catalogue.service;
 
 import static iudx.onboarding.server.common.Constants.ID;
 import static iudx.onboarding.server.common.Constants.TOKEN;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_LOCAL_CATALOGUE;
 
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.client.WebClientOptions;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.CatalogueCache;
+import iudx.onboarding.server.common.LoadBalancer;
+import iudx.onboarding.server.common.RequestHedging;
+import iudx.onboarding.server.common.SingleFlight;
+import iudx.onboarding.server.common.UpstreamClients;
+import java.util.List;
+import java.util.function.UnaryOperator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-
-
-
 public class LocalCatImpl implements CatalogueService {
 
   private static final Logger LOGGER = LogManager.getLogger(LocalCatImpl.class);
-  public static WebClient catWebClient;
+  private final WebClient catWebClient;
   private String catHost;
   private int catPort;
   private String catBasePath;
   private Vertx vertx;
+  private final RequestHedging hedging;
+  /* the resource server of an item is looked up for every adapter call on it */
+  private final SingleFlight<String, JsonObject> relationshipRequests = new SingleFlight<>();
 
   public LocalCatImpl(Vertx vertx, JsonObject config) {
+    this(vertx, config, UpstreamClients.get(vertx, config, UPSTREAM_LOCAL_CATALOGUE,
+        LoadBalancer.endpoints(config.getJsonArray("localCatServers"))));
+  }
+
+  public LocalCatImpl(Vertx vertx, JsonObject config, WebClient catWebClient) {
     this.vertx = vertx;
-    this.catHost = config.getString("localCatServerHost");
-    this.catPort = config.getInteger("localCatServerPort");
+    // with replicas listed, the client picks one of them for every request
+    List<LoadBalancer.Endpoint> endpoints =
+        LoadBalancer.endpoints(config.getJsonArray("localCatServers"));
+    this.catHost = config.getString("localCatServerHost",
+        endpoints.isEmpty() ? null : endpoints.get(0).host());
+    this.catPort = config.getInteger("localCatServerPort",
+        endpoints.isEmpty() ? null : endpoints.get(0).port());
     this.catBasePath = config.getString("dxCatalogueBasePath");
-
-    WebClientOptions options =
-        new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true);
-    if (catWebClient == null) {
-      catWebClient = WebClient.create(vertx, options);
-    }
-
+    this.catWebClient = catWebClient;
+    this.hedging = RequestHedging.forUpstream(config, UPSTREAM_LOCAL_CATALOGUE);
   }
 
   @Override
@@ -51,6 +66,7 @@ public class LocalCatImpl implements CatalogueService {
           if (httpResponseAsyncResult.succeeded() && httpResponseAsyncResult.result().statusCode() == 201) {
             LOGGER.info("request successful");
             JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+            CatalogueCache.invalidate(vertx, CatalogueCache.ITEM, createdId(response));
             promise.complete(response);
           } else {
             Throwable cause = httpResponseAsyncResult.cause();
@@ -58,7 +74,7 @@ public class LocalCatImpl implements CatalogueService {
               LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -78,6 +94,7 @@ public class LocalCatImpl implements CatalogueService {
           if (httpResponseAsyncResult.succeeded() && httpResponseAsyncResult.result().statusCode() == 200) {
             LOGGER.info("request successful");
             JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+            CatalogueCache.invalidate(vertx, CatalogueCache.ITEM, request.getString(ID));
             promise.complete(response);
           } else {
             Throwable cause = httpResponseAsyncResult.cause();
@@ -85,7 +102,7 @@ public class LocalCatImpl implements CatalogueService {
               LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -105,6 +122,7 @@ public class LocalCatImpl implements CatalogueService {
           if (httpResponseAsyncResult.succeeded() && httpResponseAsyncResult.result().statusCode() == 200) {
             LOGGER.info("local request successful" + httpResponseAsyncResult.result().bodyAsJsonObject());
             JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+            CatalogueCache.invalidate(vertx, CatalogueCache.ITEM, id);
             promise.complete(response);
           } else {
             Throwable cause = httpResponseAsyncResult.cause();
@@ -112,7 +130,7 @@ public class LocalCatImpl implements CatalogueService {
               LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
               promise.fail(cause);
             } else {
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
             // Fail the promise with the failure cause
           }
@@ -120,34 +138,77 @@ public class LocalCatImpl implements CatalogueService {
     return promise.future(); // Return the future outside the callback function
   }
 
-  @Override
-  public Future<JsonObject> getItem(String id) {
+  /**
+   * Creates an item from a request body that needs no change, sending it as it is.
+   */
+  public Future<JsonObject> createItemFromBody(Buffer request, String token) {
+    return sendItem(catWebClient.post(catPort, catHost, catBasePath.concat("/item")), request,
+        token, 201)
+        .onSuccess(created -> CatalogueCache.invalidate(vertx, CatalogueCache.ITEM,
+            createdId(created)));
+  }
+
+  /**
+   * Updates an item from a request body that needs no change, sending it as it is.
+   *
+   * @param id id of the item, read from the body
+   */
+  public Future<JsonObject> updateItemFromBody(Buffer request, String id, String token) {
+    return sendItem(catWebClient.put(catPort, catHost, catBasePath.concat("/item")), request,
+        token, 200)
+        .onSuccess(updated -> CatalogueCache.invalidate(vertx, CatalogueCache.ITEM, id));
+  }
+
+  private Future<JsonObject> sendItem(HttpRequest<Buffer> httpRequest, Buffer request,
+                                      String token, int expectedStatus) {
     Promise<JsonObject> promise = Promise.promise();
-    LOGGER.debug("here xx");
-    catWebClient
-        .get(catPort, catHost, catBasePath.concat("/item"))
-        .addQueryParam("id", id)
-        .send(httpResponseAsyncResult -> {
-          if (httpResponseAsyncResult.succeeded() && httpResponseAsyncResult.result().statusCode() == 200) {
-            JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
-            LOGGER.debug("getItem id :{}", response);
-            promise.complete(response);
+    httpRequest
+        .putHeader("token", token)
+        .putHeader("Content-Type", "application/json")
+        .sendBuffer(request, httpResponseAsyncResult -> {
+          if (httpResponseAsyncResult.succeeded()
+              && httpResponseAsyncResult.result().statusCode() == expectedStatus) {
+            LOGGER.info("request successful");
+            promise.complete(httpResponseAsyncResult.result().body().toJsonObject());
+          } else if (httpResponseAsyncResult.failed()) {
+            LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
+            promise.fail(httpResponseAsyncResult.cause());
           } else {
-            Throwable cause = httpResponseAsyncResult.cause();
-            if (cause != null) {
-              LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
-              promise.fail(cause);
-            } else {
-              LOGGER.debug("get item fail :{}", httpResponseAsyncResult.result().bodyAsString());
-              promise.fail(httpResponseAsyncResult.result().bodyAsString());
-            }
-            // Fail the promise with the failure cause
+            promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
           }
         });
     return promise.future();
   }
 
+  /* id of a created item, which the catalogue returns in the results of its response */
+  private static String createdId(JsonObject response) {
+    Object results = response == null ? null : response.getValue("results");
+    if (results instanceof JsonArray && !((JsonArray) results).isEmpty()) {
+      results = ((JsonArray) results).getValue(0);
+    }
+    return results instanceof JsonObject ? ((JsonObject) results).getString(ID) : null;
+  }
+
+  @Override
+  public Future<JsonObject> getItem(String id) {
+    return getItemBody(id).map(LocalCatImpl::toJsonObject);
+  }
+
+  /**
+   * Reads an item, leaving the response body as it came from the catalogue.
+   */
+  public Future<Buffer> getItemBody(String id) {
+    return getBody("/item", id);
+  }
+
   public Future<JsonObject> getRelatedEntity(String id, String rel, JsonArray filter) {
+    String key = id + '|' + rel + '|' + filter.encode();
+    return relationshipRequests.execute(key,
+            () -> hedging.execute(vertx, () -> fetchRelatedEntity(id, rel, filter)))
+        .map(JsonObject::copy);
+  }
+
+  private Future<JsonObject> fetchRelatedEntity(String id, String rel, JsonArray filter) {
     Promise<JsonObject> promise = Promise.promise();
 
     LOGGER.debug(filter.toString().replace("\"", ""));
@@ -158,7 +219,6 @@ public class LocalCatImpl implements CatalogueService {
         .addQueryParam("filter", filter.toString().replace("\"", ""))
         .send(relatedEntityHandler -> {
           LOGGER.debug(id);
-          LOGGER.debug(relatedEntityHandler.result().body().toJsonObject());
           if (relatedEntityHandler.succeeded() && relatedEntityHandler.result().statusCode() == 200) {
             LOGGER.debug(relatedEntityHandler.result().body());
             promise.complete(relatedEntityHandler.result().body().toJsonObject());
@@ -168,7 +228,54 @@ public class LocalCatImpl implements CatalogueService {
               LOGGER.info("Failure {}", relatedEntityHandler.cause());
               promise.fail(cause);
             } else {
-              promise.fail(relatedEntityHandler.result().bodyAsString());
+              promise.fail(UpstreamException.from(relatedEntityHandler.result()));
+            }
+          }
+        });
+    return promise.future();
+  }
+
+  /**
+   * One page of the items of a type, as returned by the catalogue search API.
+   *
+   * @return the search response, with <code>totalHits</code> and the <code>results</code> page
+   */
+  public Future<JsonObject> searchItems(String itemType, int offset, int limit) {
+    return getPage(catBasePath.concat("/search"), offset, limit, request -> request
+        .addQueryParam("property", "[type]")
+        .addQueryParam("value", "[[" + itemType + "]]"));
+  }
+
+  /**
+   * One page of the instances of the catalogue.
+   */
+  public Future<JsonObject> listInstances(int offset, int limit) {
+    return getPage(catBasePath.concat("/internal/ui/instance"), offset, limit, request -> request);
+  }
+
+  /**
+   * One page of the domains of the catalogue.
+   */
+  public Future<JsonObject> listDomains(int offset, int limit) {
+    return getPage(catBasePath.concat("/internal/ui/domain"), offset, limit, request -> request);
+  }
+
+  private Future<JsonObject> getPage(String path, int offset, int limit,
+                                     UnaryOperator<HttpRequest<Buffer>> query) {
+    Promise<JsonObject> promise = Promise.promise();
+    query.apply(catWebClient.get(catPort, catHost, path))
+        .addQueryParam("offset", String.valueOf(offset))
+        .addQueryParam("limit", String.valueOf(limit))
+        .send(httpResponseAsyncResult -> {
+          if (httpResponseAsyncResult.succeeded() && httpResponseAsyncResult.result().statusCode() == 200) {
+            promise.complete(httpResponseAsyncResult.result().body().toJsonObject());
+          } else {
+            Throwable cause = httpResponseAsyncResult.cause();
+            if (cause != null) {
+              LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
+              promise.fail(cause);
+            } else {
+              promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
             }
           }
         });
@@ -179,10 +286,7 @@ public class LocalCatImpl implements CatalogueService {
   public Future<JsonObject> createInstance(JsonObject request, String path, String token) {
     request.remove(TOKEN);
 
-    LOGGER.error(token);
-    LOGGER.error(path);
-    LOGGER.error(request);
-    LOGGER.error(request.getString(ID));
+    LOGGER.debug("Creating instance {}", request.getString(ID));
     Promise<JsonObject> promise = Promise.promise();
     catWebClient
         .post(catPort, catHost, catBasePath.concat(path.concat("/instance")))
@@ -199,6 +303,7 @@ public class LocalCatImpl implements CatalogueService {
                 LOGGER.info(
                     "request successful" + httpResponseAsyncResult.result().body().toJsonObject());
                 JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+                CatalogueCache.invalidate(vertx, CatalogueCache.INSTANCE, request.getString(ID));
                 promise.complete(response);
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
@@ -206,7 +311,7 @@ public class LocalCatImpl implements CatalogueService {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
                 // Fail the promise with the failure cause
               }
@@ -216,29 +321,15 @@ public class LocalCatImpl implements CatalogueService {
 
   @Override
   public Future<JsonObject> getInstance(String id, String path) {
-    LOGGER.info("id" + id);
-    Promise<JsonObject> promise = Promise.promise();
-    catWebClient
-        .get(catPort, catHost, catBasePath.concat(path.concat("/instance")))
-        .addQueryParam(ID, id)
-        .send(
-            httpResponseAsyncResult -> {
-              if (httpResponseAsyncResult.succeeded()
-                  && httpResponseAsyncResult.result().statusCode() == 200) {
-                JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
-                promise.complete(response);
-              } else {
-                Throwable cause = httpResponseAsyncResult.cause();
-                if (cause != null) {
-                  LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
-                  promise.fail(cause);
-                } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
-                }
-                // Fail the promise with the failure cause
-              }
-            });
-    return promise.future();
+    return getInstanceBody(id, path).map(LocalCatImpl::toJsonObject);
+  }
+
+  /**
+   * Reads an instance, or all of them if <code>id</code> is null, leaving the response body as
+   * it came from the catalogue.
+   */
+  public Future<Buffer> getInstanceBody(String id, String path) {
+    return getBody(path.concat("/instance"), id);
   }
 
   @Override
@@ -257,6 +348,7 @@ public class LocalCatImpl implements CatalogueService {
                   && httpResponseAsyncResult.result().statusCode() == 200) {
                 LOGGER.info("request successful");
                 JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+                CatalogueCache.invalidate(vertx, CatalogueCache.INSTANCE, id);
                 promise.complete(response);
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
@@ -264,7 +356,7 @@ public class LocalCatImpl implements CatalogueService {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
                 // Fail the promise with the failure cause
               }
@@ -288,6 +380,7 @@ public class LocalCatImpl implements CatalogueService {
                     "local request successful"
                         + httpResponseAsyncResult.result().bodyAsJsonObject());
                 JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+                CatalogueCache.invalidate(vertx, CatalogueCache.INSTANCE, id);
                 promise.complete(response);
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
@@ -295,7 +388,7 @@ public class LocalCatImpl implements CatalogueService {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
                 // Fail the promise with the failure cause
               }
@@ -319,6 +412,7 @@ public class LocalCatImpl implements CatalogueService {
                 LOGGER.info(
                     "request successful" + httpResponseAsyncResult.result().body().toJsonObject());
                 JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+                CatalogueCache.invalidate(vertx, CatalogueCache.DOMAIN, request.getString("domainId"));
                 promise.complete(response);
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
@@ -326,7 +420,7 @@ public class LocalCatImpl implements CatalogueService {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
                 // Fail the promise with the failure cause
               }
@@ -336,31 +430,50 @@ public class LocalCatImpl implements CatalogueService {
 
   @Override
   public Future<JsonObject> getDomain(String id) {
-    LOGGER.info("id" + id);
-    Promise<JsonObject> promise = Promise.promise();
+    return getDomainBody(id).map(LocalCatImpl::toJsonObject);
+  }
+
+  /**
+   * Reads a domain, or all of them if <code>id</code> is null, leaving the response body as it
+   * came from the catalogue.
+   */
+  public Future<Buffer> getDomainBody(String id) {
+    return getBody("/internal/ui/domain", id);
+  }
+
+  private Future<Buffer> getBody(String path, String id) {
+    return hedging.execute(vertx, () -> requestBody(path, id));
+  }
+
+  private Future<Buffer> requestBody(String path, String id) {
+    Promise<Buffer> promise = Promise.promise();
     catWebClient
-        .get(catPort, catHost, catBasePath.concat("/internal/ui/domain"))
-        .addQueryParam("id", id)
+        .get(catPort, catHost, catBasePath.concat(path))
+        .addQueryParam(ID, id)
         .send(
             httpResponseAsyncResult -> {
               if (httpResponseAsyncResult.succeeded()
                   && httpResponseAsyncResult.result().statusCode() == 200) {
-                JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
-                promise.complete(response);
+                promise.complete(httpResponseAsyncResult.result().body());
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
                 if (cause != null) {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  LOGGER.debug("get {} fail :{}", path,
+                      httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
-                // Fail the promise with the failure cause
               }
             });
     return promise.future();
   }
 
+  private static JsonObject toJsonObject(Buffer body) {
+    return body != null ? body.toJsonObject() : null;
+  }
+
   @Override
   public Future<JsonObject> updateDomain(String id, JsonObject request, String token) {
     Promise<JsonObject> promise = Promise.promise();
@@ -377,6 +490,7 @@ public class LocalCatImpl implements CatalogueService {
                   && httpResponseAsyncResult.result().statusCode() == 200) {
                 LOGGER.info("request successful");
                 JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+                CatalogueCache.invalidate(vertx, CatalogueCache.DOMAIN, id);
                 promise.complete(response);
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
@@ -384,7 +498,7 @@ public class LocalCatImpl implements CatalogueService {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
                 // Fail the promise with the failure cause
               }
@@ -408,6 +522,7 @@ public class LocalCatImpl implements CatalogueService {
                     "local request successful"
                         + httpResponseAsyncResult.result().bodyAsJsonObject());
                 JsonObject response = httpResponseAsyncResult.result().body().toJsonObject();
+                CatalogueCache.invalidate(vertx, CatalogueCache.DOMAIN, id);
                 promise.complete(response);
               } else {
                 Throwable cause = httpResponseAsyncResult.cause();
@@ -415,7 +530,7 @@ public class LocalCatImpl implements CatalogueService {
                   LOGGER.info("Failure {}", httpResponseAsyncResult.cause());
                   promise.fail(cause);
                 } else {
-                  promise.fail(httpResponseAsyncResult.result().bodyAsString());
+                  promise.fail(UpstreamException.from(httpResponseAsyncResult.result()));
                 }
                 // Fail the promise with the failure cause
               }
@@ -7,11 +7,14 @@ public class Api {
   private static volatile Api apiInstance;
   private final String dxApiBasePath;
   private StringBuilder onboardingUrl;
+  private StringBuilder bulkOnboardingUrl;
   private StringBuilder ingestionUrl;
   private StringBuilder tokenUrl;
   private StringBuilder mlayerInstanceApi;
   private StringBuilder mlayerDomainApi;
   private StringBuilder instanceApi;
+  private StringBuilder replicationApi;
+  private StringBuilder cacheApi;
 
   private Api(String dxApiBasePath) {
     this.dxApiBasePath = dxApiBasePath;
@@ -31,17 +34,24 @@ public class Api {
 
   private void buildPaths() {
     onboardingUrl = new StringBuilder(dxApiBasePath).append(ONBOARDING_API);
+    bulkOnboardingUrl = new StringBuilder(dxApiBasePath).append(BULK_ONBOARDING_API);
     ingestionUrl = new StringBuilder(dxApiBasePath).append(INGESTION_API);
     tokenUrl = new StringBuilder(dxApiBasePath).append(TOKEN_API);
     mlayerInstanceApi = new StringBuilder(dxApiBasePath).append("/internal/ui").append(INSTANCE_API);
     mlayerDomainApi = new StringBuilder(dxApiBasePath).append("/internal/ui").append(DOMAIN_API);
     instanceApi = new StringBuilder(dxApiBasePath).append(INSTANCE_API);
+    replicationApi = new StringBuilder(dxApiBasePath).append(REPLICATION_API);
+    cacheApi = new StringBuilder(dxApiBasePath).append("/admin").append(CACHE_API);
   }
 
   public String getOnboardingUrl() {
     return onboardingUrl.toString();
   }
 
+  public String getBulkOnboardingUrl() {
+    return bulkOnboardingUrl.toString();
+  }
+
   public String getIngestionUrl() {
     return ingestionUrl.toString();
   }
@@ -62,5 +72,13 @@ public class Api {
     return instanceApi.toString();
   }
 
+  public String getReplicationApi() {
+    return replicationApi.toString();
+  }
+
+  public String getCacheApi() {
+    return cacheApi.toString();
+  }
+
 
 }
@@ -0,0 +1,276 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.impl.HttpContext;
+import io.vertx.ext.web.client.impl.WebClientInternal;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Circuit breaker for the calls to one upstream host.
+ *
+ * <p>The outcome of the last {@link #WINDOW_SIZE} calls is kept in a ring. Once at least {@link
+ * #MINIMUM_CALLS} have been recorded, the breaker opens when half or more of them failed, or took
+ * longer than {@link #SLOW_CALL_MS}. Failures are transport errors and 5xx responses; any other
+ * response shows that the upstream is healthy. While open, calls are rejected immediately with a
+ * 503 {@link UpstreamException} carrying the remaining open time as Retry-After. After {@link
+ * #OPEN_MS} the breaker lets {@link #PROBES} probe calls through: it closes if all of them
+ * succeed and opens again on the first failure.
+ *
+ * <p>Breakers are process-wide and created per upstream and host, so a resource server that is down
+ * does not affect calls to the others. State transitions are counted in
+ * <code>dx_circuit_breaker_transitions</code> and the current state is exported by the
+ * <code>dx_circuit_breaker_state</code> gauge (0 closed, 1 half open, 2 open).
+ */
+public final class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    HALF_OPEN,
+    OPEN
+  }
+
+  static final int WINDOW_SIZE = 20;
+  static final int MINIMUM_CALLS = 10;
+  static final double FAILURE_RATE_THRESHOLD = 0.5;
+  static final double SLOW_CALL_RATE_THRESHOLD = 0.5;
+  static final long SLOW_CALL_MS = 5000;
+  static final long OPEN_MS = 30000;
+  static final int PROBES = 3;
+
+  private static final Logger LOGGER = LogManager.getLogger(CircuitBreaker.class);
+  private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+  private static final String CALL_ATTRIBUTE = "dx.circuitBreaker.call";
+
+  private final String upstream;
+  private final String host;
+  private final long openMs;
+  /* outcome ring: bit 0 failed, bit 1 slow */
+  private final byte[] window = new byte[WINDOW_SIZE];
+  private int windowIndex;
+  private int recorded;
+  private State state = State.CLOSED;
+  private long openedAtNanos;
+  private int probesStarted;
+  private int probesSucceeded;
+
+  CircuitBreaker(String upstream, String host, long openMs) {
+    this.upstream = upstream;
+    this.host = host;
+    this.openMs = openMs;
+  }
+
+  /**
+   * The breaker of an upstream host, created on first use.
+   *
+   * @param upstream upstream name, e.g. {@link Constants#UPSTREAM_CENTRAL_CATALOGUE}
+   * @param host host the calls are sent to
+   */
+  public static CircuitBreaker forHost(String upstream, String host) {
+    return BREAKERS.computeIfAbsent(upstream + "|" + host, key -> {
+      CircuitBreaker breaker = new CircuitBreaker(upstream, host, OPEN_MS);
+      Gauge.builder("dx_circuit_breaker_state", breaker, b -> b.state().ordinal())
+          .description("Circuit breaker state: 0 closed, 1 half open, 2 open")
+          .tag("upstream", upstream)
+          .tag("host", host)
+          .register(MetricsHelper.registry());
+      return breaker;
+    });
+  }
+
+  /**
+   * Guards every request sent with the client by the breaker of its upstream host.
+   *
+   * @param upstream upstream name used for the breakers and their metrics
+   * @return the same client
+   */
+  public static WebClient guard(WebClient webClient, String upstream) {
+    if (webClient instanceof WebClientInternal) {
+      ((WebClientInternal) webClient)
+          .addInterceptor(httpContext -> intercept(upstream, httpContext));
+    }
+    return webClient;
+  }
+
+  private static void intercept(String upstream, HttpContext<?> httpContext) {
+    Call call;
+    switch (httpContext.phase()) {
+      case PREPARE_REQUEST:
+        CircuitBreaker breaker =
+            forHost(upstream, Objects.toString(httpContext.request().host(), "unknown"));
+        if (!breaker.tryAcquire()) {
+          httpContext.fail(breaker.rejection());
+          return;
+        }
+        httpContext.set(CALL_ATTRIBUTE, new Call(breaker));
+        break;
+      case DISPATCH_RESPONSE:
+        call = httpContext.get(CALL_ATTRIBUTE);
+        if (call != null) {
+          httpContext.set(CALL_ATTRIBUTE, null);
+          call.complete(httpContext.response().statusCode() >= 500);
+        }
+        break;
+      case FAILURE:
+        call = httpContext.get(CALL_ATTRIBUTE);
+        if (call != null) {
+          httpContext.set(CALL_ATTRIBUTE, null);
+          call.complete(true);
+        }
+        break;
+      default:
+        break;
+    }
+    httpContext.next();
+  }
+
+  /**
+   * Asks permission for a call.
+   *
+   * @return false if the call must be rejected without contacting the upstream
+   */
+  public synchronized boolean tryAcquire() {
+    if (state == State.OPEN) {
+      if (elapsedOpenMs() < openMs) {
+        count("dx_circuit_breaker_rejected", "Calls rejected by an open circuit breaker");
+        return false;
+      }
+      transition(State.HALF_OPEN);
+    }
+    if (state == State.HALF_OPEN) {
+      if (probesStarted >= PROBES) {
+        if (elapsedOpenMs() < openMs) {
+          count("dx_circuit_breaker_rejected", "Calls rejected by an open circuit breaker");
+          return false;
+        }
+        // probes that never reported back must not keep the breaker half open forever
+        probesStarted = 0;
+        probesSucceeded = 0;
+      }
+      probesStarted++;
+    }
+    return true;
+  }
+
+  /**
+   * Records the outcome of a permitted call.
+   *
+   * @param failed whether the upstream failed to answer or answered with a server error
+   * @param durationMs how long the call took
+   */
+  public synchronized void record(boolean failed, long durationMs) {
+    boolean slow = durationMs >= SLOW_CALL_MS;
+    if (state == State.HALF_OPEN) {
+      if (failed || slow) {
+        transition(State.OPEN);
+      } else if (++probesSucceeded >= PROBES) {
+        transition(State.CLOSED);
+      }
+      return;
+    }
+    if (state == State.OPEN) {
+      // a call started before the breaker opened
+      return;
+    }
+    window[windowIndex] = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+    windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+    recorded = Math.min(recorded + 1, WINDOW_SIZE);
+    if (recorded < MINIMUM_CALLS) {
+      return;
+    }
+    int failures = 0;
+    int slowCalls = 0;
+    for (int i = 0; i < recorded; i++) {
+      failures += window[i] & 1;
+      slowCalls += (window[i] >> 1) & 1;
+    }
+    if (failures >= FAILURE_RATE_THRESHOLD * recorded
+        || slowCalls >= SLOW_CALL_RATE_THRESHOLD * recorded) {
+      LOGGER.warn("Opening circuit breaker for {} {}: {} failed and {} slow of last {} calls",
+          upstream, host, failures, slowCalls, recorded);
+      transition(State.OPEN);
+    }
+  }
+
+  public synchronized State state() {
+    return state;
+  }
+
+  /**
+   * Seconds until the breaker lets probe calls through again, at least 1.
+   */
+  public synchronized long retryAfterSeconds() {
+    long remainingMs = state == State.OPEN ? openMs - elapsedOpenMs() : 0;
+    return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remainingMs + 999));
+  }
+
+  UpstreamException rejection() {
+    long retryAfter = retryAfterSeconds();
+    return new UpstreamException(HttpStatusCode.SERVICE_UNAVAILABLE.getValue(),
+        new JsonObject()
+            .put("type", HttpStatusCode.SERVICE_UNAVAILABLE.getUrn())
+            .put("title", HttpStatusCode.SERVICE_UNAVAILABLE.getDescription())
+            .put("detail", "Circuit breaker open for " + upstream + " " + host)
+            .put("retryAfter", retryAfter)
+            .encode(),
+        retryAfter);
+  }
+
+  private long elapsedOpenMs() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAtNanos);
+  }
+
+  private void transition(State next) {
+    Counter.builder("dx_circuit_breaker_transitions")
+        .description("Circuit breaker state transitions")
+        .tag("upstream", upstream)
+        .tag("host", host)
+        .tag("from", state.name().toLowerCase(Locale.ROOT))
+        .tag("to", next.name().toLowerCase(Locale.ROOT))
+        .register(MetricsHelper.registry())
+        .increment();
+    LOGGER.info("Circuit breaker for {} {} {} -> {}", upstream, host, state, next);
+    state = next;
+    probesStarted = 0;
+    probesSucceeded = 0;
+    if (next == State.OPEN || next == State.HALF_OPEN) {
+      openedAtNanos = System.nanoTime();
+    } else if (next == State.CLOSED) {
+      recorded = 0;
+      windowIndex = 0;
+    }
+  }
+
+  private void count(String name, String description) {
+    Counter.builder(name)
+        .description(description)
+        .tag("upstream", upstream)
+        .tag("host", host)
+        .register(MetricsHelper.registry())
+        .increment();
+  }
+
+  /* a permitted call in flight */
+  private static final class Call {
+    private final CircuitBreaker breaker;
+    private final long startedAtNanos = System.nanoTime();
+
+    private Call(CircuitBreaker breaker) {
+      this.breaker = breaker;
+    }
+
+    private void complete(boolean failed) {
+      breaker.record(failed,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+    }
+  }
+}
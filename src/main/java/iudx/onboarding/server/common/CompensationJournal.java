@@ -0,0 +1,544 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import iudx.onboarding.server.common.FailureClassifier.Classification;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Write-ahead journal of the compensations started by the {@link InconsistencyHandler}.
+ *
+ * <p>A compensation is recorded before it runs and marked done once it succeeded, so one that was
+ * still failing when the server stopped is picked up again on the next start. The journal is a
+ * directory of fixed-size segments that are memory-mapped and appended to; each record is a length,
+ * a CRC32 and one JSON document, and a torn record ends the segment it is in. Appends that arrive
+ * while a flush is running are written and forced together, so a burst of compensations costs one
+ * <code>msync</code> rather than one per record.
+ *
+ * <p>A replay worker re-drives pending compensations every <code>compensationReplayIntervalMs</code>
+ * with exponential backoff, until they succeed or fail in a way a retry cannot fix. Fully completed
+ * segments are deleted from the head of the journal as soon as a newer segment exists, and on start
+ * all pending compensations are rewritten into a fresh segment and the old segments dropped.
+ *
+ * <p>One journal runs per Vert.x instance and directory. The number of pending compensations is
+ * exported as <code>dx_compensation_journal_depth</code>, the age of the oldest one as
+ * <code>dx_compensation_journal_oldest_age_seconds</code> and replay outcomes as
+ * <code>dx_compensation_replays</code>.
+ */
+public final class CompensationJournal implements Shareable {
+
+  static final int DEFAULT_SEGMENT_BYTES = 1 << 20;
+
+  private static final Logger LOGGER = LogManager.getLogger(CompensationJournal.class);
+  private static final String JOURNALS_MAP = "iudx.onboarding.server.compensations";
+  private static final String DEFAULT_PATH = "journal/compensations";
+  private static final long DEFAULT_REPLAY_INTERVAL_MS = 30000;
+  private static final long MAX_BACKOFF_MS = 600000;
+  private static final int REPLAY_CONCURRENCY = 4;
+  private static final int HEADER_BYTES = 8;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String SEQUENCE = "seq";
+  private static final String KIND = "kind";
+  private static final String ARGS = "args";
+  private static final String CREATED_AT = "createdAt";
+  private static final String DONE = "done";
+
+  private final Context context;
+  private final Path directory;
+  private final int segmentBytes;
+  private final long replayIntervalMs;
+  private final WorkerExecutor executor;
+  private final Future<Void> ready;
+
+  /* pending compensations by sequence number, in the order they were recorded */
+  private final Map<Long, Entry> pending = new LinkedHashMap<>();
+  /* pending compensations per segment, for every segment on disk */
+  private final TreeMap<Long, Integer> liveBySegment = new TreeMap<>();
+  private final List<Write> batch = new ArrayList<>();
+  private long nextSequence = 1;
+  private long activeSegment;
+  private boolean flushing;
+  private boolean deleting;
+  private int replaying;
+  private BiFunction<String, JsonObject, Future<?>> replayer;
+
+  /* only touched by the journal's worker thread */
+  private MappedByteBuffer active;
+  private FileChannel activeChannel;
+
+  CompensationJournal(Vertx vertx, Path directory, int segmentBytes, long replayIntervalMs) {
+    this.context = vertx.getOrCreateContext();
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.replayIntervalMs = replayIntervalMs;
+    this.executor = vertx.createSharedWorkerExecutor("dx-compensation-journal", 1);
+    this.ready = executor.executeBlocking(this::open, false)
+        .map(this::restore)
+        .onFailure(cause -> LOGGER.error("Failed to open compensation journal {}: {}", directory,
+            cause.getMessage()));
+    Gauge.builder("dx_compensation_journal_depth", this, CompensationJournal::depth)
+        .description("Compensations waiting to succeed")
+        .register(MetricsHelper.registry());
+    Gauge.builder("dx_compensation_journal_oldest_age_seconds", this,
+            CompensationJournal::oldestAgeSeconds)
+        .description("Age of the oldest pending compensation")
+        .register(MetricsHelper.registry());
+    vertx.setPeriodic(replayIntervalMs, id -> replayDue());
+  }
+
+  /**
+   * The journal of this Vert.x instance, opened on first use.
+   */
+  public static CompensationJournal shared(Vertx vertx, JsonObject config) {
+    LocalMap<String, CompensationJournal> journals = vertx.sharedData().getLocalMap(JOURNALS_MAP);
+    return journals.computeIfAbsent(
+        config.getString("compensationJournalPath", DEFAULT_PATH),
+        path -> new CompensationJournal(vertx, Paths.get(path), DEFAULT_SEGMENT_BYTES,
+            config.getLong("compensationReplayIntervalMs", DEFAULT_REPLAY_INTERVAL_MS)));
+  }
+
+  /**
+   * Sets what re-drives a pending compensation. Only the first replayer set is used, since any
+   * handler can run any compensation.
+   *
+   * @param replayer runs the compensation of a kind with its arguments
+   */
+  public void startReplay(BiFunction<String, JsonObject, Future<?>> replayer) {
+    synchronized (this) {
+      if (this.replayer != null) {
+        return;
+      }
+      this.replayer = replayer;
+    }
+    ready.onSuccess(v -> context.runOnContext(run -> replayDue()));
+  }
+
+  /**
+   * Durably records a compensation about to run. The caller owns it until it calls
+   * {@link #complete} or {@link #release}; the replay worker leaves it alone until then.
+   *
+   * @param kind what compensation to run
+   * @param args arguments of the compensation, without any token
+   * @return the sequence number of the compensation, once it is on disk
+   */
+  public Future<Long> record(String kind, JsonObject args) {
+    return ready.compose(v -> {
+      Entry entry;
+      synchronized (this) {
+        entry = new Entry(nextSequence++, kind, args.copy(), System.currentTimeMillis());
+        entry.inFlight = true;
+        pending.put(entry.sequence, entry);
+      }
+      return write(entry.toJson(), entry).map(entry.sequence).onFailure(cause -> {
+        synchronized (this) {
+          pending.remove(entry.sequence);
+          if (entry.segment > 0) {
+            liveBySegment.computeIfPresent(entry.segment, (segment, live) -> live - 1);
+          }
+        }
+      });
+    });
+  }
+
+  /**
+   * Marks a compensation done, it will not be replayed again.
+   *
+   * @return completes once the completion is journaled
+   */
+  public Future<Void> complete(long sequence) {
+    synchronized (this) {
+      Entry entry = pending.remove(sequence);
+      if (entry == null) {
+        return Future.succeededFuture();
+      }
+      if (entry.segment > 0) {
+        liveBySegment.computeIfPresent(entry.segment, (segment, live) -> live - 1);
+      }
+    }
+    return write(new JsonObject().put(SEQUENCE, sequence).put(DONE, true), null)
+        .onFailure(cause -> LOGGER.error("Failed to journal completion of compensation {}: {}",
+            sequence, cause.getMessage()))
+        .onComplete(ar -> deleteCompletedSegments());
+  }
+
+  /**
+   * Hands a failed compensation to the replay worker. A failure that a retry cannot fix abandons
+   * it instead.
+   *
+   * @param cause why the last attempt failed
+   */
+  public void release(long sequence, Throwable cause) {
+    if (FailureClassifier.classify(cause) == Classification.NON_RETRYABLE) {
+      String kind;
+      synchronized (this) {
+        Entry entry = pending.get(sequence);
+        kind = entry == null ? null : entry.kind;
+      }
+      LOGGER.error("INCONSISTENCY DETECTED : COMPENSATION {} {} ABANDONED - {}", kind, sequence,
+          cause.getMessage());
+      count("abandoned");
+      complete(sequence);
+      return;
+    }
+    synchronized (this) {
+      Entry entry = pending.get(sequence);
+      if (entry == null) {
+        return;
+      }
+      long backoff = Math.min(MAX_BACKOFF_MS, replayIntervalMs << Math.min(entry.attempts, 16));
+      entry.attempts++;
+      entry.inFlight = false;
+      entry.notBefore = System.currentTimeMillis() + Math.max(backoff,
+          FailureClassifier.retryAfterMs(cause));
+    }
+  }
+
+  /** Number of compensations that have not succeeded yet. */
+  public synchronized int depth() {
+    return pending.size();
+  }
+
+  private synchronized double oldestAgeSeconds() {
+    return pending.isEmpty() ? 0
+        : (System.currentTimeMillis() - pending.values().iterator().next().createdAt) / 1000.0;
+  }
+
+  private void replayDue() {
+    List<Entry> due = new ArrayList<>();
+    synchronized (this) {
+      if (replayer == null) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      for (Entry entry : pending.values()) {
+        if (replaying >= REPLAY_CONCURRENCY) {
+          break;
+        }
+        if (!entry.inFlight && entry.notBefore <= now) {
+          entry.inFlight = true;
+          replaying++;
+          due.add(entry);
+        }
+      }
+    }
+    due.forEach(this::replay);
+  }
+
+  private void replay(Entry entry) {
+    Future<?> attempt;
+    try {
+      attempt = replayer.apply(entry.kind, entry.args.copy());
+    } catch (RuntimeException e) {
+      attempt = Future.failedFuture(e);
+    }
+    attempt.onComplete(ar -> context.runOnContext(run -> {
+      synchronized (this) {
+        replaying--;
+      }
+      if (ar.succeeded()) {
+        LOGGER.info("Replayed compensation {} {}", entry.kind, entry.sequence);
+        count("succeeded");
+        complete(entry.sequence);
+        replayDue();
+        return;
+      }
+      LOGGER.warn("Replay of compensation {} {} failed (attempt {}): {}", entry.kind,
+          entry.sequence, entry.attempts + 1, ar.cause().getMessage());
+      count("failed");
+      release(entry.sequence, ar.cause());
+    }));
+  }
+
+  private void count(String outcome) {
+    Counter.builder("dx_compensation_replays")
+        .description("Compensations re-driven from the journal")
+        .tag("outcome", outcome)
+        .register(MetricsHelper.registry())
+        .increment();
+  }
+
+  /* queues a record for the next flush; the entry, if any, is the one the record journals */
+  private Future<Void> write(JsonObject record, Entry entry) {
+    byte[] payload = record.encode().getBytes(StandardCharsets.UTF_8);
+    if (HEADER_BYTES + payload.length > segmentBytes) {
+      return Future.failedFuture(new IllegalArgumentException(
+          "Compensation record of " + payload.length + " bytes does not fit a journal segment"));
+    }
+    Write write = new Write(payload, entry);
+    boolean start;
+    synchronized (this) {
+      batch.add(write);
+      start = !flushing;
+      flushing = true;
+    }
+    if (start) {
+      flush();
+    }
+    return write.promise.future();
+  }
+
+  private void flush() {
+    List<Write> writes;
+    synchronized (this) {
+      if (batch.isEmpty()) {
+        flushing = false;
+        return;
+      }
+      writes = new ArrayList<>(batch);
+      batch.clear();
+    }
+    executor.executeBlocking(() -> {
+      for (Write write : writes) {
+        long segment = append(write.payload);
+        if (write.entry != null) {
+          synchronized (this) {
+            write.entry.segment = segment;
+            liveBySegment.merge(segment, 1, Integer::sum);
+          }
+        }
+      }
+      active.force();
+      return null;
+    }, false).onComplete(ar -> {
+      if (ar.succeeded()) {
+        writes.forEach(write -> write.promise.complete());
+      } else {
+        writes.forEach(write -> write.promise.fail(ar.cause()));
+      }
+      flush();
+    });
+  }
+
+  /* worker thread: appends one record to the active segment, rolling it when full */
+  private long append(byte[] payload) throws IOException {
+    if (active.remaining() < HEADER_BYTES + payload.length) {
+      active.force();
+      roll();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    active.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+    synchronized (this) {
+      return activeSegment;
+    }
+  }
+
+  /* worker thread: starts a new segment */
+  private void roll() throws IOException {
+    long segment;
+    synchronized (this) {
+      segment = activeSegment + 1;
+    }
+    if (activeChannel != null) {
+      activeChannel.close();
+    }
+    activeChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    synchronized (this) {
+      activeSegment = segment;
+      liveBySegment.putIfAbsent(segment, 0);
+    }
+  }
+
+  private void deleteCompletedSegments() {
+    List<Long> completed = new ArrayList<>();
+    synchronized (this) {
+      if (deleting) {
+        return;
+      }
+      // only from the head: a completion is always journaled after the compensation it completes
+      for (Map.Entry<Long, Integer> segment : liveBySegment.entrySet()) {
+        if (segment.getKey() >= activeSegment || segment.getValue() > 0) {
+          break;
+        }
+        completed.add(segment.getKey());
+      }
+      if (completed.isEmpty()) {
+        return;
+      }
+      deleting = true;
+    }
+    executor.executeBlocking(() -> {
+      for (Long segment : completed) {
+        Files.deleteIfExists(segmentPath(segment));
+      }
+      return null;
+    }, false).onComplete(ar -> {
+      synchronized (this) {
+        if (ar.succeeded()) {
+          completed.forEach(liveBySegment::remove);
+        }
+        deleting = false;
+      }
+      if (ar.failed()) {
+        LOGGER.error("Failed to delete completed journal segments: {}", ar.cause().getMessage());
+      }
+    });
+  }
+
+  /* worker thread: reads all segments and rewrites what is pending into a fresh one */
+  private List<Entry> open() throws IOException {
+    Files.createDirectories(directory);
+    List<Path> files;
+    try (Stream<Path> listing = Files.list(directory)) {
+      files = listing
+          .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+          .sorted()
+          .toList();
+    }
+    Map<Long, JsonObject> records = new LinkedHashMap<>();
+    Set<Long> done = new HashSet<>();
+    long lastSequence = 0;
+    long lastSegment = 0;
+    for (Path file : files) {
+      lastSegment = Math.max(lastSegment, segmentNumber(file));
+      for (JsonObject record : read(file)) {
+        long sequence = record.getLong(SEQUENCE);
+        lastSequence = Math.max(lastSequence, sequence);
+        if (record.getBoolean(DONE, false)) {
+          done.add(sequence);
+        } else {
+          records.putIfAbsent(sequence, record);
+        }
+      }
+    }
+    records.keySet().removeAll(done);
+    synchronized (this) {
+      nextSequence = lastSequence + 1;
+      activeSegment = lastSegment;
+    }
+    roll();
+    List<Entry> restored = new ArrayList<>();
+    for (JsonObject record : records.values()) {
+      Entry entry = Entry.fromJson(record);
+      entry.segment = append(record.encode().getBytes(StandardCharsets.UTF_8));
+      restored.add(entry);
+    }
+    active.force();
+    for (Path file : files) {
+      Files.delete(file);
+    }
+    return restored;
+  }
+
+  private Void restore(List<Entry> restored) {
+    synchronized (this) {
+      for (Entry entry : restored) {
+        pending.put(entry.sequence, entry);
+        liveBySegment.merge(entry.segment, 1, Integer::sum);
+      }
+    }
+    if (!restored.isEmpty()) {
+      LOGGER.info("Resuming {} pending compensations from the journal", restored.size());
+    }
+    return null;
+  }
+
+  private List<JsonObject> read(Path file) throws IOException {
+    List<JsonObject> records = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      while (buffer.remaining() >= HEADER_BYTES) {
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+          break;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          // a torn record from a crash mid-flush, it was never acknowledged
+          LOGGER.warn("Skipping the rest of journal segment {} after a corrupt record", file);
+          break;
+        }
+        records.add(new JsonObject(new String(payload, StandardCharsets.UTF_8)));
+      }
+    }
+    return records;
+  }
+
+  private Path segmentPath(long segment) {
+    return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+  }
+
+  private static long segmentNumber(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /* a record waiting for the next flush */
+  private static final class Write {
+    private final byte[] payload;
+    private final Entry entry;
+    private final Promise<Void> promise = Promise.promise();
+
+    private Write(byte[] payload, Entry entry) {
+      this.payload = payload;
+      this.entry = entry;
+    }
+  }
+
+  /* a journaled compensation */
+  private static final class Entry {
+    private final long sequence;
+    private final String kind;
+    private final JsonObject args;
+    private final long createdAt;
+    private long segment;
+    private int attempts;
+    private long notBefore;
+    private boolean inFlight;
+
+    private Entry(long sequence, String kind, JsonObject args, long createdAt) {
+      this.sequence = sequence;
+      this.kind = kind;
+      this.args = args;
+      this.createdAt = createdAt;
+    }
+
+    private static Entry fromJson(JsonObject record) {
+      return new Entry(record.getLong(SEQUENCE), record.getString(KIND),
+          record.getJsonObject(ARGS, new JsonObject()), record.getLong(CREATED_AT));
+    }
+
+    private JsonObject toJson() {
+      return new JsonObject()
+          .put(SEQUENCE, sequence)
+          .put(KIND, kind)
+          .put(ARGS, args)
+          .put(CREATED_AT, createdAt);
+    }
+  }
+}
@@ -51,7 +51,22 @@ public class Constants {
   /* Service Addresses */
   public static final String CATALOGUE_ADDRESS = "iudx.onboarding.server.catalogue";
   public static final String TOKEN_ADDRESS = "iudx.onboarding.server.token";
+  public static final String TOKEN_READINESS_ADDRESS = "iudx.onboarding.server.token.readiness";
   public static final String INGESTION_ADDRESS = "iudx.onboarding.server.ingestion";
   public static final String RS_SERVICE_ADDRESS = "iudx.onboarding.server.resourceserver";
   public static final String MINIO_ADDRESS = "iudx.onboarding.server.minio";
+  /* published to, so that every node evicts local catalogue cache entries */
+  public static final String CATALOGUE_CACHE_ADDRESS = "iudx.onboarding.server.catalogue.cache";
+
+  /* Upstream names, used for retry budgets, circuit breakers and their metrics */
+  public static final String UPSTREAM_CENTRAL_CATALOGUE = "central_catalogue";
+  public static final String UPSTREAM_LOCAL_CATALOGUE = "local_catalogue";
+  public static final String UPSTREAM_RESOURCE_SERVER = "resource_server";
+  public static final String UPSTREAM_MINIO_POLICY = "minio_policy";
+
+  /* centralWriteMode value acknowledging writes before they reach the central catalogue */
+  public static final String WRITE_BEHIND = "writeBehind";
+  /* centralWriteMode value writing both catalogues from the catalogue verticle, under an id
+   * allocated here */
+  public static final String PARALLEL = "parallel";
 }
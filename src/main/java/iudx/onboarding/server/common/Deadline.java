@@ -0,0 +1,93 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+
+/**
+ * Point in time by which the client of an API request expects its answer.
+ *
+ * <p>A deadline is created at the HTTP edge and attached to the request's Vert.x context. Vert.x
+ * runs every HTTP request and every event bus delivery on its own duplicated context, so the
+ * deadline attached there follows the request through callbacks, timers and retries without being
+ * passed around explicitly. {@link DeadlinePropagation} carries it across the event bus and applies
+ * it to upstream HTTP calls.
+ *
+ * <p>Work that is abandoned or wasted because the deadline had already passed is counted in
+ * <code>dx_deadline_exceeded</code>, tagged with the stage at which it was detected.
+ */
+public final class Deadline {
+
+  private static final String LOCAL_KEY = Deadline.class.getName();
+
+  private final long expiresAtNanos;
+
+  private Deadline(long expiresAtNanos) {
+    this.expiresAtNanos = expiresAtNanos;
+  }
+
+  /**
+   * Creates a deadline that expires after the given budget.
+   *
+   * @param budgetMs time left to complete the request, in milliseconds
+   */
+  public static Deadline after(long budgetMs) {
+    return new Deadline(System.nanoTime() + budgetMs * 1_000_000);
+  }
+
+  /**
+   * The deadline of the request being handled on the current context.
+   *
+   * @return the deadline, or <code>null</code> when the current work has none
+   */
+  public static Deadline current() {
+    Context context = Vertx.currentContext();
+    return context == null ? null : context.getLocal(LOCAL_KEY);
+  }
+
+  /**
+   * Runs the action on a new context that carries no deadline. Meant for work which has to finish
+   * even when the client is gone, such as compensations restoring consistency between catalogues.
+   */
+  public static void runDetached(Vertx vertx, Runnable action) {
+    ContextInternal context = (ContextInternal) vertx.getOrCreateContext();
+    context.unwrap().duplicate().runOnContext(v -> action.run());
+  }
+
+  /**
+   * Counts work abandoned or wasted because the deadline had passed.
+   *
+   * @param stage where it was detected, e.g. <code>eventbus</code> or <code>late_response</code>
+   */
+  public static void countExceeded(String stage) {
+    Counter.builder("dx_deadline_exceeded")
+        .description("Work abandoned or wasted after the request deadline had passed")
+        .tag("stage", stage)
+        .register(MetricsHelper.registry())
+        .increment();
+  }
+
+  /**
+   * Attaches this deadline to the current context, which must be the request's own (duplicated)
+   * context.
+   */
+  public Deadline attach() {
+    Context context = Vertx.currentContext();
+    if (context != null) {
+      context.putLocal(LOCAL_KEY, this);
+    }
+    return this;
+  }
+
+  /**
+   * Milliseconds left before the deadline, never negative.
+   */
+  public long remainingMs() {
+    return Math.max(0, (expiresAtNanos - System.nanoTime()) / 1_000_000);
+  }
+
+  public boolean isExpired() {
+    return expiresAtNanos - System.nanoTime() <= 0;
+  }
+}
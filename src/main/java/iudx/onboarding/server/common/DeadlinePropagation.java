@@ -0,0 +1,140 @@
+package iudx.onboarding.server.common;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.impl.HttpContext;
+import io.vertx.ext.web.client.impl.WebClientInternal;
+import io.vertx.serviceproxy.ServiceException;
+import io.vertx.serviceproxy.ServiceInterceptor;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Carries the request {@link Deadline} across the event bus and into upstream HTTP calls.
+ *
+ * <ul>
+ *   <li>{@link #install(Vertx)} adds the remaining budget of the sender's deadline as a header to
+ *       every event bus message. The budget is sent rather than the instant, so clock differences
+ *       between cluster nodes do not matter.
+ *   <li>{@link #SERVICE_INTERCEPTOR} restores the deadline on the receiving service, and rejects
+ *       requests whose deadline already passed before any work is started.
+ *   <li>{@link #bind(WebClient)} limits every request of a client to the remaining budget, skips
+ *       requests once the deadline has passed and counts responses arriving too late to be used.
+ * </ul>
+ */
+public final class DeadlinePropagation {
+
+  public static final String HEADER = "x-dx-deadline-remaining-ms";
+
+  /**
+   * Restores the caller's deadline on the service side. Register it on the {@link
+   * io.vertx.serviceproxy.ServiceBinder} of services handling API requests.
+   */
+  public static final ServiceInterceptor SERVICE_INTERCEPTOR = DeadlinePropagation::intercept;
+
+  private static final Logger LOGGER = LogManager.getLogger(DeadlinePropagation.class);
+  private static final String INSTALLED_MAP = "iudx.onboarding.server.deadline";
+  private static final String DEADLINE_ATTRIBUTE = "dx.deadline";
+
+  private DeadlinePropagation() {}
+
+  /**
+   * Adds the deadline header to outgoing event bus messages. Safe to call from every verticle, the
+   * interceptor is added once per Vert.x instance.
+   */
+  public static void install(Vertx vertx) {
+    LocalMap<String, Boolean> installed = vertx.sharedData().getLocalMap(INSTALLED_MAP);
+    if (installed.putIfAbsent("outbound", Boolean.TRUE) != null) {
+      return;
+    }
+    vertx.eventBus().addOutboundInterceptor(deliveryContext -> {
+      Deadline deadline = Deadline.current();
+      if (deadline != null) {
+        deliveryContext.message().headers()
+            .set(HEADER, String.valueOf(deadline.remainingMs()));
+      }
+      deliveryContext.next();
+    });
+  }
+
+  /**
+   * Applies the deadline of the calling request to every request sent with the client.
+   *
+   * @return the same client
+   */
+  public static WebClient bind(WebClient webClient) {
+    if (webClient instanceof WebClientInternal) {
+      ((WebClientInternal) webClient).addInterceptor(DeadlinePropagation::intercept);
+    }
+    return webClient;
+  }
+
+  private static Future<Message<JsonObject>> intercept(Vertx vertx,
+                                                      Map<String, Object> interceptorContext,
+                                                      Message<JsonObject> message) {
+    String remaining = message.headers().get(HEADER);
+    if (remaining == null) {
+      return Future.succeededFuture(message);
+    }
+    Deadline deadline;
+    try {
+      deadline = Deadline.after(Long.parseLong(remaining));
+    } catch (NumberFormatException e) {
+      LOGGER.warn("Ignoring malformed deadline header: {}", remaining);
+      return Future.succeededFuture(message);
+    }
+    if (deadline.isExpired()) {
+      Deadline.countExceeded("eventbus");
+      return Future.failedFuture(new ServiceException(
+          HttpStatusCode.REQUEST_TIMEOUT.getValue(),
+          new JsonObject()
+              .put("type", HttpStatusCode.REQUEST_TIMEOUT.getUrn())
+              .put("title", HttpStatusCode.REQUEST_TIMEOUT.getDescription())
+              .put("detail", "Request deadline passed before "
+                  + message.headers().get("action") + " started")
+              .encode()));
+    }
+    deadline.attach();
+    return Future.succeededFuture(message);
+  }
+
+  private static void intercept(HttpContext<?> httpContext) {
+    Deadline deadline;
+    switch (httpContext.phase()) {
+      case PREPARE_REQUEST:
+        deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+          Deadline.countExceeded("upstream");
+          httpContext.fail(new TimeoutException("Request deadline passed before calling "
+              + httpContext.request().host()));
+          return;
+        }
+        httpContext.set(DEADLINE_ATTRIBUTE, deadline);
+        break;
+      case CREATE_REQUEST:
+        deadline = httpContext.get(DEADLINE_ATTRIBUTE);
+        if (deadline != null) {
+          long timeout = httpContext.requestOptions().getTimeout();
+          long remaining = Math.max(1, deadline.remainingMs());
+          httpContext.requestOptions()
+              .setTimeout(timeout > 0 ? Math.min(timeout, remaining) : remaining);
+        }
+        break;
+      case DISPATCH_RESPONSE:
+        deadline = httpContext.get(DEADLINE_ATTRIBUTE);
+        if (deadline != null && deadline.isExpired()) {
+          Deadline.countExceeded("late_response");
+        }
+        break;
+      default:
+        break;
+    }
+    httpContext.next();
+  }
+}
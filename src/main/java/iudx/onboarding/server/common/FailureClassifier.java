@@ -0,0 +1,145 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.HttpClosedException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ServiceException;
+import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classifies failures of upstream calls for the {@link RetryEngine}.
+ *
+ * <p>Failures carrying an HTTP status (an {@link UpstreamException}, or its status after crossing
+ * the event bus as a {@link ReplyException} failure code) are classified by status: 429 is
+ * throttled, 408 and 5xx are retryable and every other 4xx is non-retryable. Failures that only
+ * carry the upstream body are classified by the error URN in it. Transport errors are retryable,
+ * except an unknown host which will not resolve on a retry either. Anything else, including a
+ * failure without a message, is taken for a bug or a rejection and is not retried.
+ *
+ * <p>Each classification is counted in <code>dx_upstream_failures</code>.
+ */
+public final class FailureClassifier {
+
+  public enum Classification {
+    RETRYABLE,
+    NON_RETRYABLE,
+    THROTTLED
+  }
+
+  /* debug info key of a ServiceException carrying the Retry-After of the upstream */
+  public static final String RETRY_AFTER = "retryAfter";
+
+  /* DX error types (matched case insensitively) that a retry cannot fix */
+  private static final List<String> NON_RETRYABLE_URNS = List.of(
+      ":invalidschema", ":invalidsyntax", ":invalidauthorizationtoken", ":invaliduuid",
+      ":itemnotfound", ":itemalreadyexists", ":operationnotallowed", ":linkvalidationfailed",
+      ":badrequest", ":unauthorized", ":forbidden", ":notfound", ":conflict",
+      ":invalidparamvalue", ":missingtokenerror", ":invalidtokenerror");
+  private static final String THROTTLED_URN = ":toomanyrequests";
+  private static final List<String> RETRYABLE_URNS = List.of(
+      ":requesttimeout", ":internalservererror", ":badgateway", ":serviceunavailable",
+      ":gatewaytimeout");
+  /* transport errors that crossed the event bus as a message only */
+  private static final List<String> TRANSPORT_ERRORS = List.of(
+      "connection reset", "connection refused", "connection was closed", "timed out");
+
+  private FailureClassifier() {}
+
+  /**
+   * Classifies the failure and counts it.
+   *
+   * @param cause failure of an upstream call
+   * @return the classification
+   */
+  public static Classification classify(Throwable cause) {
+    Classification classification = classifyFailure(cause);
+    Counter.builder("dx_upstream_failures")
+        .description("Upstream failures by retry classification")
+        .tag("classification", classification.name().toLowerCase(Locale.ROOT))
+        .register(MetricsHelper.registry())
+        .increment();
+    return classification;
+  }
+
+  /**
+   * The delay requested by a throttling upstream.
+   *
+   * @return Retry-After in milliseconds, or <code>0</code> if none was given
+   */
+  public static long retryAfterMs(Throwable cause) {
+    if (cause instanceof UpstreamException) {
+      return ((UpstreamException) cause).getRetryAfterSeconds() * 1000;
+    }
+    if (cause instanceof ServiceException) {
+      // an UpstreamException that crossed the event bus arrives as a plain ServiceException
+      JsonObject debugInfo = ((ServiceException) cause).getDebugInfo();
+      return debugInfo == null ? 0 : debugInfo.getLong(RETRY_AFTER, 0L) * 1000;
+    }
+    return 0;
+  }
+
+  private static Classification classifyFailure(Throwable cause) {
+    if (cause instanceof UnknownHostException) {
+      return Classification.NON_RETRYABLE;
+    }
+    if (cause instanceof IOException || cause instanceof HttpClosedException
+        || cause instanceof TimeoutException || cause.getCause() instanceof IOException) {
+      return Classification.RETRYABLE;
+    }
+    if (cause instanceof ReplyException) {
+      ReplyException replyException = (ReplyException) cause;
+      if (replyException.failureType() != ReplyFailure.RECIPIENT_FAILURE) {
+        // no handler yet, or the service did not answer in time
+        return Classification.RETRYABLE;
+      }
+      if (isHttpStatus(replyException.failureCode())) {
+        return classifyStatus(replyException.failureCode(), retryAfterMs(cause));
+      }
+    }
+    if (cause instanceof DxRuntimeException
+        && isHttpStatus(((DxRuntimeException) cause).getStatusCode())) {
+      return classifyStatus(((DxRuntimeException) cause).getStatusCode(), 0);
+    }
+    return classifyMessage(cause.getMessage());
+  }
+
+  static Classification classifyStatus(int statusCode, long retryAfterMs) {
+    if (statusCode == 429 || (statusCode == 503 && retryAfterMs > 0)) {
+      return Classification.THROTTLED;
+    }
+    if (statusCode == 408 || statusCode >= 500) {
+      return Classification.RETRYABLE;
+    }
+    return Classification.NON_RETRYABLE;
+  }
+
+  static Classification classifyMessage(String message) {
+    if (message == null) {
+      return Classification.NON_RETRYABLE;
+    }
+    String lower = message.toLowerCase(Locale.ROOT);
+    if (lower.contains(THROTTLED_URN)) {
+      return Classification.THROTTLED;
+    }
+    if (NON_RETRYABLE_URNS.stream().anyMatch(lower::contains)) {
+      return Classification.NON_RETRYABLE;
+    }
+    if (RETRYABLE_URNS.stream().anyMatch(lower::contains)
+        || TRANSPORT_ERRORS.stream().anyMatch(lower::contains)) {
+      return Classification.RETRYABLE;
+    }
+    return Classification.NON_RETRYABLE;
+  }
+
+  private static boolean isHttpStatus(int code) {
+    return code >= 400 && code < 600;
+  }
+}
@@ -1,35 +1,89 @@
 package iudx.onboarding.server.common;
 
-import dev.failsafe.Failsafe;
-import dev.failsafe.RetryPolicy;
-import dev.failsafe.RetryPolicyBuilder;
+import static iudx.onboarding.server.common.Constants.ID;
+import static iudx.onboarding.server.common.Constants.TOKEN;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_CENTRAL_CATALOGUE;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_LOCAL_CATALOGUE;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_RESOURCE_SERVER;
+
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
-import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
 import iudx.onboarding.server.catalogue.service.CentralCatImpl;
 import iudx.onboarding.server.catalogue.service.LocalCatImpl;
 import iudx.onboarding.server.resourceserver.ResourceServerService;
 import iudx.onboarding.server.token.TokenService;
+import java.util.function.Function;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Compensations undoing a partial write when the local catalogue, the central catalogue or the
+ * resource server rejected their part of it. Central writes are undone from the local catalogue's
+ * copy, with the admin token.
+ *
+ * <p>Every compensation is recorded in the {@link CompensationJournal} before it runs with the
+ * caller's token. One that still fails after its retries stays in the journal and is re-driven by
+ * the replay worker with the server's own token, including after a restart.
+ */
 public class InconsistencyHandler {
 
   private static Logger LOGGER = LogManager.getLogger(InconsistencyHandler.class);
 
+  private static final String PATH = "path";
+  private static final String DELETE_ITEM_ON_LOCAL = "deleteItemOnLocal";
+  private static final String DELETE_RESOURCE_GROUP = "deleteResourceGroup";
+  private static final String UPDATE_ITEM_ON_LOCAL = "updateItemOnLocal";
+  private static final String UPLOAD_ITEM_TO_LOCAL = "uploadItemToLocal";
+  private static final String UPLOAD_RESOURCE_GROUP_TO_LOCAL = "uploadResourceGroupToLocal";
+  private static final String DELETE_INSTANCE_ON_LOCAL = "deleteInstanceOnLocal";
+  private static final String UPLOAD_INSTANCE_TO_LOCAL = "uploadInstanceToLocal";
+  private static final String UPDATE_INSTANCE_ON_LOCAL = "updateInstanceOnLocal";
+  private static final String DELETE_DOMAIN_ON_LOCAL = "deleteDomainOnLocal";
+  private static final String UPLOAD_DOMAIN_TO_LOCAL = "uploadDomainToLocal";
+  private static final String UPDATE_DOMAIN_ON_LOCAL = "updateDomainOnLocal";
+  private static final String RECREATE_ADAPTER = "recreateAdapter";
+  private static final String DELETE_ITEM_ON_CENTRAL = "deleteItemOnCentral";
+  private static final String DELETE_INSTANCE_ON_CENTRAL = "deleteInstanceOnCentral";
+  private static final String DELETE_DOMAIN_ON_CENTRAL = "deleteDomainOnCentral";
+  private static final String UPDATE_ITEM_ON_CENTRAL = "updateItemOnCentral";
+  private static final String UPLOAD_ITEM_TO_CENTRAL = "uploadItemToCentral";
+  private static final String UPDATE_INSTANCE_ON_CENTRAL = "updateInstanceOnCentral";
+  private static final String UPLOAD_INSTANCE_TO_CENTRAL = "uploadInstanceToCentral";
+  private static final String UPDATE_DOMAIN_ON_CENTRAL = "updateDomainOnCentral";
+  private static final String UPLOAD_DOMAIN_TO_CENTRAL = "uploadDomainToCentral";
+
   TokenService tokenService;
 
   LocalCatImpl localCat;
   CentralCatImpl centralCat;
-  RetryPolicyBuilder<Object> retryPolicyBuilder;
+  /* compensations touching the central catalogue draw on its budget, even when they only read */
+  RetryEngine centralRetry;
+  RetryEngine localRetry;
+  RetryEngine resourceServerRetry;
   ResourceServerService resourceServerService;
+  CompensationJournal journal;
 
-  public InconsistencyHandler(TokenService tokenService, LocalCatImpl localCat, CentralCatImpl centralCat,
-                              RetryPolicyBuilder<Object> retryPolicyBuilder) {
+  public InconsistencyHandler(Vertx vertx, JsonObject config, TokenService tokenService,
+                              LocalCatImpl localCat, CentralCatImpl centralCat,
+                              RetryEngine retryEngine) {
     this.tokenService = tokenService;
     this.localCat = localCat;
     this.centralCat = centralCat;
-    this.retryPolicyBuilder = retryPolicyBuilder;
+    this.centralRetry =
+        retryEngine.withBudget(RetryBudget.forUpstream(UPSTREAM_CENTRAL_CATALOGUE));
+    this.localRetry = retryEngine.withBudget(RetryBudget.forUpstream(UPSTREAM_LOCAL_CATALOGUE));
+    this.resourceServerRetry =
+        retryEngine.withBudget(RetryBudget.forUpstream(UPSTREAM_RESOURCE_SERVER));
+    this.journal = CompensationJournal.shared(vertx, config);
+    this.journal.startReplay(this::replay);
+  }
+
+  /**
+   * Sets the resource server adapters are recreated on, see {@link #handleRecreateAdapter}.
+   */
+  public void setResourceServerService(ResourceServerService resourceServerService) {
+    this.resourceServerService = resourceServerService;
   }
 
   /**
@@ -38,49 +92,12 @@ public class InconsistencyHandler {
    * @return Future which of the type void
    */
   public Future<Void> handleDeleteOnLocal(final String id, final String token) {
-
-    RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-        .onSuccess(listener -> LOGGER.info("Item deleted from local after upload to central failed"))
-        .onFailure(failureListener -> {
-          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT DELETED FROM LOCAL - INCONSISTENT");
-        })
-        .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(asyncExecution -> {
-          localCat.deleteItem(id, token)
-              .onSuccess(successHandler -> {
-                asyncExecution.complete();
-              }).onFailure(asyncExecution::recordException);
-        });
-
+    compensate(DELETE_ITEM_ON_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
   public Future<Void> handleDeleteOfResourceGroup(final String id, final String token) {
-    RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-        .onSuccess(listener -> LOGGER.info("Item deleted from local and central after ingestion fails"))
-        .onFailure(failureListener -> {
-          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT DELETED AFTER INGESTION FAIL");
-        })
-        .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(asyncExecution -> {
-          localCat.deleteItem(id, token)
-              .compose(localHandler -> {
-                return tokenService.createToken();
-              }).compose(tokenHandler -> {
-                return centralCat.deleteItem(id, tokenHandler.getString("token"));
-              }).onComplete(completeHandler -> {
-                if (completeHandler.succeeded()) {
-                  asyncExecution.recordResult(completeHandler.result());
-                } else {
-                  asyncExecution.recordException(new DxRuntimeException(400, completeHandler.cause().getMessage()));
-                }
-              });
-        });
-
+    compensate(DELETE_RESOURCE_GROUP, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -90,26 +107,7 @@ public class InconsistencyHandler {
    * @return Future which of the type void
    */
   public Future<Void> handleUpdateOnLocal(final String id, final String token) {
-
-    RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
-        .onFailure(failureListener -> {
-          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT RESTORED ON LOCAL");
-        })
-        .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(asyncExecution -> {
-          centralCat.getItem(id)
-              .onSuccess(oldItem -> {
-                localCat.updateItem(oldItem, token)
-                    .onSuccess(successHandler -> {
-                      asyncExecution.complete();
-                    }).onFailure(asyncExecution::recordException);
-              })
-              .onFailure(asyncExecution::recordException);
-        });
-
+    compensate(UPDATE_ITEM_ON_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -119,26 +117,16 @@ public class InconsistencyHandler {
    * @return Future which of the type void
    */
   public Future<Void> handleUploadToLocal(final String id, final String token) {
+    compensate(UPLOAD_ITEM_TO_LOCAL, new JsonObject().put(ID, id), token);
+    return Future.succeededFuture();
+  }
 
-    RetryPolicy<Object> retryPolicy = retryPolicyBuilder
-        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
-        .onFailure(failureListener -> {
-          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT RESTORED ON LOCAL");
-        })
-        .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(asyncExecution -> {
-          centralCat.getItem(id)
-              .onSuccess(item -> {
-                localCat.createItem(item, token)
-                    .onSuccess(successHandler -> {
-                      asyncExecution.complete();
-                    }).onFailure(asyncExecution::recordException);
-
-              }).onFailure(asyncExecution::recordException);
-        });
-
+  /**
+   * This method is meant to restore a resource group on local, and then its adapter on the
+   * resource server, when delete on central fails
+   */
+  public Future<Void> handleUploadResourceGroupToLocal(final String id, final String token) {
+    compensate(UPLOAD_RESOURCE_GROUP_TO_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -148,31 +136,7 @@ public class InconsistencyHandler {
    * @return Future which is of the type void
    */
   public Future<Void> handleDeleteInstanceOnLocal(final String id, final String path, final String token) {
-
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(
-                listener ->
-                    LOGGER.info("Instance deleted from local after upload to central failed"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error(
-                      "INCONSISTENCY DETECTED : INSTANCE NOT DELETED FROM LOCAL - INCONSISTENT");
-                })
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              localCat
-                  .deleteInstance(id, path, token)
-                  .onSuccess(
-                      successHandler -> {
-                        asyncExecution.complete();
-                      })
-                  .onFailure(asyncExecution::recordException);
-            });
-
+    compensate(DELETE_INSTANCE_ON_LOCAL, new JsonObject().put(ID, id).put(PATH, path), token);
     return Future.succeededFuture();
   }
 
@@ -182,36 +146,7 @@ public class InconsistencyHandler {
    * @return Future which is of the type void
    */
   public Future<Void> handleUploadInstanceToLocal(final String id, final String path, final String token) {
-
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT RESTORED ON LOCAL");
-                })
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              centralCat
-                  .getInstance(id, path)
-                  .onSuccess(
-                      item -> {
-                        JsonObject deletedItem = item.getJsonArray("results").getJsonObject(0);
-                        deletedItem.put("instanceId", id);
-                        localCat
-                            .createInstance(deletedItem, path, token)
-                            .onSuccess(
-                                successHandler -> {
-                                  asyncExecution.complete();
-                                })
-                            .onFailure(asyncExecution::recordException);
-                      })
-                  .onFailure(asyncExecution::recordException);
-            });
-
+    compensate(UPLOAD_INSTANCE_TO_LOCAL, new JsonObject().put(ID, id).put(PATH, path), token);
     return Future.succeededFuture();
   }
 
@@ -221,35 +156,7 @@ public class InconsistencyHandler {
    * @return Future which is of the type void
    */
   public Future<Void> handleUpdateInstanceOnLocal(final String id, final String token) {
-
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT RESTORED ON LOCAL");
-                })
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              centralCat
-                  .getInstance(id, "/internal/ui")
-                  .onSuccess(
-                      oldItem -> {
-                        JsonObject item = oldItem.getJsonArray("results").getJsonObject(0);
-                        localCat
-                            .updateInstance(id, item, token)
-                            .onSuccess(
-                                successHandler -> {
-                                  asyncExecution.complete();
-                                })
-                            .onFailure(asyncExecution::recordException);
-                      })
-                  .onFailure(asyncExecution::recordException);
-            });
-
+    compensate(UPDATE_INSTANCE_ON_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -259,30 +166,7 @@ public class InconsistencyHandler {
    * @return Future which is of the type void
    */
   public Future<Void> handleDeleteDomainOnLocal(final String id, final String token) {
-
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(
-                listener -> LOGGER.info("Domain deleted from local after upload to central failed"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error(
-                      "INCONSISTENCY DETECTED : DOMAIN NOT DELETED FROM LOCAL - INCONSISTENT");
-                })
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              localCat
-                  .deleteDomain(id, token)
-                  .onSuccess(
-                      successHandler -> {
-                        asyncExecution.complete();
-                      })
-                  .onFailure(asyncExecution::recordException);
-            });
-
+    compensate(DELETE_DOMAIN_ON_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -292,36 +176,7 @@ public class InconsistencyHandler {
    * @return Future which is of the type void
    */
   public Future<Void> handleUploadDomainToLocal(final String id, final String token) {
-
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT RESTORED ON LOCAL");
-                })
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              centralCat
-                  .getDomain(id)
-                  .onSuccess(
-                      item -> {
-                        JsonObject deletedDomain = item.getJsonArray("results").getJsonObject(0);
-                        deletedDomain.put("domainId", id);
-                        localCat
-                            .createDomain(deletedDomain, token)
-                            .onSuccess(
-                                successHandler -> {
-                                  asyncExecution.complete();
-                                })
-                            .onFailure(asyncExecution::recordException);
-                      })
-                  .onFailure(asyncExecution::recordException);
-            });
-
+    compensate(UPLOAD_DOMAIN_TO_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -331,33 +186,7 @@ public class InconsistencyHandler {
    * @return Future which is of the type void
    */
   public Future<Void> handleUpdateDomainOnLocal(final String id, final String token) {
-
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT RESTORED ON LOCAL");
-                })
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              centralCat
-                  .getDomain(id)
-                  .onSuccess(
-                      oldItem -> {
-                        JsonObject item = oldItem.getJsonArray("results").getJsonObject(0);
-                        localCat
-                            .updateDomain(id, item, token)
-                            .onSuccess(
-                                successHandler -> asyncExecution.complete())
-                            .onFailure(asyncExecution::recordException);
-                      })
-                  .onFailure(asyncExecution::recordException);
-            });
-
+    compensate(UPDATE_DOMAIN_ON_LOCAL, new JsonObject().put(ID, id), token);
     return Future.succeededFuture();
   }
 
@@ -365,25 +194,413 @@ public class InconsistencyHandler {
    * This method is meant to re-create adapter on the resource server if delete item fails on catalogue server
    */
   public Future<Void> handleRecreateAdapter(String id, String token) {
-    RetryPolicy<Object> retryPolicy =
-        retryPolicyBuilder
-            .onSuccess(listener -> LOGGER.info("Delete of adapter reverted after failure on local catalogue"))
-            .onFailure(
-                failureListener -> {
-                  LOGGER.error("INCONSISTENCY DETECTED : ADAPTER NOT RESTORED IN RESOURCE SERVER");
-                }
-            )
-            .build();
-
-    Failsafe.with(retryPolicy)
-        .getAsyncExecution(
-            asyncExecution -> {
-              resourceServerService
-                  .createAdapter(id, token)
-                  .onSuccess(successHandler -> asyncExecution.complete())
-                  .onFailure(asyncExecution::recordException);
+    compensate(RECREATE_ADAPTER, new JsonObject().put(ID, id), token);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to delete item on central when upload to local fails
+   */
+  public Future<Void> handleDeleteOnCentral(final String id) {
+    compensate(DELETE_ITEM_ON_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to delete instance on central when upload to local fails
+   */
+  public Future<Void> handleDeleteInstanceOnCentral(final String id, final String path) {
+    compensate(DELETE_INSTANCE_ON_CENTRAL, new JsonObject().put(ID, id).put(PATH, path), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to delete domain on central when upload to local fails
+   */
+  public Future<Void> handleDeleteDomainOnCentral(final String id) {
+    compensate(DELETE_DOMAIN_ON_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to restore item on central from local when update on local fails
+   */
+  public Future<Void> handleUpdateOnCentral(final String id) {
+    compensate(UPDATE_ITEM_ON_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to restore item on central from local when delete on local fails
+   */
+  public Future<Void> handleUploadToCentral(final String id) {
+    compensate(UPLOAD_ITEM_TO_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to restore instance on central from local when update on local fails
+   */
+  public Future<Void> handleUpdateInstanceOnCentral(final String id) {
+    compensate(UPDATE_INSTANCE_ON_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to restore instance on central from local when delete on local fails
+   */
+  public Future<Void> handleUploadInstanceToCentral(final String id, final String path) {
+    compensate(UPLOAD_INSTANCE_TO_CENTRAL, new JsonObject().put(ID, id).put(PATH, path), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to restore domain on central from local when update on local fails
+   */
+  public Future<Void> handleUpdateDomainOnCentral(final String id) {
+    compensate(UPDATE_DOMAIN_ON_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /**
+   * This method is meant to restore domain on central from local when delete on local fails
+   */
+  public Future<Void> handleUploadDomainToCentral(final String id) {
+    compensate(UPLOAD_DOMAIN_TO_CENTRAL, new JsonObject().put(ID, id), null);
+    return Future.succeededFuture();
+  }
+
+  /* journals the compensation, runs it and leaves it to the replay worker if it still fails */
+  private void compensate(String kind, JsonObject args, String token) {
+    journal.record(kind, args)
+        .onFailure(cause -> LOGGER.warn("Compensation {} not journaled, it is lost on restart: {}",
+            kind, cause.getMessage()))
+        .onComplete(recorded -> run(kind, args, token).onComplete(ar -> {
+          if (recorded.failed()) {
+            return;
+          }
+          if (ar.succeeded()) {
+            journal.complete(recorded.result());
+          } else {
+            journal.release(recorded.result(), ar.cause());
+          }
+        }));
+  }
+
+  /* re-drives a journaled compensation; user tokens are not journaled, the server's is used */
+  private Future<?> replay(String kind, JsonObject args) {
+    return tokenService.createToken()
+        .compose(adminToken -> run(kind, args, adminToken.getString(TOKEN)));
+  }
+
+  private Future<?> run(String kind, JsonObject args, String token) {
+    String id = args.getString(ID);
+    switch (kind) {
+      case DELETE_ITEM_ON_LOCAL:
+        return deleteOnLocal(id, token);
+      case DELETE_RESOURCE_GROUP:
+        return deleteResourceGroup(id, token);
+      case UPDATE_ITEM_ON_LOCAL:
+        return updateOnLocal(id, token);
+      case UPLOAD_ITEM_TO_LOCAL:
+        return uploadToLocal(id, token);
+      case UPLOAD_RESOURCE_GROUP_TO_LOCAL:
+        return uploadResourceGroupToLocal(id, token);
+      case DELETE_INSTANCE_ON_LOCAL:
+        return deleteInstanceOnLocal(id, args.getString(PATH), token);
+      case UPLOAD_INSTANCE_TO_LOCAL:
+        return uploadInstanceToLocal(id, args.getString(PATH), token);
+      case UPDATE_INSTANCE_ON_LOCAL:
+        return updateInstanceOnLocal(id, token);
+      case DELETE_DOMAIN_ON_LOCAL:
+        return deleteDomainOnLocal(id, token);
+      case UPLOAD_DOMAIN_TO_LOCAL:
+        return uploadDomainToLocal(id, token);
+      case UPDATE_DOMAIN_ON_LOCAL:
+        return updateDomainOnLocal(id, token);
+      case RECREATE_ADAPTER:
+        return recreateAdapter(id, token);
+      case DELETE_ITEM_ON_CENTRAL:
+        return deleteOnCentral(id);
+      case DELETE_INSTANCE_ON_CENTRAL:
+        return deleteInstanceOnCentral(id, args.getString(PATH));
+      case DELETE_DOMAIN_ON_CENTRAL:
+        return deleteDomainOnCentral(id);
+      case UPDATE_ITEM_ON_CENTRAL:
+        return updateOnCentral(id);
+      case UPLOAD_ITEM_TO_CENTRAL:
+        return uploadToCentral(id);
+      case UPDATE_INSTANCE_ON_CENTRAL:
+        return updateInstanceOnCentral(id);
+      case UPLOAD_INSTANCE_TO_CENTRAL:
+        return uploadInstanceToCentral(id, args.getString(PATH));
+      case UPDATE_DOMAIN_ON_CENTRAL:
+        return updateDomainOnCentral(id);
+      case UPLOAD_DOMAIN_TO_CENTRAL:
+        return uploadDomainToCentral(id);
+      default:
+        return Future.failedFuture("Unknown compensation " + kind);
+    }
+  }
+
+  private Future<?> deleteOnLocal(String id, String token) {
+    return localRetry.executeDetached("compensation.deleteItemOnLocal", () -> localCat.deleteItem(id, token))
+        .onSuccess(listener -> LOGGER.info("Item deleted from local after upload to central failed"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT DELETED FROM LOCAL - INCONSISTENT");
+        });
+  }
+
+  private Future<?> deleteResourceGroup(String id, String token) {
+    return centralRetry.executeDetached("compensation.deleteResourceGroup", () ->
+            localCat.deleteItem(id, token)
+                .compose(localHandler -> {
+                  return tokenService.createToken();
+                }).compose(tokenHandler -> {
+                  return centralCat.deleteItem(id, tokenHandler.getString("token"));
+                }))
+        .onSuccess(listener -> LOGGER.info("Item deleted from local and central after ingestion fails"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT DELETED AFTER INGESTION FAIL");
+        });
+  }
+
+  private Future<?> updateOnLocal(String id, String token) {
+    return centralRetry.executeDetached("compensation.updateItemOnLocal", () ->
+            centralCat.getItem(id)
+                .compose(oldItem -> localCat.updateItem(oldItem, token)))
+        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT RESTORED ON LOCAL");
+        });
+  }
+
+  private Future<?> uploadToLocal(String id, String token) {
+    return centralRetry.executeDetached("compensation.uploadItemToLocal", () ->
+            centralCat.getItem(id)
+                .compose(item -> localCat.createItem(item, token)))
+        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT RESTORED ON LOCAL");
+        });
+  }
+
+  /* the resource server looks the adapter up on the local catalogue, so the item goes first */
+  private Future<?> uploadResourceGroupToLocal(String id, String token) {
+    return uploadToLocal(id, token).<Void>mapEmpty()
+        // a replay finds the item restored already if only the adapter was missing
+        .recover(notRestored -> localCat.getItem(id).mapEmpty())
+        .compose(restored -> recreateAdapter(id, token));
+  }
+
+  private Future<?> deleteInstanceOnLocal(String id, String path, String token) {
+    return localRetry.executeDetached("compensation.deleteInstanceOnLocal", () ->
+            localCat.deleteInstance(id, path, token))
+        .onSuccess(
+            listener ->
+                LOGGER.info("Instance deleted from local after upload to central failed"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error(
+                  "INCONSISTENCY DETECTED : INSTANCE NOT DELETED FROM LOCAL - INCONSISTENT");
+            });
+  }
+
+  private Future<?> uploadInstanceToLocal(String id, String path, String token) {
+    return centralRetry.executeDetached("compensation.uploadInstanceToLocal", () ->
+            centralCat
+                .getInstance(id, path)
+                .compose(
+                    item -> {
+                      JsonObject deletedItem = item.getJsonArray("results").getJsonObject(0);
+                      deletedItem.put("instanceId", id);
+                      return localCat.createInstance(deletedItem, path, token);
+                    }))
+        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT RESTORED ON LOCAL");
+            });
+  }
+
+  private Future<?> updateInstanceOnLocal(String id, String token) {
+    return centralRetry.executeDetached("compensation.updateInstanceOnLocal", () ->
+            centralCat
+                .getInstance(id, "/internal/ui")
+                .compose(
+                    oldItem -> {
+                      JsonObject item = oldItem.getJsonArray("results").getJsonObject(0);
+                      return localCat.updateInstance(id, item, token);
+                    }))
+        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT RESTORED ON LOCAL");
+            });
+  }
+
+  private Future<?> deleteDomainOnLocal(String id, String token) {
+    return localRetry.executeDetached("compensation.deleteDomainOnLocal", () -> localCat.deleteDomain(id, token))
+        .onSuccess(
+            listener -> LOGGER.info("Domain deleted from local after upload to central failed"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error(
+                  "INCONSISTENCY DETECTED : DOMAIN NOT DELETED FROM LOCAL - INCONSISTENT");
+            });
+  }
+
+  private Future<?> uploadDomainToLocal(String id, String token) {
+    return centralRetry.executeDetached("compensation.uploadDomainToLocal", () ->
+            centralCat
+                .getDomain(id)
+                .compose(
+                    item -> {
+                      JsonObject deletedDomain = item.getJsonArray("results").getJsonObject(0);
+                      deletedDomain.put("domainId", id);
+                      return localCat.createDomain(deletedDomain, token);
+                    }))
+        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT RESTORED ON LOCAL");
+            });
+  }
+
+  private Future<?> updateDomainOnLocal(String id, String token) {
+    return centralRetry.executeDetached("compensation.updateDomainOnLocal", () ->
+            centralCat
+                .getDomain(id)
+                .compose(
+                    oldItem -> {
+                      JsonObject item = oldItem.getJsonArray("results").getJsonObject(0);
+                      return localCat.updateDomain(id, item, token);
+                    }))
+        .onSuccess(listener -> LOGGER.info("Update on local reverted after failure on central"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT RESTORED ON LOCAL");
+            });
+  }
+
+  /* central writes are made with the admin token, whichever token the compensation runs with */
+  private Future<JsonObject> asAdmin(Function<String, Future<JsonObject>> write) {
+    return tokenService.createToken()
+        .compose(adminToken -> write.apply(adminToken.getString(TOKEN)));
+  }
+
+  private Future<?> deleteOnCentral(String id) {
+    return centralRetry.executeDetached("compensation.deleteItemOnCentral", () ->
+            asAdmin(adminToken -> centralCat.deleteItem(id, adminToken)))
+        .onSuccess(listener ->
+            LOGGER.info("Item deleted from central after upload to local failed"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT DELETED FROM CENTRAL - INCONSISTENT");
+        });
+  }
+
+  private Future<?> deleteInstanceOnCentral(String id, String path) {
+    return centralRetry.executeDetached("compensation.deleteInstanceOnCentral", () ->
+            asAdmin(adminToken -> centralCat.deleteInstance(id, path, adminToken)))
+        .onSuccess(listener ->
+            LOGGER.info("Instance deleted from central after upload to local failed"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT DELETED FROM CENTRAL - INCONSISTENT");
+        });
+  }
+
+  private Future<?> deleteDomainOnCentral(String id) {
+    return centralRetry.executeDetached("compensation.deleteDomainOnCentral", () ->
+            asAdmin(adminToken -> centralCat.deleteDomain(id, adminToken)))
+        .onSuccess(listener ->
+            LOGGER.info("Domain deleted from central after upload to local failed"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT DELETED FROM CENTRAL - INCONSISTENT");
+        });
+  }
+
+  private Future<?> updateOnCentral(String id) {
+    return centralRetry.executeDetached("compensation.updateItemOnCentral", () ->
+            localCat.getItem(id).compose(item -> asAdmin(adminToken ->
+                centralCat.updateItem(item.getJsonArray("results").getJsonObject(0), adminToken))))
+        .onSuccess(listener -> LOGGER.info("Update on central reverted after failure on local"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT RESTORED ON CENTRAL");
+        });
+  }
+
+  private Future<?> uploadToCentral(String id) {
+    return centralRetry.executeDetached("compensation.uploadItemToCentral", () ->
+            localCat.getItem(id).compose(item -> asAdmin(adminToken ->
+                centralCat.createItem(item.getJsonArray("results").getJsonObject(0), adminToken))))
+        .onSuccess(listener -> LOGGER.info("Delete on central reverted after failure on local"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : ITEM NOT RESTORED ON CENTRAL");
+        });
+  }
+
+  private Future<?> updateInstanceOnCentral(String id) {
+    return centralRetry.executeDetached("compensation.updateInstanceOnCentral", () ->
+            localCat.getInstance(id, "/internal/ui").compose(oldItem -> {
+              JsonObject item = oldItem.getJsonArray("results").getJsonObject(0);
+              return asAdmin(adminToken -> centralCat.updateInstance(id, item, adminToken));
+            }))
+        .onSuccess(listener -> LOGGER.info("Update on central reverted after failure on local"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT RESTORED ON CENTRAL");
+        });
+  }
+
+  private Future<?> uploadInstanceToCentral(String id, String path) {
+    return centralRetry.executeDetached("compensation.uploadInstanceToCentral", () ->
+            localCat.getInstance(id, path).compose(item -> {
+              JsonObject deletedItem = item.getJsonArray("results").getJsonObject(0);
+              deletedItem.put("instanceId", id);
+              return asAdmin(adminToken ->
+                  centralCat.createInstance(deletedItem, path, adminToken));
+            }))
+        .onSuccess(listener -> LOGGER.info("Delete on central reverted after failure on local"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : INSTANCE NOT RESTORED ON CENTRAL");
+        });
+  }
+
+  private Future<?> updateDomainOnCentral(String id) {
+    return centralRetry.executeDetached("compensation.updateDomainOnCentral", () ->
+            localCat.getDomain(id).compose(oldItem -> {
+              JsonObject item = oldItem.getJsonArray("results").getJsonObject(0);
+              return asAdmin(adminToken -> centralCat.updateDomain(id, item, adminToken));
+            }))
+        .onSuccess(listener -> LOGGER.info("Update on central reverted after failure on local"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT RESTORED ON CENTRAL");
+        });
+  }
+
+  private Future<?> uploadDomainToCentral(String id) {
+    return centralRetry.executeDetached("compensation.uploadDomainToCentral", () ->
+            localCat.getDomain(id).compose(item -> {
+              JsonObject deletedDomain = item.getJsonArray("results").getJsonObject(0);
+              deletedDomain.put("domainId", id);
+              return asAdmin(adminToken -> centralCat.createDomain(deletedDomain, adminToken));
+            }))
+        .onSuccess(listener -> LOGGER.info("Delete on central reverted after failure on local"))
+        .onFailure(failureListener -> {
+          LOGGER.error("INCONSISTENCY DETECTED : DOMAIN NOT RESTORED ON CENTRAL");
+        });
+  }
+
+  private Future<?> recreateAdapter(String id, String token) {
+    if (resourceServerService == null) {
+      return Future.failedFuture("No resource server service to recreate adapter " + id);
+    }
+    return resourceServerRetry.executeDetached("compensation.recreateAdapter", () ->
+            resourceServerService.createAdapter(id, token))
+        .onSuccess(listener -> LOGGER.info("Delete of adapter reverted after failure on local catalogue"))
+        .onFailure(
+            failureListener -> {
+              LOGGER.error("INCONSISTENCY DETECTED : ADAPTER NOT RESTORED IN RESOURCE SERVER");
             }
         );
-    return Future.succeededFuture();
   }
 }
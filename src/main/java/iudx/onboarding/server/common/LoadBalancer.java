@@ -0,0 +1,329 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.impl.HttpContext;
+import io.vertx.ext.web.client.impl.WebClientInternal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Spreads the requests to an upstream over its replicas, without a proxy in front of them.
+ *
+ * <p>Every request goes to the replica with the fewest requests outstanding, either of two picked
+ * at random (power of two choices, the default) or of all of them. Ejection is passive: a replica
+ * that fails {@link #EJECT_AFTER_FAILURES} requests in a row, by a transport error or a 5xx
+ * response, gets no requests for {@link #EJECTION_MS}, longer every time it is ejected again in a
+ * row, up to {@link #MAX_EJECTION_MS}. When every replica is ejected they are all used anyway, as
+ * the circuit breaker of the upstream is there to stop the calls.
+ *
+ * <p>Balancers are process-wide and created per upstream and set of replicas. The latency of each
+ * replica is exported by <code>dx_upstream_endpoint_latency</code>, its failures by
+ * <code>dx_upstream_endpoint_errors</code> and ejections by
+ * <code>dx_upstream_endpoint_ejections</code>; the <code>dx_upstream_endpoint_outstanding</code>
+ * and <code>dx_upstream_endpoint_ejected</code> gauges show its current state.
+ */
+public final class LoadBalancer {
+
+  public enum Strategy {
+    POWER_OF_TWO_CHOICES,
+    LEAST_OUTSTANDING
+  }
+
+  static final int EJECT_AFTER_FAILURES = 3;
+  static final long EJECTION_MS = 30000;
+  static final long MAX_EJECTION_MS = 300000;
+
+  private static final Logger LOGGER = LogManager.getLogger(LoadBalancer.class);
+  private static final Map<String, LoadBalancer> BALANCERS = new ConcurrentHashMap<>();
+  private static final String PICK_ATTRIBUTE = "dx.loadBalancer.pick";
+
+  private final String upstream;
+  private final Strategy strategy;
+  private final List<Endpoint> endpoints;
+
+  LoadBalancer(String upstream, Strategy strategy, List<Endpoint> endpoints) {
+    this.upstream = upstream;
+    this.strategy = strategy;
+    this.endpoints = endpoints;
+  }
+
+  /**
+   * The replicas listed in the config, as objects with a <code>host</code> and a
+   * <code>port</code>.
+   *
+   * @return the replicas, empty if there is no list
+   */
+  public static List<Endpoint> endpoints(JsonArray servers) {
+    if (servers == null) {
+      return Collections.emptyList();
+    }
+    List<Endpoint> endpoints = new ArrayList<>(servers.size());
+    for (int i = 0; i < servers.size(); i++) {
+      JsonObject server = servers.getJsonObject(i);
+      endpoints.add(new Endpoint(server.getString("host"), server.getInteger("port")));
+    }
+    return Collections.unmodifiableList(endpoints);
+  }
+
+  /**
+   * The balancer of an upstream's replicas, created on first use.
+   *
+   * @param upstream upstream name, e.g. {@link Constants#UPSTREAM_LOCAL_CATALOGUE}
+   */
+  public static LoadBalancer forEndpoints(String upstream, Strategy strategy,
+                                          List<Endpoint> endpoints) {
+    return BALANCERS.computeIfAbsent(upstream + "|" + strategy + "|" + endpoints,
+        key -> new LoadBalancer(upstream, strategy, endpoints.stream()
+            .map(endpoint -> endpoint.registered(upstream))
+            .collect(Collectors.toList())));
+  }
+
+  static Strategy strategy(String name) {
+    return "leastOutstanding".equals(name)
+        ? Strategy.LEAST_OUTSTANDING
+        : Strategy.POWER_OF_TWO_CHOICES;
+  }
+
+  /**
+   * Sends every request of the client to one of the replicas, whatever host and port it was
+   * created with.
+   *
+   * @return the same client
+   */
+  public WebClient balance(WebClient webClient) {
+    if (webClient instanceof WebClientInternal) {
+      ((WebClientInternal) webClient).addInterceptor(this::intercept);
+    }
+    return webClient;
+  }
+
+  private void intercept(HttpContext<?> httpContext) {
+    Pick pick;
+    switch (httpContext.phase()) {
+      case CREATE_REQUEST:
+        // a followed redirect creates the request again, it must keep its target
+        if (httpContext.get(PICK_ATTRIBUTE) == null) {
+          Endpoint endpoint = pick();
+          httpContext.requestOptions()
+              .setServer(null)
+              .setHost(endpoint.host)
+              .setPort(endpoint.port);
+          httpContext.set(PICK_ATTRIBUTE, new Pick(endpoint));
+        }
+        break;
+      case DISPATCH_RESPONSE:
+        pick = httpContext.get(PICK_ATTRIBUTE);
+        if (pick != null) {
+          httpContext.set(PICK_ATTRIBUTE, null);
+          pick.complete(httpContext.response().statusCode() >= 500);
+        }
+        break;
+      case FAILURE:
+        pick = httpContext.get(PICK_ATTRIBUTE);
+        if (pick != null) {
+          httpContext.set(PICK_ATTRIBUTE, null);
+          pick.complete(true);
+        }
+        break;
+      default:
+        break;
+    }
+    httpContext.next();
+  }
+
+  /**
+   * Picks the replica of the next request and counts the request as outstanding on it.
+   */
+  Endpoint pick() {
+    long now = System.nanoTime();
+    List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+    for (Endpoint endpoint : endpoints) {
+      if (!endpoint.isEjected(now)) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      candidates = endpoints;
+    }
+    Endpoint picked = strategy == Strategy.LEAST_OUTSTANDING
+        ? leastOutstanding(candidates)
+        : powerOfTwoChoices(candidates);
+    picked.outstanding.incrementAndGet();
+    return picked;
+  }
+
+  private static Endpoint powerOfTwoChoices(List<Endpoint> candidates) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int size = candidates.size();
+    if (size == 1) {
+      return candidates.get(0);
+    }
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+    Endpoint a = candidates.get(first);
+    Endpoint b = candidates.get(second);
+    return b.outstanding.get() < a.outstanding.get() ? b : a;
+  }
+
+  private static Endpoint leastOutstanding(List<Endpoint> candidates) {
+    // starting at a random replica spreads the ties
+    int size = candidates.size();
+    int start = ThreadLocalRandom.current().nextInt(size);
+    Endpoint least = null;
+    for (int i = 0; i < size; i++) {
+      Endpoint endpoint = candidates.get((start + i) % size);
+      if (least == null || endpoint.outstanding.get() < least.outstanding.get()) {
+        least = endpoint;
+      }
+    }
+    return least;
+  }
+
+  /**
+   * Records the outcome of a request sent to a picked replica.
+   *
+   * @param failed whether the replica failed to answer or answered with a server error
+   */
+  void complete(Endpoint endpoint, boolean failed, long durationNanos) {
+    endpoint.outstanding.decrementAndGet();
+    endpoint.latency.record(durationNanos, TimeUnit.NANOSECONDS);
+    if (!failed) {
+      endpoint.succeeded();
+      return;
+    }
+    endpoint.errors.increment();
+    long ejectionMs = endpoint.failed(System.nanoTime());
+    if (ejectionMs > 0) {
+      LOGGER.warn("Ejecting {} replica {} for {} ms after {} failed requests in a row",
+          upstream, endpoint, ejectionMs, EJECT_AFTER_FAILURES);
+      endpoint.ejections.increment();
+    }
+  }
+
+  List<Endpoint> endpoints() {
+    return endpoints;
+  }
+
+  /** A replica of an upstream. */
+  public static final class Endpoint {
+    private final String host;
+    private final int port;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private int consecutiveFailures;
+    private int consecutiveEjections;
+    private long ejectedUntilNanos;
+    private Timer latency;
+    private Counter errors;
+    private Counter ejections;
+
+    public Endpoint(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    public String host() {
+      return host;
+    }
+
+    public int port() {
+      return port;
+    }
+
+    int outstanding() {
+      return outstanding.get();
+    }
+
+    synchronized boolean isEjected(long nowNanos) {
+      return ejectedUntilNanos != 0 && nowNanos - ejectedUntilNanos < 0;
+    }
+
+    private synchronized void succeeded() {
+      consecutiveFailures = 0;
+      if (ejectedUntilNanos != 0 && System.nanoTime() - ejectedUntilNanos >= 0) {
+        consecutiveEjections = 0;
+        ejectedUntilNanos = 0;
+      }
+    }
+
+    /* the time the replica is ejected for, 0 if it is not */
+    private synchronized long failed(long nowNanos) {
+      if (++consecutiveFailures < EJECT_AFTER_FAILURES || isEjected(nowNanos)) {
+        return 0;
+      }
+      consecutiveFailures = 0;
+      consecutiveEjections++;
+      long ejectionMs = Math.min(EJECTION_MS * consecutiveEjections, MAX_EJECTION_MS);
+      ejectedUntilNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(ejectionMs);
+      return ejectionMs;
+    }
+
+    private Endpoint registered(String upstream) {
+      Endpoint endpoint = new Endpoint(host, port);
+      String name = toString();
+      endpoint.latency = Timer.builder("dx_upstream_endpoint_latency")
+          .description("Latency of the requests to an upstream replica")
+          .tag("upstream", upstream)
+          .tag("endpoint", name)
+          .register(MetricsHelper.registry());
+      endpoint.errors = Counter.builder("dx_upstream_endpoint_errors")
+          .description("Requests to an upstream replica that failed or got a server error")
+          .tag("upstream", upstream)
+          .tag("endpoint", name)
+          .register(MetricsHelper.registry());
+      endpoint.ejections = Counter.builder("dx_upstream_endpoint_ejections")
+          .description("Times an upstream replica was ejected from the balancing")
+          .tag("upstream", upstream)
+          .tag("endpoint", name)
+          .register(MetricsHelper.registry());
+      Gauge.builder("dx_upstream_endpoint_outstanding", endpoint, Endpoint::outstanding)
+          .description("Requests outstanding on an upstream replica")
+          .tag("upstream", upstream)
+          .tag("endpoint", name)
+          .register(MetricsHelper.registry());
+      Gauge.builder("dx_upstream_endpoint_ejected", endpoint,
+              e -> e.isEjected(System.nanoTime()) ? 1 : 0)
+          .description("Whether an upstream replica is ejected from the balancing")
+          .tag("upstream", upstream)
+          .tag("endpoint", name)
+          .register(MetricsHelper.registry());
+      return endpoint;
+    }
+
+    @Override
+    public String toString() {
+      return host.toLowerCase(Locale.ROOT) + ":" + port;
+    }
+  }
+
+  /* a request in flight on a picked replica */
+  private final class Pick {
+    private final Endpoint endpoint;
+    private final long startedAtNanos = System.nanoTime();
+
+    private Pick(Endpoint endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    private void complete(boolean failed) {
+      LoadBalancer.this.complete(endpoint, failed, System.nanoTime() - startedAtNanos);
+    }
+  }
+}
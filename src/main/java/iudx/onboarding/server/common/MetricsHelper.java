@@ -0,0 +1,23 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+public class MetricsHelper {
+
+  private MetricsHelper() {
+  }
+
+  /**
+   * Returns the Micrometer registry backing the Vert.x Prometheus endpoint. When metrics are not
+   * enabled (e.g. {@code DeployerDev} or unit tests) the Micrometer global registry is returned so
+   * that callers never have to null-check.
+   *
+   * @return the meter registry to register application metrics with
+   */
+  public static MeterRegistry registry() {
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    return registry != null ? registry : Metrics.globalRegistry;
+  }
+}
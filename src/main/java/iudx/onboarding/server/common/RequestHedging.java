@@ -0,0 +1,182 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedging of idempotent reads from one upstream: when a read has not answered within the running
+ * percentile of the upstream's read latency, the same read is sent a second time and whichever
+ * succeeds first is used. A failure is only reported once both reads failed, and a read failing
+ * before the hedge is due is not hedged; retrying is left to the caller.
+ *
+ * <p>Hedging is enabled per upstream with a <code>hedging</code> object in its profile under
+ * <code>httpClients.&lt;upstream&gt;</code>, with the keys <code>percentile</code> (0.95),
+ * <code>minDelayMs</code> (5), <code>maxDelayMs</code> (1000, also used until {@link #MIN_SAMPLES}
+ * reads were measured) and <code>budgetRatio</code> (0.05). The hedges are paid from a token bucket
+ * earning <code>budgetRatio</code> of a hedge per read, so a slow upstream is sent at most that
+ * much extra load.
+ *
+ * <p>Hedging state is process-wide and created per upstream. Reads, hedges sent, hedges that
+ * answered first and hedges skipped for lack of budget are counted in
+ * <code>dx_hedge_reads</code>, <code>dx_hedge_sent</code>, <code>dx_hedge_won</code> and
+ * <code>dx_hedge_skipped</code>, tagged with the upstream.
+ */
+public final class RequestHedging {
+
+  public static final String CONFIG_KEY = "hedging";
+
+  static final int WINDOW_SIZE = 200;
+  static final int MIN_SAMPLES = 20;
+  /* the percentile is sorted out of the window again after this many reads */
+  static final int RECOMPUTE_EVERY = 20;
+  static final int BUDGET_MAX_TOKENS = 10;
+
+  private static final Map<String, RequestHedging> HEDGING = new ConcurrentHashMap<>();
+  private static final RequestHedging DISABLED = new RequestHedging();
+
+  private final boolean enabled;
+  private final double percentile;
+  private final long minDelayMs;
+  private final long maxDelayMs;
+  private final RetryBudget budget;
+  private final Counter reads;
+  private final Counter sent;
+  private final Counter won;
+  private final Counter skipped;
+  /* latencies of the last successful reads, in milliseconds */
+  private final long[] window = new long[WINDOW_SIZE];
+  private int windowIndex;
+  private int recorded;
+  private int sinceRecompute;
+  private volatile long delayMs;
+
+  private RequestHedging() {
+    this.enabled = false;
+    this.percentile = 0;
+    this.minDelayMs = 0;
+    this.maxDelayMs = 0;
+    this.budget = null;
+    this.reads = null;
+    this.sent = null;
+    this.won = null;
+    this.skipped = null;
+  }
+
+  RequestHedging(String upstream, JsonObject settings) {
+    this.enabled = true;
+    this.percentile = settings.getDouble("percentile", 0.95);
+    this.minDelayMs = Math.max(1, settings.getLong("minDelayMs", 5L));
+    this.maxDelayMs = Math.max(minDelayMs, settings.getLong("maxDelayMs", 1000L));
+    this.budget = new RetryBudget(settings.getDouble("budgetRatio", 0.05), BUDGET_MAX_TOKENS);
+    this.reads = counter("dx_hedge_reads", "Reads from an upstream that may be hedged", upstream);
+    this.sent = counter("dx_hedge_sent", "Hedged reads sent to an upstream", upstream);
+    this.won = counter("dx_hedge_won", "Hedged reads answering before the first read", upstream);
+    this.skipped = counter("dx_hedge_skipped",
+        "Hedged reads not sent because the hedge budget was exhausted", upstream);
+    this.delayMs = maxDelayMs;
+  }
+
+  /**
+   * The hedging of the upstream's reads as set in its profile, created on first use.
+   *
+   * @param config module config, with the profiles under {@link UpstreamClients#CONFIG_KEY}
+   * @param upstream upstream name, e.g. {@link Constants#UPSTREAM_LOCAL_CATALOGUE}
+   * @return the hedging, which only sends every read once if the profile does not enable it
+   */
+  public static RequestHedging forUpstream(JsonObject config, String upstream) {
+    JsonObject settings = config.getJsonObject(UpstreamClients.CONFIG_KEY, new JsonObject())
+        .getJsonObject(upstream, new JsonObject())
+        .getJsonObject(CONFIG_KEY);
+    if (settings == null) {
+      return DISABLED;
+    }
+    return HEDGING.computeIfAbsent(upstream + "|" + settings.encode(),
+        key -> new RequestHedging(upstream, settings));
+  }
+
+  /**
+   * Sends a read, and sends it again if it is slow.
+   *
+   * @param read sends the read; it must be idempotent
+   * @return the result of the first read that succeeded, or the failure of the last one
+   */
+  public <T> Future<T> execute(Vertx vertx, Supplier<Future<T>> read) {
+    if (!enabled) {
+      return read.get();
+    }
+    reads.increment();
+    budget.deposit();
+    Promise<T> promise = Promise.promise();
+    AtomicInteger pending = new AtomicInteger(1);
+    long startedAtNanos = System.nanoTime();
+    long timerId = vertx.setTimer(delayMs, id -> {
+      if (promise.future().isComplete()) {
+        return;
+      }
+      if (!budget.tryWithdraw()) {
+        skipped.increment();
+        return;
+      }
+      sent.increment();
+      pending.incrementAndGet();
+      long hedgeStartedAtNanos = System.nanoTime();
+      read.get().onComplete(result ->
+          settle(promise, result, pending, hedgeStartedAtNanos, true));
+    });
+    read.get().onComplete(result -> {
+      vertx.cancelTimer(timerId);
+      settle(promise, result, pending, startedAtNanos, false);
+    });
+    return promise.future();
+  }
+
+  private <T> void settle(Promise<T> promise, AsyncResult<T> result, AtomicInteger pending,
+                          long startedAtNanos, boolean hedge) {
+    if (result.succeeded()) {
+      record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+      if (promise.tryComplete(result.result()) && hedge) {
+        won.increment();
+      }
+    } else if (pending.decrementAndGet() == 0) {
+      promise.tryFail(result.cause());
+    }
+  }
+
+  /** Time a read is given before it is hedged. */
+  long delayMs() {
+    return delayMs;
+  }
+
+  synchronized void record(long latencyMs) {
+    window[windowIndex] = latencyMs;
+    windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+    recorded = Math.min(recorded + 1, WINDOW_SIZE);
+    if (recorded < MIN_SAMPLES
+        || recorded > MIN_SAMPLES && ++sinceRecompute < RECOMPUTE_EVERY) {
+      return;
+    }
+    sinceRecompute = 0;
+    long[] sorted = Arrays.copyOf(window, recorded);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile * recorded) - 1;
+    long latency = sorted[Math.max(0, Math.min(recorded - 1, rank))];
+    delayMs = Math.max(minDelayMs, Math.min(maxDelayMs, latency));
+  }
+
+  private static Counter counter(String name, String description, String upstream) {
+    return Counter.builder(name)
+        .description(description)
+        .tag("upstream", upstream)
+        .register(MetricsHelper.registry());
+  }
+}
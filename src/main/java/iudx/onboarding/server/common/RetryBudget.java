@@ -0,0 +1,81 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Gauge;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting retries against one upstream to a fraction of the calls made to it.
+ *
+ * <p>Every call deposits {@link #DEFAULT_RATIO} of a token and every retry withdraws a whole one,
+ * so in steady state at most one call in ten is retried. The balance is capped at {@link
+ * #DEFAULT_MAX_TOKENS}, which is also the starting balance, to allow short bursts of retries
+ * without letting a long healthy period build up a retry storm.
+ *
+ * <p>Budgets are process-wide: all verticle instances retrying against the same upstream share one
+ * bucket, including compensations. The balance is exposed as the <code>dx_retry_budget_tokens</code>
+ * gauge, tagged with the upstream name.
+ */
+public final class RetryBudget {
+
+  static final double DEFAULT_RATIO = 0.1;
+  static final int DEFAULT_MAX_TOKENS = 10;
+
+  /* tokens are kept in thousandths so the balance can be updated atomically */
+  private static final long SCALE = 1000;
+  private static final Map<String, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+
+  private final long depositPerCall;
+  private final long capacity;
+  private final AtomicLong balance;
+
+  RetryBudget(double ratio, int maxTokens) {
+    this.depositPerCall = (long) (ratio * SCALE);
+    this.capacity = maxTokens * SCALE;
+    this.balance = new AtomicLong(capacity);
+  }
+
+  /**
+   * The shared budget of an upstream, created on first use.
+   *
+   * @param upstream upstream name, one of the <code>UPSTREAM_</code> {@link Constants}
+   */
+  public static RetryBudget forUpstream(String upstream) {
+    return BUDGETS.computeIfAbsent(upstream, name -> {
+      RetryBudget budget = new RetryBudget(DEFAULT_RATIO, DEFAULT_MAX_TOKENS);
+      Gauge.builder("dx_retry_budget_tokens", budget, RetryBudget::tokens)
+          .description("Retries currently allowed by the retry budget of an upstream")
+          .tag("upstream", name)
+          .register(MetricsHelper.registry());
+      return budget;
+    });
+  }
+
+  /** Records a call to the upstream, earning a fraction of a retry. */
+  public void deposit() {
+    balance.accumulateAndGet(depositPerCall, (current, amount) ->
+        Math.min(capacity, current + amount));
+  }
+
+  /**
+   * Takes one retry out of the budget.
+   *
+   * @return false if the budget is exhausted and the call must not be retried
+   */
+  public boolean tryWithdraw() {
+    long current;
+    do {
+      current = balance.get();
+      if (current < SCALE) {
+        return false;
+      }
+    } while (!balance.compareAndSet(current, current - SCALE));
+    return true;
+  }
+
+  /** Current balance, in retries. */
+  public double tokens() {
+    return (double) balance.get() / SCALE;
+  }
+}
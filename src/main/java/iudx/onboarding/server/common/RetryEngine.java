@@ -0,0 +1,223 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import iudx.onboarding.server.common.FailureClassifier.Classification;
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Retries asynchronous operations with exponential backoff.
+ *
+ * <p>An engine is an immutable policy and is safe to share between concurrent requests: every
+ * call to {@link #execute(String, Supplier)} gets its own attempt counter and result promise.
+ * Backoff delays are scheduled with {@link Vertx#setTimer(long, io.vertx.core.Handler)}, so retries
+ * run on the caller's Vert.x context and no extra scheduler threads are involved.
+ *
+ * <p>Whether a failure is retried is decided by the classifier, {@link FailureClassifier} by
+ * default: non-retryable failures are returned immediately, throttled ones are retried no sooner
+ * than the upstream Retry-After, and not at all if that is longer than the maximum backoff.
+ *
+ * <p>When the caller's request carries a {@link Deadline}, a retry is only scheduled if the
+ * remaining budget covers the backoff plus another attempt as long as the failed one took.
+ *
+ * <p>An engine bound to a {@link RetryBudget} with {@link #withBudget(RetryBudget)} only retries
+ * while the upstream's budget allows it, and fails fast with the last failure once it is spent.
+ *
+ * <p>Every attempt is counted in <code>dx_retry_attempts</code>, tagged with the operation name
+ * and the attempt outcome (<code>success</code>, <code>retry</code>, <code>failure</code>,
+ * <code>deadline</code>, <code>budget</code>).
+ */
+public final class RetryEngine {
+
+  private static final Logger LOGGER = LogManager.getLogger(RetryEngine.class);
+  private static final String ATTEMPTS_METRIC = "dx_retry_attempts";
+
+  private final Vertx vertx;
+  private final Function<Throwable, Classification> classifier;
+  private final long delayMs;
+  private final long maxDelayMs;
+  private final double delayFactor;
+  private final int maxAttempts;
+  private final RetryBudget budget;
+
+  private RetryEngine(Builder builder) {
+    this(builder.vertx, builder.classifier, builder.delay.toMillis(), builder.maxDelay.toMillis(),
+        builder.delayFactor, builder.maxAttempts, null);
+  }
+
+  private RetryEngine(Vertx vertx, Function<Throwable, Classification> classifier, long delayMs,
+                      long maxDelayMs, double delayFactor, int maxAttempts, RetryBudget budget) {
+    this.vertx = vertx;
+    this.classifier = classifier;
+    this.delayMs = delayMs;
+    this.maxDelayMs = maxDelayMs;
+    this.delayFactor = delayFactor;
+    this.maxAttempts = maxAttempts;
+    this.budget = budget;
+  }
+
+  public static Builder builder(Vertx vertx) {
+    return new Builder(vertx);
+  }
+
+  /**
+   * An engine with the same policy whose retries are limited by the given budget.
+   *
+   * @param budget retry budget of the upstream the operations of the new engine call
+   */
+  public RetryEngine withBudget(RetryBudget budget) {
+    return new RetryEngine(vertx, classifier, delayMs, maxDelayMs, delayFactor, maxAttempts,
+        budget);
+  }
+
+  /**
+   * Runs the operation, retrying it while it fails with a retryable exception and attempts
+   * remain.
+   *
+   * @param operation name of the operation, used for logs and metrics
+   * @param supplier starts one attempt of the operation
+   * @param <T> result type
+   * @return Future completed with the first successful result, or the last failure
+   */
+  public <T> Future<T> execute(String operation, Supplier<Future<T>> supplier) {
+    Promise<T> promise = Promise.promise();
+    deposit();
+    attempt(operation, supplier, 1, promise);
+    return promise.future();
+  }
+
+  /**
+   * Like {@link #execute(String, Supplier)}, but detached from the caller's {@link Deadline}, for
+   * compensations which must run to completion even after the client has given up.
+   */
+  public <T> Future<T> executeDetached(String operation, Supplier<Future<T>> supplier) {
+    Promise<T> promise = Promise.promise();
+    deposit();
+    Deadline.runDetached(vertx, () -> attempt(operation, supplier, 1, promise));
+    return promise.future();
+  }
+
+  private <T> void attempt(String operation, Supplier<Future<T>> supplier, int attempt,
+                           Promise<T> promise) {
+    long startedAt = System.nanoTime();
+    Future<T> future;
+    try {
+      future = supplier.get();
+    } catch (RuntimeException e) {
+      future = Future.failedFuture(e);
+    }
+    future.onComplete(ar -> {
+      if (ar.succeeded()) {
+        count(operation, "success");
+        promise.complete(ar.result());
+        return;
+      }
+      Throwable cause = ar.cause();
+      long backoff = retryDelayMs(cause, attempt);
+      if (backoff < 0 || attempt >= maxAttempts) {
+        count(operation, "failure");
+        promise.fail(cause);
+        return;
+      }
+      Deadline deadline = Deadline.current();
+      long attemptMs = (System.nanoTime() - startedAt) / 1_000_000;
+      if (deadline != null && deadline.remainingMs() <= backoff + attemptMs) {
+        count(operation, "deadline");
+        Deadline.countExceeded("retry");
+        LOGGER.error("Operation {} failed (attempt {} of {}), request deadline leaves no time to"
+            + " retry: {}", operation, attempt, maxAttempts, cause.getMessage());
+        promise.fail(cause);
+        return;
+      }
+      if (budget != null && !budget.tryWithdraw()) {
+        count(operation, "budget");
+        LOGGER.error("Operation {} failed (attempt {} of {}), retry budget exhausted: {}",
+            operation, attempt, maxAttempts, cause.getMessage());
+        promise.fail(cause);
+        return;
+      }
+      count(operation, "retry");
+      LOGGER.error("Operation {} failed (attempt {} of {}), retrying in {} ms: {}",
+          operation, attempt, maxAttempts, backoff, cause.getMessage());
+      vertx.setTimer(backoff, id -> attempt(operation, supplier, attempt + 1, promise));
+    });
+  }
+
+  /**
+   * Delay before retrying the failed attempt, or <code>-1</code> if it must not be retried.
+   */
+  private long retryDelayMs(Throwable cause, int attempt) {
+    switch (classifier.apply(cause)) {
+      case RETRYABLE:
+        return backoffMs(attempt);
+      case THROTTLED:
+        long retryAfter = FailureClassifier.retryAfterMs(cause);
+        return retryAfter > maxDelayMs ? -1 : Math.max(retryAfter, backoffMs(attempt));
+      default:
+        return -1;
+    }
+  }
+
+  private void deposit() {
+    if (budget != null) {
+      budget.deposit();
+    }
+  }
+
+  long backoffMs(int attempt) {
+    double backoff = delayMs * Math.pow(delayFactor, attempt - 1);
+    return (long) Math.min(backoff, maxDelayMs);
+  }
+
+  private void count(String operation, String outcome) {
+    Counter.builder(ATTEMPTS_METRIC)
+        .description("Attempts made by the retry engine")
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .register(MetricsHelper.registry())
+        .increment();
+  }
+
+  public static final class Builder {
+    private final Vertx vertx;
+    private Function<Throwable, Classification> classifier = FailureClassifier::classify;
+    private Duration delay = Duration.ofSeconds(1);
+    private Duration maxDelay = Duration.ofSeconds(1);
+    private double delayFactor = 1;
+    private int maxAttempts = 3;
+
+    private Builder(Vertx vertx) {
+      this.vertx = vertx;
+    }
+
+    /** Decides which failures are retried, defaults to {@link FailureClassifier#classify}. */
+    public Builder classifyWith(Function<Throwable, Classification> classifier) {
+      this.classifier = classifier;
+      return this;
+    }
+
+    /** Delay before the first retry, multiplied by the factor for every further retry. */
+    public Builder withBackoff(Duration delay, Duration maxDelay, double delayFactor) {
+      this.delay = delay;
+      this.maxDelay = maxDelay;
+      this.delayFactor = delayFactor;
+      return this;
+    }
+
+    /** Total number of attempts, including the first one. */
+    public Builder withMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    public RetryEngine build() {
+      return new RetryEngine(this);
+    }
+  }
+}
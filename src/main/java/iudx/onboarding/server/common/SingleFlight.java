@@ -0,0 +1,62 @@
+package iudx.onboarding.server.common;
+
+import io.vertx.core.Future;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into a single in-flight operation. Callers that
+ * arrive while an operation for their key is pending get the same {@link Future}; the entry is
+ * removed as soon as that future completes, so results are never cached beyond the call itself.
+ *
+ * @param <K> type of the key identifying identical calls
+ * @param <V> type of the result
+ */
+public class SingleFlight<K, V> {
+
+  private final Map<K, Future<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the pending future for <code>key</code>, or starts a new call with
+   * <code>supplier</code> if there is none.
+   *
+   * @param key identifies identical calls
+   * @param supplier starts the underlying operation
+   * @return future shared by every caller of the same key
+   */
+  public Future<V> execute(K key, Supplier<Future<V>> supplier) {
+    Future<V> pending = inFlight.get(key);
+    if (pending != null) {
+      return pending;
+    }
+    boolean[] started = new boolean[1];
+    Future<V> future = inFlight.computeIfAbsent(key, k -> {
+      started[0] = true;
+      return startSafely(supplier);
+    });
+    if (started[0]) {
+      if (future.isComplete()) {
+        inFlight.remove(key, future);
+      } else {
+        future.onComplete(ar -> inFlight.remove(key, future));
+      }
+    }
+    return future;
+  }
+
+  private Future<V> startSafely(Supplier<Future<V>> supplier) {
+    try {
+      return supplier.get();
+    } catch (RuntimeException e) {
+      return Future.failedFuture(e);
+    }
+  }
+
+  /**
+   * Number of distinct keys with an operation in flight.
+   */
+  public int size() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,207 @@
+package iudx.onboarding.server.common;
+
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.ext.web.client.impl.HttpContext;
+import io.vertx.ext.web.client.impl.WebClientInternal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Web clients of the upstream services. Every verticle instance gets its own client per upstream,
+ * so requests are sent and answered on the event loop of the verticle sending them instead of on
+ * the one that happened to create a shared client first.
+ *
+ * <p>The pool of each upstream can be tuned under <code>httpClients.&lt;upstream&gt;</code> in the
+ * module config, e.g. <code>httpClients.local_catalogue.maxPoolSize</code>; see {@link
+ * #options}. Every client is guarded by the {@link CircuitBreaker} of its upstream and bound to the
+ * {@link DeadlinePropagation deadline} of the request it is used for. An upstream that runs as
+ * several replicas gets its requests spread over them by a {@link LoadBalancer}.
+ *
+ * <p>The <code>dx_upstream_pool_capacity</code>, <code>dx_upstream_pool_in_use</code> and
+ * <code>dx_upstream_pool_waiting</code> gauges add up, per upstream, the requests the clients of
+ * the node can have in flight, the ones in flight and the ones waiting for a connection.
+ */
+public final class UpstreamClients {
+
+  public static final String CONFIG_KEY = "httpClients";
+
+  private static final String INFLIGHT_ATTRIBUTE = "upstreamClients.inFlight";
+  /* pools of every upstream, for the gauges */
+  private static final Map<String, List<Pool>> POOLS = new ConcurrentHashMap<>();
+
+  private UpstreamClients() {
+  }
+
+  /**
+   * The client of the upstream for the calling verticle instance, created on first use. Outside of
+   * a verticle, e.g. in tests, every call creates a new client.
+   *
+   * @param config module config, with the pool profiles under {@link #CONFIG_KEY}
+   * @param upstream upstream name, used for the profile, the circuit breakers and the metrics
+   */
+  public static WebClient get(Vertx vertx, JsonObject config, String upstream) {
+    return get(vertx, config, upstream, Collections.emptyList());
+  }
+
+  /**
+   * The client of the upstream for the calling verticle instance, sending its requests to the
+   * given replicas of the upstream instead of the host and port they are created with. The
+   * replicas are balanced as set by <code>balancing</code> in the profile of the upstream,
+   * <code>p2c</code> (power of two choices, the default) or <code>leastOutstanding</code>.
+   *
+   * @param endpoints replicas of the upstream, none to send the requests where they are created
+   *     for
+   */
+  public static WebClient get(Vertx vertx, JsonObject config, String upstream,
+                              List<LoadBalancer.Endpoint> endpoints) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return create(vertx, config, upstream, endpoints);
+    }
+    String key = UpstreamClients.class.getName() + '.' + upstream;
+    WebClient webClient = context.get(key);
+    if (webClient == null) {
+      webClient = create(vertx, config, upstream, endpoints);
+      context.put(key, webClient);
+    }
+    return webClient;
+  }
+
+  /**
+   * Options of the upstream's clients. Its profile can set <code>maxPoolSize</code> (5),
+   * <code>maxWaitQueueSize</code> (unbounded), <code>http2</code> (false),
+   * <code>http2MultiplexingLimit</code> (left to the server), <code>keepAlive</code> (true),
+   * <code>keepAliveTimeoutSeconds</code> (60), <code>connectTimeoutMs</code> (60000),
+   * <code>idleTimeoutSeconds</code> (none), <code>requestTimeoutMs</code> (none, a request
+   * deadline applies anyway) and <code>compression</code> (false, asks the upstream to compress
+   * its responses). Connections always use TLS.
+   */
+  static WebClientOptions options(JsonObject config, String upstream) {
+    JsonObject profile = profile(config, upstream);
+    int maxPoolSize = profile.getInteger("maxPoolSize", HttpClientOptions.DEFAULT_MAX_POOL_SIZE);
+    WebClientOptions options = new WebClientOptions()
+        .setTrustAll(true)
+        .setVerifyHost(false)
+        .setSsl(true)
+        .setMetricsName(upstream)
+        .setMaxPoolSize(maxPoolSize)
+        .setHttp2MaxPoolSize(maxPoolSize)
+        .setMaxWaitQueueSize(profile.getInteger("maxWaitQueueSize", -1))
+        .setKeepAlive(profile.getBoolean("keepAlive", true))
+        .setKeepAliveTimeout(profile.getInteger("keepAliveTimeoutSeconds",
+            HttpClientOptions.DEFAULT_KEEP_ALIVE_TIMEOUT))
+        .setConnectTimeout(profile.getInteger("connectTimeoutMs",
+            HttpClientOptions.DEFAULT_CONNECT_TIMEOUT))
+        .setIdleTimeout(profile.getInteger("idleTimeoutSeconds", 0))
+        .setIdleTimeoutUnit(TimeUnit.SECONDS)
+        .setTryUseCompression(profile.getBoolean("compression", false));
+    if (profile.getBoolean("http2", false)) {
+      options.setProtocolVersion(HttpVersion.HTTP_2)
+          .setUseAlpn(true)
+          .setHttp2MultiplexingLimit(profile.getInteger("http2MultiplexingLimit", -1));
+    }
+    return options;
+  }
+
+  private static WebClient create(Vertx vertx, JsonObject config, String upstream,
+                                  List<LoadBalancer.Endpoint> endpoints) {
+    WebClientOptions options = options(config, upstream);
+    WebClient webClient = WebClient.create(vertx, options);
+    if (webClient instanceof WebClientInternal) {
+      JsonObject profile = profile(config, upstream);
+      long requestTimeoutMs = profile.getLong("requestTimeoutMs", 0L);
+      Pool pool = new Pool(options);
+      pools(upstream).add(pool);
+      // added first, so that a deadline can still shorten the default timeout
+      ((WebClientInternal) webClient)
+          .addInterceptor(httpContext -> intercept(httpContext, pool, requestTimeoutMs));
+      if (!endpoints.isEmpty()) {
+        LoadBalancer.forEndpoints(upstream,
+                LoadBalancer.strategy(profile.getString("balancing")), endpoints)
+            .balance(webClient);
+      }
+    }
+    return CircuitBreaker.guard(DeadlinePropagation.bind(webClient), upstream);
+  }
+
+  private static JsonObject profile(JsonObject config, String upstream) {
+    return config.getJsonObject(CONFIG_KEY, new JsonObject())
+        .getJsonObject(upstream, new JsonObject());
+  }
+
+  private static void intercept(HttpContext<?> httpContext, Pool pool, long requestTimeoutMs) {
+    switch (httpContext.phase()) {
+      case CREATE_REQUEST:
+        if (requestTimeoutMs > 0 && httpContext.requestOptions().getTimeout() <= 0) {
+          httpContext.requestOptions().setTimeout(requestTimeoutMs);
+        }
+        // a followed redirect creates the request again
+        if (httpContext.get(INFLIGHT_ATTRIBUTE) == null) {
+          pool.inFlight.incrementAndGet();
+          httpContext.set(INFLIGHT_ATTRIBUTE, Boolean.TRUE);
+        }
+        break;
+      case DISPATCH_RESPONSE:
+      case FAILURE:
+        if (httpContext.get(INFLIGHT_ATTRIBUTE) != null) {
+          httpContext.set(INFLIGHT_ATTRIBUTE, null);
+          pool.inFlight.decrementAndGet();
+        }
+        break;
+      default:
+        break;
+    }
+    httpContext.next();
+  }
+
+  private static List<Pool> pools(String upstream) {
+    return POOLS.computeIfAbsent(upstream, name -> {
+      List<Pool> pools = new CopyOnWriteArrayList<>();
+      gauge("dx_upstream_pool_capacity", "Requests the upstream clients can have in flight",
+          name, pools, pool -> pool.capacity);
+      gauge("dx_upstream_pool_in_use", "Requests in flight to the upstream",
+          name, pools, pool -> Math.min(pool.inFlight.get(), pool.capacity));
+      gauge("dx_upstream_pool_waiting", "Requests waiting for a connection to the upstream",
+          name, pools, pool -> Math.max(0, pool.inFlight.get() - pool.capacity));
+      return pools;
+    });
+  }
+
+  private static void gauge(String name, String description, String upstream, List<Pool> pools,
+                            ToIntFunction<Pool> value) {
+    Gauge.builder(name, pools, all -> all.stream().mapToInt(value).sum())
+        .description(description)
+        .tag("upstream", upstream)
+        .register(MetricsHelper.registry());
+  }
+
+  /*
+   * the requests a client can send at once, and those it has in flight; an HTTP/2 connection
+   * whose stream limit is left to the server is counted as one
+   */
+  private static final class Pool {
+    private final int capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Pool(WebClientOptions options) {
+      int streams = options.getProtocolVersion() == HttpVersion.HTTP_2
+          && options.getHttp2MultiplexingLimit() > 0 ? options.getHttp2MultiplexingLimit() : 1;
+      this.capacity = options.getProtocolVersion() == HttpVersion.HTTP_2
+          ? options.getHttp2MaxPoolSize() * streams
+          : options.getMaxPoolSize();
+    }
+  }
+}
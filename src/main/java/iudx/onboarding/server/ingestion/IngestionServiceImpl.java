@@ -1,33 +1,36 @@
 package iudx.onboarding.server.ingestion;
 
+import static iudx.onboarding.server.common.Constants.UPSTREAM_RESOURCE_SERVER;
+
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.client.WebClientOptions;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.common.UpstreamClients;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class IngestionServiceImpl implements IngestionService {
 
   private static final Logger LOGGER = LogManager.getLogger(IngestionServiceImpl.class);
-  public static WebClient rsWebClient;
+  private final WebClient rsWebClient;
   private int rsPort;
   private String rsBasePath;
   private Vertx vertx;
 
   public IngestionServiceImpl(Vertx vertx, JsonObject config) {
+    // one breaker per resource server host
+    this(vertx, config, UpstreamClients.get(vertx, config, UPSTREAM_RESOURCE_SERVER));
+  }
+
+  public IngestionServiceImpl(Vertx vertx, JsonObject config, WebClient rsWebClient) {
     this.vertx = vertx;
     this.rsPort = config.getInteger("resourceServerPort"); // If above true, port info??
     this.rsBasePath = config.getString("resourceServerBasePath"); // will this always be `/ngsi-ld/v1` ?
-
-    WebClientOptions options =
-            new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true);
-    if (rsWebClient == null) {
-      rsWebClient = WebClient.create(vertx, options);
-    }
+    this.rsWebClient = rsWebClient;
   }
 
   @Override
@@ -52,7 +55,7 @@ public class IngestionServiceImpl implements IngestionService {
                   LOGGER.debug(cause.getClass());
                   promise.fail(cause);
                 } else {
-                  promise.fail(responseHandler.result().bodyAsString());
+                  promise.fail(UpstreamException.from(responseHandler.result()));
                 }
               }
             });
@@ -71,7 +74,7 @@ public class IngestionServiceImpl implements IngestionService {
         if (response.statusCode() == 200) {
           promise.complete(new JsonObject());
         } else {
-          promise.fail(response.bodyAsString());
+          promise.fail(UpstreamException.from(response));
         }
       })
             .onFailure(promise::fail);
@@ -6,6 +6,7 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
+import iudx.onboarding.server.common.DeadlinePropagation;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -22,6 +23,7 @@ public class IngestionVerticle extends AbstractVerticle {
     binder = new ServiceBinder(vertx);
     consumer = binder
         .setAddress(INGESTION_ADDRESS)
+        .addInterceptor(DeadlinePropagation.SERVICE_INTERCEPTOR)
         .register(IngestionService.class, ingestionService);
 
     LOGGER.info("Ingestion verticle deployed.");
@@ -34,6 +34,14 @@ public interface MinioService {
    */
   Future<String> createBucket(String username);
 
+  /**
+   * Returns the URL the bucket of the specified username has, without creating it.
+   *
+   * @param username the name of the user owning the bucket
+   * @return a Future containing the URL of the bucket
+   */
+  Future<String> getBucketUrl(String username);
+
   /**
    * Attaches a bucket to a name policy using the MinIO policy API.
    *
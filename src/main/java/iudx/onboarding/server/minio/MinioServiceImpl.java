@@ -30,17 +30,15 @@ import io.minio.MinioClient;
 import io.minio.SetBucketPolicyArgs;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
-import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.client.WebClientOptions;
 import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class MinioServiceImpl implements MinioService {
   private static final Logger LOGGER = LogManager.getLogger(MinioServiceImpl.class);
-  public static WebClient webClient;
+  private final WebClient webClient;
   private final MinioClient minioClient;
   private final String minioAdmin;
   private final String minioServerUrl;
@@ -50,26 +48,21 @@ public class MinioServiceImpl implements MinioService {
   /**
    * Constructor to initialize MinioServiceImpl.
    *
-   * @param vertx             Vert.x instance
+   * @param webClient         client of the minio-policy-api server
    * @param minioClient       Minio client instance
    * @param minioServerUrl    Minio server URL
    * @param minioAdmin        Minio admin username
    * @param minioPolicyApiUrl Minio policy API URL
    * @param authorizationKey  Authorization key for API calls to minio-policy-api server
    */
-  public MinioServiceImpl(Vertx vertx, MinioClient minioClient, String minioServerUrl,
+  public MinioServiceImpl(WebClient webClient, MinioClient minioClient, String minioServerUrl,
                           String minioAdmin, String minioPolicyApiUrl, String authorizationKey) {
+    this.webClient = webClient;
     this.minioServerUrl = minioServerUrl;
     this.minioClient = minioClient;
     this.minioAdmin = minioAdmin;
     this.authorizationKey = authorizationKey;
     this.minioPolicyApiUrl = minioPolicyApiUrl;
-
-    WebClientOptions options =
-        new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true);
-    if (webClient == null) {
-      webClient = WebClient.create(vertx, options);
-    }
   }
 
   @Override
@@ -88,16 +81,14 @@ public class MinioServiceImpl implements MinioService {
         // Set the bucket policy and complete promise with bucket URL upon success
         setBucketPolicy(username, minioAdmin).onComplete(policyResult -> {
           if (policyResult.succeeded()) {
-            String bucketUrl = minioServerUrl + MINIO_UI_BROWSER_PATH + bucketName;
-            promise.complete(bucketUrl);  // Return the bucket URL
+            promise.complete(bucketUrl(username));  // Return the bucket URL
           } else {
             promise.fail(policyResult.cause());
           }
         });
       } else {
         LOGGER.debug("Bucket {} already exists", bucketName);
-        String bucketUrl = minioServerUrl + MINIO_UI_BROWSER_PATH + bucketName;
-        promise.complete(bucketUrl);  // Return existing bucket URL
+        promise.complete(bucketUrl(username));  // Return existing bucket URL
       }
     } catch (Exception e) {
       LOGGER.error("Error creating user bucket: ", e);
@@ -106,6 +97,15 @@ public class MinioServiceImpl implements MinioService {
     return promise.future();
   }
 
+  @Override
+  public Future<String> getBucketUrl(String username) {
+    return Future.succeededFuture(bucketUrl(username));
+  }
+
+  private String bucketUrl(String username) {
+    return minioServerUrl + MINIO_UI_BROWSER_PATH + username + MINIO_BUCKET_SUFFIX;
+  }
+
   @Override
   public Future<Void> attachBucketToNamePolicy(JsonObject policyRequest) {
     Promise<Void> promise = Promise.promise();
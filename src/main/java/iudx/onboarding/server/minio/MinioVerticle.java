@@ -1,12 +1,14 @@
 package iudx.onboarding.server.minio;
 
 import static iudx.onboarding.server.common.Constants.MINIO_ADDRESS;
+import static iudx.onboarding.server.common.Constants.UPSTREAM_MINIO_POLICY;
 
 import io.minio.MinioClient;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
+import iudx.onboarding.server.common.UpstreamClients;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -29,8 +31,8 @@ public class MinioVerticle extends AbstractVerticle {
         config().getString("minioAccessKey"),
         config().getString("minioSecretKey"));
     minioService =
-        new MinioServiceImpl(vertx, minioClient, minioServerUrl, minioAdmin, minioPolicyApiUrl,
-            authorizationKey);
+        new MinioServiceImpl(UpstreamClients.get(vertx, config(), UPSTREAM_MINIO_POLICY),
+            minioClient, minioServerUrl, minioAdmin, minioPolicyApiUrl, authorizationKey);
 
     binder = new ServiceBinder(vertx);
     consumer = binder.setAddress(MINIO_ADDRESS).register(MinioService.class, minioService);
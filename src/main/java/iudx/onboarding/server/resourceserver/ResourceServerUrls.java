@@ -0,0 +1,126 @@
+package iudx.onboarding.server.resourceserver;
+
+import static iudx.onboarding.server.apiserver.util.Constants.RESULTS;
+import static iudx.onboarding.server.common.Constants.CATALOGUE_CACHE_ADDRESS;
+import static iudx.onboarding.server.common.Constants.ID;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.apiserver.util.RespBuilder;
+import iudx.onboarding.server.catalogue.CatalogueCache;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import iudx.onboarding.server.common.MetricsHelper;
+import java.time.Duration;
+
+/**
+ * Resolves the registration URL of the resource server a resource group belongs to, caching the
+ * answer since it next to never changes. Groups without a resource server are remembered for a
+ * shorter while. Entries are dropped when the local catalogue cache is invalidated for the group
+ * or for its resource server, see {@link iudx.onboarding.server.catalogue.CatalogueCache}.
+ */
+final class ResourceServerUrls {
+
+  private static final long DEFAULT_TTL_MS = 3600000;
+  private static final long DEFAULT_NEGATIVE_TTL_MS = 30000;
+  private static final String REG_URL = "resourceServerRegURL";
+  private static final JsonArray FILTER = new JsonArray().add(REG_URL).add(ID);
+
+  private final LocalCatImpl localCat;
+  /* resource server of every resolved resource group */
+  private final Cache<String, Resolved> resolved;
+  /* resource groups found to have no resource server */
+  private final Cache<String, UpstreamException> missing;
+
+  ResourceServerUrls(Vertx vertx, LocalCatImpl localCat, JsonObject config) {
+    this.localCat = localCat;
+    this.resolved = CacheBuilder.newBuilder()
+        .expireAfterWrite(Duration.ofMillis(config.getLong("rsUrlCacheTtlMs", DEFAULT_TTL_MS)))
+        .build();
+    this.missing = CacheBuilder.newBuilder()
+        .expireAfterWrite(Duration.ofMillis(
+            config.getLong("rsUrlNegativeCacheTtlMs", DEFAULT_NEGATIVE_TTL_MS)))
+        .build();
+    vertx.eventBus().<JsonObject>consumer(CATALOGUE_CACHE_ADDRESS, message -> {
+      JsonObject body = message.body();
+      String id = body.getString(ID);
+      if (body.getBoolean(CatalogueCache.FLUSH, false)) {
+        resolved.invalidateAll();
+        missing.invalidateAll();
+      } else if (CatalogueCache.ITEM.equals(body.getString(CatalogueCache.KIND)) && id != null) {
+        evict(id);
+      }
+    });
+  }
+
+  /**
+   * The registration URL of the resource server of the resource group.
+   */
+  Future<String> resolve(String id) {
+    Resolved cached = resolved.getIfPresent(id);
+    if (cached != null) {
+      requests("hit").increment();
+      return Future.succeededFuture(cached.url);
+    }
+    UpstreamException notFound = missing.getIfPresent(id);
+    if (notFound != null) {
+      requests("negative_hit").increment();
+      return Future.failedFuture(notFound);
+    }
+    requests("miss").increment();
+    return localCat.getRelatedEntity(id, "resourceServer", FILTER)
+        .recover(cause -> {
+          if (cause instanceof UpstreamException
+              && ((UpstreamException) cause).getStatusCode() == 404) {
+            missing.put(id, (UpstreamException) cause);
+          }
+          return Future.failedFuture(cause);
+        })
+        .compose(related -> {
+          JsonArray results = related.getJsonArray(RESULTS, new JsonArray());
+          if (results.isEmpty()) {
+            UpstreamException none = new UpstreamException(404, new RespBuilder()
+                .withType("urn:dx:cat:ItemNotFound")
+                .withTitle("Not Found")
+                .withDetail("No resource server for " + id)
+                .getResponse(), 0);
+            missing.put(id, none);
+            return Future.failedFuture(none);
+          }
+          JsonObject resourceServer = results.getJsonObject(0);
+          Resolved resolution =
+              new Resolved(resourceServer.getString(ID), resourceServer.getString(REG_URL));
+          resolved.put(id, resolution);
+          return Future.succeededFuture(resolution.url);
+        });
+  }
+
+  /* an id is either a resource group or the resource server of some of them */
+  void evict(String id) {
+    resolved.invalidate(id);
+    missing.invalidate(id);
+    resolved.asMap().values().removeIf(resolution -> id.equals(resolution.resourceServerId));
+  }
+
+  private static Counter requests(String result) {
+    return Counter.builder("dx_rs_url_cache_requests")
+        .description("Resource server URL lookups served from the cache")
+        .tag("result", result)
+        .register(MetricsHelper.registry());
+  }
+
+  private static final class Resolved {
+    private final String resourceServerId;
+    private final String url;
+
+    private Resolved(String resourceServerId, String url) {
+      this.resourceServerId = resourceServerId;
+      this.url = url;
+    }
+  }
+}
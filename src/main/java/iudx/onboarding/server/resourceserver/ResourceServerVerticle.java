@@ -2,16 +2,14 @@ package iudx.onboarding.server.resourceserver;
 
 import static iudx.onboarding.server.common.Constants.*;
 
-import dev.failsafe.RetryPolicy;
-import dev.failsafe.RetryPolicyBuilder;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
-import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import iudx.onboarding.server.common.DeadlinePropagation;
+import iudx.onboarding.server.common.RetryEngine;
 import iudx.onboarding.server.ingestion.IngestionService;
 import iudx.onboarding.server.token.TokenService;
-import java.net.UnknownHostException;
 import java.time.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,18 +29,18 @@ public class ResourceServerVerticle extends AbstractVerticle {
     tokenService = TokenService.createProxy(vertx, TOKEN_ADDRESS);
     ingestionService = IngestionService.createProxy(vertx, INGESTION_ADDRESS);
 
-    RetryPolicyBuilder<Object> retryPolicyBuilder = RetryPolicy.builder()
-        .handle(DxRuntimeException.class)
-        .handle(UnknownHostException.class)
-        .abortOn(e -> e instanceof UnknownHostException)
+    RetryEngine retryEngine = RetryEngine.builder(vertx)
         .withBackoff(Duration.ofSeconds(5), Duration.ofSeconds(7), 1.1)
         .withMaxAttempts(3)
-        .onRetry(retryListener -> LOGGER.error("Operation failed... retrying"));
+        .build();
 
-    resourceServerService = new ResourceServerServiceImpl(vertx, tokenService, retryPolicyBuilder,
+    resourceServerService = new ResourceServerServiceImpl(vertx, tokenService, retryEngine,
             ingestionService, config());
+    DeadlinePropagation.install(vertx);
     binder = new ServiceBinder(vertx);
-    consumer = binder.setAddress(RS_SERVICE_ADDRESS).register(ResourceServerService.class, resourceServerService);
+    consumer = binder.setAddress(RS_SERVICE_ADDRESS)
+        .addInterceptor(DeadlinePropagation.SERVICE_INTERCEPTOR)
+        .register(ResourceServerService.class, resourceServerService);
 
     LOGGER.info("Resource Server Verticle deployed.");
   }
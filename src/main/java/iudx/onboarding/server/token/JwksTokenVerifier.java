@@ -0,0 +1,199 @@
+package iudx.onboarding.server.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.NoSuchKeyIdException;
+import io.vertx.ext.auth.authentication.TokenCredentials;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.client.WebClient;
+import iudx.onboarding.server.common.MetricsHelper;
+import iudx.onboarding.server.common.SingleFlight;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Verifies Keycloak issued JWTs locally against the realm JSON Web Key Set. The key set is fetched
+ * once and re-fetched only when a token is signed with a key id we do not know yet (i.e. after a
+ * key rotation), at most once per refresh interval: unknown key ids cost nothing to forge, so
+ * tokens arriving with one in between are checked against the keys of the last fetch. Verified
+ * claims are kept in a size bounded cache, keyed by the SHA-256 of the token, until the token
+ * expires.
+ */
+public class JwksTokenVerifier {
+
+  private static final Logger LOGGER = LogManager.getLogger(JwksTokenVerifier.class);
+  private static final String JWKS_KEY = "jwks";
+  /* upper bound for how long claims stay cached, regardless of the token exp */
+  private static final Duration MAX_CLAIMS_TTL = Duration.ofHours(1);
+  private static final Duration DEFAULT_MIN_REFRESH_INTERVAL = Duration.ofSeconds(10);
+
+  private final Vertx vertx;
+  private final WebClient webClient;
+  private final Supplier<String> jwksUrl;
+  private final JWTOptions jwtOptions;
+  private final Cache<String, CachedClaims> claimsCache;
+  private final SingleFlight<String, JWTAuth> jwksRequests = new SingleFlight<>();
+  private final Counter claimsCacheHits;
+  private final Counter claimsCacheMisses;
+  private final Counter jwksFetches;
+  private final long minRefreshIntervalMs;
+  private JWTAuth jwtAuth;
+  /* the last fetch made for an unknown key id, and when it started */
+  private Future<JWTAuth> lastRefresh;
+  private long lastRefreshAt;
+
+  /**
+   * Creates the verifier.
+   *
+   * @param vertx the vert.x instance
+   * @param jwksUrl supplies the absolute URL of the realm JWKS endpoint
+   * @param jwtOptions validation options (leeway, issuer, audience)
+   * @param maxCachedTokens maximum number of decoded tokens to keep
+   */
+  public JwksTokenVerifier(Vertx vertx, Supplier<String> jwksUrl, JWTOptions jwtOptions,
+                           long maxCachedTokens) {
+    this(vertx, jwksUrl, jwtOptions, maxCachedTokens, DEFAULT_MIN_REFRESH_INTERVAL);
+  }
+
+  /**
+   * Creates the verifier.
+   *
+   * @param vertx the vert.x instance
+   * @param jwksUrl supplies the absolute URL of the realm JWKS endpoint
+   * @param jwtOptions validation options (leeway, issuer, audience), read on every JWKS fetch
+   * @param maxCachedTokens maximum number of decoded tokens to keep
+   * @param minRefreshInterval shortest time between two fetches for unknown key ids
+   */
+  public JwksTokenVerifier(Vertx vertx, Supplier<String> jwksUrl, JWTOptions jwtOptions,
+                           long maxCachedTokens, Duration minRefreshInterval) {
+    this.vertx = vertx;
+    this.webClient = WebClient.create(vertx);
+    this.jwksUrl = jwksUrl;
+    this.jwtOptions = jwtOptions;
+    this.minRefreshIntervalMs = minRefreshInterval.toMillis();
+    this.claimsCache = CacheBuilder.newBuilder()
+        .maximumSize(maxCachedTokens)
+        .expireAfterWrite(MAX_CLAIMS_TTL)
+        .build();
+
+    MeterRegistry registry = MetricsHelper.registry();
+    this.claimsCacheHits = Counter.builder("dx_decoded_token_cache_requests")
+        .description("Token decode requests served from the decoded claims cache")
+        .tag("result", "hit")
+        .register(registry);
+    this.claimsCacheMisses = Counter.builder("dx_decoded_token_cache_requests")
+        .description("Token decode requests served from the decoded claims cache")
+        .tag("result", "miss")
+        .register(registry);
+    this.jwksFetches = Counter.builder("dx_jwks_fetches")
+        .description("Number of times the Keycloak JWKS was fetched")
+        .register(registry);
+  }
+
+  /**
+   * Verifies the signature and validity of the token and returns its claims.
+   *
+   * @param token the encoded JWT
+   * @return Future with the verified JWT claims
+   */
+  public Future<JsonObject> verify(String token) {
+    String key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+    CachedClaims cached = claimsCache.getIfPresent(key);
+    if (cached != null) {
+      if (cached.expiresAt > currentTimeSeconds()) {
+        claimsCacheHits.increment();
+        return Future.succeededFuture(cached.claims.copy());
+      }
+      claimsCache.invalidate(key);
+    }
+    claimsCacheMisses.increment();
+
+    Future<JWTAuth> provider = jwtAuth != null ? Future.succeededFuture(jwtAuth) : loadKeys();
+    return provider
+        .compose(auth -> authenticate(auth, token))
+        .recover(err -> {
+          if (err instanceof NoSuchKeyIdException) {
+            return refreshKeys().compose(auth -> authenticate(auth, token));
+          }
+          return Future.failedFuture(err);
+        })
+        .onSuccess(claims -> {
+          long exp = claims.getLong("exp", 0L);
+          if (exp > currentTimeSeconds()) {
+            claimsCache.put(key, new CachedClaims(claims.copy(), exp));
+          }
+        });
+  }
+
+  private Future<JsonObject> authenticate(JWTAuth auth, String token) {
+    return auth.authenticate(new TokenCredentials(token))
+        .map(user -> user.attributes().getJsonObject("accessToken"));
+  }
+
+  /**
+   * Re-fetches the JWKS for an unknown key id, unless that was done less than the refresh interval
+   * ago. Callers in between get the outcome of the last fetch, waiting for it if it is still
+   * running.
+   */
+  private synchronized Future<JWTAuth> refreshKeys() {
+    long now = System.currentTimeMillis();
+    if (lastRefresh == null || now - lastRefreshAt >= minRefreshIntervalMs) {
+      LOGGER.info("Unknown key id in token, refreshing JWKS");
+      lastRefreshAt = now;
+      lastRefresh = loadKeys();
+    }
+    return lastRefresh;
+  }
+
+  /**
+   * Fetches the JWKS and builds a new verifying provider from it. Concurrent callers share one
+   * fetch.
+   */
+  private Future<JWTAuth> loadKeys() {
+    return jwksRequests.execute(JWKS_KEY, () -> {
+      jwksFetches.increment();
+      return webClient.getAbs(jwksUrl.get())
+          .send()
+          .compose(response -> {
+            if (response.statusCode() != 200) {
+              return Future.failedFuture("Failed to fetch JWKS: " + response.statusCode());
+            }
+            JsonArray keys = response.bodyAsJsonObject().getJsonArray("keys", new JsonArray());
+            JWTAuthOptions authOptions = new JWTAuthOptions().setJWTOptions(jwtOptions);
+            keys.stream()
+                .map(JsonObject.class::cast)
+                .filter(jwk -> "sig".equals(jwk.getString("use", "sig")))
+                .forEach(authOptions::addJwk);
+            jwtAuth = JWTAuth.create(vertx, authOptions);
+            LOGGER.info("Loaded {} signing keys from JWKS", authOptions.getJwks().size());
+            return Future.succeededFuture(jwtAuth);
+          });
+    });
+  }
+
+  private static long currentTimeSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+  private static final class CachedClaims {
+    private final JsonObject claims;
+    private final long expiresAt;
+
+    private CachedClaims(JsonObject claims, long expiresAt) {
+      this.claims = claims;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -2,30 +2,68 @@ package iudx.onboarding.server.token;
 
 import static iudx.onboarding.server.common.Constants.TOKEN;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Lock;
 import io.vertx.ext.auth.JWTOptions;
-import io.vertx.ext.auth.authentication.TokenCredentials;
 import io.vertx.ext.auth.oauth2.OAuth2Auth;
 import io.vertx.ext.auth.oauth2.OAuth2FlowType;
 import io.vertx.ext.auth.oauth2.OAuth2Options;
 import io.vertx.ext.auth.oauth2.providers.KeycloakAuth;
+import iudx.onboarding.server.common.HttpStatusCode;
+import iudx.onboarding.server.common.MetricsHelper;
+import iudx.onboarding.server.common.SingleFlight;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class TokenServiceImpl implements TokenService {
   private static final Logger LOGGER = LogManager.getLogger(TokenServiceImpl.class);
+  private static final int JWT_LEEWAY_TIME = 90;
+  /* a cached token is not handed out during its last few seconds, to absorb clock skew and
+   * the time the caller needs to actually use it */
+  private static final int TOKEN_EXPIRY_SAFETY_TIME = 10;
+  private static final long REFRESH_RETRY_DELAY_MS = 5000;
+  private static final String ADMIN_TOKEN_KEY = "admin";
+  private static final String KEYCLOAK_CERTS_PATH = "/protocol/openid-connect/certs";
+  private static final long INIT_INITIAL_BACKOFF_MS = 1000;
+  private static final long INIT_MAX_BACKOFF_MS = 30000;
+  private static final long DEFAULT_READY_WAIT_MS = 10000;
+  private static final String SHARED_TOKEN_MAP = "iudx.onboarding.server.token.admin";
+  private static final String SHARED_TOKEN_LOCK = "iudx.onboarding.server.token.admin.refresh";
+  private static final long SHARED_LOCK_TIMEOUT_MS = 10000;
+  private static final String EXPIRY = "exp";
   private final String keycloakClientId;
   private final String keycloakClientSecret;
   private final String keycloakSite;
   private final OAuth2Options options;
+  private final Counter tokenCacheHits;
+  private final Counter tokenCacheMisses;
+  private final Timer tokenRefreshLatency;
+  private final Counter tokensMinted;
+  private final Counter tokensAdopted;
+  /* concurrent callers asking for the same token share one Keycloak round trip */
+  private final SingleFlight<String, JsonObject> mintRequests = new SingleFlight<>();
+  private final SingleFlight<String, JsonObject> decodeRequests = new SingleFlight<>();
+  private final JwksTokenVerifier tokenVerifier;
+  /* completed once Keycloak has been discovered and the first admin token was minted */
+  private final Promise<Void> ready = Promise.promise();
+  private final long readyWaitMs;
   Vertx vertx;
   JsonObject config;
   OAuth2Auth keycloak;
   private String jwtToken;
-  private static final int JWT_LEEWAY_TIME = 90;
+  private long jwtTokenExpiry;
+  private long refreshTimerId = -1;
 
   public TokenServiceImpl(Vertx vertx, JsonObject config) {
     this.config = config;
@@ -43,25 +81,209 @@ public class TokenServiceImpl implements TokenService {
                         new JWTOptions().setLeeway(JWT_LEEWAY_TIME)
                 );
 
-    KeycloakAuth.discover(vertx, options)
-        .onComplete(
-            discover -> {
-              if (discover.succeeded()) {
-                this.keycloak = discover.result();
-                LOGGER.info("Keycloak Discovery Successful");
-              } else {
-                LOGGER.error("Keycloak Discovery Failed " + discover.cause());
-              }
+    MeterRegistry registry = MetricsHelper.registry();
+    this.tokenCacheHits = Counter.builder("dx_admin_token_cache_requests")
+        .description("Admin token requests served from the in-memory token cache")
+        .tag("result", "hit")
+        .register(registry);
+    this.tokenCacheMisses = Counter.builder("dx_admin_token_cache_requests")
+        .description("Admin token requests served from the in-memory token cache")
+        .tag("result", "miss")
+        .register(registry);
+    this.tokenRefreshLatency = Timer.builder("dx_admin_token_refresh_latency")
+        .description("Latency of minting an admin token from Keycloak")
+        .register(registry);
+    this.tokensMinted = Counter.builder("dx_admin_token_obtained")
+        .description("Admin tokens obtained, either minted from Keycloak or read from the cluster")
+        .tag("source", "keycloak")
+        .register(registry);
+    this.tokensAdopted = Counter.builder("dx_admin_token_obtained")
+        .description("Admin tokens obtained, either minted from Keycloak or read from the cluster")
+        .tag("source", "cluster")
+        .register(registry);
+
+    // discovery sets the realm issuer on these options, tokens are only decoded after it
+    this.tokenVerifier = new JwksTokenVerifier(vertx, this::jwksUrl, options.getJWTOptions(),
+        config.getLong("decodedTokenCacheSize", 1000L),
+        Duration.ofMillis(config.getLong("jwksRefreshMinIntervalMs", 10000L)));
+
+    this.readyWaitMs = config.getLong("keycloakReadyWaitMs", DEFAULT_READY_WAIT_MS);
+
+    initialize(INIT_INITIAL_BACKOFF_MS);
+  }
+
+  /**
+   * Discovers the Keycloak realm and mints the first admin token, retrying with exponential
+   * backoff until both succeed. Discovery is not repeated once it has succeeded.
+   */
+  private void initialize(long backoffMs) {
+    Future<OAuth2Auth> discovered = keycloak != null
+        ? Future.succeededFuture(keycloak)
+        : KeycloakAuth.discover(vertx, options)
+            .onSuccess(auth -> {
+              this.keycloak = auth;
+              LOGGER.info("Keycloak Discovery Successful");
             });
+    discovered
+        .compose(auth -> mintToken())
+        .onSuccess(token -> {
+          ready.tryComplete();
+          LOGGER.info("Token service is ready");
+        })
+        .onFailure(err -> {
+          LOGGER.error("Keycloak initialization failed, retrying in {} ms: {}", backoffMs,
+              err.getMessage());
+          vertx.setTimer(backoffMs,
+              id -> initialize(Math.min(backoffMs * 2, INIT_MAX_BACKOFF_MS)));
+        });
+  }
+
+  /**
+   * Readiness of the token service.
+   *
+   * @return Future that completes once admin tokens can be minted
+   */
+  public Future<Void> ready() {
+    return ready.future();
   }
 
+  /**
+   * Waits on readiness for at most {@link #readyWaitMs}, so callers arriving while Keycloak is
+   * still unreachable fail with a 503 instead of hanging.
+   */
+  private Future<Void> awaitReady() {
+    Future<Void> readyFuture = ready.future();
+    if (readyFuture.isComplete()) {
+      return readyFuture;
+    }
+    Promise<Void> bounded = Promise.promise();
+    long timerId = vertx.setTimer(readyWaitMs, id -> bounded.tryFail(
+        new JsonObject()
+            .put("type", HttpStatusCode.SERVICE_UNAVAILABLE.getUrn())
+            .put("title", HttpStatusCode.SERVICE_UNAVAILABLE.getDescription())
+            .put("detail", "Token service is not ready, Keycloak is unavailable")
+            .encode()));
+    readyFuture.onComplete(ar -> {
+      vertx.cancelTimer(timerId);
+      if (ar.succeeded()) {
+        bounded.tryComplete();
+      } else {
+        bounded.tryFail(ar.cause());
+      }
+    });
+    return bounded.future();
+  }
+
+  /**
+   * Returns the admin token minted with the client credentials. The token is shared across the
+   * cluster and held in memory on every node, and refreshed in the background before it expires,
+   * so callers normally never wait on Keycloak or on the cluster.
+   *
+   * @return Future containing the token as <code>{"token": "..."}</code>
+   */
   @Override
   public Future<JsonObject> createToken() {
+    if (jwtToken != null && isUsable(jwtTokenExpiry)) {
+      tokenCacheHits.increment();
+      return Future.succeededFuture(new JsonObject().put(TOKEN, jwtToken));
+    }
+    tokenCacheMisses.increment();
+    // becoming ready obtains a token, which callers waiting on readiness can use
+    return awaitReady().compose(v -> jwtToken != null && isUsable(jwtTokenExpiry)
+        ? Future.succeededFuture(new JsonObject().put(TOKEN, jwtToken))
+        : mintToken());
+  }
+
+  private Future<JsonObject> mintToken() {
+    return mintRequests.execute(ADMIN_TOKEN_KEY, this::obtainToken);
+  }
+
+  /**
+   * Obtains a fresh admin token for this node. The token is shared across the cluster through an
+   * {@link AsyncMap}. A node first reads the map and adopts a token newer than its own. Only if
+   * there is none does it take the refresh lock, and whichever node holds it mints from Keycloak
+   * and publishes the token; nodes queued behind it find that token on their second read and
+   * adopt it. Without a lock (e.g. the cluster is unreachable) the node falls back to minting on
+   * its own.
+   */
+  private Future<JsonObject> obtainToken() {
+    long knownExpiry = jwtTokenExpiry;
+    return vertx.sharedData().<String, JsonObject>getAsyncMap(SHARED_TOKEN_MAP).compose(
+        tokens -> sharedToken(tokens, knownExpiry).compose(shared -> shared != null
+            ? Future.succeededFuture(adoptToken(shared))
+            : refreshToken(tokens, knownExpiry)),
+        err -> {
+          LOGGER.warn("Could not read the shared admin token, minting locally: "
+              + err.getMessage());
+          return requestToken();
+        });
+  }
+
+  private Future<JsonObject> refreshToken(AsyncMap<String, JsonObject> tokens, long knownExpiry) {
+    return refreshLock().compose(
+        lock -> sharedToken(tokens, knownExpiry)
+            .compose(shared -> shared != null
+                ? Future.succeededFuture(adoptToken(shared))
+                : requestToken().compose(token -> publishToken(tokens, token)))
+            .onComplete(ar -> lock.release()),
+        err -> {
+          LOGGER.warn("Could not acquire the shared token lock, minting locally: "
+              + err.getMessage());
+          return requestToken();
+        });
+  }
+
+  /* the token published by the cluster, if it is usable and newer than the one we know */
+  private static Future<JsonObject> sharedToken(AsyncMap<String, JsonObject> tokens,
+                                                long knownExpiry) {
+    return tokens.get(ADMIN_TOKEN_KEY)
+        .map(shared -> shared != null && isUsable(shared.getLong(EXPIRY, 0L))
+            && shared.getLong(EXPIRY) > knownExpiry ? shared : null)
+        .otherwise((JsonObject) null);
+  }
+
+  Future<Lock> refreshLock() {
+    return vertx.sharedData().getLockWithTimeout(SHARED_TOKEN_LOCK, SHARED_LOCK_TIMEOUT_MS);
+  }
+
+  private JsonObject adoptToken(JsonObject shared) {
+    tokensAdopted.increment();
+    jwtToken = shared.getString(TOKEN);
+    jwtTokenExpiry = shared.getLong(EXPIRY);
+    scheduleRefresh();
+    LOGGER.debug("Using the admin token shared by the cluster");
+    return new JsonObject().put(TOKEN, jwtToken);
+  }
+
+  private Future<JsonObject> publishToken(AsyncMap<String, JsonObject> tokens, JsonObject token) {
+    long ttlMs = (jwtTokenExpiry - currentTimeSeconds()) * 1000;
+    if (ttlMs <= 0) {
+      return Future.succeededFuture(token);
+    }
+    JsonObject shared = new JsonObject().put(TOKEN, jwtToken).put(EXPIRY, jwtTokenExpiry);
+    return tokens.put(ADMIN_TOKEN_KEY, shared, ttlMs)
+        .map(token)
+        .recover(err -> {
+          LOGGER.warn("Failed to share the admin token with the cluster: " + err.getMessage());
+          return Future.succeededFuture(token);
+        });
+  }
+
+  private static boolean isUsable(long expiry) {
+    return currentTimeSeconds() < expiry - TOKEN_EXPIRY_SAFETY_TIME;
+  }
+
+  private Future<JsonObject> requestToken() {
     Promise<JsonObject> promise = Promise.promise();
+    long start = System.nanoTime();
     keycloak.authenticate(new JsonObject())
         .onSuccess(
             res -> {
+              tokenRefreshLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+              tokensMinted.increment();
               jwtToken = res.principal().getString("access_token");
+              jwtTokenExpiry = expiryOf(jwtToken);
+              scheduleRefresh();
               LOGGER.info("Token generated successfully ");
               promise.complete(new JsonObject().put(TOKEN, jwtToken));
             })
@@ -72,24 +294,82 @@ public class TokenServiceImpl implements TokenService {
     return promise.future();
   }
 
-  @Override
-  public Future<JsonObject> decodeToken(String token) {
-    Promise<JsonObject> promise = Promise.promise();
+  /**
+   * Schedules a background refresh ahead of the token expiry. The refresh happens
+   * {@link #JWT_LEEWAY_TIME} seconds before <code>exp</code>, or half way through the remaining
+   * lifetime for short-lived tokens.
+   */
+  private void scheduleRefresh() {
+    if (refreshTimerId != -1) {
+      vertx.cancelTimer(refreshTimerId);
+    }
+    long remaining = jwtTokenExpiry - currentTimeSeconds();
+    if (remaining <= 0) {
+      LOGGER.warn("Token has no usable expiry, not scheduling a background refresh");
+      return;
+    }
+    long refreshIn = remaining - Math.min(JWT_LEEWAY_TIME, remaining / 2);
+    refreshTimerId = vertx.setTimer(Math.max(1000, refreshIn * 1000), id -> refresh());
+  }
+
+  private void refresh() {
+    refreshTimerId = -1;
+    mintToken().onFailure(err -> {
+      LOGGER.warn("Background token refresh failed, retrying in {} ms", REFRESH_RETRY_DELAY_MS);
+      refreshTimerId = vertx.setTimer(REFRESH_RETRY_DELAY_MS, id -> refresh());
+    });
+  }
+
+  /**
+   * Reads the <code>exp</code> claim from the payload of the JWT without verifying it, the token
+   * has just been issued to us by Keycloak.
+   *
+   * @param token the encoded JWT
+   * @return expiry in epoch seconds, or <code>0</code> if it could not be read
+   */
+  static long expiryOf(String token) {
     try {
-      keycloak.authenticate(new TokenCredentials(token))
-          .onSuccess(authInfo -> {
-            JsonObject tokenInfo = authInfo.principal();
-            LOGGER.debug("Token decoded successfully: " + tokenInfo);
-            promise.complete(tokenInfo);
-          })
-          .onFailure(err -> {
-            LOGGER.error("Token decoding failed: " + err.getLocalizedMessage());
-            promise.fail(err.getLocalizedMessage());
-          });
-    } catch (Exception exception) {
-      LOGGER.error("Token decoding failed: " + exception.getLocalizedMessage());
-      promise.fail(exception.getLocalizedMessage());
+      String[] parts = token.split("\\.");
+      String payload =
+          new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+      return new JsonObject(payload).getLong("exp", 0L);
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to read expiry from token: " + e.getMessage());
+      return 0L;
     }
-    return promise.future();
+  }
+
+  /**
+   * The JWKS endpoint advertised by the Keycloak discovery document, or the well-known Keycloak
+   * certs path if discovery has not completed.
+   */
+  private String jwksUrl() {
+    String jwkPath = options.getJwkPath();
+    if (jwkPath != null && jwkPath.startsWith("http")) {
+      return jwkPath;
+    }
+    return keycloakSite + KEYCLOAK_CERTS_PATH;
+  }
+
+  private static long currentTimeSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+  /**
+   * Verifies the token signature and issuer locally against the realm JWKS and returns its
+   * claims, once Keycloak has been discovered. Results are cached until the token expires, so
+   * repeated decodes of the same token are in-memory.
+   *
+   * @param token the encoded JWT
+   * @return Future containing the verified token claims
+   */
+  @Override
+  public Future<JsonObject> decodeToken(String token) {
+    return decodeRequests.execute(token,
+            () -> awaitReady().compose(v -> tokenVerifier.verify(token)))
+        .recover(err -> {
+          LOGGER.error("Token decoding failed: " + err.getLocalizedMessage());
+          return Future.failedFuture(err.getLocalizedMessage());
+        });
   }
 }
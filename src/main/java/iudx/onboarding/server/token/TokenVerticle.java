@@ -1,9 +1,10 @@
 package iudx.onboarding.server.token;
 
-import static iudx.onboarding.server.common.Constants.CATALOGUE_ADDRESS;
 import static iudx.onboarding.server.common.Constants.TOKEN_ADDRESS;
+import static iudx.onboarding.server.common.Constants.TOKEN_READINESS_ADDRESS;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
@@ -13,22 +14,44 @@ import org.apache.logging.log4j.Logger;
 
 public class TokenVerticle extends AbstractVerticle {
   private static final Logger LOGGER = LogManager.getLogger(CatalogueVerticle.class);
+  private static final long DEFAULT_STARTUP_READY_WAIT_MS = 60000;
   private MessageConsumer<JsonObject> consumer;
+  private MessageConsumer<Object> readinessConsumer;
   private ServiceBinder binder;
-  private TokenService tokenService;
+  private TokenServiceImpl tokenService;
 
+  /**
+   * Registers the token service and completes the deployment once the service can mint tokens,
+   * so that the modules deployed after it do not start against an unready Keycloak. If Keycloak
+   * stays unavailable for longer than <code>startupReadyWaitMs</code> the deployment completes
+   * anyway and the service keeps retrying in the background.
+   */
   @Override
-  public void start() throws Exception {
+  public void start(Promise<Void> startPromise) throws Exception {
 
     tokenService = new TokenServiceImpl(vertx, config());
     binder = new ServiceBinder(vertx);
     consumer = binder.setAddress(TOKEN_ADDRESS).register(TokenService.class, tokenService);
 
-    LOGGER.info("Token Verticle deployed.");
+    /* answers readiness probes, e.g. from the API server, with {"ready": true|false} */
+    readinessConsumer = vertx.eventBus().consumer(TOKEN_READINESS_ADDRESS, message ->
+        message.reply(new JsonObject().put("ready", tokenService.ready().succeeded())));
+
+    long waitMs = config().getLong("startupReadyWaitMs", DEFAULT_STARTUP_READY_WAIT_MS);
+    long timerId = vertx.setTimer(waitMs, id -> {
+      LOGGER.warn("Token service not ready after {} ms, continuing deployment", waitMs);
+      startPromise.tryComplete();
+    });
+    tokenService.ready().onSuccess(v -> {
+      vertx.cancelTimer(timerId);
+      LOGGER.info("Token Verticle deployed.");
+      startPromise.tryComplete();
+    });
   }
 
   @Override
   public void stop() {
     binder.unregister(consumer);
+    readinessConsumer.unregister();
   }
 }
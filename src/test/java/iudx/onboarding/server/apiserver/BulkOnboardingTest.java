@@ -0,0 +1,273 @@
+package iudx.onboarding.server.apiserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class BulkOnboardingTest {
+
+  private static JsonObject item(String id, String type) {
+    return new JsonObject().put("id", id).put("type", new JsonArray().add(type));
+  }
+
+  @Test
+  public void testArrayAndNdjsonBodiesAreParsed(VertxTestContext testContext) {
+    JsonArray array = new JsonArray()
+        .add(item("a", "iudx:Resource"))
+        .add(item("b", "iudx:ResourceGroup"));
+    String ndjson = array.getJsonObject(0).encode() + "\r\n\n" + array.getJsonObject(1).encode();
+
+    List<BulkOnboarding.Item> fromArray =
+        BulkOnboarding.parse(array.encode(), false, 10).result();
+    List<BulkOnboarding.Item> fromNdjson = BulkOnboarding.parse(ndjson, true, 10).result();
+
+    assertEquals(2, fromArray.size());
+    assertEquals(2, fromNdjson.size());
+    assertEquals("b", fromNdjson.get(1).id());
+    assertEquals(1, fromNdjson.get(1).index());
+    assertEquals(array.getJsonObject(1), new JsonObject(fromArray.get(1).body()));
+    testContext.completeNow();
+  }
+
+  @Test
+  public void testInvalidBodiesAreRejected(VertxTestContext testContext) {
+    assertTrue(BulkOnboarding.parse("{\"id\":\"a\"}", false, 10).failed());
+    assertTrue(BulkOnboarding.parse("[1]", false, 10).failed());
+    assertTrue(BulkOnboarding.parse("{\"id\":\"a\"}\nnot json", true, 10).failed());
+    assertTrue(BulkOnboarding.parse("[]", false, 10).failed());
+    Future<List<BulkOnboarding.Item>> tooMany = BulkOnboarding.parse(
+        new JsonArray().add(item("a", "iudx:Resource")).add(item("b", "iudx:Resource")).encode(),
+        false, 1);
+    assertTrue(tooMany.cause().getMessage().contains(":InvalidSchema"));
+    testContext.completeNow();
+  }
+
+  @Test
+  public void testItemsAreCreatedTierByTier(VertxTestContext testContext) {
+    JsonArray body = new JsonArray()
+        .add(item("resource", "iudx:Resource"))
+        .add(item("group", "iudx:ResourceGroup"))
+        .add(item("provider", "iudx:Provider"));
+    List<BulkOnboarding.Item> items = BulkOnboarding.parse(body.encode(), false, 10).result();
+    List<String> started = new ArrayList<>();
+    List<Promise<JsonObject>> pending = new ArrayList<>();
+
+    new BulkOnboarding(10).run(items, itemBody -> {
+      started.add(new JsonObject(itemBody).getString("id"));
+      Promise<JsonObject> promise = Promise.promise();
+      pending.add(promise);
+      return promise.future();
+    }, (item, result) -> { }, () -> false, Future::succeededFuture)
+        .onComplete(testContext.succeeding(failed -> testContext.verify(() -> {
+          assertEquals(0, failed);
+          assertEquals(List.of("provider", "group", "resource"), started);
+          testContext.completeNow();
+        })));
+
+    // every tier only starts once the one before it is done
+    for (int i = 0; i < 3; i++) {
+      assertEquals(i + 1, started.size());
+      pending.get(i).complete(new JsonObject());
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsBounded(VertxTestContext testContext) {
+    JsonArray body = new JsonArray();
+    for (int i = 0; i < 10; i++) {
+      body.add(item("resource-" + i, "iudx:Resource"));
+    }
+    List<BulkOnboarding.Item> items = BulkOnboarding.parse(body.encode(), false, 10).result();
+    List<Promise<JsonObject>> pending = new ArrayList<>();
+    AtomicInteger results = new AtomicInteger();
+
+    new BulkOnboarding(3).run(items, itemBody -> {
+      Promise<JsonObject> promise = Promise.promise();
+      pending.add(promise);
+      return promise.future();
+    }, (item, result) -> results.incrementAndGet(), () -> false,
+        Future::succeededFuture)
+        .onComplete(testContext.succeeding(failed -> testContext.verify(() -> {
+          assertEquals(1, failed);
+          assertEquals(10, results.get());
+          testContext.completeNow();
+        })));
+
+    assertEquals(3, pending.size());
+    pending.get(0).fail("{\"type\":\"urn:dx:cat:InvalidSchema\"}");
+    for (int i = 1; i < 10; i++) {
+      assertEquals(Math.min(i + 3, 10), pending.size());
+      pending.get(i).complete(new JsonObject());
+    }
+  }
+
+  private static Future<Integer> serve(Vertx vertx, BulkOnboarding bulk, List<JsonObject> body,
+                                       Function<String, Future<JsonObject>> onboard,
+                                       long timeoutMs, Promise<Void> ended) {
+    List<BulkOnboarding.Item> items =
+        BulkOnboarding.parse(new JsonArray(body).encode(), false, 10).result();
+    return vertx.createHttpServer()
+        .requestHandler(request -> bulk.respond(vertx, items, onboard,
+                (item, result) -> new JsonObject().put("index", item.index())
+                    .put("statusCode", result.succeeded() ? 201 : 400),
+                request.response(), timeoutMs)
+            .onComplete(ended))
+        .listen(0)
+        .map(HttpServer::actualPort);
+  }
+
+  private static Future<HttpClientResponse> post(Vertx vertx, int port) {
+    return vertx.createHttpClient()
+        .request(HttpMethod.POST, port, "localhost", "/")
+        .compose(HttpClientRequest::send);
+  }
+
+  private static List<JsonObject> lines(Buffer body) {
+    List<JsonObject> lines = new ArrayList<>();
+    for (String line : body.toString().split("\n")) {
+      lines.add(new JsonObject(line));
+    }
+    return lines;
+  }
+
+  @Test
+  public void testResponseStreamsMixedResults(Vertx vertx, VertxTestContext testContext) {
+    List<JsonObject> body = List.of(
+        item("a", "iudx:Resource"), item("bad", "iudx:Resource"), item("c", "iudx:Resource"));
+    Function<String, Future<JsonObject>> onboard = itemBody ->
+        "bad".equals(new JsonObject(itemBody).getString("id"))
+            ? Future.failedFuture("{\"type\":\"urn:dx:cat:InvalidSchema\"}")
+            : Future.succeededFuture(new JsonObject());
+
+    serve(vertx, new BulkOnboarding(2), body, onboard, 5000, Promise.promise())
+        .compose(port -> post(vertx, port))
+        .compose(response -> {
+          assertEquals(200, response.statusCode());
+          assertEquals("application/x-ndjson", response.getHeader("content-type"));
+          return response.body();
+        })
+        .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+          List<JsonObject> lines = lines(response);
+          assertEquals(4, lines.size());
+          assertEquals(List.of(201, 400, 201), lines.subList(0, 3).stream()
+              .sorted(Comparator.comparing(line -> line.getInteger("index")))
+              .map(line -> line.getInteger("statusCode"))
+              .collect(Collectors.toList()));
+          JsonObject summary = lines.get(3);
+          assertEquals("urn:dx:cat:PartialSuccess", summary.getString("type"));
+          assertEquals(3, summary.getInteger("total"));
+          assertEquals(1, summary.getInteger("failed"));
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testClientDisconnectStopsStartingItems(Vertx vertx, VertxTestContext testContext) {
+    List<JsonObject> body = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      body.add(item("resource-" + i, "iudx:Resource"));
+    }
+    List<Promise<JsonObject>> pending = new ArrayList<>();
+    Function<String, Future<JsonObject>> onboard = itemBody -> {
+      Promise<JsonObject> promise = Promise.promise();
+      pending.add(promise);
+      // the first item is done shortly, the client hangs up once it has its line
+      if (pending.size() == 1) {
+        vertx.setTimer(50, later -> promise.complete(new JsonObject()));
+      }
+      return promise.future();
+    };
+    Promise<Void> ended = Promise.promise();
+
+    serve(vertx, new BulkOnboarding(1), body, onboard, 5000, ended)
+        .compose(port -> post(vertx, port))
+        .onComplete(testContext.succeeding(response -> {
+          response.request().connection().close();
+          vertx.setTimer(200, later -> pending.get(1).complete(new JsonObject()));
+        }));
+    ended.future().onComplete(done -> vertx.setTimer(200, later -> testContext.verify(() -> {
+      assertEquals(2, pending.size());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testTimeoutSumsTheRequestUp(Vertx vertx, VertxTestContext testContext) {
+    List<JsonObject> body = List.of(item("a", "iudx:Resource"), item("b", "iudx:Resource"));
+    Function<String, Future<JsonObject>> onboard = itemBody ->
+        "a".equals(new JsonObject(itemBody).getString("id"))
+            ? Future.succeededFuture(new JsonObject())
+            : Promise.<JsonObject>promise().future();
+
+    serve(vertx, new BulkOnboarding(2), body, onboard, 200, Promise.promise())
+        .compose(port -> post(vertx, port))
+        .compose(HttpClientResponse::body)
+        .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+          List<JsonObject> lines = lines(response);
+          assertEquals(2, lines.size());
+          assertEquals(0, lines.get(0).getInteger("index"));
+          assertEquals(1, lines.get(1).getInteger("failed"));
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testItemsWaitForTheClientToCatchUp(Vertx vertx, VertxTestContext testContext) {
+    HttpServerResponse response = mock(HttpServerResponse.class, RETURNS_SELF);
+    when(response.end(anyString())).thenReturn(Future.succeededFuture());
+    when(response.writeQueueFull()).thenReturn(true);
+    AtomicReference<Handler<Void>> drain = new AtomicReference<>();
+    when(response.drainHandler(any())).thenAnswer(invocation -> {
+      drain.set(invocation.getArgument(0));
+      return response;
+    });
+    List<BulkOnboarding.Item> items = BulkOnboarding.parse(new JsonArray()
+        .add(item("a", "iudx:Resource")).add(item("b", "iudx:Resource")).encode(), false, 10)
+        .result();
+    AtomicInteger started = new AtomicInteger();
+
+    vertx.runOnContext(run -> {
+      new BulkOnboarding(1).respond(vertx, items, itemBody -> {
+        started.incrementAndGet();
+        return Future.succeededFuture(new JsonObject());
+      }, (item, result) -> new JsonObject(), response, 5000)
+          .onComplete(testContext.succeeding(ended -> testContext.verify(() -> {
+            assertEquals(2, started.get());
+            testContext.completeNow();
+          })));
+      // the first line fills the queue, the second item waits for it to drain
+      testContext.verify(() -> assertEquals(1, started.get()));
+      when(response.writeQueueFull()).thenReturn(false);
+      drain.get().handle(null);
+    });
+  }
+}
@@ -1,5 +1,7 @@
 package iudx.onboarding.server.apiserver;
 
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import iudx.onboarding.server.apiserver.util.Util;
@@ -12,6 +14,9 @@ import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 public class UtilTest {
 
@@ -52,4 +57,33 @@ public class UtilTest {
     String actualResponse = Util.errorResponse(code);
     assertEquals(expectedResponse, actualResponse);
   }
+
+  @Test
+  public void testEndWithDetailAppendsToTheUpstreamBytes() {
+    assertEquals(new JsonObject().put("type", "urn:dx:cat:Success").put("detail", "fetched"),
+        endWithDetail(" {\"type\":\"urn:dx:cat:Success\"}\n"));
+    assertEquals(new JsonObject().put("detail", "fetched"), endWithDetail("{ }"));
+  }
+
+  @Test
+  public void testEndWithDetailReplacesAnUpstreamDetail() {
+    assertEquals(new JsonObject().put("detail", "fetched"),
+        endWithDetail("{\"detail\":\"upstream\"}"));
+  }
+
+  /* the JSON object written by endWithDetail, whichever way it wrote it */
+  private static JsonObject endWithDetail(String upstream) {
+    HttpServerResponse response = mock(HttpServerResponse.class);
+    Buffer written = Buffer.buffer();
+    doAnswer(invocation -> {
+      written.appendBuffer(invocation.getArgument(0));
+      return null;
+    }).when(response).write(any(Buffer.class));
+    doAnswer(invocation -> {
+      written.appendBuffer(invocation.getArgument(0));
+      return null;
+    }).when(response).end(any(Buffer.class));
+    Util.endWithDetail(response, Buffer.buffer(upstream), "fetched");
+    return written.toJsonObject();
+  }
 }
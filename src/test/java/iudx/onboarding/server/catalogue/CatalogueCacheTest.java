@@ -0,0 +1,85 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class CatalogueCacheTest {
+
+  @Test
+  public void testReadsAreCachedUntilEvicted(Vertx vertx, VertxTestContext testContext) {
+    CatalogueCache cache = new CatalogueCache(vertx, 100, 60000);
+    AtomicInteger loads = new AtomicInteger();
+    cache.get(CatalogueCache.INSTANCE, "/internal/ui", "a", () -> load(loads))
+        .compose(first -> cache.get(CatalogueCache.INSTANCE, "/internal/ui", "a",
+            () -> load(loads)))
+        .compose(second -> cache.get(CatalogueCache.INSTANCE, "/internal/ui", null,
+            () -> load(loads)))
+        .compose(listing -> {
+          testContext.verify(() -> {
+            assertEquals(2, loads.get());
+            assertEquals(2, cache.size());
+          });
+          // evicts the instance on both of its paths, and the listing it is part of
+          cache.evict(CatalogueCache.INSTANCE, "a");
+          return cache.get(CatalogueCache.INSTANCE, "/internal/ui", "a", () -> load(loads));
+        })
+        .onComplete(testContext.succeeding(third -> testContext.verify(() -> {
+          assertEquals(3, loads.get());
+          assertEquals(1, cache.size());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testReadOverlappingAnEvictionIsNotCached(Vertx vertx,
+                                                      VertxTestContext testContext) {
+    CatalogueCache cache = new CatalogueCache(vertx, 100, 60000);
+    Promise<Buffer> slowRead = Promise.promise();
+    Future<Buffer> read = cache.get(CatalogueCache.ITEM, "", "a", slowRead::future);
+    cache.evict(CatalogueCache.ITEM, "a");
+    slowRead.complete(new JsonObject().put("name", "before update").toBuffer());
+    read.onComplete(testContext.succeeding(stale -> testContext.verify(() -> {
+      assertEquals(0, cache.size());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testConcurrentMissesShareOneLoad(Vertx vertx, VertxTestContext testContext) {
+    CatalogueCache cache = new CatalogueCache(vertx, 100, 60000);
+    AtomicInteger loads = new AtomicInteger();
+    Promise<Buffer> slowRead = Promise.promise();
+    Future<Buffer> first = cache.get(CatalogueCache.DOMAIN, "", "a", () -> {
+      loads.incrementAndGet();
+      return slowRead.future();
+    });
+    Future<Buffer> second = cache.get(CatalogueCache.DOMAIN, "", "a", () -> load(loads));
+    cache.evict(CatalogueCache.DOMAIN, "a");
+    Future<Buffer> afterEviction =
+        cache.get(CatalogueCache.DOMAIN, "", "a", () -> load(loads));
+    slowRead.complete(new JsonObject().put("name", "before update").toBuffer());
+    Future.all(first, second, afterEviction)
+        .onComplete(testContext.succeeding(all -> testContext.verify(() -> {
+          assertEquals(2, loads.get());
+          assertEquals("before update", second.result().toJsonObject().getString("name"));
+          assertEquals(2, afterEviction.result().toJsonObject().getInteger("load"));
+          testContext.completeNow();
+        })));
+  }
+
+  private static Future<Buffer> load(AtomicInteger loads) {
+    return Future.succeededFuture(
+        new JsonObject().put("load", loads.incrementAndGet()).toBuffer());
+  }
+}
@@ -0,0 +1,181 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import iudx.onboarding.server.token.TokenService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class CatalogueReconcilerTest {
+
+  private static Future<JsonObject> results(JsonObject entity) {
+    return Future.succeededFuture(new JsonObject().put("results", new JsonArray().add(entity)));
+  }
+
+  private static <T> Future<T> notFound() {
+    return Future.failedFuture(
+        new UpstreamException(404, "{\"type\":\"urn:dx:cat:ItemNotFound\"}", 0));
+  }
+
+  private static JsonObject page(JsonObject... entities) {
+    JsonArray results = new JsonArray();
+    for (JsonObject entity : entities) {
+      results.add(entity);
+    }
+    return new JsonObject().put("totalHits", entities.length).put("results", results);
+  }
+
+  private static CatalogueReconciler reconciler(Vertx vertx, LocalCatImpl localCat,
+                                                CentralCatImpl centralCat, JsonObject... items) {
+    TokenService tokenService = mock(TokenService.class);
+    when(tokenService.createToken()).thenReturn(
+        Future.succeededFuture(new JsonObject().put("token", "admin")));
+    when(localCat.searchItems(anyString(), anyInt(), anyInt())).thenReturn(
+        Future.succeededFuture(page()));
+    when(localCat.searchItems(eq("iudx:Resource"), anyInt(), anyInt())).thenReturn(
+        Future.succeededFuture(page(items)));
+    when(localCat.listInstances(anyInt(), anyInt())).thenReturn(Future.succeededFuture(page()));
+    when(localCat.listDomains(anyInt(), anyInt())).thenReturn(Future.succeededFuture(page()));
+    return new CatalogueReconciler(vertx, new JsonObject(), tokenService, localCat, centralCat,
+        null);
+  }
+
+  @Test
+  public void testContentHashIgnoresKeyOrderAndServerFields() {
+    JsonObject item = new JsonObject().put("id", "a").put("name", "x")
+        .put("tags", new JsonArray().add("t"));
+    JsonObject reordered = new JsonObject().put("tags", new JsonArray().add("t"))
+        .put("name", "x").put("id", "a").put("itemCreatedAt", "2024-01-01");
+    assertEquals(CatalogueReconciler.contentHash(item),
+        CatalogueReconciler.contentHash(reordered));
+    assertNotEquals(CatalogueReconciler.contentHash(item),
+        CatalogueReconciler.contentHash(item.copy().put("name", "y")));
+  }
+
+  @Test
+  public void testSweepRepairsCentralAndSkipsUnchangedBuckets(Vertx vertx,
+                                                              VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    TokenService tokenService = mock(TokenService.class);
+    JsonObject changed = new JsonObject().put("id", "changed").put("name", "local");
+    JsonObject missing = new JsonObject().put("id", "missing").put("name", "local");
+    JsonObject page = new JsonObject().put("totalHits", 2)
+        .put("results", new JsonArray().add(changed).add(missing));
+    JsonObject empty = new JsonObject().put("totalHits", 0).put("results", new JsonArray());
+    when(localCat.searchItems(anyString(), anyInt(), anyInt())).thenReturn(
+        Future.succeededFuture(empty));
+    when(localCat.searchItems(eq("iudx:Resource"), anyInt(), anyInt())).thenReturn(
+        Future.succeededFuture(page));
+    when(localCat.listInstances(anyInt(), anyInt())).thenReturn(Future.succeededFuture(empty));
+    when(localCat.listDomains(anyInt(), anyInt())).thenReturn(Future.succeededFuture(empty));
+    when(centralCat.getItem("changed")).thenReturn(Future.succeededFuture(new JsonObject()
+        .put("results", new JsonArray().add(changed.copy().put("name", "central")))));
+    when(centralCat.getItem("missing")).thenReturn(notFound());
+    when(localCat.getItem("missing")).thenReturn(results(missing));
+    when(centralCat.updateItem(any(), anyString())).thenReturn(
+        Future.succeededFuture(new JsonObject()));
+    when(centralCat.createItem(any(), anyString())).thenReturn(
+        Future.succeededFuture(new JsonObject()));
+    when(tokenService.createToken()).thenReturn(
+        Future.succeededFuture(new JsonObject().put("token", "admin")));
+
+    CatalogueReconciler reconciler = new CatalogueReconciler(vertx, new JsonObject(),
+        tokenService, localCat, centralCat, null);
+    reconciler.sweep()
+        .compose(v -> reconciler.sweep())
+        .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+          verify(centralCat).updateItem(argThat(item -> "local".equals(item.getString("name"))),
+              eq("admin"));
+          verify(centralCat).createItem(argThat(item -> "missing".equals(item.getString("id"))),
+              eq("admin"));
+          // the second sweep found the local digests unchanged and asked central nothing
+          verify(centralCat, times(1)).getItem("changed");
+          verify(centralCat, times(1)).getItem("missing");
+          verify(centralCat, never()).deleteItem(anyString(), anyString());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testItemShiftedOutOfTheListingIsNotDeletedFromCentral(Vertx vertx,
+                                                                    VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    JsonObject item = new JsonObject().put("id", "shifted").put("name", "x");
+    CatalogueReconciler reconciler = reconciler(vertx, localCat, centralCat, item);
+    when(centralCat.getItem("shifted")).thenReturn(results(item));
+    when(localCat.getItem("shifted")).thenReturn(results(item));
+
+    reconciler.sweep()
+        .compose(v -> {
+          // a concurrent delete moved the item to an earlier page, the listing now misses it
+          when(localCat.searchItems(eq("iudx:Resource"), anyInt(), anyInt())).thenReturn(
+              Future.succeededFuture(page()));
+          return reconciler.sweep();
+        })
+        .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+          verify(localCat).getItem("shifted");
+          verify(centralCat, never()).deleteItem(anyString(), anyString());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testItemDeletedSinceTheListingIsNotCreatedOnCentral(Vertx vertx,
+                                                                  VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    JsonObject item = new JsonObject().put("id", "deleted").put("name", "x");
+    CatalogueReconciler reconciler = reconciler(vertx, localCat, centralCat, item);
+    when(centralCat.getItem("deleted")).thenReturn(notFound());
+    when(localCat.getItem("deleted")).thenReturn(notFound());
+
+    reconciler.sweep().onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+      verify(centralCat, never()).createItem(any(), anyString());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testItemWrittenRecentlyIsLeftToItsRequest(Vertx vertx,
+                                                        VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    JsonObject item = new JsonObject().put("id", "created").put("name", "x");
+    CatalogueReconciler reconciler = reconciler(vertx, localCat, centralCat, item);
+    when(centralCat.getItem("created")).thenReturn(notFound());
+    when(localCat.getItem("created")).thenReturn(results(item));
+
+    // the local create of a request that has not reached the central catalogue yet
+    CatalogueCache.invalidate(vertx, CatalogueCache.ITEM, "created");
+    vertx.timer(100)
+        .compose(v -> reconciler.sweep())
+        .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+          verify(centralCat, never()).getItem("created");
+          verify(centralCat, never()).createItem(any(), anyString());
+          testContext.completeNow();
+        })));
+  }
+}
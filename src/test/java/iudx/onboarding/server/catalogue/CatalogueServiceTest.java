@@ -1,9 +1,5 @@
 package iudx.onboarding.server.catalogue;
 
-import dev.failsafe.AsyncExecution;
-import dev.failsafe.FailsafeExecutor;
-import dev.failsafe.RetryPolicy;
-import dev.failsafe.RetryPolicyBuilder;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -14,22 +10,26 @@ import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
-import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
 import iudx.onboarding.server.catalogue.service.LocalCatImpl;
 import iudx.onboarding.server.common.CatalogueType;
+import iudx.onboarding.server.common.RetryEngine;
 import iudx.onboarding.server.ingestion.IngestionService;
 import iudx.onboarding.server.minio.MinioService;
+import iudx.onboarding.server.resourceserver.ResourceServerService;
 import iudx.onboarding.server.token.TokenService;
+import java.nio.file.Path;
 import java.util.List;
 import jdk.jfr.Description;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
 
-import java.net.UnknownHostException;
 import java.time.Duration;
 
 import static org.mockito.ArgumentMatchers.*;
@@ -50,13 +50,12 @@ public class CatalogueServiceTest {
   Buffer buffer;
   @Mock
   Throwable throwable;
-  RetryPolicyBuilder<Object> retryPolicyBuilder;
+  RetryEngine retryEngine;
   @Mock
   private WebClient catWebClient;
-
-  private FailsafeExecutor<Object> failsafeExecutor;
-
-  private AsyncExecution<Object> asyncExecution;
+  @TempDir
+  Path journalDirectory;
+  Vertx vertx;
 
   @BeforeEach
   void setUp() {
@@ -69,27 +68,31 @@ public class CatalogueServiceTest {
             .put("centralCatServerPort", 8080)
             .put("dxCatalogueBasePath", "/api")
             .put("localCatServerHost", "localhost")
-            .put("localCatServerPort", 8080);
-    LocalCatImpl.catWebClient = mock(WebClient.class);
+            .put("localCatServerPort", 8080)
+            .put("compensationJournalPath", journalDirectory.toString());
 
-    retryPolicyBuilder = RetryPolicy.builder()
-        .handle(DxRuntimeException.class)
-        .handle(UnknownHostException.class)
-        .abortOn(e -> e instanceof UnknownHostException)
+    vertx = Vertx.vertx();
+    retryEngine = RetryEngine.builder(vertx)
         .withBackoff(Duration.ofSeconds(5), Duration.ofSeconds(7), 1.1)
         .withMaxAttempts(3)
-        .onRetry(retryListener -> {
-        });
+        .build();
 
-    lenient().when(LocalCatImpl.catWebClient.post(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
-    lenient().when(LocalCatImpl.catWebClient.put(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
-    lenient().when(LocalCatImpl.catWebClient.delete(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
-    lenient().when(LocalCatImpl.catWebClient.get(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.post(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.put(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.delete(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.get(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
 
     catalogueService =
-        new CatalogueServiceImpl(Vertx.vertx(), mock(TokenService.class),
-            mock(MinioService.class), retryPolicyBuilder,
-            config);
+        new CatalogueServiceImpl(vertx, mock(TokenService.class),
+            mock(MinioService.class), mock(ResourceServerService.class), retryEngine,
+            config, new LocalCatImpl(vertx, config, catWebClient),
+            new CentralCatImpl(vertx, config));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    // lets the compensation journal finish writing before its directory is removed
+    vertx.close().toCompletionStage().toCompletableFuture().get();
   }
 
   @Test
@@ -520,7 +523,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -554,7 +557,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
 
               } else {
@@ -589,7 +592,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
 
               } else {
@@ -626,7 +629,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -659,7 +662,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -692,7 +695,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -729,7 +732,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -764,7 +767,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -799,7 +802,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -833,7 +836,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).get(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).get(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -864,7 +867,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).get(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).get(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -896,7 +899,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).get(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).get(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -931,7 +934,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -963,7 +966,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
 
               } else {
@@ -996,7 +999,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
 
               } else {
@@ -1033,7 +1036,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -1066,7 +1069,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -1099,7 +1102,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(LocalCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -1135,7 +1138,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -1169,7 +1172,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -1203,7 +1206,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -1236,7 +1239,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).get(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).get(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow(ar.cause());
@@ -1267,7 +1270,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).get(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).get(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
@@ -1298,7 +1301,7 @@ public class CatalogueServiceTest {
             ar -> {
               if (ar.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(LocalCatImpl.catWebClient, times(1)).get(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).get(anyInt(), anyString(), anyString());
                 testContext.failNow(ar.cause());
               } else {
                 testContext.completeNow();
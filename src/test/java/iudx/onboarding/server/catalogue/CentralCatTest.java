@@ -1,6 +1,5 @@
 package iudx.onboarding.server.catalogue;
 
-import dev.failsafe.RetryPolicyBuilder;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
@@ -47,12 +46,11 @@ public class CentralCatTest {
             .put("centralCatServerHost", "localhost")
             .put("centralCatServerPort", 8080)
             .put("dxCatalogueBasePath", "/api");
-    centralCat = new CentralCatImpl(vertx, config);
-    CentralCatImpl.catWebClient = mock(WebClient.class);
-    lenient().when(CentralCatImpl.catWebClient.post(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
-    lenient().when(CentralCatImpl.catWebClient.put(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
-    lenient().when(CentralCatImpl.catWebClient.delete(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
-    lenient().when(CentralCatImpl.catWebClient.get(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    centralCat = new CentralCatImpl(vertx, config, catWebClient);
+    lenient().when(catWebClient.post(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.put(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.delete(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    lenient().when(catWebClient.get(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
 
   }
 
@@ -80,7 +78,7 @@ public class CentralCatTest {
                 handler -> {
                     if (handler.succeeded()) {
                         verify(httpRequest, times(1)).sendJsonObject(any(JsonObject.class), any());
-                        verify(CentralCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                        verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                         testContext.completeNow();
                     } else {
                         testContext.failNow(handler.cause());
@@ -115,7 +113,7 @@ public class CentralCatTest {
             handler -> {
               if (handler.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(CentralCatImpl.catWebClient, times(1)).post(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).post(anyInt(), anyString(), anyString());
                 testContext.failNow("fail");
               } else {
                 testContext.completeNow();
@@ -151,7 +149,7 @@ public class CentralCatTest {
             handler -> {
               if (handler.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(CentralCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.completeNow();
               } else {
                 testContext.failNow("fail");
@@ -187,7 +185,7 @@ public class CentralCatTest {
             handler -> {
               if (handler.succeeded()) {
                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                verify(CentralCatImpl.catWebClient, times(1)).put(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).put(anyInt(), anyString(), anyString());
                 testContext.failNow("fail");
 
               } else {
@@ -225,7 +223,7 @@ public class CentralCatTest {
             handler -> {
               if (handler.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(CentralCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 testContext.completeNow();
 
               } else {
@@ -261,7 +259,7 @@ public class CentralCatTest {
         .onComplete(
             handler -> {
               if (handler.succeeded()) {
-                verify(CentralCatImpl.catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
+                verify(catWebClient, times(1)).delete(anyInt(), anyString(), anyString());
                 verify(httpRequest, times(1)).send(any());
                 testContext.failNow("fail");
 
@@ -300,7 +298,7 @@ public class CentralCatTest {
             handler -> {
               if (handler.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(CentralCatImpl.catWebClient, times(1)).get(anyInt(),anyString(),anyString());
+                verify(catWebClient, times(1)).get(anyInt(),anyString(),anyString());
                 testContext.completeNow();
 
               } else {
@@ -336,7 +334,7 @@ public class CentralCatTest {
             handler -> {
               if (handler.succeeded()) {
                 verify(httpRequest, times(1)).send(any());
-                verify(CentralCatImpl.catWebClient, times(1)).get(anyInt(),anyString(),anyString());
+                verify(catWebClient, times(1)).get(anyInt(),anyString(),anyString());
                 testContext.failNow("fail");
 
               } else {
@@ -371,7 +369,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(JsonObject.class), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).post(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).post(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
                             } else {
                                 testContext.failNow(handler.cause());
@@ -406,7 +404,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).post(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).post(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
                             } else {
                                 testContext.completeNow();
@@ -443,7 +441,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).put(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).put(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
                             } else {
                                 testContext.failNow("fail");
@@ -480,7 +478,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).put(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).put(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
 
                             } else {
@@ -518,7 +516,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
 
                             } else {
@@ -555,7 +553,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
                             } else {
                                 testContext.completeNow();
@@ -591,7 +589,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).get(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).get(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
 
                             } else {
@@ -627,7 +625,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).get(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).get(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
 
                             } else {
@@ -661,7 +659,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(JsonObject.class), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).post(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).post(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
                             } else {
                                 testContext.failNow(handler.cause());
@@ -696,7 +694,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).post(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).post(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
                             } else {
                                 testContext.completeNow();
@@ -733,7 +731,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).put(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).put(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
                             } else {
                                 testContext.failNow("fail");
@@ -770,7 +768,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).sendJsonObject(any(), any());
-                                verify(CentralCatImpl.catWebClient, times(1)).put(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).put(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
 
                             } else {
@@ -808,7 +806,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
 
                             } else {
@@ -845,7 +843,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).delete(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
                             } else {
                                 testContext.completeNow();
@@ -881,7 +879,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).get(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).get(anyInt(),anyString(),anyString());
                                 testContext.completeNow();
 
                             } else {
@@ -917,7 +915,7 @@ public class CentralCatTest {
                         handler -> {
                             if (handler.succeeded()) {
                                 verify(httpRequest, times(1)).send(any());
-                                verify(CentralCatImpl.catWebClient, times(1)).get(anyInt(),anyString(),anyString());
+                                verify(catWebClient, times(1)).get(anyInt(),anyString(),anyString());
                                 testContext.failNow("fail");
 
                             } else {
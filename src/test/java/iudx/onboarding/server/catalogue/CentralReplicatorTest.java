@@ -0,0 +1,192 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.token.TokenService;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(VertxExtension.class)
+public class CentralReplicatorTest {
+
+  @TempDir
+  Path dir;
+  private JsonObject config;
+  private TokenService tokenService;
+  private CentralCatImpl centralCat;
+
+  @BeforeEach
+  void setUp() {
+    config = new JsonObject()
+        .put("replicationOutboxPath", dir.resolve("replication.log").toString());
+    tokenService = mock(TokenService.class);
+    when(tokenService.createToken())
+        .thenReturn(Future.succeededFuture(new JsonObject().put("token", "admin")));
+    centralCat = mock(CentralCatImpl.class);
+  }
+
+  private static <T> T await(Future<T> future) throws Exception {
+    return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+  }
+
+  private static JsonObject item(String id, String name) {
+    return new JsonObject().put("id", id).put("name", name);
+  }
+
+  private static JsonObject awaitStatus(CentralReplicator replicator, String id, String status)
+      throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    JsonObject current = replicator.status(id);
+    while ((current == null || !status.equals(current.getString("status")))
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      current = replicator.status(id);
+    }
+    assertEquals(status, current == null ? null : current.getString("status"));
+    return current;
+  }
+
+  @Test
+  public void testWritesOfAnIdAreReplicatedInOrder(Vertx vertx) throws Exception {
+    Promise<JsonObject> created = Promise.promise();
+    when(centralCat.createItem(any(), eq("admin"))).thenAnswer(invocation ->
+        "a".equals(invocation.<JsonObject>getArgument(0).getString("id"))
+            ? created.future()
+            : Future.succeededFuture(new JsonObject()));
+    when(centralCat.updateItem(any(), eq("admin")))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    CentralReplicator replicator =
+        CentralReplicator.shared(vertx, config, tokenService, centralCat);
+
+    await(replicator.enqueue(CentralReplicator.CREATE_ITEM, "a", "", item("a", "first")));
+    await(replicator.enqueue(CentralReplicator.UPDATE_ITEM, "a", "", item("a", "second")));
+    await(replicator.enqueue(CentralReplicator.CREATE_ITEM, "b", "", item("b", "first")));
+
+    // the create of b is not held back by a, the update of a is
+    awaitStatus(replicator, "b", CentralReplicator.REPLICATED);
+    verify(centralCat, never()).updateItem(any(), any());
+    assertTrue(replicator.hasPending("a"));
+
+    created.complete(new JsonObject());
+    verify(centralCat, timeout(2000))
+        .updateItem(argThat(item -> "second".equals(item.getString("name"))), eq("admin"));
+    long deadline = System.currentTimeMillis() + 2000;
+    while (replicator.hasPending("a") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    JsonObject status = replicator.status("a");
+    assertEquals(CentralReplicator.UPDATE_ITEM, status.getString("operation"));
+    assertEquals(CentralReplicator.REPLICATED, status.getString("status"));
+  }
+
+  @Test
+  public void testInstanceDeleteWaitsForItsCreate(Vertx vertx) throws Exception {
+    Promise<JsonObject> created = Promise.promise();
+    when(centralCat.createInstance(any(), eq("/internal/ui"), eq("admin")))
+        .thenReturn(created.future());
+    when(centralCat.deleteInstance(eq("a"), eq("/internal/ui"), eq("admin")))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    CentralReplicator replicator =
+        CentralReplicator.shared(vertx, config, tokenService, centralCat);
+
+    await(replicator.enqueue(CentralReplicator.CREATE_INSTANCE, "a", "/internal/ui",
+        new JsonObject().put("instanceId", "a")));
+    await(replicator.enqueue(CentralReplicator.DELETE_INSTANCE, "a", "/internal/ui",
+        new JsonObject().put("id", "a")));
+
+    verify(centralCat, timeout(2000)).createInstance(any(), eq("/internal/ui"), eq("admin"));
+    Thread.sleep(200);
+    verify(centralCat, never()).deleteInstance(any(), any(), any());
+
+    created.complete(new JsonObject());
+    verify(centralCat, timeout(2000)).deleteInstance(eq("a"), eq("/internal/ui"), eq("admin"));
+    long deadline = System.currentTimeMillis() + 2000;
+    while (replicator.hasPending("a") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    JsonObject status = replicator.status("a");
+    assertEquals(CentralReplicator.DELETE_INSTANCE, status.getString("operation"));
+    assertEquals(CentralReplicator.REPLICATED, status.getString("status"));
+  }
+
+  @Test
+  public void testRetryableFailureIsRetriedAfterABackoff(Vertx vertx) throws Exception {
+    List<Long> attempts = new CopyOnWriteArrayList<>();
+    when(centralCat.createItem(any(), eq("admin"))).thenAnswer(invocation -> {
+      attempts.add(System.currentTimeMillis());
+      return attempts.size() == 1
+          ? Future.failedFuture(new UpstreamException(503, "", 0))
+          : Future.succeededFuture(new JsonObject());
+    });
+    CentralReplicator replicator =
+        CentralReplicator.shared(vertx, config, tokenService, centralCat);
+
+    await(replicator.enqueue(CentralReplicator.CREATE_ITEM, "a", "", item("a", "first")));
+
+    JsonObject status = awaitStatus(replicator, "a", CentralReplicator.REPLICATED);
+    assertEquals(1, status.getInteger("attempts"));
+    assertEquals(2, attempts.size());
+    assertTrue(attempts.get(1) - attempts.get(0) >= 900,
+        "retried after " + (attempts.get(1) - attempts.get(0)) + " ms");
+  }
+
+  @Test
+  public void testRejectedWriteIsFailedWithoutRetrying(Vertx vertx) throws Exception {
+    when(centralCat.createItem(any(), eq("admin"))).thenReturn(Future.failedFuture(
+        new UpstreamException(400, "{\"type\":\"urn:dx:cat:InvalidSchema\"}", 0)));
+    CentralReplicator replicator =
+        CentralReplicator.shared(vertx, config, tokenService, centralCat);
+
+    await(replicator.enqueue(CentralReplicator.CREATE_ITEM, "a", "", item("a", "first")));
+
+    awaitStatus(replicator, "a", CentralReplicator.FAILED);
+    assertFalse(replicator.hasPending("a"));
+    Thread.sleep(1200);
+    verify(centralCat, times(1)).createItem(any(), any());
+  }
+
+  @Test
+  public void testPendingWritesAreReplayedAfterARestart(Vertx vertx) throws Exception {
+    Vertx crashed = Vertx.vertx();
+    CentralCatImpl unreachable = mock(CentralCatImpl.class);
+    when(unreachable.createItem(any(), eq("admin"))).thenReturn(Promise.<JsonObject>promise()
+        .future());
+    CentralReplicator before =
+        CentralReplicator.shared(crashed, config, tokenService, unreachable);
+    await(before.enqueue(CentralReplicator.CREATE_ITEM, "a", "", item("a", "first")));
+    verify(unreachable, timeout(2000)).createItem(any(), eq("admin"));
+    await(crashed.close());
+
+    when(centralCat.createItem(any(), eq("admin")))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    CentralReplicator after = CentralReplicator.shared(vertx, config, tokenService, centralCat);
+
+    verify(centralCat, timeout(2000))
+        .createItem(argThat(item -> "first".equals(item.getString("name"))), eq("admin"));
+    awaitStatus(after, "a", CentralReplicator.REPLICATED);
+  }
+}
@@ -0,0 +1,42 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import org.junit.jupiter.api.Test;
+
+public class ItemBodyTest {
+
+  @Test
+  public void testTopLevelFieldsAreReadAndBytesForwarded() {
+    String body = "{\"name\":\"x\",\"location\":{\"id\":\"nested\",\"type\":\"Point\"},"
+        + "\"type\":[\"iudx:Resource\",\"iudx:Weather\"],\"id\":\"item\"}";
+    ItemBody item = ItemBody.parse(body).result();
+    assertEquals("item", item.id());
+    assertEquals(new JsonArray().add("iudx:Resource").add("iudx:Weather"), item.type());
+    assertSame(item.forwarded(), item.forwarded());
+    assertEquals(body, item.forwarded().toString());
+  }
+
+  @Test
+  public void testTokenIsRemovedBeforeForwarding() {
+    ItemBody item = ItemBody.parse("{\"token\":\"secret\",\"name\":\"x\"}").result();
+    assertNull(item.id());
+    assertFalse(item.forwarded().toJsonObject().containsKey("token"));
+    assertEquals("x", item.forwarded().toJsonObject().getString("name"));
+  }
+
+  @Test
+  public void testMalformedBodiesFail() {
+    for (String body : new String[] {null, "[]", "{\"name\":", "{} {}"}) {
+      Future<ItemBody> parsed = ItemBody.parse(body);
+      assertTrue(parsed.failed(), body);
+      assertTrue(parsed.cause().getMessage().contains(":InvalidSchema"), body);
+    }
+  }
+}
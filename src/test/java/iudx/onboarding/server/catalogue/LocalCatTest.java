@@ -0,0 +1,92 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LocalCatTest {
+
+  private HttpRequest<Buffer> httpRequest;
+  private List<Handler<AsyncResult<HttpResponse<Buffer>>>> sent;
+  private LocalCatImpl localCat;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    WebClient catWebClient = mock(WebClient.class);
+    httpRequest = mock(HttpRequest.class);
+    sent = new CopyOnWriteArrayList<>();
+    when(catWebClient.get(anyInt(), anyString(), anyString())).thenReturn(httpRequest);
+    when(httpRequest.addQueryParam(anyString(), anyString())).thenReturn(httpRequest);
+    doAnswer(invocation -> {
+      sent.add(invocation.getArgument(0));
+      return null;
+    }).when(httpRequest).send(any());
+    JsonObject config = new JsonObject()
+        .put("localCatServerHost", "localhost")
+        .put("localCatServerPort", 8080)
+        .put("dxCatalogueBasePath", "/api");
+    localCat = new LocalCatImpl(mock(Vertx.class), config, catWebClient);
+  }
+
+  @Test
+  public void testFailedRelationshipReadFailsEveryCoalescedCaller() {
+    ConnectException refused = new ConnectException("Connection refused");
+    JsonArray filter = new JsonArray().add("id");
+
+    Future<JsonObject> first = localCat.getRelatedEntity("item-1", "resourceServer", filter);
+    Future<JsonObject> second = localCat.getRelatedEntity("item-1", "resourceServer", filter);
+    assertEquals(1, sent.size());
+    sent.get(0).handle(Future.failedFuture(refused));
+
+    assertTrue(first.failed());
+    assertTrue(second.failed());
+    assertSame(refused, second.cause());
+    // the failed read is not kept for later callers
+    assertFalse(localCat.getRelatedEntity("item-1", "resourceServer", filter).isComplete());
+    verify(httpRequest, times(2)).send(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRelationshipReadIsSharedByConcurrentCallers() {
+    HttpResponse<Buffer> response = mock(HttpResponse.class);
+    when(response.statusCode()).thenReturn(200);
+    when(response.body()).thenReturn(new JsonObject().put("totalHits", 1).toBuffer());
+    JsonArray filter = new JsonArray().add("id");
+
+    Future<JsonObject> first = localCat.getRelatedEntity("item-1", "resourceServer", filter);
+    Future<JsonObject> second = localCat.getRelatedEntity("item-1", "resourceServer", filter);
+    sent.get(0).handle(Future.succeededFuture(response));
+
+    assertEquals(1, first.result().getInteger("totalHits"));
+    assertEquals(1, second.result().getInteger("totalHits"));
+    verify(httpRequest, times(1)).send(any());
+  }
+}
@@ -0,0 +1,89 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class LocalCatalogueReaderTest {
+
+  private static final JsonObject CENTRAL_ITEM = new JsonObject().put("id", "a");
+
+  @Test
+  public void testFailedLocalReadIsServedByCentral(Vertx vertx, VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    when(localCat.getItemBody("a")).thenReturn(Future.failedFuture(
+        new UpstreamException(502, "{\"type\":\"urn:dx:cat:BadGateway\"}", 0)));
+    when(centralCat.getItem("a")).thenReturn(Future.succeededFuture(CENTRAL_ITEM));
+    LocalCatalogueReader reader = new LocalCatalogueReader(localCat, centralCat,
+        LocalCatalogueReader.Fallback.FAILOVER, new CatalogueCache(vertx, 100, 60000));
+
+    reader.getItem("a").onComplete(testContext.succeeding(read -> testContext.verify(() -> {
+      assertTrue(read.fromCentral());
+      assertEquals(CENTRAL_ITEM, read.body().toJsonObject());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testMissingItemDoesNotFallBack(Vertx vertx, VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    when(localCat.getItemBody("a")).thenReturn(Future.failedFuture(
+        new UpstreamException(404, "{\"type\":\"urn:dx:cat:ItemNotFound\"}", 0)));
+    LocalCatalogueReader reader = new LocalCatalogueReader(localCat, centralCat,
+        LocalCatalogueReader.Fallback.FAILOVER, new CatalogueCache(vertx, 100, 60000));
+
+    reader.getItem("a").onComplete(testContext.failing(notFound -> testContext.verify(() -> {
+      assertEquals(404, ((UpstreamException) notFound).getStatusCode());
+      verify(centralCat, never()).getItem(any());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testRaceUsesTheFirstCatalogueToAnswer(Vertx vertx, VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    CentralCatImpl centralCat = mock(CentralCatImpl.class);
+    Promise<Buffer> slowLocal = Promise.promise();
+    when(localCat.getDomainBody("a")).thenReturn(slowLocal.future());
+    when(centralCat.getDomain("a")).thenReturn(Future.succeededFuture(CENTRAL_ITEM));
+    LocalCatalogueReader reader = new LocalCatalogueReader(localCat, centralCat,
+        LocalCatalogueReader.Fallback.RACE, new CatalogueCache(vertx, 100, 60000));
+
+    reader.getDomain("a").onComplete(testContext.succeeding(read -> testContext.verify(() -> {
+      assertTrue(read.fromCentral());
+      slowLocal.complete(new JsonObject().put("id", "a").toBuffer());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testFallbackNeedsTheCentralReplica() {
+    JsonObject config = new JsonObject()
+        .put(LocalCatalogueReader.FALLBACK_CONFIG_KEY, "failover");
+    assertEquals(LocalCatalogueReader.Fallback.NONE, LocalCatalogueReader.fallback(config));
+    assertEquals(LocalCatalogueReader.Fallback.FAILOVER,
+        LocalCatalogueReader.fallback(config.put("isUacAvailable", true)));
+    assertEquals(LocalCatalogueReader.Fallback.NONE, LocalCatalogueReader.fallback(
+        config.put(LocalCatalogueReader.FALLBACK_CONFIG_KEY, "none")));
+  }
+}
@@ -0,0 +1,419 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.service.CentralCatImpl;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import iudx.onboarding.server.common.RetryEngine;
+import iudx.onboarding.server.minio.MinioService;
+import iudx.onboarding.server.resourceserver.ResourceServerService;
+import iudx.onboarding.server.token.TokenService;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+public class ParallelWritesTest {
+
+  private static final String TOKEN = "user-token";
+  private static final String BUCKET_URL = "http://minio/browser/admin-sub-bucket";
+
+  @TempDir
+  Path journalDirectory;
+  private Vertx vertx;
+  private LocalCatImpl localCat;
+  private CentralCatImpl centralCat;
+  private MinioService minioService;
+  private ResourceServerService resourceServerService;
+  private TokenService tokenService;
+  private CatalogueServiceImpl catalogueService;
+
+  @BeforeEach
+  void setUp() {
+    vertx = Vertx.vertx();
+    localCat = mock(LocalCatImpl.class);
+    centralCat = mock(CentralCatImpl.class);
+    minioService = mock(MinioService.class);
+    resourceServerService = mock(ResourceServerService.class);
+    tokenService = mock(TokenService.class);
+    when(tokenService.createToken())
+        .thenReturn(Future.succeededFuture(new JsonObject().put("token", "admin-token")));
+    when(tokenService.decodeToken(TOKEN)).thenReturn(Future.succeededFuture(new JsonObject()
+        .put("realm_access", new JsonObject().put("roles", new JsonArray().add("provider")))));
+    when(tokenService.decodeToken("admin-token"))
+        .thenReturn(Future.succeededFuture(new JsonObject().put("sub", "admin-sub")));
+    when(minioService.getBucketUrl("admin-sub")).thenReturn(Future.succeededFuture(BUCKET_URL));
+    when(minioService.createBucket("admin-sub")).thenReturn(Future.succeededFuture(BUCKET_URL));
+    when(minioService.attachBucketToNamePolicy(any())).thenReturn(Future.succeededFuture());
+    RetryEngine retryEngine = RetryEngine.builder(vertx)
+        .withBackoff(Duration.ofMillis(10), Duration.ofMillis(10), 1)
+        .withMaxAttempts(1)
+        .build();
+    JsonObject config = new JsonObject()
+        .put("isMinIO", true)
+        .put("compensationJournalPath", journalDirectory.toString());
+    catalogueService = new CatalogueServiceImpl(vertx, tokenService, minioService,
+        resourceServerService, retryEngine, config, localCat, centralCat);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    // lets the compensation journal finish writing before its directory is removed
+    vertx.close().toCompletionStage().toCompletableFuture().get();
+  }
+
+  private static <T> Future<T> await(Future<T> future) throws Exception {
+    future.toCompletionStage().toCompletableFuture()
+        .handle((result, failure) -> null)
+        .get(5, TimeUnit.SECONDS);
+    return future;
+  }
+
+  private static <T> Future<T> rejected(int statusCode) {
+    String type = statusCode == 401 ? "InvalidAuthorizationToken" : "InvalidSchema";
+    return Future.failedFuture(
+        new UpstreamException(statusCode, "{\"type\":\"urn:dx:cat:" + type + "\"}", 0));
+  }
+
+  private static Future<JsonObject> created(String id) {
+    return Future.succeededFuture(
+        new JsonObject().put("results", new JsonObject().put("id", id)));
+  }
+
+  private static Future<JsonObject> stored(String id, String type) {
+    JsonObject item = new JsonObject().put("id", id).put("type", new JsonArray().add(type));
+    return Future.succeededFuture(new JsonObject().put("results", new JsonArray().add(item)));
+  }
+
+  private static Future<Buffer> storedBody(String id, String type) {
+    return stored(id, type).map(JsonObject::toBuffer);
+  }
+
+  @Test
+  public void testItemRejectedByLocalIsDeletedFromCentral() throws Exception {
+    when(localCat.createItemFromBody(any(), eq(TOKEN))).thenReturn(rejected(401));
+    when(centralCat.createItemFromBody(any(), eq("admin-token"))).thenReturn(created("item-1"));
+    when(centralCat.deleteItem("item-1", "admin-token"))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+
+    Future<JsonObject> result = await(catalogueService.createItemOnBoth(
+        "{\"id\":\"item-1\",\"type\":[\"iudx:Resource\"]}", TOKEN));
+
+    assertTrue(result.failed());
+    verify(centralCat, timeout(2000)).deleteItem("item-1", "admin-token");
+    verify(localCat, never()).deleteItem(anyString(), anyString());
+  }
+
+  @Test
+  public void testItemRejectedByCentralIsDeletedFromLocal() throws Exception {
+    when(localCat.createItemFromBody(any(), eq(TOKEN))).thenReturn(created("item-1"));
+    when(centralCat.createItemFromBody(any(), eq("admin-token"))).thenReturn(rejected(400));
+    when(localCat.deleteItem("item-1", TOKEN)).thenReturn(Future.succeededFuture());
+
+    Future<JsonObject> result = await(catalogueService.createItemOnBoth(
+        "{\"id\":\"item-1\",\"type\":[\"iudx:Resource\"]}", TOKEN));
+
+    assertTrue(result.failed());
+    verify(localCat, timeout(2000)).deleteItem("item-1", TOKEN);
+    verify(centralCat, never()).deleteItem(anyString(), anyString());
+  }
+
+  @Test
+  public void testCreateWritesBothCataloguesAtOnce() throws Exception {
+    Promise<JsonObject> localCreated = Promise.promise();
+    when(localCat.createItemFromBody(any(), eq(TOKEN))).thenReturn(localCreated.future());
+    when(centralCat.createItemFromBody(any(), eq("admin-token"))).thenReturn(created("item-1"));
+
+    Future<JsonObject> result = catalogueService.createItemOnBoth(
+        "{\"id\":\"item-1\",\"type\":[\"iudx:Resource\"]}", TOKEN);
+
+    // the central create does not wait for the local one
+    verify(centralCat, timeout(2000)).createItemFromBody(any(), eq("admin-token"));
+    assertFalse(result.isComplete());
+    localCreated.complete(created("item-1").result());
+    assertEquals("item-1", await(result).result().getString("id"));
+  }
+
+  @Test
+  public void testBucketIsNotMadeForAnItemRejectedByLocal() throws Exception {
+    when(localCat.createItemFromBody(any(), eq(TOKEN))).thenReturn(rejected(401));
+    when(centralCat.createItemFromBody(any(), eq("admin-token"))).thenReturn(created("group-1"));
+    when(centralCat.deleteItem("group-1", "admin-token"))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+
+    Future<JsonObject> result = await(catalogueService.createItemOnBoth(
+        "{\"id\":\"group-1\",\"type\":[\"iudx:ResourceGroup\"]}", TOKEN));
+
+    assertTrue(result.failed());
+    verify(minioService, never()).createBucket(anyString());
+    verify(minioService, never()).attachBucketToNamePolicy(any());
+    verify(centralCat, timeout(2000)).deleteItem("group-1", "admin-token");
+  }
+
+  @Test
+  public void testBucketIsMadeAfterTheLocalCreate() throws Exception {
+    when(localCat.createItemFromBody(any(), eq(TOKEN))).thenReturn(created("group-1"));
+    when(centralCat.createItemFromBody(any(), eq("admin-token"))).thenReturn(created("group-1"));
+
+    Future<JsonObject> result = await(catalogueService.createItemOnBoth(
+        "{\"id\":\"group-1\",\"type\":[\"iudx:ResourceGroup\"]}", TOKEN));
+
+    assertTrue(result.succeeded());
+    ArgumentCaptor<Buffer> localItem = ArgumentCaptor.forClass(Buffer.class);
+    ArgumentCaptor<Buffer> centralItem = ArgumentCaptor.forClass(Buffer.class);
+    InOrder order = inOrder(localCat, minioService);
+    order.verify(localCat).createItemFromBody(localItem.capture(), eq(TOKEN));
+    order.verify(minioService).createBucket("admin-sub");
+    verify(centralCat).createItemFromBody(centralItem.capture(), eq("admin-token"));
+    assertEquals(BUCKET_URL, localItem.getValue().toJsonObject().getString("bucketUrl"));
+    assertEquals(BUCKET_URL, centralItem.getValue().toJsonObject().getString("bucketUrl"));
+  }
+
+  @Test
+  public void testInstanceWithoutNameIsRejected() throws Exception {
+    Future<JsonObject> result =
+        await(catalogueService.createInstanceOnBoth("", new JsonObject(), TOKEN));
+
+    assertTrue(result.cause().getMessage().contains(":InvalidSchema"));
+    verify(localCat, never()).createInstance(any(), anyString(), anyString());
+    verify(centralCat, never()).createInstance(any(), anyString(), anyString());
+  }
+
+  @Test
+  public void testUiInstanceRejectedByCentralIsDeletedFromLocal() throws Exception {
+    when(localCat.createInstance(any(), eq("/internal/ui"), eq(TOKEN)))
+        .thenReturn(created("instance-1"));
+    when(centralCat.createInstance(any(), eq("/internal/ui"), eq("admin-token")))
+        .thenReturn(rejected(400));
+    when(localCat.deleteInstance(anyString(), eq("/internal/ui"), eq(TOKEN)))
+        .thenReturn(Future.succeededFuture());
+
+    Future<JsonObject> result = await(catalogueService.createInstanceOnBoth("/internal/ui",
+        new JsonObject().put("name", "instance"), TOKEN));
+
+    assertTrue(result.failed());
+    ArgumentCaptor<JsonObject> instance = ArgumentCaptor.forClass(JsonObject.class);
+    verify(localCat).createInstance(instance.capture(), eq("/internal/ui"), eq(TOKEN));
+    String instanceId = instance.getValue().getString("instanceId");
+    assertNotNull(instanceId);
+    verify(localCat, timeout(2000)).deleteInstance(instanceId, "/internal/ui", TOKEN);
+  }
+
+  @Test
+  public void testDomainRejectedByLocalIsDeletedFromCentral() throws Exception {
+    when(localCat.createDomain(any(), eq(TOKEN))).thenReturn(rejected(401));
+    when(centralCat.createDomain(any(), eq("admin-token")))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(centralCat.deleteDomain(anyString(), eq("admin-token")))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+
+    Future<JsonObject> result = await(catalogueService.createDomainOnBoth(
+        new JsonObject().put("name", "domain"), TOKEN));
+
+    assertTrue(result.failed());
+    ArgumentCaptor<JsonObject> domain = ArgumentCaptor.forClass(JsonObject.class);
+    verify(centralCat).createDomain(domain.capture(), eq("admin-token"));
+    verify(centralCat, timeout(2000))
+        .deleteDomain(domain.getValue().getString("domainId"), "admin-token");
+    verify(localCat, never()).deleteDomain(anyString(), anyString());
+  }
+
+  @Test
+  public void testUpdateRejectedByLocalIsRevertedOnCentral() throws Exception {
+    when(localCat.updateItemFromBody(any(), eq("item-1"), eq(TOKEN))).thenReturn(rejected(401));
+    when(centralCat.updateItemFromBody(any(), eq("admin-token"))).thenReturn(created("item-1"));
+    when(localCat.getItem("item-1")).thenReturn(stored("item-1", "iudx:Resource"));
+    when(centralCat.updateItem(any(), eq("admin-token"))).thenReturn(created("item-1"));
+
+    Future<JsonObject> result = await(catalogueService.updateItemOnBoth(
+        "{\"id\":\"item-1\",\"type\":[\"iudx:Resource\"]}", TOKEN));
+
+    assertTrue(result.failed());
+    verify(centralCat, timeout(2000)).updateItem(any(), eq("admin-token"));
+    verify(localCat, never()).updateItem(any(), anyString());
+  }
+
+  @Test
+  public void testCallerWithoutAWriteRoleWritesNeitherCatalogue() throws Exception {
+    when(tokenService.decodeToken("consumer-token")).thenReturn(Future.succeededFuture(
+        new JsonObject().put("realm_access", new JsonObject()
+            .put("roles", new JsonArray().add("consumer")))));
+    when(tokenService.decodeToken("expired-token"))
+        .thenReturn(Future.failedFuture("Token expired"));
+
+    Future<JsonObject> consumer = await(catalogueService.updateItemOnBoth(
+        "{\"id\":\"item-1\",\"type\":[\"iudx:Resource\"]}", "consumer-token"));
+    Future<JsonObject> expired =
+        await(catalogueService.deleteItemOnBoth("item-1", "expired-token"));
+
+    assertTrue(consumer.cause().getMessage().contains(":InvalidAuthorizationToken"));
+    assertTrue(expired.cause().getMessage().contains(":InvalidAuthorizationToken"));
+    verify(localCat, never()).updateItemFromBody(any(), anyString(), anyString());
+    verify(localCat, never()).deleteItem(anyString(), anyString());
+    verify(centralCat, never()).updateItemFromBody(any(), anyString());
+    verify(centralCat, never()).deleteItem(anyString(), anyString());
+  }
+
+  @Test
+  public void testUpdateRejectedByCentralIsRevertedOnLocal() throws Exception {
+    when(localCat.updateItemFromBody(any(), eq("item-1"), eq(TOKEN))).thenReturn(created("item-1"));
+    when(centralCat.updateItemFromBody(any(), eq("admin-token"))).thenReturn(rejected(400));
+    when(centralCat.getItem("item-1")).thenReturn(stored("item-1", "iudx:Resource"));
+    when(localCat.updateItem(any(), eq(TOKEN))).thenReturn(created("item-1"));
+
+    Future<JsonObject> result = await(catalogueService.updateItemOnBoth(
+        "{\"id\":\"item-1\",\"type\":[\"iudx:Resource\"]}", TOKEN));
+
+    assertTrue(result.failed());
+    verify(localCat, timeout(2000)).updateItem(any(), eq(TOKEN));
+  }
+
+  @Test
+  public void testDeleteRejectedByLocalIsRestoredOnCentral() throws Exception {
+    when(localCat.getItemBody("item-1")).thenReturn(storedBody("item-1", "iudx:Resource"));
+    when(localCat.deleteItem("item-1", TOKEN)).thenReturn(rejected(401));
+    when(centralCat.deleteItem("item-1", "admin-token"))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(localCat.getItem("item-1")).thenReturn(stored("item-1", "iudx:Resource"));
+    when(centralCat.createItem(any(), eq("admin-token"))).thenReturn(created("item-1"));
+
+    Future<JsonObject> result = await(catalogueService.deleteItemOnBoth("item-1", TOKEN));
+
+    assertTrue(result.failed());
+    ArgumentCaptor<JsonObject> restored = ArgumentCaptor.forClass(JsonObject.class);
+    verify(centralCat, timeout(2000)).createItem(restored.capture(), eq("admin-token"));
+    assertEquals("item-1", restored.getValue().getString("id"));
+    verify(resourceServerService, never()).deleteAdapter(anyString(), anyString());
+    verify(localCat, never()).createItem(any(), anyString());
+  }
+
+  @Test
+  public void testDeleteWritesBothCataloguesAtOnce() throws Exception {
+    Promise<JsonObject> localDeleted = Promise.promise();
+    when(localCat.getItemBody("item-1")).thenReturn(storedBody("item-1", "iudx:Resource"));
+    when(localCat.deleteItem("item-1", TOKEN)).thenReturn(localDeleted.future());
+    when(centralCat.deleteItem("item-1", "admin-token"))
+        .thenReturn(Future.succeededFuture(new JsonObject().put("detail", "central")));
+
+    Future<JsonObject> result = catalogueService.deleteItemOnBoth("item-1", TOKEN);
+
+    // the central delete does not wait for the local one
+    verify(centralCat, timeout(2000)).deleteItem("item-1", "admin-token");
+    assertFalse(result.isComplete());
+    localDeleted.complete(new JsonObject());
+    assertEquals("central", await(result).result().getString("detail"));
+  }
+
+  @Test
+  public void testDeleteRejectedByCentralIsRestoredOnLocal() throws Exception {
+    when(localCat.getItemBody("item-1")).thenReturn(storedBody("item-1", "iudx:Resource"));
+    when(localCat.deleteItem("item-1", TOKEN)).thenReturn(Future.succeededFuture());
+    when(centralCat.deleteItem("item-1", "admin-token")).thenReturn(rejected(400));
+    when(centralCat.getItem("item-1")).thenReturn(stored("item-1", "iudx:Resource"));
+    when(localCat.createItem(any(), eq(TOKEN))).thenReturn(created("item-1"));
+
+    Future<JsonObject> result = await(catalogueService.deleteItemOnBoth("item-1", TOKEN));
+
+    assertTrue(result.failed());
+    verify(localCat, timeout(2000)).createItem(any(), eq(TOKEN));
+    verify(resourceServerService, never()).createAdapter(anyString(), anyString());
+  }
+
+  @Test
+  public void testGroupDeleteRejectedByLocalRecreatesTheAdapter() throws Exception {
+    when(localCat.getItemBody("group-1")).thenReturn(storedBody("group-1", "iudx:ResourceGroup"));
+    when(resourceServerService.deleteAdapter("group-1", TOKEN))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(localCat.deleteItem("group-1", TOKEN)).thenReturn(rejected(401));
+    when(resourceServerService.createAdapter("group-1", TOKEN))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(centralCat.deleteItem("group-1", "admin-token"))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(localCat.getItem("group-1")).thenReturn(stored("group-1", "iudx:ResourceGroup"));
+    when(centralCat.createItem(any(), eq("admin-token"))).thenReturn(created("group-1"));
+
+    Future<JsonObject> result = await(catalogueService.deleteItemOnBoth("group-1", TOKEN));
+
+    assertTrue(result.failed());
+    verify(resourceServerService, timeout(2000)).createAdapter("group-1", TOKEN);
+    verify(centralCat, timeout(2000)).createItem(any(), eq("admin-token"));
+  }
+
+  @Test
+  public void testGroupDeleteRejectedByCentralRestoresTheItemThenTheAdapter() throws Exception {
+    when(localCat.getItemBody("group-1")).thenReturn(storedBody("group-1", "iudx:ResourceGroup"));
+    when(resourceServerService.deleteAdapter("group-1", TOKEN))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(localCat.deleteItem("group-1", TOKEN)).thenReturn(Future.succeededFuture());
+    when(centralCat.deleteItem("group-1", "admin-token")).thenReturn(rejected(400));
+    when(centralCat.getItem("group-1")).thenReturn(stored("group-1", "iudx:ResourceGroup"));
+    when(localCat.createItem(any(), eq(TOKEN))).thenReturn(created("group-1"));
+    when(resourceServerService.createAdapter("group-1", TOKEN))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+
+    Future<JsonObject> result = await(catalogueService.deleteItemOnBoth("group-1", TOKEN));
+
+    assertTrue(result.failed());
+    verify(resourceServerService, timeout(2000)).createAdapter("group-1", TOKEN);
+    InOrder order = inOrder(localCat, resourceServerService);
+    order.verify(localCat).createItem(any(), eq(TOKEN));
+    order.verify(resourceServerService).createAdapter("group-1", TOKEN);
+  }
+
+  @Test
+  public void testInstanceDeleteRejectedByCentralIsRestoredOnLocal() throws Exception {
+    when(localCat.deleteInstance("instance-1", "", TOKEN)).thenReturn(Future.succeededFuture());
+    when(centralCat.deleteInstance("instance-1", "", "admin-token")).thenReturn(rejected(400));
+    when(centralCat.getInstance("instance-1", "")).thenReturn(stored("instance-1", "instance"));
+    when(localCat.createInstance(any(), eq(""), eq(TOKEN))).thenReturn(created("instance-1"));
+
+    Future<JsonObject> result =
+        await(catalogueService.deleteInstanceOnBoth("", "instance-1", TOKEN));
+
+    assertTrue(result.failed());
+    ArgumentCaptor<JsonObject> instance = ArgumentCaptor.forClass(JsonObject.class);
+    verify(localCat, timeout(2000)).createInstance(instance.capture(), eq(""), eq(TOKEN));
+    assertEquals("instance-1", instance.getValue().getString("instanceId"));
+  }
+
+  @Test
+  public void testDomainUpdateRejectedByLocalIsRevertedOnCentral() throws Exception {
+    when(localCat.updateDomain(eq("domain-1"), any(), eq(TOKEN))).thenReturn(rejected(401));
+    when(centralCat.updateDomain(eq("domain-1"), any(), eq("admin-token")))
+        .thenReturn(Future.succeededFuture(new JsonObject()));
+    when(localCat.getDomain("domain-1")).thenReturn(stored("domain-1", "domain"));
+
+    Future<JsonObject> result = await(catalogueService.updateDomainOnBoth("domain-1",
+        new JsonObject().put("name", "domain"), TOKEN));
+
+    assertTrue(result.failed());
+    ArgumentCaptor<JsonObject> domain = ArgumentCaptor.forClass(JsonObject.class);
+    verify(centralCat, timeout(2000).times(2))
+        .updateDomain(eq("domain-1"), domain.capture(), eq("admin-token"));
+    assertEquals("domain-1", domain.getAllValues().get(1).getString("id"));
+  }
+}
@@ -0,0 +1,67 @@
+package iudx.onboarding.server.catalogue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(VertxExtension.class)
+public class ReplicationOutboxTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testRecordsSurviveReopen(Vertx vertx, VertxTestContext testContext) {
+    Path file = dir.resolve("outbox/replication.log");
+    ReplicationOutbox outbox = new ReplicationOutbox(vertx, file);
+    outbox.open()
+        .compose(replayed -> outbox.append(new JsonObject().put("seq", 1)))
+        .compose(v -> outbox.append(new JsonObject().put("seq", 2)))
+        .compose(v -> new ReplicationOutbox(vertx, file).open())
+        .onComplete(testContext.succeeding(replayed -> testContext.verify(() -> {
+          assertEquals(2, replayed.size());
+          assertEquals(2, replayed.get(1).getInteger("seq"));
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testTornLineIsSkipped(Vertx vertx, VertxTestContext testContext) throws Exception {
+    Path file = dir.resolve("replication.log");
+    Files.writeString(file, "{\"seq\":1}\n{\"seq\":", StandardCharsets.UTF_8);
+    new ReplicationOutbox(vertx, file).open()
+        .onComplete(testContext.succeeding(replayed -> testContext.verify(() -> {
+          assertEquals(1, replayed.size());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testCompactKeepsOnlyLiveRecords(Vertx vertx, VertxTestContext testContext) {
+    Path file = dir.resolve("replication.log");
+    ReplicationOutbox outbox = new ReplicationOutbox(vertx, file);
+    outbox.open()
+        .compose(replayed -> outbox.append(new JsonObject().put("seq", 1)))
+        .compose(v -> outbox.append(new JsonObject().put("seq", 2)))
+        .compose(v -> outbox.compact(List.of(new JsonObject().put("seq", 2))))
+        .compose(v -> outbox.append(new JsonObject().put("seq", 3)))
+        .compose(v -> new ReplicationOutbox(vertx, file).open())
+        .onComplete(testContext.succeeding(replayed -> testContext.verify(() -> {
+          assertEquals(2, replayed.size());
+          assertEquals(2, replayed.get(0).getInteger("seq"));
+          assertEquals(3, replayed.get(1).getInteger("seq"));
+          assertEquals(2, outbox.records());
+          testContext.completeNow();
+        })));
+  }
+}
@@ -0,0 +1,79 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void testOpensOnErrorRateAndFailsFast() {
+    CircuitBreaker breaker = new CircuitBreaker("test", "host", 60000);
+    for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.record(i % 2 == 0, 10);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertFalse(breaker.tryAcquire());
+
+    UpstreamException rejection = breaker.rejection();
+    assertEquals(503, rejection.getStatusCode());
+    assertTrue(rejection.getRetryAfterSeconds() > 0);
+    assertTrue(rejection.getMessage().contains(":serviceUnavailable"));
+  }
+
+  @Test
+  public void testOpensOnSlowCallRate() {
+    CircuitBreaker breaker = new CircuitBreaker("test", "host", 60000);
+    for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+      breaker.tryAcquire();
+      breaker.record(false, CircuitBreaker.SLOW_CALL_MS);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+  }
+
+  @Test
+  public void testStaysClosedBelowMinimumCalls() {
+    CircuitBreaker breaker = new CircuitBreaker("test", "host", 60000);
+    for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS - 1; i++) {
+      breaker.tryAcquire();
+      breaker.record(true, 10);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  public void testHalfOpenLimitsProbesAndCloses() {
+    CircuitBreaker breaker = openBreaker();
+    for (int i = 0; i < CircuitBreaker.PROBES; i++) {
+      assertTrue(breaker.tryAcquire());
+    }
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    for (int i = 0; i < CircuitBreaker.PROBES; i++) {
+      breaker.record(false, 10);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  public void testFailedProbeReopens() {
+    CircuitBreaker breaker = openBreaker();
+    assertTrue(breaker.tryAcquire());
+    breaker.record(true, 10);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+  }
+
+  /* breaker that opened and whose open period (0 ms) is already over */
+  private CircuitBreaker openBreaker() {
+    CircuitBreaker breaker = new CircuitBreaker("test", "host", 0);
+    for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+      breaker.tryAcquire();
+      breaker.record(true, 10);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    return breaker;
+  }
+}
@@ -0,0 +1,97 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(VertxExtension.class)
+public class CompensationJournalTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testPendingCompensationIsReplayedAfterRestart(Vertx vertx,
+                                                            VertxTestContext testContext) {
+    CompensationJournal journal = journal(vertx, CompensationJournal.DEFAULT_SEGMENT_BYTES);
+    journal.record("deleteItemOnLocal", new JsonObject().put("id", "pending"))
+        .compose(sequence -> {
+          journal.release(sequence, new TimeoutException("local catalogue timed out"));
+          return journal.record("deleteItemOnLocal", new JsonObject().put("id", "done"));
+        })
+        .compose(journal::complete)
+        .onComplete(testContext.succeeding(completed -> {
+          CompensationJournal restarted = journal(vertx, CompensationJournal.DEFAULT_SEGMENT_BYTES);
+          restarted.startReplay((kind, args) -> {
+            testContext.verify(() -> {
+              assertEquals("deleteItemOnLocal", kind);
+              assertEquals("pending", args.getString("id"));
+            });
+            testContext.completeNow();
+            return Future.succeededFuture();
+          });
+        }));
+  }
+
+  @Test
+  public void testNonRetryableFailureAbandonsCompensation(Vertx vertx,
+                                                         VertxTestContext testContext) {
+    CompensationJournal journal = journal(vertx, CompensationJournal.DEFAULT_SEGMENT_BYTES);
+    journal.record("updateItemOnLocal", new JsonObject().put("id", "rejected"))
+        .onComplete(testContext.succeeding(sequence -> testContext.verify(() -> {
+          assertEquals(1, journal.depth());
+          journal.release(sequence,
+              new UpstreamException(404, "{\"type\":\"urn:dx:cat:ItemNotFound\"}", 0));
+          assertEquals(0, journal.depth());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testCompletedSegmentsAreDeleted(Vertx vertx, VertxTestContext testContext) {
+    // room for a handful of records per segment, so a few compensations roll several segments
+    CompensationJournal journal = journal(vertx, 256);
+    Future<Void> all = Future.succeededFuture();
+    for (int i = 0; i < 10; i++) {
+      String id = "item-" + i;
+      all = all.compose(v -> journal.record("deleteItemOnLocal", new JsonObject().put("id", id)))
+          .map(sequence -> {
+            journal.complete(sequence);
+            return null;
+          });
+    }
+    all.compose(v -> journal.record("deleteItemOnLocal", new JsonObject().put("id", "last")))
+        .onComplete(testContext.succeeding(sequence -> vertx.setTimer(200, id ->
+            testContext.verify(() -> {
+              List<Path> segments = segments();
+              assertTrue(segments.size() <= 2, "segments left: " + segments);
+              assertEquals(1, journal.depth());
+              testContext.completeNow();
+            }))));
+  }
+
+  private CompensationJournal journal(Vertx vertx, int segmentBytes) {
+    return new CompensationJournal(vertx, directory, segmentBytes, 60000);
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.toList();
+    }
+  }
+}
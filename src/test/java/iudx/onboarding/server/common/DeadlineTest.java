@@ -0,0 +1,83 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class DeadlineTest {
+
+  @Test
+  public void testDeadlineIsSentOverTheEventBus(Vertx vertx, VertxTestContext testContext) {
+    DeadlinePropagation.install(vertx);
+    vertx.eventBus().<String>consumer("deadline.test", message -> {
+      testContext.verify(() -> {
+        long remaining = Long.parseLong(message.headers().get(DeadlinePropagation.HEADER));
+        assertTrue(remaining > 0 && remaining <= 5000);
+      });
+      message.reply("ok");
+    });
+    Deadline.runDetached(vertx, () -> {
+      Deadline.after(5000).attach();
+      vertx.eventBus().request("deadline.test", "ping")
+          .onComplete(testContext.succeedingThenComplete());
+    });
+  }
+
+  @Test
+  public void testNoDeadlineOutsideARequest(Vertx vertx, VertxTestContext testContext) {
+    Deadline.runDetached(vertx, () -> testContext.verify(() -> {
+      assertNull(Deadline.current());
+      testContext.completeNow();
+    }));
+  }
+
+  @Test
+  public void testRetriesStopWhenBudgetIsSpent(Vertx vertx, VertxTestContext testContext) {
+    RetryEngine retryEngine = RetryEngine.builder(vertx)
+        .withBackoff(Duration.ofMillis(10), Duration.ofSeconds(1), 100)
+        .withMaxAttempts(5)
+        .build();
+    AtomicInteger attempts = new AtomicInteger();
+    Deadline.runDetached(vertx, () -> {
+      Deadline.after(500).attach();
+      retryEngine.execute("test", () -> {
+        attempts.incrementAndGet();
+        return Future.failedFuture(new DxRuntimeException(500, "failed"));
+      }).onComplete(testContext.failing(err -> testContext.verify(() -> {
+        // the second backoff (1 s) no longer fits into the budget
+        assertEquals(2, attempts.get());
+        testContext.completeNow();
+      })));
+    });
+  }
+
+  @Test
+  public void testDetachedExecutionIgnoresDeadline(Vertx vertx, VertxTestContext testContext) {
+    RetryEngine retryEngine = RetryEngine.builder(vertx)
+        .withBackoff(Duration.ofMillis(10), Duration.ofMillis(10), 1)
+        .withMaxAttempts(3)
+        .build();
+    AtomicInteger attempts = new AtomicInteger();
+    Deadline.runDetached(vertx, () -> {
+      Deadline.after(0).attach();
+      retryEngine.executeDetached("test", () -> {
+        attempts.incrementAndGet();
+        return Future.failedFuture(new DxRuntimeException(500, "failed"));
+      }).onComplete(testContext.failing(err -> testContext.verify(() -> {
+        assertEquals(3, attempts.get());
+        testContext.completeNow();
+      })));
+    });
+  }
+}
@@ -0,0 +1,80 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ServiceException;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.common.FailureClassifier.Classification;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import org.junit.jupiter.api.Test;
+
+public class FailureClassifierTest {
+
+  @Test
+  public void testClassifiesByStatus() {
+    assertEquals(Classification.NON_RETRYABLE,
+        FailureClassifier.classify(new UpstreamException(400, "{}", 0)));
+    assertEquals(Classification.NON_RETRYABLE,
+        FailureClassifier.classify(new UpstreamException(401, "{}", 0)));
+    assertEquals(Classification.RETRYABLE,
+        FailureClassifier.classify(new UpstreamException(502, "{}", 0)));
+    assertEquals(Classification.RETRYABLE,
+        FailureClassifier.classify(new UpstreamException(503, "{}", 0)));
+    assertEquals(Classification.THROTTLED,
+        FailureClassifier.classify(new UpstreamException(503, "{}", 5)));
+    assertEquals(Classification.THROTTLED,
+        FailureClassifier.classify(new UpstreamException(429, "{}", 0)));
+    assertEquals(5000, FailureClassifier.retryAfterMs(new UpstreamException(429, "{}", 5)));
+  }
+
+  @Test
+  public void testClassifiesEventBusFailures() {
+    assertEquals(Classification.NON_RETRYABLE, FailureClassifier.classify(
+        new ReplyException(ReplyFailure.RECIPIENT_FAILURE, 404, "not found")));
+    assertEquals(Classification.RETRYABLE, FailureClassifier.classify(
+        new ReplyException(ReplyFailure.TIMEOUT, -1, "timed out")));
+    assertEquals(Classification.RETRYABLE, FailureClassifier.classify(
+        new ReplyException(ReplyFailure.RECIPIENT_FAILURE, -1, "Connection reset")));
+  }
+
+  @Test
+  public void testClassifiesByUrnAndTransportError() {
+    assertEquals(Classification.NON_RETRYABLE, FailureClassifier.classify(
+        new IllegalStateException("{\"type\":\"urn:dx:cat:InvalidSchema\"}")));
+    assertEquals(Classification.THROTTLED, FailureClassifier.classify(
+        new IllegalStateException("{\"type\":\"urn:dx:rs:tooManyRequests\"}")));
+    assertEquals(Classification.RETRYABLE,
+        FailureClassifier.classify(new ConnectException("Connection refused")));
+    assertEquals(Classification.NON_RETRYABLE,
+        FailureClassifier.classify(new UnknownHostException("catalogue")));
+  }
+
+  @Test
+  public void testThrottlingSurvivesTheEventBus() {
+    UpstreamException throttled = new UpstreamException(503, "{}", 5);
+    // what the service proxy delivers to the caller
+    ServiceException delivered = new ServiceException(throttled.failureCode(),
+        throttled.getMessage(), throttled.getDebugInfo().copy());
+    assertEquals(Classification.THROTTLED, FailureClassifier.classify(delivered));
+    assertEquals(5000, FailureClassifier.retryAfterMs(delivered));
+    assertEquals(Classification.RETRYABLE, FailureClassifier.classify(
+        new ServiceException(503, "{}", new JsonObject())));
+  }
+
+  @Test
+  public void testUnrecognisedFailureIsNotRetried() {
+    assertEquals(Classification.NON_RETRYABLE,
+        FailureClassifier.classify(new NullPointerException()));
+    assertEquals(Classification.NON_RETRYABLE,
+        FailureClassifier.classify(new IllegalArgumentException("Invalid catalogue type")));
+    assertEquals(Classification.RETRYABLE, FailureClassifier.classify(
+        new IllegalStateException("{\"type\":\"urn:dx:rs:serviceUnavailable\"}")));
+    assertEquals(Classification.RETRYABLE, FailureClassifier.classify(
+        new IllegalStateException("write failed", new IOException("Broken pipe"))));
+  }
+}
@@ -0,0 +1,79 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+public class LoadBalancerTest {
+
+  private static LoadBalancer balancer(String upstream, LoadBalancer.Strategy strategy,
+                                       int replicas) {
+    JsonArray servers = new JsonArray();
+    for (int i = 1; i <= replicas; i++) {
+      servers.add(new JsonObject().put("host", "cat-" + i).put("port", 443));
+    }
+    return LoadBalancer.forEndpoints(upstream, strategy, LoadBalancer.endpoints(servers));
+  }
+
+  @Test
+  public void testRequestsGoToTheLeastLoadedReplica() {
+    LoadBalancer balancer = balancer("least_outstanding", LoadBalancer.Strategy.LEAST_OUTSTANDING,
+        3);
+    LoadBalancer.Endpoint first = balancer.pick();
+    LoadBalancer.Endpoint second = balancer.pick();
+    LoadBalancer.Endpoint third = balancer.pick();
+    assertNotEquals(first, second);
+    assertNotEquals(second, third);
+    assertNotEquals(first, third);
+
+    balancer.complete(second, false, 1000);
+    assertSame(second, balancer.pick());
+  }
+
+  @Test
+  public void testPowerOfTwoChoicesPicksTheLessLoadedReplica() {
+    LoadBalancer balancer = balancer("p2c", LoadBalancer.Strategy.POWER_OF_TWO_CHOICES, 2);
+    LoadBalancer.Endpoint first = balancer.pick();
+    LoadBalancer.Endpoint second = balancer.pick();
+    assertNotEquals(first, second);
+
+    balancer.complete(first, false, 1000);
+    assertSame(first, balancer.pick());
+  }
+
+  @Test
+  public void testFailingReplicaIsEjected() {
+    LoadBalancer balancer = balancer("ejection", LoadBalancer.Strategy.LEAST_OUTSTANDING, 3);
+    balancer.pick();
+    balancer.pick();
+    LoadBalancer.Endpoint failing = balancer.pick();
+    for (int i = 1; i < LoadBalancer.EJECT_AFTER_FAILURES; i++) {
+      balancer.complete(failing, true, 1000);
+      assertSame(failing, balancer.pick());
+    }
+    balancer.complete(failing, true, 1000);
+
+    assertTrue(failing.isEjected(System.nanoTime()));
+    for (int i = 0; i < 30; i++) {
+      LoadBalancer.Endpoint picked = balancer.pick();
+      assertNotEquals(failing, picked);
+      balancer.complete(picked, false, 1000);
+    }
+  }
+
+  @Test
+  public void testEjectedReplicasAreUsedWhenNoneIsLeft() {
+    LoadBalancer balancer = balancer("all_ejected", LoadBalancer.Strategy.POWER_OF_TWO_CHOICES, 1);
+    LoadBalancer.Endpoint only = balancer.endpoints().get(0);
+    for (int i = 0; i < LoadBalancer.EJECT_AFTER_FAILURES; i++) {
+      balancer.complete(balancer.pick(), true, 1000);
+    }
+
+    assertTrue(only.isEjected(System.nanoTime()));
+    assertSame(only, balancer.pick());
+  }
+}
@@ -0,0 +1,76 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class RequestHedgingTest {
+
+  private static RequestHedging hedging(String upstream) {
+    return RequestHedging.forUpstream(new JsonObject().put(UpstreamClients.CONFIG_KEY,
+        new JsonObject().put(upstream, new JsonObject().put(RequestHedging.CONFIG_KEY,
+            new JsonObject().put("minDelayMs", 10).put("maxDelayMs", 20)))), upstream);
+  }
+
+  @Test
+  public void testSlowReadIsHedged(Vertx vertx, VertxTestContext testContext) {
+    AtomicInteger reads = new AtomicInteger();
+    hedging("hedge_slow").execute(vertx, () -> reads.incrementAndGet() == 1
+            ? Future.<String>future(slow -> vertx.setTimer(1000, id -> slow.complete("first")))
+            : Future.succeededFuture("hedge"))
+        .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+          assertEquals("hedge", result);
+          assertEquals(2, reads.get());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testFastReadIsSentOnce(Vertx vertx, VertxTestContext testContext) {
+    AtomicInteger reads = new AtomicInteger();
+    hedging("hedge_fast").execute(vertx, () -> {
+      reads.incrementAndGet();
+      return Future.succeededFuture("first");
+    })
+        .compose(result -> Future.<String>future(wait -> vertx.setTimer(100,
+            id -> wait.complete(result))))
+        .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+          assertEquals("first", result);
+          assertEquals(1, reads.get());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testFailureIsReportedOnceBothReadsFailed(Vertx vertx,
+                                                       VertxTestContext testContext) {
+    AtomicInteger reads = new AtomicInteger();
+    hedging("hedge_failed").execute(vertx, () -> reads.incrementAndGet() == 1
+            ? Future.<String>future(slow -> vertx.setTimer(200,
+                id -> slow.fail(new IllegalStateException("first"))))
+            : Future.<String>failedFuture(new IllegalStateException("hedge")))
+        .onComplete(testContext.failing(failure -> testContext.verify(() -> {
+          assertEquals("first", failure.getMessage());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testDelayFollowsThePercentile() {
+    RequestHedging hedging = new RequestHedging("hedge_percentile",
+        new JsonObject().put("percentile", 0.9).put("maxDelayMs", 1000));
+    assertEquals(1000, hedging.delayMs());
+    for (int latency = 1; latency <= RequestHedging.MIN_SAMPLES; latency++) {
+      hedging.record(latency * 10);
+    }
+    assertEquals(180, hedging.delayMs());
+  }
+}
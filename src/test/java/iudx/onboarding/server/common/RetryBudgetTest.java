@@ -0,0 +1,60 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class RetryBudgetTest {
+
+  @Test
+  public void testRetriesAreLimitedToAFractionOfCalls() {
+    RetryBudget budget = new RetryBudget(0.5, 2);
+    assertTrue(budget.tryWithdraw());
+    assertTrue(budget.tryWithdraw());
+    assertFalse(budget.tryWithdraw());
+
+    budget.deposit();
+    assertFalse(budget.tryWithdraw());
+    budget.deposit();
+    assertTrue(budget.tryWithdraw());
+  }
+
+  @Test
+  public void testBalanceIsCapped() {
+    RetryBudget budget = new RetryBudget(0.5, 2);
+    for (int i = 0; i < 10; i++) {
+      budget.deposit();
+    }
+    assertEquals(2.0, budget.tokens());
+  }
+
+  @Test
+  public void testEngineFailsFastOnceBudgetIsSpent(Vertx vertx, VertxTestContext testContext) {
+    RetryBudget budget = new RetryBudget(0, 1);
+    RetryEngine retryEngine = RetryEngine.builder(vertx)
+        .withBackoff(Duration.ofMillis(10), Duration.ofMillis(10), 1)
+        .withMaxAttempts(5)
+        .build()
+        .withBudget(budget);
+    AtomicInteger attempts = new AtomicInteger();
+    retryEngine.execute("test", () -> {
+      attempts.incrementAndGet();
+      return Future.failedFuture(new DxRuntimeException(500, "failed"));
+    }).onComplete(testContext.failing(err -> testContext.verify(() -> {
+      // one retry from the initial balance, then fail fast
+      assertEquals(2, attempts.get());
+      testContext.completeNow();
+    })));
+  }
+}
@@ -0,0 +1,104 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.DxRuntimeException;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class RetryEngineTest {
+
+  private RetryEngine retryEngine;
+
+  @BeforeEach
+  void setUp(Vertx vertx) {
+    retryEngine = RetryEngine.builder(vertx)
+        .withBackoff(Duration.ofMillis(10), Duration.ofMillis(20), 2)
+        .withMaxAttempts(3)
+        .build();
+  }
+
+  @Test
+  public void testRetriesUntilSuccess(VertxTestContext testContext) {
+    AtomicInteger attempts = new AtomicInteger();
+    retryEngine.execute("test", () -> attempts.incrementAndGet() < 3
+            ? Future.failedFuture(new DxRuntimeException(500, "failed"))
+            : Future.succeededFuture("done"))
+        .onComplete(testContext.succeeding(result -> testContext.verify(() -> {
+          assertEquals("done", result);
+          assertEquals(3, attempts.get());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testGivesUpAfterMaxAttempts(VertxTestContext testContext) {
+    AtomicInteger attempts = new AtomicInteger();
+    retryEngine.execute("test", () -> {
+      attempts.incrementAndGet();
+      return Future.failedFuture(new DxRuntimeException(500, "failed"));
+    }).onComplete(testContext.failing(err -> testContext.verify(() -> {
+      assertEquals(3, attempts.get());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testDoesNotRetryNonRetryableFailures(VertxTestContext testContext) {
+    AtomicInteger attempts = new AtomicInteger();
+    retryEngine.execute("test", () -> {
+      attempts.incrementAndGet();
+      return Future.failedFuture(new UpstreamException(404, "urn:dx:cat:ItemNotFound", 0));
+    }).recover(err -> retryEngine.execute("test", () -> {
+      attempts.incrementAndGet();
+      return Future.failedFuture(new UnknownHostException("catalogue"));
+    })).onComplete(testContext.failing(err -> testContext.verify(() -> {
+      assertEquals(2, attempts.get());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testDoesNotRetryWhenRetryAfterExceedsMaxDelay(VertxTestContext testContext) {
+    AtomicInteger attempts = new AtomicInteger();
+    retryEngine.execute("test", () -> {
+      attempts.incrementAndGet();
+      return Future.failedFuture(new UpstreamException(429, "urn:dx:rs:tooManyRequests", 60));
+    }).onComplete(testContext.failing(err -> testContext.verify(() -> {
+      assertEquals(1, attempts.get());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testConcurrentExecutionsKeepTheirOwnResults(VertxTestContext testContext) {
+    AtomicInteger firstAttempts = new AtomicInteger();
+    Future<String> first = retryEngine.execute("test", () -> firstAttempts.incrementAndGet() < 2
+        ? Future.failedFuture(new DxRuntimeException(500, "failed"))
+        : Future.succeededFuture("first"));
+    Future<String> second = retryEngine.execute("test", () -> Future.succeededFuture("second"));
+
+    Future.all(first, second).onComplete(testContext.succeeding(done -> testContext.verify(() -> {
+      assertEquals("first", first.result());
+      assertEquals("second", second.result());
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  public void testBackoffIsCappedAtMaxDelay() {
+    assertEquals(10, retryEngine.backoffMs(1));
+    assertEquals(20, retryEngine.backoffMs(2));
+    assertEquals(20, retryEngine.backoffMs(5));
+  }
+}
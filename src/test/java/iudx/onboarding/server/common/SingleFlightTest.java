@@ -0,0 +1,62 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTest {
+
+  @Test
+  public void testConcurrentCallsShareOneFuture() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    Promise<String> promise = Promise.promise();
+
+    Future<String> first = singleFlight.execute("id", () -> {
+      calls.incrementAndGet();
+      return promise.future();
+    });
+    Future<String> second = singleFlight.execute("id", () -> {
+      calls.incrementAndGet();
+      return Future.succeededFuture("other");
+    });
+
+    assertSame(first, second);
+    assertEquals(1, calls.get());
+    assertEquals(1, singleFlight.size());
+
+    promise.complete("result");
+    assertEquals("result", second.result());
+    assertEquals(0, singleFlight.size());
+  }
+
+  @Test
+  public void testCompletedCallIsNotReused() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+
+    singleFlight.execute("id", () -> Future.succeededFuture("a" + calls.incrementAndGet()));
+    Future<String> next =
+        singleFlight.execute("id", () -> Future.succeededFuture("a" + calls.incrementAndGet()));
+
+    assertEquals("a2", next.result());
+    assertEquals(0, singleFlight.size());
+  }
+
+  @Test
+  public void testSupplierExceptionFailsFuture() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    Future<String> future = singleFlight.execute("id", () -> {
+      throw new IllegalStateException("not ready");
+    });
+
+    assertTrue(future.failed());
+    assertEquals(0, singleFlight.size());
+  }
+}
@@ -0,0 +1,71 @@
+package iudx.onboarding.server.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class UpstreamClientsTest {
+
+  @Test
+  public void testProfileOfTheUpstreamIsApplied() {
+    JsonObject config = new JsonObject().put(UpstreamClients.CONFIG_KEY, new JsonObject()
+        .put("local_catalogue", new JsonObject()
+            .put("maxPoolSize", 20)
+            .put("http2", true)
+            .put("compression", true)));
+
+    WebClientOptions local = UpstreamClients.options(config, "local_catalogue");
+    assertEquals(20, local.getMaxPoolSize());
+    assertEquals(20, local.getHttp2MaxPoolSize());
+    assertEquals(HttpVersion.HTTP_2, local.getProtocolVersion());
+    assertTrue(local.isTryUseCompression());
+    assertTrue(local.isSsl());
+
+    WebClientOptions central = UpstreamClients.options(config, "central_catalogue");
+    assertEquals(HttpClientOptions.DEFAULT_MAX_POOL_SIZE, central.getMaxPoolSize());
+    assertEquals(HttpVersion.HTTP_1_1, central.getProtocolVersion());
+    assertFalse(central.isTryUseCompression());
+  }
+
+  @Test
+  public void testClientIsSharedWithinAVerticleInstance(Vertx vertx,
+                                                        VertxTestContext testContext) {
+    JsonObject config = new JsonObject();
+    List<WebClient> clients = new CopyOnWriteArrayList<>();
+    Supplier<Verticle> verticle = () -> new AbstractVerticle() {
+      @Override
+      public void start() {
+        WebClient client = UpstreamClients.get(vertx, config, "local_catalogue");
+        assertSame(client, UpstreamClients.get(vertx, config, "local_catalogue"));
+        assertNotSame(client, UpstreamClients.get(vertx, config, "central_catalogue"));
+        clients.add(client);
+      }
+    };
+    vertx.deployVerticle(verticle, new DeploymentOptions().setInstances(2))
+        .onComplete(testContext.succeeding(id -> testContext.verify(() -> {
+          assertEquals(2, clients.size());
+          assertNotSame(clients.get(0), clients.get(1));
+          testContext.completeNow();
+        })));
+  }
+}
@@ -40,6 +40,7 @@ public class IngestionServiceTest {
   @Mock Buffer buffer;
 
    IngestionServiceImpl ingestionService;
+   WebClient rsWebClient;
 
   @BeforeEach
   public void setUp() {
@@ -47,8 +48,8 @@ public class IngestionServiceTest {
       .put("resourceServerPort", 8080)
       .put("resourceServerBasePath", "/ngsi-ld/v1");
 
-    IngestionServiceImpl.rsWebClient = mock(WebClient.class);
-    ingestionService = new IngestionServiceImpl(vertx, config);
+    rsWebClient = mock(WebClient.class);
+    ingestionService = new IngestionServiceImpl(vertx, config, rsWebClient);
   }
 
   @Test
@@ -57,7 +58,7 @@ public class IngestionServiceTest {
     JsonObject response = new JsonObject();
     JsonArray jsonArray = new JsonArray().add(response);
     response.put("results", jsonArray);
-    lenient().when(IngestionServiceImpl.rsWebClient.post(anyInt(),anyString(),anyString())).thenReturn(httpRequest);
+    lenient().when(rsWebClient.post(anyInt(),anyString(),anyString())).thenReturn(httpRequest);
     when(httpRequest.putHeader(anyString(), anyString())).thenReturn(httpRequest);
 
     when(httpResponseAsyncResult.succeeded()).thenReturn(true);
@@ -95,7 +96,7 @@ public class IngestionServiceTest {
     JsonObject response = new JsonObject();
     JsonArray jsonArray = new JsonArray().add(response);
     response.put("results", jsonArray);
-    lenient().when(IngestionServiceImpl.rsWebClient.post(anyInt(),anyString(),anyString())).thenReturn(httpRequest);
+    lenient().when(rsWebClient.post(anyInt(),anyString(),anyString())).thenReturn(httpRequest);
     when(httpRequest.putHeader(anyString(), anyString())).thenReturn(httpRequest);
 
     when(httpResponseAsyncResult.succeeded()).thenReturn(false);
@@ -131,7 +132,6 @@ public class IngestionServiceTest {
   void testUnregisteredAdapterSuccess(Vertx vertx, VertxTestContext testContext) {
 
     WebClient mockedWebClient = Mockito.mock(WebClient.class);
-    IngestionServiceImpl.rsWebClient = mockedWebClient;
 
     HttpRequest<Buffer> httpRequest = mock(HttpRequest.class);
     doReturn(httpRequest).when(mockedWebClient).delete(anyInt(), anyString(), anyString());
@@ -145,7 +145,7 @@ public class IngestionServiceTest {
     JsonObject jsonObject =
       new JsonObject().put("resourceServerPort", 124).put("resourceServerBasePath", "path");
 
-    IngestionServiceImpl ingestionService = new IngestionServiceImpl(vertx, jsonObject);
+    IngestionServiceImpl ingestionService = new IngestionServiceImpl(vertx, jsonObject, mockedWebClient);
     Future<JsonObject> futureResult =
       ingestionService.unregisteredAdapter("resourceServerUrl", "id", "token");
 
@@ -164,7 +164,6 @@ public class IngestionServiceTest {
   void testUnregisteredAdapterFailure(Vertx vertx, VertxTestContext testContext) {
 
     WebClient mockedWebClient = Mockito.mock(WebClient.class);
-    IngestionServiceImpl.rsWebClient = mockedWebClient;
 
     HttpRequest<Buffer> httpRequest = mock(HttpRequest.class);
     doReturn(httpRequest).when(mockedWebClient).delete(anyInt(), anyString(), anyString());
@@ -178,7 +177,7 @@ public class IngestionServiceTest {
     JsonObject jsonObject =
       new JsonObject().put("resourceServerPort", 124).put("resourceServerBasePath", "path");
 
-    IngestionServiceImpl ingestionService = new IngestionServiceImpl(vertx, jsonObject);
+    IngestionServiceImpl ingestionService = new IngestionServiceImpl(vertx, jsonObject, mockedWebClient);
     Future<JsonObject> futureResult =
       ingestionService.unregisteredAdapter("resourceServerUrl", "id", "token");
 
@@ -44,10 +44,10 @@ public class MinioServiceTest {
   @BeforeEach
   public void setup() {
     MockitoAnnotations.openMocks(this);
-    minioService = new MinioServiceImpl(vertx, minioClient, minioServerUrl, minioAdmin,
-        minioPolicyApiUrl, authorizationKey);
     webClient = WebClient.create(vertx,
         new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true));
+    minioService = new MinioServiceImpl(webClient, minioClient, minioServerUrl, minioAdmin,
+        minioPolicyApiUrl, authorizationKey);
   }
 
   @Test
@@ -90,6 +90,20 @@ public class MinioServiceTest {
     assertEquals(minioServerUrl + MINIO_UI_BROWSER_PATH + bucketName, resultFuture.result());
   }
 
+  @Test
+  public void testGetBucketUrlDoesNotCreateTheBucket() throws Exception {
+    String username = "newuser";
+
+    // Call getBucketUrl
+    Future<String> resultFuture = minioService.getBucketUrl(username);
+
+    // Verify the bucket is neither looked up nor created
+    verify(minioClient, never()).bucketExists(any(BucketExistsArgs.class));
+    verify(minioClient, never()).makeBucket(any(MakeBucketArgs.class));
+    assertEquals(minioServerUrl + MINIO_UI_BROWSER_PATH + username + MINIO_BUCKET_SUFFIX,
+        resultFuture.result());
+  }
+
   @Test
   public void testCreateBucketWhenBucketCreationFails() throws Exception {
     String username = "failuser";
@@ -0,0 +1,70 @@
+package iudx.onboarding.server.resourceserver;
+
+import static iudx.onboarding.server.common.Constants.CATALOGUE_CACHE_ADDRESS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.onboarding.server.apiserver.exceptions.UpstreamException;
+import iudx.onboarding.server.catalogue.CatalogueCache;
+import iudx.onboarding.server.catalogue.service.LocalCatImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class ResourceServerUrlsTest {
+
+  @Test
+  public void testUrlIsCachedUntilResourceServerChanges(Vertx vertx,
+                                                        VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    when(localCat.getRelatedEntity(eq("group"), eq("resourceServer"), any())).thenReturn(
+        Future.succeededFuture(new JsonObject().put("results", new JsonArray().add(
+            new JsonObject().put("id", "rs").put("resourceServerRegURL", "rs.example.org")))));
+    ResourceServerUrls urls = new ResourceServerUrls(vertx, localCat, new JsonObject());
+
+    urls.resolve("group")
+        .compose(first -> urls.resolve("group"))
+        .compose(second -> {
+          testContext.verify(() -> {
+            assertEquals("rs.example.org", second);
+            verify(localCat, times(1)).getRelatedEntity(eq("group"), anyString(), any());
+          });
+          vertx.eventBus().publish(CATALOGUE_CACHE_ADDRESS, new JsonObject()
+              .put(CatalogueCache.KIND, CatalogueCache.ITEM).put("id", "rs"));
+          return Future.<Void>future(timer -> vertx.setTimer(50, id -> timer.complete()));
+        })
+        .compose(published -> urls.resolve("group"))
+        .onComplete(testContext.succeeding(third -> testContext.verify(() -> {
+          verify(localCat, times(2)).getRelatedEntity(eq("group"), anyString(), any());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testMissingResourceServerIsCached(Vertx vertx, VertxTestContext testContext) {
+    LocalCatImpl localCat = mock(LocalCatImpl.class);
+    when(localCat.getRelatedEntity(eq("group"), eq("resourceServer"), any())).thenReturn(
+        Future.failedFuture(new UpstreamException(404, "{\"type\":\"urn:dx:cat:ItemNotFound\"}", 0)));
+    ResourceServerUrls urls = new ResourceServerUrls(vertx, localCat, new JsonObject());
+
+    urls.resolve("group")
+        .recover(notFound -> urls.resolve("group"))
+        .onComplete(testContext.failing(notFound -> testContext.verify(() -> {
+          assertEquals(404, ((UpstreamException) notFound).getStatusCode());
+          verify(localCat, times(1)).getRelatedEntity(eq("group"), anyString(), any());
+          testContext.completeNow();
+        })));
+  }
+}
@@ -0,0 +1,123 @@
+package iudx.onboarding.server.token;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class JwksTokenVerifierTest {
+
+  private static final JsonObject KEY_1 = new JsonObject()
+      .put("kty", "oct").put("alg", "HS256").put("use", "sig").put("kid", "key-1")
+      .put("k", "c2VjcmV0LWtleS1vbmUtZm9yLXRoZS10ZXN0LXN1aXRl");
+  private static final JsonObject KEY_2 = new JsonObject()
+      .put("kty", "oct").put("alg", "HS256").put("use", "sig").put("kid", "key-2")
+      .put("k", "c2VjcmV0LWtleS10d28tZm9yLXRoZS10ZXN0LXN1aXRl");
+
+  private final AtomicReference<JsonArray> publishedKeys = new AtomicReference<>();
+  private final AtomicInteger jwksRequests = new AtomicInteger();
+  private JwksTokenVerifier verifier;
+  private String jwksUrl;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    publishedKeys.set(new JsonArray().add(KEY_1));
+    HttpServer server = vertx.createHttpServer().requestHandler(request -> {
+      jwksRequests.incrementAndGet();
+      request.response().end(new JsonObject().put("keys", publishedKeys.get()).encode());
+    });
+    server.listen(0).onComplete(testContext.succeeding(started -> {
+      jwksUrl = "http://localhost:" + started.actualPort() + "/certs";
+      verifier = new JwksTokenVerifier(vertx, () -> jwksUrl, new JWTOptions(), 10);
+      testContext.completeNow();
+    }));
+  }
+
+  private String sign(Vertx vertx, JsonObject key, String subject) {
+    return sign(vertx, key, subject, new JWTOptions());
+  }
+
+  private String sign(Vertx vertx, JsonObject key, String subject, JWTOptions options) {
+    JWTAuth signer = JWTAuth.create(vertx, new JWTAuthOptions().addJwk(key));
+    return signer.generateToken(new JsonObject().put("sub", subject),
+        options.setAlgorithm("HS256").setExpiresInSeconds(300));
+  }
+
+  @Test
+  public void testVerifyCachesDecodedClaims(Vertx vertx, VertxTestContext testContext) {
+    String token = sign(vertx, KEY_1, "provider");
+    verifier.verify(token)
+        .compose(claims -> {
+          assertEquals("provider", claims.getString("sub"));
+          return verifier.verify(token);
+        })
+        .onComplete(testContext.succeeding(claims -> testContext.verify(() -> {
+          assertEquals("provider", claims.getString("sub"));
+          assertEquals(1, jwksRequests.get());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testUnknownKeyIdRefreshesJwks(Vertx vertx, VertxTestContext testContext) {
+    verifier.verify(sign(vertx, KEY_1, "before-rotation"))
+        .compose(claims -> {
+          publishedKeys.set(new JsonArray().add(KEY_1).add(KEY_2));
+          return verifier.verify(sign(vertx, KEY_2, "after-rotation"));
+        })
+        .onComplete(testContext.succeeding(claims -> testContext.verify(() -> {
+          assertEquals("after-rotation", claims.getString("sub"));
+          assertEquals(2, jwksRequests.get());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testInvalidSignatureFails(Vertx vertx, VertxTestContext testContext) {
+    JsonObject forged = KEY_1.copy().put("k", "Zm9yZ2VkLWtleS1mb3ItdGhlLXRlc3Qtc3VpdGUtMDA");
+    verifier.verify(sign(vertx, forged, "attacker"))
+        .onComplete(testContext.failing(err -> testContext.completeNow()));
+  }
+
+  @Test
+  public void testUnknownKeyIdsRefreshJwksOncePerInterval(Vertx vertx,
+                                                          VertxTestContext testContext) {
+    verifier.verify(sign(vertx, KEY_1, "known"))
+        .compose(claims -> verifier.verify(sign(vertx, KEY_2, "unpublished")))
+        .recover(err -> {
+          // published right after the refresh, too soon for another one
+          publishedKeys.set(new JsonArray().add(KEY_1).add(KEY_2));
+          return verifier.verify(sign(vertx, KEY_2, "too-soon"));
+        })
+        .onComplete(testContext.failing(err -> testContext.verify(() -> {
+          assertEquals(2, jwksRequests.get());
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testIssuerIsChecked(Vertx vertx, VertxTestContext testContext) {
+    JwksTokenVerifier realm = new JwksTokenVerifier(vertx, () -> jwksUrl,
+        new JWTOptions().setIssuer("http://keycloak/realms/dx"), 10);
+    realm.verify(sign(vertx, KEY_1, "other", new JWTOptions().setIssuer("http://other")))
+        .recover(err -> realm.verify(sign(vertx, KEY_1, "realm",
+            new JWTOptions().setIssuer("http://keycloak/realms/dx"))))
+        .onComplete(testContext.succeeding(claims -> testContext.verify(() -> {
+          assertEquals("realm", claims.getString("sub"));
+          testContext.completeNow();
+        })));
+  }
+}
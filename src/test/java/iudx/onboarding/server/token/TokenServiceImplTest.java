@@ -0,0 +1,157 @@
+package iudx.onboarding.server.token;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Lock;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.oauth2.OAuth2Auth;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class TokenServiceImplTest {
+
+  private static final String SHARED_TOKEN_MAP = "iudx.onboarding.server.token.admin";
+
+  private static String jwt(JsonObject payload) {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    String header = encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8));
+    String body = encoder.encodeToString(payload.encode().getBytes(StandardCharsets.UTF_8));
+    return header + "." + body + ".signature";
+  }
+
+  @Test
+  public void testExpiryOfReadsExpClaim() {
+    String token = jwt(new JsonObject().put("sub", "admin").put("exp", 1760000000L));
+    assertEquals(1760000000L, TokenServiceImpl.expiryOf(token));
+  }
+
+  @Test
+  public void testExpiryOfMissingClaim() {
+    String token = jwt(new JsonObject().put("sub", "admin"));
+    assertEquals(0L, TokenServiceImpl.expiryOf(token));
+  }
+
+  @Test
+  public void testExpiryOfMalformedToken() {
+    assertEquals(0L, TokenServiceImpl.expiryOf("not-a-jwt"));
+  }
+
+  @Test
+  public void testCreateTokenFailsWith503WhileKeycloakUnavailable(Vertx vertx,
+                                                                  VertxTestContext testContext) {
+    JsonObject config = new JsonObject()
+        .put("keycloakSite", "http://localhost:1/auth/realms/test")
+        .put("keycloakClientId", "client")
+        .put("keycloakClientSecret", "secret")
+        .put("keycloakReadyWaitMs", 200L);
+    TokenServiceImpl tokenService = new TokenServiceImpl(vertx, config);
+
+    tokenService.createToken().onComplete(testContext.failing(err -> testContext.verify(() -> {
+      assertFalse(tokenService.ready().isComplete());
+      assertTrue(err.getMessage().contains("urn:dx:rs:serviceUnavailable"));
+      testContext.completeNow();
+    })));
+  }
+
+  private static JsonObject config() {
+    // discovery fails against this site, the tests hand the service a Keycloak client instead
+    return new JsonObject()
+        .put("keycloakSite", "http://localhost:1/auth/realms/test")
+        .put("keycloakClientId", "client")
+        .put("keycloakClientSecret", "secret")
+        .put("keycloakReadyWaitMs", 5000L);
+  }
+
+  private static OAuth2Auth keycloak(String token) {
+    OAuth2Auth keycloak = mock(OAuth2Auth.class);
+    when(keycloak.authenticate(any(JsonObject.class))).thenReturn(
+        Future.succeededFuture(User.create(new JsonObject().put("access_token", token))));
+    return keycloak;
+  }
+
+  private static String token(String subject) {
+    return jwt(new JsonObject().put("sub", subject)
+        .put("exp", System.currentTimeMillis() / 1000 + 3600));
+  }
+
+  private static Future<AsyncMap<String, JsonObject>> sharedTokens(Vertx vertx) {
+    return vertx.sharedData().getAsyncMap(SHARED_TOKEN_MAP);
+  }
+
+  @Test
+  public void testMintedTokenIsPublishedToTheCluster(Vertx vertx, VertxTestContext testContext) {
+    String minted = token("minted");
+    TokenServiceImpl tokenService = new TokenServiceImpl(vertx, config());
+    tokenService.keycloak = keycloak(minted);
+
+    tokenService.createToken()
+        .compose(token -> {
+          assertEquals(minted, token.getString("token"));
+          return sharedTokens(vertx).compose(tokens -> tokens.get("admin"));
+        })
+        .onComplete(testContext.succeeding(shared -> testContext.verify(() -> {
+          assertEquals(minted, shared.getString("token"));
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testTokenPublishedByAnotherNodeIsAdopted(Vertx vertx,
+                                                       VertxTestContext testContext) {
+    String published = token("published");
+    OAuth2Auth keycloak = keycloak(token("minted"));
+    sharedTokens(vertx)
+        .compose(tokens -> tokens.put("admin", new JsonObject().put("token", published)
+            .put("exp", TokenServiceImpl.expiryOf(published))))
+        .compose(v -> {
+          TokenServiceImpl tokenService = new TokenServiceImpl(vertx, config());
+          tokenService.keycloak = keycloak;
+          return tokenService.createToken();
+        })
+        .onComplete(testContext.succeeding(token -> testContext.verify(() -> {
+          assertEquals(published, token.getString("token"));
+          verify(keycloak, never()).authenticate(any(JsonObject.class));
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  public void testTokenIsMintedLocallyWithoutTheLock(Vertx vertx, VertxTestContext testContext) {
+    String minted = token("minted");
+    TokenServiceImpl tokenService = new TokenServiceImpl(vertx, config()) {
+      @Override
+      Future<Lock> refreshLock() {
+        return Future.failedFuture("cluster unreachable");
+      }
+    };
+    tokenService.keycloak = keycloak(minted);
+
+    tokenService.createToken()
+        .compose(token -> {
+          assertEquals(minted, token.getString("token"));
+          return sharedTokens(vertx).compose(tokens -> tokens.get("admin"));
+        })
+        .onComplete(testContext.succeeding(shared -> testContext.verify(() -> {
+          // only the lock holder publishes
+          assertNull(shared);
+          testContext.completeNow();
+        })));
+  }
+}